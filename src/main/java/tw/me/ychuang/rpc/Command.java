@@ -6,6 +6,8 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import tw.me.ychuang.rpc.json.JsonSerializer;
+
 /**
  * A container that wraps a skeleton's ID, a method that will be invoked, and the needed parameters that will be inputted.
  * 
@@ -123,6 +125,25 @@ public class Command {
 		return parameters;
 	}
 
+	/**
+	 * A convenient method for field 'parameters'
+	 * 
+	 * @return the canonical key of parameters, e.g. to cache the result of this command
+	 */
+	public String findParameterKey() {
+		return toParameterKey(this.findParameters());
+	}
+
+	/**
+	 * Converts parameters to a canonical key, the equal parameters always have the same JSON form
+	 * 
+	 * @param parameters the parameters of a method
+	 * @return the canonical key of parameters
+	 */
+	public static String toParameterKey(Object... parameters) {
+		return JsonSerializer.getInstance().toJson(parameters, Object[].class);
+	}
+
 	/**
 	 * A convenient method for field 'parameterClasses'
 	 * 
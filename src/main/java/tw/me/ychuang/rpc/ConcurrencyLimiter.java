@@ -0,0 +1,236 @@
+package tw.me.ychuang.rpc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of in-flight requests, the limit is fixed or adapted by the observed response time.<br>
+ * An adaptive limit follows the idea of TCP Vegas, it estimates the queue size at the remote side by the ratio of<br>
+ * the minimum response time to the current one. The limit grows while the estimated queue is short, shrinks while it is long,<br>
+ * and drops at once by a request that is expired or rejected, so that the concurrency stays around the real capacity.
+ *
+ * @author Y.C. Huang
+ */
+public class ConcurrencyLimiter {
+
+	/**
+	 * The number of samples after which the minimum response time is probed again, so that a slower floor is learned
+	 */
+	private static final int MIN_RTT_PROBE_INTERVAL = 1000;
+
+	/**
+	 * The ratio of the limit is kept after a request is dropped
+	 */
+	private static final double BACKOFF_RATIO = 0.9;
+
+	/**
+	 * A kind of constructor, the limit never changes
+	 *
+	 * @param limit the max number of in-flight requests, it is unlimited if it is 0
+	 */
+	public ConcurrencyLimiter(int limit) {
+		super();
+		int fixedLimit = limit > 0 ? limit : Integer.MAX_VALUE;
+		this.adaptive = false;
+		this.minLimit = fixedLimit;
+		this.maxLimit = fixedLimit;
+		this.limit = fixedLimit;
+	}
+
+	/**
+	 * A kind of constructor, the limit is adapted by the observed response time
+	 *
+	 * @param initialLimit the initial limit
+	 * @param minLimit the lower bound of the limit
+	 * @param maxLimit the upper bound of the limit, it is unlimited if it is 0
+	 */
+	public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		super();
+		this.adaptive = true;
+		this.minLimit = Math.max(minLimit, 1);
+		this.maxLimit = Math.max(maxLimit > 0 ? maxLimit : Integer.MAX_VALUE, this.minLimit);
+		this.limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+	}
+
+	/**
+	 * Whether the limit is adapted or not
+	 */
+	private final boolean adaptive;
+
+	/**
+	 * The lower bound of the limit
+	 */
+	private final int minLimit;
+
+	/**
+	 * The upper bound of the limit
+	 */
+	private final int maxLimit;
+
+	/**
+	 * The current max number of in-flight requests
+	 */
+	private volatile int limit;
+
+	/**
+	 * The number of in-flight requests
+	 */
+	private final AtomicInteger inflight = new AtomicInteger();
+
+	/**
+	 * The number of requests that are dropped
+	 */
+	private final AtomicLong droppedCounter = new AtomicLong();
+
+	/**
+	 * The minimum response time in nanoseconds, it is guarded by this limiter
+	 */
+	private long minRtt = Long.MAX_VALUE;
+
+	/**
+	 * The number of samples since the minimum response time is probed, it is guarded by this limiter
+	 */
+	private int sampleCounter = 0;
+
+	/**
+	 * Acquires a place for a request if the limit isn't reached, an acquired place must be released finally.
+	 *
+	 * @return true if a place is acquired
+	 */
+	public boolean tryAcquire() {
+		// reserves a place first, so that the number of in-flight requests never exceeds the limit
+		if (this.inflight.incrementAndGet() > this.limit) {
+			this.inflight.decrementAndGet();
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Releases a place without adapting the limit, e.g. the request is cancelled by the caller
+	 */
+	public void release() {
+		this.inflight.decrementAndGet();
+	}
+
+	/**
+	 * Releases a place after a response is received, and adapts the limit by its response time
+	 *
+	 * @param rtt the response time in nanoseconds
+	 */
+	public void release(long rtt) {
+		int inflight = this.inflight.getAndDecrement();
+		if (this.adaptive) {
+			this.adapt(rtt, inflight);
+		}
+	}
+
+	/**
+	 * Releases a place after a request is expired or rejected, and shrinks the limit at once
+	 */
+	public void releaseDropped() {
+		this.inflight.decrementAndGet();
+		this.droppedCounter.incrementAndGet();
+
+		if (this.adaptive) {
+			synchronized (this) {
+				this.limit = Math.max((int) (this.limit * BACKOFF_RATIO), this.minLimit);
+			}
+		}
+	}
+
+	/**
+	 * Adapts the limit by the estimated queue size at the remote side
+	 */
+	private synchronized void adapt(long rtt, int inflight) {
+		if (rtt <= 0) {
+			return;
+		}
+
+		// forgets the minimum response time periodically, so that a changed capacity of the remote side is learned
+		if (++this.sampleCounter >= MIN_RTT_PROBE_INTERVAL) {
+			this.sampleCounter = 0;
+			this.minRtt = rtt;
+		} else if (rtt < this.minRtt) {
+			this.minRtt = rtt;
+		}
+
+		int limit = this.limit;
+		double queueSize = limit * (1 - (double) this.minRtt / rtt);
+		double step = Math.max(Math.log10(limit), 1);
+
+		int newLimit = limit;
+		if (queueSize < 3 * step) {
+			// the limit grows only if it is really used, otherwise an idle caller inflates it without any evidence
+			if (inflight * 2 >= limit) {
+				newLimit = (int) (limit + step);
+			}
+		} else if (queueSize > 6 * step) {
+			newLimit = (int) (limit - step);
+		}
+
+		this.limit = Math.min(Math.max(newLimit, this.minLimit), this.maxLimit);
+	}
+
+	/**
+	 * Gets the current max number of in-flight requests
+	 *
+	 * @return the current limit
+	 */
+	public int getLimit() {
+		return this.limit;
+	}
+
+	/**
+	 * Gets the number of in-flight requests
+	 *
+	 * @return the number of in-flight requests
+	 */
+	public int getInflight() {
+		return this.inflight.get();
+	}
+
+	/**
+	 * Whether the limit is reached or not
+	 *
+	 * @return true if no more request is allowed now
+	 */
+	public boolean isLimited() {
+		return this.inflight.get() >= this.limit;
+	}
+
+	/**
+	 * Gets the number of requests that are dropped
+	 *
+	 * @return the number of dropped requests
+	 */
+	public long getDroppedCount() {
+		return this.droppedCounter.get();
+	}
+
+	/**
+	 * Gets the minimum response time
+	 *
+	 * @param unit the time unit of the minimum response time
+	 * @return the minimum response time, or 0 if no response time is observed
+	 */
+	public synchronized long getMinRtt(TimeUnit unit) {
+		return this.minRtt == Long.MAX_VALUE ? 0 : unit.convert(this.minRtt, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Whether the limit is adapted or not
+	 *
+	 * @return true if the limit is adaptive
+	 */
+	public boolean isAdaptive() {
+		return this.adaptive;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ConcurrencyLimiter-%s-%d/%d", this.adaptive ? "adaptive" : "fixed", this.inflight.get(), this.limit);
+	}
+}
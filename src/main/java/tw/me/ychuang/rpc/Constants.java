@@ -25,21 +25,85 @@ public final class Constants {
 
 	public static int HEARTBEAT_PERIOD = 60;
 
+	public static int HANDSHAKE_TIMEOUT = 5;
+
 	public static String REQUEST_BOUNDARY = new String(new byte[] { 0 }, CharsetUtil.UTF_8);
 
 	public static long DEFAULT_PERIOD = 10;
 
 	public static TimeUnit DEFAULT_UNIT = TimeUnit.SECONDS;
 
+	public static int MAX_FRAME_SIZE = 1024 * 1024;
+
+	public static short FRAME_MAGIC = (short) 0x5243;
+
+	public static byte FRAME_VERSION = 1;
+
+	public static int FRAME_HEADER_LENGTH = 8;
+
+	public static int SKELETON_POOL_SIZE = DEFAULT_THREAD_SIZE;
+
+	public static int SKELETON_ACQUIRE_TIMEOUT = 5;
+
+	public static int WORKER_QUEUE_SIZE = 1024;
+
+	public static int LATENCY_DECAY_TIME = 10;
+
+	public static int MAX_WAITING_REQUESTS = 4096;
+
+	public static long REQUEST_TIMEOUT = 30000;
+
+	public static long TIMER_TICK_DURATION = 10;
+
+	public static int WRITE_BUFFER_HIGH_WATER_MARK = 64 * 1024;
+
+	public static int WRITE_BUFFER_LOW_WATER_MARK = 32 * 1024;
+
+	public static long SATURATION_WAIT_TIMEOUT = 1000;
+
+	public static int MAX_CONCURRENT_REQUESTS = 64;
+
+	public static int MAX_ADMITTED_REQUESTS = 2048;
+
+	public static long MAX_QUEUE_TIME = 1000;
+
+	public static int BUSY_RETRY_TIMES = 2;
+
+	public static long BUSY_BACKOFF_TIME = 100;
+
+	public static int BULKHEAD_MAX_WAITING = 0;
+
+	public static long BULKHEAD_MAX_WAIT_TIME = 1000;
+
+	public static int INITIAL_CONCURRENCY_LIMIT = 64;
+
+	public static int MIN_CONCURRENCY_LIMIT = 4;
+
+	public static long RESULT_CACHE_TTL = 60000;
+
+	public static int RESULT_CACHE_MAX_SIZE = 1000;
+
+	public static int NEAR_CACHE_MAX_SIZE = 1000;
+
+	public static double NEAR_CACHE_REFRESH_RATIO = 0.8;
+
+	public static long BATCH_WINDOW = 0;
+
+	public static int BATCH_MAX_SIZE = 16;
+
+	public static long ASYNC_MAX_WAIT_TIME = 30000;
+
 	/**
 	 * Channel Selection Type<br>
 	 * <ul>
 	 * <li>Round-Robin</li>
 	 * <li>Workload</li>
+	 * <li>Power of Two Choices: the less loaded one of two random channels</li>
+	 * <li>Peak EWMA: the one with lower expected latency of two random channels</li>
 	 * </ul>
 	 */
 	public enum ChannelSelectionType {
-		round_robin, workload;
+		round_robin, workload, power_of_two_choices, peak_ewma;
 
 		public static List<String> asLabels() {
 			List<String> labels = new ArrayList<String>();
@@ -50,6 +114,179 @@ public final class Constants {
 		}
 	}
 
+	/**
+	 * Framing Type<br>
+	 * <ul>
+	 * <li>Delimiter: a message is terminated by NUL (0x00)</li>
+	 * <li>Length Field: a message is prefixed by a header with magic, version, flags, and length</li>
+	 * </ul>
+	 */
+	public enum FramingType {
+		delimiter, length_field;
+
+		public static List<String> asLabels() {
+			List<String> labels = new ArrayList<String>();
+			for (FramingType type : FramingType.values()) {
+				labels.add(type.toString());
+			}
+			return labels;
+		}
+	}
+
+	/**
+	 * Execution Mode Type<br>
+	 * <ul>
+	 * <li>Serial: the requests of a channel are executed one by one in the order of arrival</li>
+	 * <li>Concurrent: the requests of all channels are executed by a shared worker pool and answered out of order</li>
+	 * </ul>
+	 */
+	public enum ExecutionModeType {
+		serial, concurrent;
+
+		public static List<String> asLabels() {
+			List<String> labels = new ArrayList<String>();
+			for (ExecutionModeType type : ExecutionModeType.values()) {
+				labels.add(type.toString());
+			}
+			return labels;
+		}
+	}
+
+	/**
+	 * Worker Pool Type<br>
+	 * <ul>
+	 * <li>Bounded: a fixed number of platform threads with a bounded queue</li>
+	 * <li>Work-Stealing: a fork-join pool of platform threads, it suits short and non-blocking skeletons</li>
+	 * <li>Virtual: one virtual thread per request, it suits blocking skeletons on JDK 21 or later</li>
+	 * </ul>
+	 */
+	public enum WorkerPoolType {
+		bounded, work_stealing, virtual;
+
+		public static List<String> asLabels() {
+			List<String> labels = new ArrayList<String>();
+			for (WorkerPoolType type : WorkerPoolType.values()) {
+				labels.add(type.toString());
+			}
+			return labels;
+		}
+	}
+
+	/**
+	 * Bulkhead Isolation Type<br>
+	 * <ul>
+	 * <li>Semaphore: the calls are executed by the worker threads, the concurrency is capped by permits</li>
+	 * <li>Pool: the calls are executed by the dedicated threads of a bulkhead, the worker thread stops waiting once the caller gives up</li>
+	 * </ul>
+	 */
+	public enum BulkheadIsolationType {
+		semaphore, pool;
+
+		public static List<String> asLabels() {
+			List<String> labels = new ArrayList<String>();
+			for (BulkheadIsolationType type : BulkheadIsolationType.values()) {
+				labels.add(type.toString());
+			}
+			return labels;
+		}
+	}
+
+	/**
+	 * Bulkhead Rejection Type<br>
+	 * <ul>
+	 * <li>Busy: a rejected call gets a retryable busy result, so that the client retries it on another server</li>
+	 * <li>Fail: a rejected call gets a server-side exception, it isn't retried</li>
+	 * </ul>
+	 */
+	public enum BulkheadRejectionType {
+		busy, fail;
+
+		public static List<String> asLabels() {
+			List<String> labels = new ArrayList<String>();
+			for (BulkheadRejectionType type : BulkheadRejectionType.values()) {
+				labels.add(type.toString());
+			}
+			return labels;
+		}
+	}
+
+	/**
+	 * Skeleton Scope Type<br>
+	 * <ul>
+	 * <li>Singleton: a skeleton instance is shared by all requests</li>
+	 * <li>Pooled: a request borrows one of a fixed number of skeleton instances</li>
+	 * <li>Per-Call: a skeleton instance is constructed per request</li>
+	 * </ul>
+	 */
+	public enum SkeletonScopeType {
+		singleton, pooled, per_call;
+
+		public static List<String> asLabels() {
+			List<String> labels = new ArrayList<String>();
+			for (SkeletonScopeType type : SkeletonScopeType.values()) {
+				labels.add(type.toString());
+			}
+			return labels;
+		}
+	}
+
+	/**
+	 * Concurrency Limit Type<br>
+	 * <ul>
+	 * <li>Fixed: the max number of in-flight requests never changes</li>
+	 * <li>Adaptive: the max number of in-flight requests is adapted by the observed response time</li>
+	 * </ul>
+	 */
+	public enum ConcurrencyLimitType {
+		fixed, adaptive;
+
+		public static List<String> asLabels() {
+			List<String> labels = new ArrayList<String>();
+			for (ConcurrencyLimitType type : ConcurrencyLimitType.values()) {
+				labels.add(type.toString());
+			}
+			return labels;
+		}
+	}
+
+	/**
+	 * Result Cache Eviction Type<br>
+	 * <ul>
+	 * <li>LRU: the least recently used result is evicted while the cache is full</li>
+	 * <li>LFU: the least frequently used result is evicted while the cache is full</li>
+	 * </ul>
+	 */
+	public enum ResultCacheEvictionType {
+		lru, lfu;
+
+		public static List<String> asLabels() {
+			List<String> labels = new ArrayList<String>();
+			for (ResultCacheEvictionType type : ResultCacheEvictionType.values()) {
+				labels.add(type.toString());
+			}
+			return labels;
+		}
+	}
+
+	/**
+	 * Saturation Policy Type<br>
+	 * <ul>
+	 * <li>Wait: a stub waits for a while until any saturated channel drains</li>
+	 * <li>Reject: a stub is rejected immediately if all channels are saturated</li>
+	 * </ul>
+	 */
+	public enum SaturationPolicyType {
+		wait, reject;
+
+		public static List<String> asLabels() {
+			List<String> labels = new ArrayList<String>();
+			for (SaturationPolicyType type : SaturationPolicyType.values()) {
+				labels.add(type.toString());
+			}
+			return labels;
+		}
+	}
+
 	/**
 	 * The caller should be prevented from constructing objects of this class, by declaring this private constructor.
 	 */
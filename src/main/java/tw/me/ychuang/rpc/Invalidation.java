@@ -0,0 +1,80 @@
+package tw.me.ychuang.rpc;
+
+/**
+ * A notice that the results of a skeleton method are changed. The server pushes it to all clients,<br>
+ * so that they remove the results from their near caches. It is wrapped in a response with the reserved id 0.
+ *
+ * @author Y.C. Huang
+ */
+public class Invalidation {
+
+	/**
+	 * A default constructor for deserialization
+	 */
+	private Invalidation() {
+		super();
+	}
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param skeleton a skeleton's ID
+	 * @param method a method name
+	 * @param key the canonical key of parameters, or null if all results of the method are changed
+	 */
+	public Invalidation(String skeleton, String method, String key) {
+		super();
+		this.skeleton = skeleton;
+		this.method = method;
+		this.key = key;
+	}
+
+	/**
+	 * A skeleton's ID
+	 */
+	private String skeleton;
+
+	/**
+	 * Getter method for field 'skeleton'
+	 *
+	 * @return a skeleton's ID
+	 */
+	public String getSkeleton() {
+		return this.skeleton;
+	}
+
+	/**
+	 * A method name
+	 */
+	private String method;
+
+	/**
+	 * Getter method for field 'method'
+	 *
+	 * @return a method name
+	 */
+	public String getMethod() {
+		return this.method;
+	}
+
+	/**
+	 * The canonical key of parameters
+	 */
+	private String key;
+
+	/**
+	 * Getter method for field 'key'
+	 *
+	 * @return the canonical key of parameters, or null if all results of the method are changed
+	 */
+	public String getKey() {
+		return this.key;
+	}
+
+	@Override
+	public String toString() {
+		String format = String.format("Invalidation-%s.%s/%s", this.skeleton, this.method, this.key);
+
+		return format;
+	}
+}
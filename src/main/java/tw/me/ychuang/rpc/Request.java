@@ -1,5 +1,7 @@
 package tw.me.ychuang.rpc;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,23 +24,64 @@ public class Request {
 	 * @param id unique id
 	 * @param command a command
 	 */
-	public Request(Long id, Command command) {
+	public Request(long id, Command command) {
+		this(id, command, 0);
+	}
+
+	/**
+	 * A kind of constructor
+	 * 
+	 * @param id unique id
+	 * @param command a command
+	 * @param timeout the remaining time budget in milliseconds, the request never expires if it is 0
+	 */
+	public Request(long id, Command command, long timeout) {
+		this(id, command, timeout, null);
+	}
+
+	/**
+	 * A kind of constructor
+	 * 
+	 * @param id unique id
+	 * @param command a command
+	 * @param timeout the remaining time budget in milliseconds, the request never expires if it is 0
+	 * @param version the version of the result that the client holds, an empty one asks for a version without holding any result,
+	 *            or null if the request isn't conditional
+	 */
+	public Request(long id, Command command, long timeout, String version) {
 		super();
 		this.id = id;
 		this.command = command;
+		this.timeout = timeout;
+		this.version = version;
+		this.batch = null;
+	}
+
+	/**
+	 * A kind of constructor for a batch, it carries the requests bound for the same channel in one message
+	 * 
+	 * @param batch the requests of a batch, each of them is answered by the response with the same id in a batch response
+	 */
+	public Request(List<Request> batch) {
+		super();
+		this.id = 0;
+		this.command = null;
+		this.timeout = 0;
+		this.version = null;
+		this.batch = batch;
 	}
 
 	/**
 	 * Request's id
 	 */
-	private final Long id;
+	private final long id;
 
 	/**
 	 * Getter method for field 'id'
 	 * 
 	 * @return request's unqiue id
 	 */
-	public Long getId() {
+	public long getId() {
 		return this.id;
 	}
 
@@ -56,13 +99,75 @@ public class Request {
 		return this.command;
 	}
 
+	/**
+	 * The remaining time budget in milliseconds when this request is sent.<br>
+	 * It is relative rather than absolute, so that the clocks of client and server needn't be synchronized.
+	 */
+	private final long timeout;
+
+	/**
+	 * Getter method for field 'timeout'
+	 * 
+	 * @return the remaining time budget in milliseconds, the request never expires if it is 0
+	 */
+	public long getTimeout() {
+		return this.timeout;
+	}
+
+	/**
+	 * The version of the result that the client holds, it works like an ETag of HTTP.<br>
+	 * The server answers a not modified result without the payload if the version of the result is unchanged.
+	 */
+	private final String version;
+
+	/**
+	 * Getter method for field 'version'
+	 * 
+	 * @return the version of the result that the client holds, or null if this request isn't conditional
+	 */
+	public String getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * A convenience method
+	 * 
+	 * @return this request whether a conditional one or not
+	 */
+	public boolean isConditional() {
+		return this.version != null;
+	}
+
+	/**
+	 * The requests of a batch
+	 */
+	private final List<Request> batch;
+
+	/**
+	 * Getter method for field 'batch'
+	 * 
+	 * @return the requests of a batch, or null if this request isn't a batch
+	 */
+	public List<Request> getBatch() {
+		return this.batch;
+	}
+
+	/**
+	 * A convenience method
+	 * 
+	 * @return this request whether a batch or not
+	 */
+	public boolean isBatch() {
+		return this.batch != null;
+	}
+
 	/**
 	 * A convenience method
 	 * 
 	 * @return this request whether a heartbeat message or not
 	 */
 	public boolean isHeartbeat() {
-		return this.id == 0;
+		return this.id == 0 && this.batch == null;
 	}
 
 	@Override
@@ -1,5 +1,7 @@
 package tw.me.ychuang.rpc;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,24 +19,38 @@ public class Response {
 	 * @param id unique id
 	 * @param result a result
 	 */
-	public Response(Long id, Result result, String resultClass) {
+	public Response(long id, Result result, String resultClass) {
 		super();
 		this.id = id;
 		this.result = result;
 		this.resultClass = resultClass;
+		this.batch = null;
+	}
+
+	/**
+	 * A kind of constructor for a batch, it carries the responses of a batch request in one message
+	 * 
+	 * @param batch the responses of a batch, a request that is dropped by the server has no response
+	 */
+	public Response(List<Response> batch) {
+		super();
+		this.id = 0;
+		this.result = null;
+		this.resultClass = null;
+		this.batch = batch;
 	}
 
 	/**
 	 * Response's id
 	 */
-	private final Long id;
+	private final long id;
 
 	/**
 	 * Getter method for field 'id'
 	 * 
 	 * @return response's unqiue id
 	 */
-	public Long getId() {
+	public long getId() {
 		return this.id;
 	}
 
@@ -66,6 +82,38 @@ public class Response {
 		return this.resultClass;
 	}
 
+	/**
+	 * The responses of a batch
+	 */
+	private final List<Response> batch;
+
+	/**
+	 * Getter method for field 'batch'
+	 * 
+	 * @return the responses of a batch, or null if this response isn't a batch
+	 */
+	public List<Response> getBatch() {
+		return this.batch;
+	}
+
+	/**
+	 * A convenience method
+	 * 
+	 * @return this response whether a batch or not
+	 */
+	public boolean isBatch() {
+		return this.batch != null;
+	}
+
+	/**
+	 * A convenience method
+	 * 
+	 * @return this response whether an invalidation that is pushed by the server or not
+	 */
+	public boolean isInvalidation() {
+		return this.id == 0 && this.result != null && Invalidation.class.equals(this.result.getReturnClass());
+	}
+
 	@Override
 	public String toString() {
 		String format = String.format("Response-%d", this.id);
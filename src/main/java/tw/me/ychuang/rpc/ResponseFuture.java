@@ -1,16 +1,26 @@
 package tw.me.ychuang.rpc;
 
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CountDownLatch;
+import io.netty.util.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import tw.me.ychuang.rpc.exception.RpcException;
+
 /**
  * Wraps an asynchronous computation into a synchronous (blocking) computation.<br>
- * A future of response implements an asynchronous future pattern.
+ * A future of response implements an asynchronous future pattern.<br>
+ * The blocked stub thread waits on the monitor of this future, so that no latch is allocated per request.<br>
+ * A non-blocking caller adds a listener instead, it is notified by an executor once a response is committed or this future is
+ * cancelled.
  * 
  * @author Y.C. Huang
  */
@@ -28,26 +38,67 @@ public class ResponseFuture<T> implements Future<T> {
 	private volatile boolean cancelled = false;
 
 	/**
-	 * Blocks the current stub thread until getting a real response or a timeout
+	 * The cause of failure, such as a request timeout
+	 */
+	private volatile RpcException cause;
+
+	/**
+	 * The timeout of the deadline of this future, it is cancelled once this future is done
 	 */
-	private final CountDownLatch responseLatch;
+	private volatile Timeout timeout;
 
 	/**
-	 * A pool retains all response futures are waiting to receive a real response returned from server
+	 * True if this response future has been committed, cancelled, or failed
+	 */
+	private volatile boolean done = false;
+
+	/**
+	 * A table retains all response futures are waiting to receive a real response returned from server
+	 */
+	private final ResponseFutureTable<T> futureTable;
+
+	/**
+	 * The default executor notifies listeners
+	 */
+	private final Executor listenerExecutor;
+
+	/**
+	 * The listeners and their executors, it is guarded by the monitor of this future
+	 */
+	private List<ListenerEntry<T>> listeners;
+
+	/**
+	 * A kind of constructor
+	 * 
+	 * @param id response's id
+	 * @param futureTable response future table, it may be null if this future isn't retained in any table
 	 */
-	private final ConcurrentMap<Long, ResponseFuture<T>> futurePool;
+	public ResponseFuture(long id, ResponseFutureTable<T> futureTable) {
+		this(id, futureTable, futureTable != null ? futureTable.getListenerExecutor() : null);
+	}
 
 	/**
 	 * A kind of constructor
 	 * 
 	 * @param id response's id
-	 * @param futurePool response future pool
+	 * @param futureTable response future table, it may be null if this future isn't retained in any table
+	 * @param listenerExecutor the default executor notifies listeners, listeners are notified by the completing thread if it is null
 	 */
-	public ResponseFuture(Long id, ConcurrentMap<Long, ResponseFuture<T>> futurePool) {
+	public ResponseFuture(long id, ResponseFutureTable<T> futureTable, Executor listenerExecutor) {
 		super();
 		this.id = id;
-		this.responseLatch = new CountDownLatch(1);
-		this.futurePool = futurePool;
+		this.futureTable = futureTable;
+		this.listenerExecutor = listenerExecutor;
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * Removes this future from future table
+	 */
+	private void removeFromTable() {
+		if (this.futureTable != null) {
+			this.futureTable.remove(this);
+		}
 	}
 
 	/**
@@ -55,32 +106,97 @@ public class ResponseFuture<T> implements Future<T> {
 	 */
 	@Override
 	public boolean cancel(boolean mayInterruptIfRunning) {
-		if (this.isDone()) {
-			return false;
+		// leaves the table before the stub thread is signaled
+		this.removeFromTable();
 
-		} else {
-			this.responseLatch.countDown();
+		synchronized (this) {
+			if (this.done) {
+				return false;
+			}
 			this.cancelled = true;
-			this.futurePool.remove(this.getId());
-
-			return false == this.isDone();
+			this.done = true;
+			this.notifyAll();
 		}
+		this.cancelTimeout();
+		this.notifyListeners();
+
+		return true;
 	}
 
 	/**
 	 * Response's id
 	 */
-	private final Long id;
+	private final long id;
 
 	/**
 	 * Getter method for field 'id'
 	 * 
 	 * @return response's id
 	 */
-	public Long getId() {
+	public long getId() {
 		return this.id;
 	}
 
+	/**
+	 * The request this future waits for, it is retained for retrying on another channel
+	 */
+	private volatile Request request;
+
+	/**
+	 * Getter method for field 'request'
+	 * 
+	 * @return the request this future waits for
+	 */
+	public Request getRequest() {
+		return this.request;
+	}
+
+	/**
+	 * Setter method for field 'request'
+	 * 
+	 * @param request the request this future waits for
+	 */
+	public void setRequest(Request request) {
+		this.request = request;
+	}
+
+	/**
+	 * The number of times the request has been retried before this future
+	 */
+	private volatile int retryTimes;
+
+	/**
+	 * Getter method for field 'retryTimes'
+	 * 
+	 * @return the number of times the request has been retried
+	 */
+	public int getRetryTimes() {
+		return this.retryTimes;
+	}
+
+	/**
+	 * Setter method for field 'retryTimes'
+	 * 
+	 * @param retryTimes the number of times the request has been retried
+	 */
+	public void setRetryTimes(int retryTimes) {
+		this.retryTimes = retryTimes;
+	}
+
+	/**
+	 * The time in nanoseconds when this future is created
+	 */
+	private final long startTime;
+
+	/**
+	 * Gets the elapsed time since this future is created
+	 * 
+	 * @return the elapsed time in nanoseconds
+	 */
+	public long getElapsedTime() {
+		return System.nanoTime() - this.startTime;
+	}
+
 	/**
 	 * Whether this future is cancelled or not
 	 */
@@ -94,50 +210,271 @@ public class ResponseFuture<T> implements Future<T> {
 	 */
 	@Override
 	public boolean isDone() {
-		return this.responseLatch.getCount() == 0;
+		return this.done;
 	}
 
 	/**
-	 * Blocks the current stub thread until getting a real response
+	 * Blocks the current stub thread until getting a real response.<br>
+	 * An interrupted thread stops waiting, but this future stays in the table, so that the response or the timeout still finishes it for
+	 * the listeners and the other sharers.
+	 * 
+	 * @throws ExecutionException if this future is failed, e.g. its request is expired
 	 */
 	@Override
-	public T get() throws InterruptedException {
-		try {
-			this.responseLatch.await();
+	public T get() throws InterruptedException, ExecutionException {
+		if (false == this.done) {
+			synchronized (this) {
+				while (false == this.done) {
+					this.wait();
+				}
+			}
+		}
 
-		} catch (InterruptedException e) {
-			this.futurePool.remove(this.getId());
-			throw e;
+		if (this.cause != null) {
+			throw new ExecutionException(this.cause.getMessage(), this.cause);
 		}
 
 		return this.response;
 	}
 
 	/**
-	 * Blocks the current stub thread until getting a real response or a timeout
+	 * Blocks the current stub thread until getting a real response or a timeout.<br>
+	 * An interrupted thread stops waiting, but this future stays in the table as {@link #get()} does.
+	 * 
+	 * @throws ExecutionException if this future is failed, e.g. its request is expired
 	 */
 	@Override
-	public T get(long timeout, TimeUnit unit) throws InterruptedException {
-		try {
-			this.responseLatch.await(timeout, unit);
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+		if (false == this.done) {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			synchronized (this) {
+				long remaining = deadline - System.nanoTime();
+				while (false == this.done && remaining > 0) {
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					remaining = deadline - System.nanoTime();
+				}
+			}
+		}
 
-		} catch (InterruptedException e) {
-			this.futurePool.remove(this.getId());
-			throw e;
+		if (this.cause != null) {
+			throw new ExecutionException(this.cause.getMessage(), this.cause);
 		}
 
 		return this.response;
 	}
 
+	/**
+	 * Gets a real response without blocking
+	 * 
+	 * @return a real response or null if this future isn't committed yet
+	 */
+	public T getNow() {
+		return this.response;
+	}
+
 	/**
 	 * Commits a response for signaling the blocking stub thread
 	 * 
 	 * @param response a real response
 	 */
 	public void commit(T response) {
-		this.response = response;
-		this.responseLatch.countDown();
+		// leaves the table before the stub thread is signaled
+		this.removeFromTable();
+
+		synchronized (this) {
+			if (this.done) {
+				return;
+			}
+			this.response = response;
+			this.done = true;
+			this.notifyAll();
+		}
+		this.cancelTimeout();
+		this.notifyListeners();
+	}
+
+	/**
+	 * Fails this future with a cause for signaling the blocking stub thread
+	 * 
+	 * @param cause the cause of failure
+	 * @return true if this future is failed, false if it is already done
+	 */
+	public boolean fail(RpcException cause) {
+		// leaves the table before the stub thread is signaled
+		this.removeFromTable();
+
+		synchronized (this) {
+			if (this.done) {
+				return false;
+			}
+			this.cause = cause;
+			this.done = true;
+			this.notifyAll();
+		}
+		this.cancelTimeout();
+		this.notifyListeners();
+
+		return true;
+	}
+
+	/**
+	 * Getter method for field 'cause'
+	 * 
+	 * @return the cause of failure or null if this future isn't failed
+	 */
+	public RpcException getCause() {
+		return this.cause;
+	}
+
+	/**
+	 * Retains the timeout of the deadline of this future
+	 * 
+	 * @param timeout a timeout is scheduled by a timer
+	 */
+	public void setTimeout(Timeout timeout) {
+		this.timeout = timeout;
 
-		this.futurePool.remove(this.getId());
+		if (this.done) {
+			// done before the timeout is retained
+			timeout.cancel();
+		}
+	}
+
+	/**
+	 * Cancels the timeout of the deadline of this future
+	 */
+	private void cancelTimeout() {
+		Timeout timeout = this.timeout;
+		if (timeout != null) {
+			timeout.cancel();
+		}
+	}
+
+	/**
+	 * Adds a listener that is notified by the default executor once this future is done.<br>
+	 * The listener is notified immediately if this future is already done.
+	 * 
+	 * @param listener a response listener
+	 * @return this future
+	 */
+	public ResponseFuture<T> addListener(ResponseListener<T> listener) {
+		return this.addListener(listener, this.listenerExecutor);
+	}
+
+	/**
+	 * Adds a listener that is notified by the specified executor once this future is done.<br>
+	 * The listener is notified immediately if this future is already done.
+	 * 
+	 * @param listener a response listener
+	 * @param executor the executor notifies the listener, the listener is notified by the completing thread if it is null
+	 * @return this future
+	 */
+	public ResponseFuture<T> addListener(ResponseListener<T> listener, Executor executor) {
+		if (listener == null) {
+			throw new NullPointerException("listener");
+		}
+
+		synchronized (this) {
+			if (false == this.done) {
+				if (this.listeners == null) {
+					this.listeners = new ArrayList<>(1);
+				}
+				this.listeners.add(new ListenerEntry<>(listener, executor));
+				return this;
+			}
+		}
+		this.notifyListener(listener, executor);
+
+		return this;
+	}
+
+	/**
+	 * Removes a listener that isn't notified yet
+	 * 
+	 * @param listener a response listener
+	 * @return true if the listener is removed, false if it has been notified or isn't added
+	 */
+	public boolean removeListener(ResponseListener<T> listener) {
+		synchronized (this) {
+			if (this.listeners == null) {
+				return false;
+			}
+
+			for (int i = 0; i < this.listeners.size(); i++) {
+				if (this.listeners.get(i).listener == listener) {
+					this.listeners.remove(i);
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Notifies all listeners after this future is done
+	 */
+	private void notifyListeners() {
+		List<ListenerEntry<T>> notifiedListeners = null;
+		synchronized (this) {
+			notifiedListeners = this.listeners;
+			this.listeners = null;
+		}
+
+		if (notifiedListeners == null) {
+			return;
+		}
+
+		for (ListenerEntry<T> notifiedListener : notifiedListeners) {
+			this.notifyListener(notifiedListener.listener, notifiedListener.executor);
+		}
+	}
+
+	/**
+	 * Notifies a listener by an executor, or by the current thread if the executor is absent or rejects it
+	 * 
+	 * @param listener a response listener
+	 * @param executor the executor notifies the listener
+	 */
+	private void notifyListener(final ResponseListener<T> listener, Executor executor) {
+		Runnable notification = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					listener.operationComplete(ResponseFuture.this);
+
+				} catch (Throwable t) {
+					log.warn("A response listener throws an exception. id: {}", ResponseFuture.this.id, t);
+				}
+			}
+		};
+
+		if (executor == null) {
+			notification.run();
+			return;
+		}
+
+		try {
+			executor.execute(notification);
+
+		} catch (RejectedExecutionException e) {
+			log.warn("Fail to notify a response listener by executor, notify it directly. id: {}", this.id);
+			notification.run();
+		}
+	}
+
+	/**
+	 * A listener and the executor notifies it
+	 */
+	private static class ListenerEntry<T> {
+		private final ResponseListener<T> listener;
+
+		private final Executor executor;
+
+		private ListenerEntry(ResponseListener<T> listener, Executor executor) {
+			super();
+			this.listener = listener;
+			this.executor = executor;
+		}
 	}
 }
@@ -0,0 +1,184 @@
+package tw.me.ychuang.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free table retains all response futures that are waiting to receive a real response.<br>
+ * It is a ring of slots, the slot of a future is encoded in the lower bits of its id,<br>
+ * so that a future is added, found, and removed by a primitive id without boxing or hashing.
+ *
+ * @author Y.C. Huang
+ */
+public class ResponseFutureTable<T> {
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param capacity the max number of waiting futures
+	 */
+	public ResponseFutureTable(int capacity) {
+		this(capacity, null);
+	}
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param capacity the max number of waiting futures, the number of slots is rounded up to a power of two
+	 * @param listenerExecutor the default executor notifies the listeners of futures, it may be null
+	 */
+	public ResponseFutureTable(int capacity, Executor listenerExecutor) {
+		super();
+		this.listenerExecutor = listenerExecutor;
+
+		int slotSize = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.slots = new AtomicReferenceArray<>(slotSize);
+		this.mask = slotSize - 1;
+		this.capacity = Math.max(capacity, 1);
+	}
+
+	/**
+	 * The default executor notifies the listeners of futures
+	 */
+	private final Executor listenerExecutor;
+
+	/**
+	 * Getter method for field 'listenerExecutor'
+	 *
+	 * @return the default executor notifies the listeners of futures
+	 */
+	public Executor getListenerExecutor() {
+		return this.listenerExecutor;
+	}
+
+	/**
+	 * The ring of slots
+	 */
+	private final AtomicReferenceArray<ResponseFuture<T>> slots;
+
+	/**
+	 * The mask to find the slot of an id
+	 */
+	private final int mask;
+
+	/**
+	 * The max number of waiting futures
+	 */
+	private final int capacity;
+
+	/**
+	 * The generator of a request's unique id
+	 */
+	private final AtomicLong idGenerator = new AtomicLong();
+
+	/**
+	 * The number of waiting futures
+	 */
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * Creates a future with a unique id and retains it in a free slot
+	 *
+	 * @return a new future or null if this table is full
+	 */
+	public ResponseFuture<T> add() {
+		// reserves a place first, so that the number of waiting futures never exceeds the capacity
+		if (this.size.incrementAndGet() > this.capacity) {
+			this.size.decrementAndGet();
+			return null;
+		}
+
+		int slotSize = this.slots.length();
+		for (int i = 0; i < slotSize; i++) {
+			long id = this.idGenerator.incrementAndGet();
+			if (id == Request.HEARTBEAT.getId()) {
+				// the id of HEARTBEAT is reserved
+				continue;
+			}
+
+			int slot = (int) id & this.mask;
+			if (this.slots.get(slot) != null) {
+				// this slot is occupied by a slow request, so try the next id
+				continue;
+			}
+
+			ResponseFuture<T> future = new ResponseFuture<>(id, this, this.listenerExecutor);
+			if (this.slots.compareAndSet(slot, null, future)) {
+				return future;
+			}
+		}
+		this.size.decrementAndGet();
+
+		return null;
+	}
+
+	/**
+	 * Finds a waiting future by its id
+	 *
+	 * @param id the id of a future
+	 * @return the matching future or null if not found
+	 */
+	public ResponseFuture<T> get(long id) {
+		ResponseFuture<T> future = this.slots.get((int) id & this.mask);
+		if (future == null || future.getId() != id) {
+			return null;
+		}
+
+		return future;
+	}
+
+	/**
+	 * Removes a future from its slot
+	 *
+	 * @param future a future
+	 * @return true if the future is removed
+	 */
+	public boolean remove(ResponseFuture<T> future) {
+		if (this.slots.compareAndSet((int) future.getId() & this.mask, future, null)) {
+			this.size.decrementAndGet();
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Lists all waiting futures
+	 *
+	 * @return all waiting futures
+	 */
+	public List<ResponseFuture<T>> list() {
+		List<ResponseFuture<T>> futures = new ArrayList<>(this.size.get());
+
+		for (int i = 0; i < this.slots.length(); i++) {
+			ResponseFuture<T> future = this.slots.get(i);
+			if (future != null) {
+				futures.add(future);
+			}
+		}
+
+		return futures;
+	}
+
+	/**
+	 * Gets the number of waiting futures
+	 *
+	 * @return the number of waiting futures
+	 */
+	public int size() {
+		return this.size.get();
+	}
+
+	/**
+	 * Gets the max number of waiting futures
+	 *
+	 * @return the max number of waiting futures
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+}
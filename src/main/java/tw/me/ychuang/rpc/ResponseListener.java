@@ -0,0 +1,19 @@
+package tw.me.ychuang.rpc;
+
+import java.util.EventListener;
+
+/**
+ * Listens to the result of a response future.<br>
+ * The result of an asynchronous request is notified once this listener is added by {@link ResponseFuture#addListener(ResponseListener)}.
+ *
+ * @author Y.C. Huang
+ */
+public interface ResponseListener<T> extends EventListener {
+
+	/**
+	 * Invoked when the operation associated with a response future has been committed or cancelled.
+	 *
+	 * @param future the source future which called this listener
+	 */
+	void operationComplete(ResponseFuture<T> future);
+}
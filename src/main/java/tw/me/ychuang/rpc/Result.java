@@ -24,10 +24,44 @@ public class Result {
 	 * @param returnClass a class of a return
 	 */
 	public Result(Object returnObj, Class returnClass) {
+		this(returnObj, returnClass, null, false);
+	}
+
+	/**
+	 * A kind of constructor
+	 * 
+	 * @param returnObj a return
+	 * @param returnClass a class of a return
+	 * @param version the version of a return, or null if it has no version
+	 * @param notModified whether the return is unchanged since the version that the client holds
+	 */
+	public Result(Object returnObj, Class<?> returnClass, String version, boolean notModified) {
 		super();
 		this.returnObj = returnObj;
 		this.returnClass = returnClass;
 		this.exceptional = Throwable.class.isAssignableFrom(returnClass);
+		this.version = version;
+		this.notModified = notModified;
+	}
+
+	/**
+	 * Creates a result without any return, it tells the client that the result it holds is still valid
+	 * 
+	 * @param version the unchanged version of a return
+	 * @return a not modified result
+	 */
+	public static Result notModified(String version) {
+		return new Result(null, Void.class, version, true);
+	}
+
+	/**
+	 * Creates a copy of this result with a version
+	 * 
+	 * @param version the version of a return
+	 * @return a copy of this result
+	 */
+	public Result withVersion(String version) {
+		return new Result(this.returnObj, this.returnClass, version, this.notModified);
 	}
 
 	private final Object returnObj;
@@ -47,4 +81,16 @@ public class Result {
 	public boolean isExceptional() {
 		return this.exceptional;
 	}
+
+	private final String version;
+
+	public String getVersion() {
+		return this.version;
+	}
+
+	private final boolean notModified;
+
+	public boolean isNotModified() {
+		return this.notModified;
+	}
 }
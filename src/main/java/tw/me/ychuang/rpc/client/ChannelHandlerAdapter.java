@@ -1,6 +1,7 @@
 package tw.me.ychuang.rpc.client;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
@@ -16,9 +17,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import tw.me.ychuang.rpc.Constants;
+import tw.me.ychuang.rpc.Invalidation;
 import tw.me.ychuang.rpc.Response;
+import tw.me.ychuang.rpc.codec.MessageSerializer;
+import tw.me.ychuang.rpc.codec.MessageSerializerFactory;
 import tw.me.ychuang.rpc.exception.ClientSideException;
-import tw.me.ychuang.rpc.json.JsonSerializer;
 
 /**
  * The most important channel handler.<br>
@@ -98,6 +101,7 @@ public class ChannelHandlerAdapter extends ChannelInboundHandlerAdapter {
 					channelProxy.setChannel(newChannel);
 					channelProxy.setBootstrap(newBootstrap);
 					channelProxy.resetRetryCounter();
+					ClientChannelManager.getInstance().negotiateSerializerLater(channelProxy);
 
 					log.info("Finish to reconnect the remote server. channel proxy: {}", channelProxy);
 
@@ -123,13 +127,28 @@ public class ChannelHandlerAdapter extends ChannelInboundHandlerAdapter {
 	public void channelRead(ChannelHandlerContext context, Object message) throws Exception {
 		try {
 			// read a message and convert it to a response
-			String responseJson = (String) message;
-			Response response = JsonSerializer.getInstance().fromJson(responseJson, Response.class);
+			ByteBuf responseMsg = (ByteBuf) message;
+			MessageSerializer serializer = MessageSerializerFactory.getInstance().detectSerializer(responseMsg);
+			Response response = serializer.deserialize(responseMsg, Response.class);
 			log.debug("Receive a request. id: {}", response.getId());
 
+			if (response.isInvalidation()) {
+				// the server pushes it without any request, the changed results are removed from the near cache
+				NearCache nearCache = ClientChannelManager.getInstance().getNearCache();
+				if (nearCache != null) {
+					nearCache.invalidate((Invalidation) response.getResult().getReturn());
+				}
+				return;
+			}
+
 			// find the original channel proxy and let the proxy receive it
 			ChannelProxy channelProxy = ClientChannelManager.getInstance().findChannelProxy(context.channel());
-			if (channelProxy != null) {
+			if (channelProxy != null && response.isBatch()) {
+				// each response of a batch finishes the future with the same id
+				for (Response batchResponse : response.getBatch()) {
+					channelProxy.receive(batchResponse);
+				}
+			} else if (channelProxy != null) {
 				channelProxy.receive(response);
 			} else {
 				throw new ClientSideException("Fail to find any matching proxy of client channel.").addContextValue("Remote Address", context.channel()
@@ -140,6 +159,19 @@ public class ChannelHandlerAdapter extends ChannelInboundHandlerAdapter {
 		}
 	}
 
+	/**
+	 * Wakes up the stubs that are waiting for a ready channel proxy once the outbound buffer drains below the low water mark
+	 */
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext context) throws Exception {
+		if (context.channel().isWritable()) {
+			log.debug("A channel drains and becomes writable again: {}", context.channel().remoteAddress());
+			ClientChannelManager.getInstance().signalSelectors();
+		}
+
+		super.channelWritabilityChanged(context);
+	}
+
 	/**
 	 * Tries to close a broken channel
 	 */
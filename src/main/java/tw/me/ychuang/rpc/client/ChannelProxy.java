@@ -2,31 +2,41 @@ package tw.me.ychuang.rpc.client;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
-import io.netty.util.CharsetUtil;
+import io.netty.util.AttributeKey;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.ImmediateExecutor;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import tw.me.ychuang.rpc.Command;
+import tw.me.ychuang.rpc.ConcurrencyLimiter;
 import tw.me.ychuang.rpc.Constants;
 import tw.me.ychuang.rpc.Request;
 import tw.me.ychuang.rpc.Response;
 import tw.me.ychuang.rpc.ResponseFuture;
+import tw.me.ychuang.rpc.ResponseFutureTable;
+import tw.me.ychuang.rpc.ResponseListener;
+import tw.me.ychuang.rpc.Result;
+import tw.me.ychuang.rpc.codec.MessageSerializer;
+import tw.me.ychuang.rpc.codec.MessageSerializerFactory;
 import tw.me.ychuang.rpc.exception.ClientSideException;
+import tw.me.ychuang.rpc.exception.RequestTimeoutException;
 import tw.me.ychuang.rpc.exception.RpcException;
-import tw.me.ychuang.rpc.json.JsonSerializer;
+import tw.me.ychuang.rpc.exception.ServerBusyException;
 
 /**
  * Wraps a Netty channel in client-side and send a command and receive a response.<br>
@@ -75,7 +85,44 @@ public class ChannelProxy {
 	 * @param bootstrap the retained Netty bootstrap for reconnecting purpose
 	 */
 	public ChannelProxy(int id, String serverHost, int serverPort, Channel channel, Bootstrap bootstrap) {
+		this(id, serverHost, serverPort, channel, bootstrap, Constants.MAX_WAITING_REQUESTS, ImmediateExecutor.INSTANCE);
+	}
+
+	/**
+	 * A kind of constructor
+	 * 
+	 * @param id channel's unique id
+	 * @param serverHost The host / IP of the remote host
+	 * @param serverPort The port number that the remote host listens on
+	 * @param channel a Netty channel
+	 * @param bootstrap the retained Netty bootstrap for reconnecting purpose
+	 * @param maxWaitingRequests the max number of waiting requests in this channel proxy
+	 * @param listenerExecutor the executor notifies the listeners of response futures
+	 */
+	public ChannelProxy(int id, String serverHost, int serverPort, Channel channel, Bootstrap bootstrap, int maxWaitingRequests,
+			Executor listenerExecutor) {
+		this(id, serverHost, serverPort, channel, bootstrap, maxWaitingRequests, listenerExecutor, null, null);
+	}
+
+	/**
+	 * A kind of constructor
+	 * 
+	 * @param id channel's unique id
+	 * @param serverHost The host / IP of the remote host
+	 * @param serverPort The port number that the remote host listens on
+	 * @param channel a Netty channel
+	 * @param bootstrap the retained Netty bootstrap for reconnecting purpose
+	 * @param maxWaitingRequests the max number of waiting requests in this channel proxy
+	 * @param listenerExecutor the executor notifies the listeners of response futures
+	 * @param channelLimiter limits the in-flight requests of this channel proxy, it may be null
+	 * @param serverLimiter limits the in-flight requests of all channel proxies connect to the same remote server, it may be null
+	 */
+	public ChannelProxy(int id, String serverHost, int serverPort, Channel channel, Bootstrap bootstrap, int maxWaitingRequests,
+			Executor listenerExecutor, ConcurrencyLimiter channelLimiter, ConcurrencyLimiter serverLimiter) {
 		super();
+		this.futureTable = new ResponseFutureTable<>(maxWaitingRequests, listenerExecutor);
+		this.channelLimiter = channelLimiter;
+		this.serverLimiter = serverLimiter;
 		this.id = id;
 		this.serverHost = serverHost;
 		this.serverPort = serverPort;
@@ -84,27 +131,129 @@ public class ChannelProxy {
 	}
 
 	/**
-	 * A response future pool
+	 * Binds a channel proxy to its Netty channel, so that the proxy of a channel is found without scanning channel pool
 	 */
-	private final ConcurrentMap<Long, ResponseFuture<Response>> futurePool = new ConcurrentHashMap<>();
+	static final AttributeKey<ChannelProxy> CHANNEL_PROXY = AttributeKey.valueOf("channelProxy");
 
 	/**
-	 * The generator of a request's unique id
+	 * The built-in skeleton that negotiates a message serializer in server-side
 	 */
-	private long idCounter = 0;
+	private static final String NEGOTIATOR_SKELETON = "tw.me.ychuang.rpc.server.SerializerNegotiator";
 
 	/**
-	 * Gets the next id for identify the response future from future pool
+	 * A response future table, it also generates a request's unique id
+	 */
+	private final ResponseFutureTable<Response> futureTable;
+
+	/**
+	 * Limits the in-flight requests of this channel proxy
+	 */
+	private final ConcurrencyLimiter channelLimiter;
+
+	/**
+	 * Getter method for field 'channelLimiter'
 	 * 
-	 * @return unique id
+	 * @return the limiter of this channel proxy, or null if it isn't limited
+	 */
+	public ConcurrencyLimiter getChannelLimiter() {
+		return this.channelLimiter;
+	}
+
+	/**
+	 * Limits the in-flight requests of all channel proxies connect to the same remote server
 	 */
-	private synchronized Long nextId() {
-		if (Long.MAX_VALUE == this.idCounter) {
-			this.idCounter = 0;
+	private final ConcurrencyLimiter serverLimiter;
+
+	/**
+	 * Getter method for field 'serverLimiter'
+	 * 
+	 * @return the limiter of the remote server, or null if it isn't limited
+	 */
+	public ConcurrencyLimiter getServerLimiter() {
+		return this.serverLimiter;
+	}
+
+	/**
+	 * Releases the places of a finished request in the limiters, and adapts the limits by its outcome
+	 */
+	private final ResponseListener<Response> limitReleaser = new ResponseListener<Response>() {
+		@Override
+		public void operationComplete(ResponseFuture<Response> future) {
+			if (future.isCancelled()) {
+				ChannelProxy.this.releaseLimit(0, false);
+
+			} else if (future.getCause() != null || ChannelProxy.this.isServerBusy(future.getNow())) {
+				// an expired or rejected request is the sign of overload
+				ChannelProxy.this.releaseLimit(0, true);
+
+			} else {
+				ChannelProxy.this.releaseLimit(future.getElapsedTime(), false);
+			}
+		}
+	};
+
+	/**
+	 * Acquires the places of a request in the limiters
+	 * 
+	 * @return true if both limits aren't reached
+	 */
+	private boolean tryAcquireLimit() {
+		if (this.channelLimiter != null && false == this.channelLimiter.tryAcquire()) {
+			return false;
+		}
+
+		if (this.serverLimiter != null && false == this.serverLimiter.tryAcquire()) {
+			if (this.channelLimiter != null) {
+				this.channelLimiter.release();
+			}
+			return false;
 		}
-		++this.idCounter;
 
-		return this.idCounter;
+		return true;
+	}
+
+	/**
+	 * Releases the places of a request in the limiters
+	 * 
+	 * @param rtt the response time in nanoseconds, the limits aren't adapted if it is 0
+	 * @param dropped whether the request is expired or rejected
+	 */
+	private void releaseLimit(long rtt, boolean dropped) {
+		ConcurrencyLimiter[] limiters = { this.channelLimiter, this.serverLimiter };
+		for (ConcurrencyLimiter limiter : limiters) {
+			if (limiter == null) {
+				continue;
+			}
+
+			if (dropped) {
+				limiter.releaseDropped();
+			} else if (rtt > 0) {
+				limiter.release(rtt);
+			} else {
+				limiter.release();
+			}
+		}
+	}
+
+	/**
+	 * Whether the limiters of this channel proxy are reached or not
+	 */
+	private boolean isLimited() {
+		return (this.channelLimiter != null && this.channelLimiter.isLimited()) || (this.serverLimiter != null && this.serverLimiter.isLimited());
+	}
+
+	/**
+	 * Tracks the response time of this channel proxy for latency-aware load balancers
+	 */
+	private final LatencyTracker latencyTracker = new LatencyTracker(Constants.LATENCY_DECAY_TIME, TimeUnit.SECONDS);
+
+	/**
+	 * Getter method for field 'latencyTracker'
+	 * 
+	 * @return the response time tracker of this channel proxy
+	 */
+	public LatencyTracker getLatencyTracker() {
+		return this.latencyTracker;
 	}
 
 	/**
@@ -211,6 +360,60 @@ public class ChannelProxy {
 		return result;
 	}
 
+	/**
+	 * Whether this channel proxy is saturated or not.<br>
+	 * It is saturated while the outbound buffer of its channel is above the high water mark, the max number of waiting requests or
+	 * the concurrency limit is reached, or its remote server is busy.
+	 * 
+	 * @return true if this channel proxy is saturated
+	 */
+	public boolean isSaturated() {
+		return false == this.channel.isWritable() || this.futureTable.size() >= this.futureTable.getCapacity() || this.isLimited()
+				|| this.isBackingOff();
+	}
+
+	/**
+	 * The time in nanoseconds until this channel proxy is skipped after its remote server is busy, it is 0 if the server isn't busy
+	 */
+	private volatile long busyUntil = 0;
+
+	/**
+	 * Whether this channel proxy is backing off from a busy remote server or not
+	 * 
+	 * @return true if it is backing off
+	 */
+	private boolean isBackingOff() {
+		long busyUntil = this.busyUntil;
+		if (busyUntil == 0) {
+			return false;
+		}
+
+		if (busyUntil - System.nanoTime() > 0) {
+			return true;
+		}
+
+		this.busyUntil = 0;
+		return false;
+	}
+
+	/**
+	 * Whether this channel proxy is ready to send a request or not, a load balancer only selects the ready channel proxies.
+	 * 
+	 * @return true if this channel proxy is available and isn't saturated
+	 */
+	public boolean isReady() {
+		return this.isAvailable() && false == this.isSaturated();
+	}
+
+	/**
+	 * Wakes up the stubs that are waiting for a ready channel proxy after a waiting request leaves
+	 */
+	private void signalDrained() {
+		if (this.manager != null) {
+			this.manager.signalSelectors();
+		}
+	}
+
 	/**
 	 * Channel Proxy's id
 	 */
@@ -274,6 +477,10 @@ public class ChannelProxy {
 	 */
 	public void setChannel(Channel channel) {
 		this.channel = channel;
+		this.channel.attr(CHANNEL_PROXY).set(this);
+
+		// a new connection may reach a server that supports different serializers
+		this.serializer = MessageSerializerFactory.getInstance().getDefaultSerializer();
 
 		// update latest state of channel
 		if (this.channel.isActive()) {
@@ -283,6 +490,20 @@ public class ChannelProxy {
 		}
 	}
 
+	/**
+	 * The message serializer that is agreed with the remote server, JSON is used until a serializer has been negotiated
+	 */
+	private volatile MessageSerializer serializer = MessageSerializerFactory.getInstance().getDefaultSerializer();
+
+	/**
+	 * Getter method for field 'serializer'
+	 * 
+	 * @return the message serializer of this channel proxy
+	 */
+	public MessageSerializer getSerializer() {
+		return this.serializer;
+	}
+
 	/**
 	 * A retained Netty bootstrap in channel proxy for reconnecting purpose
 	 */
@@ -327,50 +548,242 @@ public class ChannelProxy {
 	 */
 	public void setManager(ClientChannelManager manager) {
 		this.manager = manager;
+
+		// the requests are gathered into batches if the manager specifies a batch window
+		long batchWindow = manager != null ? manager.getBatchWindow() : 0;
+		this.batcher = batchWindow > 0 ? new RequestBatcher(this, batchWindow, manager.getBatchMaxSize()) : null;
 	}
 
 	/**
-	 * Sends a command to a remote server by a Netty channel
+	 * Gathers the requests of this channel proxy into batches, it is null if the requests are sent one by one
+	 */
+	private volatile RequestBatcher batcher;
+
+	/**
+	 * Getter method for field 'batcher'
+	 * 
+	 * @return the request batcher or null if the requests are sent one by one
+	 */
+	public RequestBatcher getBatcher() {
+		return this.batcher;
+	}
+
+	/**
+	 * Sends a command to a remote server by a Netty channel, the request expires after the timeout of its method.
 	 * 
 	 * @param command a command
 	 * @return A future of response implements an asynchronous future pattern.
 	 * @throws RpcException if there is no available channel
 	 */
 	public ResponseFuture<Response> send(Command command) throws RpcException {
+		long timeout = this.manager != null ? this.manager.findRequestTimeout(command) : 0;
+
+		return this.send(command, timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sends a command to a remote server by a Netty channel
+	 * 
+	 * @param command a command
+	 * @param timeout the timeout of this request, it never expires if the timeout is 0
+	 * @param unit the time unit of the timeout
+	 * @return A future of response implements an asynchronous future pattern.
+	 * @throws RpcException if there is no available channel
+	 */
+	public ResponseFuture<Response> send(Command command, long timeout, TimeUnit unit) throws RpcException {
+		SingleFlight singleFlight = this.manager != null ? this.manager.getSingleFlight() : null;
+		String flightKey = singleFlight != null ? singleFlight.toKey(command) : null;
+		if (flightKey == null) {
+			return this.sendOrLookup(command, timeout, unit);
+		}
+
+		// an identical command in flight shares its response future, so that a burst of them becomes one request
+		ResponseFuture<Response> sharedFuture = singleFlight.join(flightKey);
+		if (sharedFuture != null) {
+			return sharedFuture;
+		}
+
+		ResponseFuture<Response> future = this.sendOrLookup(command, timeout, unit);
+		singleFlight.lead(flightKey, future);
+
+		return future;
+	}
+
+	/**
+	 * Answers a command by the near cache, or sends it to a remote server by a Netty channel if its result isn't cached
+	 */
+	private ResponseFuture<Response> sendOrLookup(Command command, long timeout, TimeUnit unit) throws RpcException {
+		NearCache nearCache = this.manager != null ? this.manager.getNearCache() : null;
+		String cacheKey = nearCache != null ? nearCache.toKey(command) : null;
+		if (cacheKey == null) {
+			return this.send(command, timeout, unit, null, 0);
+		}
+
+		// a hot lookup is answered locally without any round trip, and an old result is refreshed in the background
+		Result cachedResult = nearCache.get(cacheKey);
+		if (cachedResult != null) {
+			if (nearCache.tryRefresh(cacheKey)) {
+				this.refreshAhead(nearCache, cacheKey, command, timeout, unit);
+			}
+
+			ResponseFuture<Response> future = new ResponseFuture<>(0L, null, this.futureTable.getListenerExecutor());
+			future.commit(new Response(0L, cachedResult, cachedResult.getReturnClass().getName()));
+			return future;
+		}
+
+		long version = nearCache.getVersion();
+		ResponseFuture<Response> future = this.send(command, timeout, unit, null, 0);
+		future.addListener(this.createCacheFiller(nearCache, cacheKey, version), null);
+
+		return future;
+	}
+
+	/**
+	 * Sends a conditional command to a remote server by a Netty channel, it bypasses the near cache.<br>
+	 * The server answers a not modified result without the payload if the version of the result is unchanged,<br>
+	 * so that the client keeps using the large result it holds. Otherwise the new result is answered with its new version.
+	 * 
+	 * @param command a command
+	 * @param version the version of the result that the client holds, or an empty one if the client holds no result yet
+	 * @param timeout the timeout of this request, it never expires if the timeout is 0
+	 * @param unit the time unit of the timeout
+	 * @return A future of response implements an asynchronous future pattern.
+	 * @throws RpcException if there is no available channel
+	 */
+	public ResponseFuture<Response> send(Command command, String version, long timeout, TimeUnit unit) throws RpcException {
+		return this.send(command, timeout, unit, version != null ? version : "", 0);
+	}
+
+	/**
+	 * Sends a command again to refresh its cached result, the stubs are answered by the old result meanwhile
+	 */
+	private void refreshAhead(NearCache nearCache, String cacheKey, Command command, long timeout, TimeUnit unit) {
+		long version = nearCache.getVersion();
+		try {
+			ResponseFuture<Response> future = this.send(command, timeout, unit, null, 0);
+			future.addListener(this.createCacheFiller(nearCache, cacheKey, version), null);
+			log.debug("Refresh a cached result ahead. key: {}, channel proxy: {}", cacheKey, this);
+
+		} catch (RpcException e) {
+			nearCache.finishRefresh(cacheKey);
+			log.warn("Fail to refresh a cached result ahead. key: {}, channel proxy: {}", cacheKey, this, e);
+		}
+	}
+
+	/**
+	 * Creates a listener that caches the result of a response, it is notified directly by the thread that finishes the future
+	 */
+	private ResponseListener<Response> createCacheFiller(final NearCache nearCache, final String cacheKey, final long version) {
+		return new ResponseListener<Response>() {
+			@Override
+			public void operationComplete(ResponseFuture<Response> future) {
+				Response response = future.isCancelled() ? null : future.getNow();
+				if (response != null) {
+					nearCache.put(cacheKey, response.getResult(), version);
+				} else {
+					nearCache.finishRefresh(cacheKey);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Sends a command to a remote server by a Netty channel
+	 * 
+	 * @param command a command
+	 * @param timeout the timeout of this request, it never expires if the timeout is 0
+	 * @param unit the time unit of the timeout
+	 * @param version the version of the result that the client holds, or null if the request isn't conditional
+	 * @param retryTimes the number of times this request has been retried
+	 * @return A future of response implements an asynchronous future pattern.
+	 * @throws RpcException if there is no available channel
+	 */
+	private ResponseFuture<Response> send(Command command, long timeout, TimeUnit unit, String version, int retryTimes)
+			throws RpcException {
 		if (false == this.isAvailable()) {
 			RpcException error = new ClientSideException("This channel proxy is unavailable. channel proxy: " + this);
 			log.warn(error.getMessage(), error);
 			throw error;
 		}
 
-		// get a unique id for each request
-		final Long id = this.nextId();
+		if (false == this.tryAcquireLimit()) {
+			throw new ClientSideException("Too many in-flight requests in this channel proxy or its remote server. channel proxy: " + this);
+		}
+
+		// prepare a response future with a unique id for waiting a real response
+		final ResponseFuture<Response> future = this.futureTable.add();
+		if (future == null) {
+			this.releaseLimit(0, false);
+			throw new ClientSideException("Too many waiting requests in this channel proxy. channel proxy: " + this);
+		}
+
+		if (this.channelLimiter != null || this.serverLimiter != null) {
+			// notified directly by the thread that finishes the future, no matter how it is finished
+			future.addListener(this.limitReleaser, null);
+		}
+		final long id = future.getId();
 		log.debug("Start to send a request. id: {}", id);
 
-		// serialize a request with a command to a json message
-		Request request = new Request(id, command);
-		String requestJson = JsonSerializer.getInstance().toJson(request, Request.class);
+		// fail the response future once the request is expired
+		Timer timer = ClientChannelManager.getRequestTimer();
+		if (timeout > 0 && timer != null) {
+			future.setTimeout(timer.newTimeout(new TimerTask() {
+				@Override
+				public void run(Timeout timeout) {
+					RpcException error = new RequestTimeoutException("A request is expired.").addContextValue("Id", id).addContextValue(
+							"Channel Proxy", ChannelProxy.this);
+
+					// counts before the stub thread is signaled, and rolls back if a response just arrives
+					ChannelProxy.this.expiredRequestCounter.incrementAndGet();
+					if (future.fail(error)) {
+						log.warn("Expire a waiting request. id: {}, channel proxy: {}", id, ChannelProxy.this);
+						ChannelProxy.this.signalDrained();
+					} else {
+						ChannelProxy.this.expiredRequestCounter.decrementAndGet();
+					}
+				}
+			}, timeout, unit));
+		}
+
+		// serialize a request with a command to a message into a pooled buffer directly
+		// the remaining time budget is propagated, so that the remote server drops the request once the stub gives up
+		// a budget below one millisecond is rounded up, since a timeout of 0 means that the request never expires
+		long timeoutMillis = timeout > 0 ? Math.max(unit.toMillis(timeout), 1) : 0;
+		Request request = new Request(id, command, timeoutMillis, version);
+		future.setRequest(request);
+		future.setRetryTimes(retryTimes);
 
-		// append a request's boundary
-		StringBuilder requestMsg = new StringBuilder(requestJson);
-		requestMsg.append(Constants.REQUEST_BOUNDARY);
-		ByteBuf reqMsgByteBuf = Unpooled.copiedBuffer(requestMsg.toString(), CharsetUtil.UTF_8);
+		// the request is serialized and written with the others of its batch
+		RequestBatcher batcher = this.batcher;
+		if (batcher != null) {
+			batcher.add(request, future);
+			return future;
+		}
+
+		ByteBuf reqMsgByteBuf = this.channel.alloc().buffer();
+		try {
+			this.serializer.serialize(request, Request.class, reqMsgByteBuf);
 
-		// prepare a response future for waiting a real response
-		ResponseFuture<Response> future = new ResponseFuture<>(id, this.futurePool);
-		this.futurePool.put(id, future);
+		} catch (RuntimeException e) {
+			reqMsgByteBuf.release();
+			future.cancel(true);
+			throw new ClientSideException("Fail to serialize a request. id: " + id, e);
+		}
 
-		// write a json message into this channel
+		// write a message into this channel
 		ChannelFuture channelFuture = this.channel.writeAndFlush(reqMsgByteBuf);
 		channelFuture.addListener(new ChannelFutureListener() {
 			@Override
-			public void operationComplete(ChannelFuture future) {
-				if (future.isSuccess()) {
+			public void operationComplete(ChannelFuture writeFuture) {
+				if (writeFuture.isSuccess()) {
 					log.info("Finish to send a request to the remote server. id: {}", id);
 
 				} else {
-					Throwable cause = future.cause();
+					Throwable cause = writeFuture.cause();
 					log.error("Fail to send a request to the remote server.", cause);
+
+					// no response will come back, so the waiting stub thread or listeners are signaled right now
+					future.cancel(true);
 				}
 			}
 		});
@@ -379,22 +792,191 @@ public class ChannelProxy {
 	}
 
 	/**
-	 * Receives a response and finishes the corresponding response future
+	 * Sends a command to a remote server by a Netty channel without blocking the caller.<br>
+	 * The listener is notified by the listener executor of this channel proxy once a real response is received or the request is
+	 * cancelled.
+	 * 
+	 * @param command a command
+	 * @param listener a response listener
+	 * @return A future of response implements an asynchronous future pattern.
+	 * @throws RpcException if there is no available channel
+	 */
+	public ResponseFuture<Response> sendAsync(Command command, ResponseListener<Response> listener) throws RpcException {
+		ResponseFuture<Response> future = this.send(command);
+		future.addListener(listener);
+
+		return future;
+	}
+
+	/**
+	 * Sends a command to a remote server by a Netty channel without blocking the caller.
+	 * 
+	 * @param command a command
+	 * @param timeout the timeout of this request, it never expires if the timeout is 0
+	 * @param unit the time unit of the timeout
+	 * @param listener a response listener
+	 * @return A future of response implements an asynchronous future pattern.
+	 * @throws RpcException if there is no available channel
+	 */
+	public ResponseFuture<Response> sendAsync(Command command, long timeout, TimeUnit unit, ResponseListener<Response> listener)
+			throws RpcException {
+		ResponseFuture<Response> future = this.send(command, timeout, unit);
+		future.addListener(listener);
+
+		return future;
+	}
+
+	/**
+	 * Asks the remote server to select one of the preferred serializers and uses it for the following requests.<br>
+	 * The JSON serializer is kept if the remote server doesn't support the negotiation or doesn't answer in time.
+	 * 
+	 * @param candidates a comma-separated list of serializer names in preference order
+	 * @return the selected serializer
+	 */
+	public MessageSerializer negotiateSerializer(String candidates) {
+		MessageSerializerFactory factory = MessageSerializerFactory.getInstance();
+
+		Command command = new Command(NEGOTIATOR_SKELETON, "negotiate", true);
+		command.addParameter(candidates, String.class);
+
+		try {
+			ResponseFuture<Response> future = this.send(command, Constants.HANDSHAKE_TIMEOUT, TimeUnit.SECONDS);
+			Response response = future.get(Constants.HANDSHAKE_TIMEOUT, TimeUnit.SECONDS);
+
+			if (response == null) {
+				future.cancel(true);
+				log.warn("Fail to negotiate a message serializer in time. channel proxy: {}", this);
+
+			} else if (response.getResult().isExceptional()) {
+				log.warn("The remote server can't negotiate a message serializer. channel proxy: {}", this);
+
+			} else {
+				MessageSerializer selected = factory.findSerializer((String) response.getResult().getReturn());
+				if (selected != null) {
+					this.serializer = selected;
+				}
+			}
+		} catch (RpcException e) {
+			log.warn("Fail to negotiate a message serializer. channel proxy: {}", this, e);
+
+		} catch (ExecutionException e) {
+			log.warn("Fail to negotiate a message serializer in time. channel proxy: {}", this, e.getCause());
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		log.info("Finish to negotiate a message serializer. serializer: {}, channel proxy: {}", this.serializer, this);
+
+		return this.serializer;
+	}
+
+	/**
+	 * Receives a response and finishes the corresponding response future.<br>
+	 * A late response of an expired or cancelled request is dropped.
 	 * 
 	 * @param response a real response
-	 * @throws RpcException if the corresponding response future can't be found.
+	 * @throws RpcException if the response can't be committed
 	 */
 	public void receive(Response response) throws RpcException {
-		Long id = response.getId();
-		ResponseFuture<Response> future = this.futurePool.get(id);
-		
+		long id = response.getId();
+		ResponseFuture<Response> future = this.futureTable.get(id);
+
 		if (future != null) {
+			if (this.isServerBusy(response) && this.retryOnBusy(future)) {
+				// the original future is finished by the retried request later
+				return;
+			}
+
+			this.latencyTracker.observe(future.getElapsedTime());
 			future.commit(response);
 			log.info("Receive a response and commit a result. id: {}, channel proxy: {}", id, this);
 
+			this.signalDrained();
+
 		} else {
-			throw new ClientSideException("Fail to find any matching future of response.").addContextValue("Id", id).addContextValue("Channel Proxy", this);
+			// the request may be expired or cancelled, so a late response is dropped without breaking this channel
+			log.warn("Fail to find any matching future of response, drop it. id: {}, channel proxy: {}", id, this);
+		}
+	}
+
+	/**
+	 * Whether a response tells that the remote server is too busy to admit the request
+	 */
+	private boolean isServerBusy(Response response) {
+		Result result = response != null ? response.getResult() : null;
+
+		return result != null && ServerBusyException.class.equals(result.getReturnClass());
+	}
+
+	/**
+	 * Backs off from the busy remote server, and retries a request on another channel proxy
+	 * 
+	 * @param future the response future of a rejected request
+	 * @return true if the request is retried, and the future is finished by the retried request later
+	 */
+	private boolean retryOnBusy(final ResponseFuture<Response> future) {
+		if (this.manager == null) {
+			return false;
+		}
+
+		// the load balancer skips this channel proxy for a while
+		long busyUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.manager.getBusyBackoffTime());
+		this.busyUntil = busyUntil != 0 ? busyUntil : 1;
+
+		Request request = future.getRequest();
+		if (request == null || future.getRetryTimes() >= this.manager.getBusyRetryTimes()) {
+			return false;
+		}
+
+		// the retried request inherits the remaining time budget
+		long timeout = 0;
+		if (request.getTimeout() > 0) {
+			timeout = request.getTimeout() - TimeUnit.NANOSECONDS.toMillis(future.getElapsedTime());
+			if (timeout <= 0) {
+				return false;
+			}
+		}
+
+		ChannelProxy other = this.manager.trySelectChannelProxy();
+		if (other == null || other == this) {
+			return false;
+		}
+
+		ResponseFuture<Response> retried = null;
+		try {
+			retried = other.send(request.getCommand(), timeout, TimeUnit.MILLISECONDS, request.getVersion(), future.getRetryTimes() + 1);
+
+		} catch (RpcException e) {
+			log.warn("Fail to retry a request on another channel proxy. id: {}, channel proxy: {}", request.getId(), other, e);
+			return false;
+		}
+
+		// the original future leaves this channel proxy, and is finished by the retried one
+		this.futureTable.remove(future);
+		this.signalDrained();
+
+		// the rejection is the overload sign of this remote server, the places are released as dropped at once,
+		// so the response time of the other remote server is never sampled by the limiters of this channel proxy
+		if (future.removeListener(this.limitReleaser)) {
+			this.releaseLimit(0, true);
 		}
+
+		retried.addListener(new ResponseListener<Response>() {
+			@Override
+			public void operationComplete(ResponseFuture<Response> retried) {
+				if (retried.getCause() != null) {
+					future.fail(retried.getCause());
+				} else if (retried.isCancelled()) {
+					future.cancel(true);
+				} else {
+					future.commit(retried.getNow());
+				}
+			}
+		}, null);
+		log.info("Retry a request on another channel proxy since the remote server is busy. id: {}, retried id: {}, channel proxy: {}",
+				request.getId(), retried.getId(), other);
+
+		return true;
 	}
 
 	/**
@@ -403,18 +985,12 @@ public class ChannelProxy {
 	public void cancelWaitingRequests() {
 		log.info("Cancel all waiting requests. channel proxy: {}", this);
 
-		ResponseFuture<Response> future = null;
-		Set<Entry<Long, ResponseFuture<Response>>> futureEntries = this.futurePool.entrySet();
-		for (Entry<Long, ResponseFuture<Response>> futureEntry : futureEntries) {
-			Long id = futureEntry.getKey();
-			future = futureEntry.getValue();
-
+		for (ResponseFuture<Response> future : this.futureTable.list()) {
 			boolean successful = future.cancel(true);
 			if (successful) {
-				log.debug("Cancel a waiting request. id: {}", id);
+				log.debug("Cancel a waiting request. id: {}", future.getId());
 			}
 		}
-		this.futurePool.clear();
 	}
 
 	/**
@@ -423,7 +999,21 @@ public class ChannelProxy {
 	 * @return the number of the waiting requests
 	 */
 	public int getWaitingRequestSize() {
-		return this.futurePool.size();
+		return this.futureTable.size();
+	}
+
+	/**
+	 * The number of requests are expired in this channel proxy
+	 */
+	private final AtomicLong expiredRequestCounter = new AtomicLong();
+
+	/**
+	 * Returns the number of the requests are expired in this channel proxy
+	 * 
+	 * @return the number of the expired requests
+	 */
+	public long getExpiredRequestCount() {
+		return this.expiredRequestCounter.get();
 	}
 
 	/**
@@ -432,7 +1022,7 @@ public class ChannelProxy {
 	 * @return true if this channel proxy contains any waiting requests
 	 */
 	public boolean hasWaitingRequests() {
-		return !this.futurePool.isEmpty();
+		return this.futureTable.size() > 0;
 	}
 
 	/**
@@ -1,16 +1,15 @@
 package tw.me.ychuang.rpc.client;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.DelimiterBasedFrameDecoder;
 import io.netty.handler.codec.Delimiters;
+import io.netty.handler.codec.MessageToMessageEncoder;
 import io.netty.handler.codec.compression.ZlibCodecFactory;
 import io.netty.handler.codec.compression.ZlibWrapper;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
 import io.netty.handler.timeout.IdleStateHandler;
-import io.netty.util.CharsetUtil;
 import io.netty.util.concurrent.EventExecutorGroup;
 
 import java.util.concurrent.TimeUnit;
@@ -19,6 +18,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import tw.me.ychuang.rpc.ClasspathProperties;
+import tw.me.ychuang.rpc.Constants.FramingType;
+import tw.me.ychuang.rpc.codec.DelimiterFrameEncoder;
+import tw.me.ychuang.rpc.codec.LengthFieldFrameDecoder;
+import tw.me.ychuang.rpc.codec.LengthFieldFrameEncoder;
 import tw.me.ychuang.rpc.Constants;
 
 /**
@@ -34,16 +37,6 @@ public class ClientChannelInitializer extends ChannelInitializer<SocketChannel>
 	 */
 	private static final HeartbeatHandler heartbeatHandler = new HeartbeatHandler();
 
-	/**
-	 * Decodes a received string.
-	 */
-	private static final StringDecoder utf8Decoder = new StringDecoder(CharsetUtil.UTF_8);
-
-	/**
-	 * Encodes a requested string.
-	 */
-	private static final StringEncoder utf8Encoder = new StringEncoder(CharsetUtil.UTF_8);
-
 	/**
 	 * The most important channel handler for processing business logic.
 	 */
@@ -59,6 +52,21 @@ public class ClientChannelInitializer extends ChannelInitializer<SocketChannel>
 	 */
 	private boolean compression = false;
 
+	/**
+	 * The kind of framing that splits the stream into messages.
+	 */
+	private FramingType framing = FramingType.delimiter;
+
+	/**
+	 * The maximum length of a message.
+	 */
+	private int maxFrameSize = Constants.MAX_FRAME_SIZE;
+
+	/**
+	 * Writes a frame delimiter or a frame header.
+	 */
+	private final MessageToMessageEncoder<ByteBuf> frameEncoder;
+
 	/**
 	 * A kind of constructor
 	 *
@@ -70,6 +78,19 @@ public class ClientChannelInitializer extends ChannelInitializer<SocketChannel>
 
 		ClasspathProperties config = ClientProperties.getInstance();
 		this.compression = config.getBoolean("client.channel.stream.compression", false);
+		String framing = config.getString("client.channel.framing", FramingType.delimiter.toString());
+		if (FramingType.asLabels().contains(framing)) {
+			this.framing = FramingType.valueOf(framing);
+		} else {
+			log.warn("Fail to find a framing type, use the default one instead. client.channel.framing: {}", framing);
+		}
+		this.maxFrameSize = config.getInt("client.channel.max.frame.size", Constants.MAX_FRAME_SIZE);
+
+		if (this.framing == FramingType.length_field) {
+			this.frameEncoder = new LengthFieldFrameEncoder(this.maxFrameSize);
+		} else {
+			this.frameEncoder = new DelimiterFrameEncoder();
+		}
 	}
 
 	/*
@@ -91,12 +112,15 @@ public class ClientChannelInitializer extends ChannelInitializer<SocketChannel>
 			pipeline.addLast(this.executorGroup, "inflater", ZlibCodecFactory.newZlibDecoder(ZlibWrapper.GZIP));
 		}
 
-		// NUL (0x00) is a message delimiter
-		pipeline.addLast(this.executorGroup, "framer", new DelimiterBasedFrameDecoder(8192, Delimiters.nulDelimiter()));
-
-		// string encoder / decoder are responsible for encoding / decoding an UTF-8 string
-		pipeline.addLast(this.executorGroup, "encoder", utf8Encoder);
-		pipeline.addLast(this.executorGroup, "decoder", utf8Decoder);
+		// frame encoder is responsible for writing a delimiter or a header for an outgoing message
+		pipeline.addLast(this.executorGroup, "frameEncoder", this.frameEncoder);
+		if (this.framing == FramingType.length_field) {
+			// a header with magic, version, flags, and length is prefixed to a message
+			pipeline.addLast(this.executorGroup, "framer", new LengthFieldFrameDecoder(this.maxFrameSize));
+		} else {
+			// NUL (0x00) is a message delimiter
+			pipeline.addLast(this.executorGroup, "framer", new DelimiterBasedFrameDecoder(this.maxFrameSize, Delimiters.nulDelimiter()));
+		}
 
 		// client hander is responsible for as a remoting call stub
 		pipeline.addLast(this.executorGroup, "clientHandler", clientHandler);
@@ -1,6 +1,7 @@
 package tw.me.ychuang.rpc.client;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
@@ -8,20 +9,32 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoop;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
 import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.ImmediateExecutor;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -31,8 +44,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import tw.me.ychuang.rpc.ClasspathProperties;
+import tw.me.ychuang.rpc.Command;
+import tw.me.ychuang.rpc.ConcurrencyLimiter;
 import tw.me.ychuang.rpc.Constants;
 import tw.me.ychuang.rpc.Constants.ChannelSelectionType;
+import tw.me.ychuang.rpc.Constants.ConcurrencyLimitType;
+import tw.me.ychuang.rpc.Constants.FramingType;
+import tw.me.ychuang.rpc.Constants.SaturationPolicyType;
+import tw.me.ychuang.rpc.codec.BinaryMessageSerializer;
+import tw.me.ychuang.rpc.codec.BinaryObjectCodec;
+import tw.me.ychuang.rpc.codec.JsonMessageSerializer;
+import tw.me.ychuang.rpc.codec.MessageSerializer;
+import tw.me.ychuang.rpc.codec.MessageSerializerFactory;
 import tw.me.ychuang.rpc.exception.ClientSideException;
 import tw.me.ychuang.rpc.exception.RpcException;
 
@@ -77,26 +100,162 @@ public class ClientChannelManager {
 	private final Condition selectorCondition = this.selectorLock.newCondition();
 
 	/**
-	 * the index of channel pool
+	 * The number of stubs are waiting for a ready channel proxy, the selector condition is signaled only if anyone is waiting
 	 */
-	private int channelIndex = 0;
+	private final AtomicInteger waitingSelectors = new AtomicInteger();
 
 	/**
-	 * Gets the next index for selecting the next channel proxy from channel pool
+	 * What a stub does if all available channel proxies are saturated
+	 */
+	private SaturationPolicyType saturationPolicy = SaturationPolicyType.wait;
+
+	/**
+	 * The max time in milliseconds a stub waits for any saturated channel proxy to drain
+	 */
+	private long saturationWaitTimeout = Constants.SATURATION_WAIT_TIMEOUT;
+
+	/**
+	 * Caches the results of specified methods in client-side, it is null if no method is cached
+	 */
+	private volatile NearCache nearCache;
+
+	/**
+	 * Getter method for field 'nearCache'
+	 *
+	 * @return the near cache or null if no method is cached
+	 */
+	public NearCache getNearCache() {
+		return this.nearCache;
+	}
+
+	/**
+	 * Coalesces the identical commands of specified methods in client-side, it is null if no method is coalesced
+	 */
+	private volatile SingleFlight singleFlight;
+
+	/**
+	 * Getter method for field 'singleFlight'
+	 *
+	 * @return the single flight or null if no method is coalesced
+	 */
+	public SingleFlight getSingleFlight() {
+		return this.singleFlight;
+	}
+
+	/**
+	 * The max times a request is retried on another channel proxy while the remote server is busy
+	 */
+	private int busyRetryTimes = Constants.BUSY_RETRY_TIMES;
+
+	/**
+	 * Getter method for field 'busyRetryTimes'
+	 *
+	 * @return the max times a request is retried while the remote server is busy
+	 */
+	int getBusyRetryTimes() {
+		return this.busyRetryTimes;
+	}
+
+	/**
+	 * The time in milliseconds a channel proxy is skipped by the load balancer after its remote server is busy
+	 */
+	private long busyBackoffTime = Constants.BUSY_BACKOFF_TIME;
+
+	/**
+	 * Getter method for field 'busyBackoffTime'
 	 *
-	 * @return index
+	 * @return the time in milliseconds a channel proxy is skipped after its remote server is busy
+	 */
+	long getBusyBackoffTime() {
+		return this.busyBackoffTime;
+	}
+
+	/**
+	 * The time in microseconds a batch waits for more requests after its first one, the requests aren't batched if it is 0
+	 */
+	private long batchWindow = Constants.BATCH_WINDOW;
+
+	/**
+	 * Getter method for field 'batchWindow'
+	 *
+	 * @return the time in microseconds a batch waits for more requests, or 0 if the requests aren't batched
+	 */
+	long getBatchWindow() {
+		return this.batchWindow;
+	}
+
+	/**
+	 * The max number of requests of a batch
+	 */
+	private int batchMaxSize = Constants.BATCH_MAX_SIZE;
+
+	/**
+	 * Getter method for field 'batchMaxSize'
+	 *
+	 * @return the max number of requests of a batch
+	 */
+	int getBatchMaxSize() {
+		return this.batchMaxSize;
+	}
+
+	/**
+	 * The limiters of the in-flight requests of all channel proxies connect to the same remote server, the key is 'host:port'
+	 */
+	private final ConcurrentMap<String, ConcurrencyLimiter> serverLimiters = new ConcurrentHashMap<>();
+
+	/**
+	 * Finds the limiter of the in-flight requests of a remote server
+	 *
+	 * @param serverHost the IP / host of remote server
+	 * @param serverPort the port number of that Netty server listens on.
+	 * @return the matching limiter or null if the remote server isn't limited adaptively
+	 */
+	public ConcurrencyLimiter findServerLimiter(String serverHost, int serverPort) {
+		return this.serverLimiters.get(serverHost + ':' + serverPort);
+	}
+
+	/**
+	 * Prepares the limiter of the in-flight requests of a remote server, it is shared by all channel proxies connect to that server
 	 */
-	private synchronized Integer nextIndex() {
-		if (Integer.MAX_VALUE == this.channelIndex) {
-			this.channelIndex = 0;
+	private ConcurrencyLimiter prepareServerLimiter(RemoteServer remoteServer, int initialLimit, int minLimit, int maxLimit) {
+		String key = remoteServer.getServerHost() + ':' + remoteServer.getServerPort();
+
+		ConcurrencyLimiter limiter = this.serverLimiters.get(key);
+		if (limiter == null) {
+			ConcurrencyLimiter newLimiter = new ConcurrencyLimiter(initialLimit, minLimit, maxLimit);
+			limiter = this.serverLimiters.putIfAbsent(key, newLimiter);
+			if (limiter == null) {
+				limiter = newLimiter;
+			}
 		}
-		int poolSize = this.channelPool.size();
-		++this.channelIndex;
-		int index = this.channelIndex % poolSize;
 
-		return index;
+		return limiter;
 	}
 
+	/**
+	 * An immutable snapshot of channel pool in ascending order by id, it is replaced as a whole while channel pool is changed
+	 */
+	private volatile ChannelProxy[] channelSnapshot = new ChannelProxy[0];
+
+	/**
+	 * The load balancer that is resolved by 'client.channel.selection.type' while this channel manager starts up
+	 */
+	private volatile LoadBalancer loadBalancer = LoadBalancerFactory.getInstance().getDefaultBalancer();
+
+	/**
+	 * Getter method for field 'loadBalancer'
+	 *
+	 * @return the load balancer of this channel manager
+	 */
+	public LoadBalancer getLoadBalancer() {
+		return this.loadBalancer;
+	}
+
+	/**
+	 * A comma-separated list of serializer names in preference order
+	 */
+	private String serializerCandidates = JsonMessageSerializer.NAME;
+
 	/**
 	 * Shares the same EventExecutorGroup to prevent allocation of unnecessary threads
 	 */
@@ -107,6 +266,53 @@ public class ClientChannelManager {
 	 */
 	private static NioEventLoopGroup eventLoopGroup;
 
+	/**
+	 * Notifies the listeners of response futures, it is absent if listeners are notified by event executors directly
+	 */
+	private static ThreadPoolExecutor callbackExecutor;
+
+	/**
+	 * Shares the same timer to expire the requests of all channel proxies
+	 */
+	private static HashedWheelTimer requestTimer;
+
+	/**
+	 * Gets the timer expires requests
+	 *
+	 * @return a timer or null if this channel manager isn't started up
+	 */
+	static Timer getRequestTimer() {
+		return requestTimer;
+	}
+
+	/**
+	 * The default timeout of a request in milliseconds, a request never expires if it is 0
+	 */
+	private long requestTimeout = Constants.REQUEST_TIMEOUT;
+
+	/**
+	 * The timeouts of specified methods in milliseconds, it is keyed by the skeleton and the method, e.g. 'skeleton.method'
+	 */
+	private volatile Map<String, Long> methodTimeouts = new HashMap<>();
+
+	/**
+	 * Finds the timeout of a command, the timeout of its method is preferred to the default one.
+	 *
+	 * @param command a command
+	 * @return the timeout in milliseconds, the command never expires if it is 0
+	 */
+	public long findRequestTimeout(Command command) {
+		Map<String, Long> methodTimeouts = this.methodTimeouts;
+		if (false == methodTimeouts.isEmpty()) {
+			Long methodTimeout = methodTimeouts.get(command.getSkeleton() + '.' + command.getMethod());
+			if (methodTimeout != null) {
+				return methodTimeout;
+			}
+		}
+
+		return this.requestTimeout;
+	}
+
 	/**
 	 * This channel manager whether has been started or not.
 	 */
@@ -162,6 +368,17 @@ public class ClientChannelManager {
 			return false;
 		}
 
+		// a binary message contains NUL bytes, so it would corrupt the frames that are split by a NUL delimiter
+		String framing = config.getString("client.channel.framing", FramingType.delimiter.toString());
+		String serializers = config.getString("client.channel.serializers", JsonMessageSerializer.NAME);
+		MessageSerializerFactory factory = MessageSerializerFactory.getInstance();
+		if (factory.findSerializers(serializers).contains(factory.findSerializer(BinaryMessageSerializer.NAME))
+				&& false == FramingType.length_field.toString().equals(framing)) {
+			log.error("Fail to start up a Netty Channel, the binary serializer requires the length_field framing. client.channel.framing: {}",
+					framing);
+			return false;
+		}
+
 		log.info("Start to start up a Netty Channel...");
 
 		int evtExecutorSize = config.getInt("client.event.executor.size", Constants.DEFAULT_THREAD_SIZE);
@@ -171,9 +388,123 @@ public class ClientChannelManager {
 		executorGroup = new DefaultEventExecutorGroup(evtExecutorSize);
 		eventLoopGroup = new NioEventLoopGroup();
 
+		int callbackExecutorSize = config.getInt("client.callback.executor.size", Constants.DEFAULT_THREAD_SIZE);
+		log.info("Find client.callback.executor.size: {}", callbackExecutorSize);
+
+		Executor listenerExecutor = ImmediateExecutor.INSTANCE;
+		if (callbackExecutorSize > 0) {
+			callbackExecutor = new ThreadPoolExecutor(callbackExecutorSize, callbackExecutorSize, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(), new DefaultThreadFactory("rpc-callback"));
+			listenerExecutor = callbackExecutor;
+		}
+
 		int totalChannel = config.getInt("client.channel.size", Constants.DEFAULT_THREAD_SIZE);
 		log.info("Find client.channel.size: {}", totalChannel);
 
+		String selectionType = config.getString("client.channel.selection.type", ChannelSelectionType.round_robin.toString());
+		LoadBalancer balancer = LoadBalancerFactory.getInstance().findBalancer(selectionType);
+		if (balancer == null) {
+			log.warn("Fail to find a load balancer, use the default one instead. client.channel.selection.type: {}", selectionType);
+			balancer = LoadBalancerFactory.getInstance().getDefaultBalancer();
+		}
+		this.loadBalancer = balancer;
+		log.info("Find client.channel.selection.type: {}", this.loadBalancer);
+
+		this.requestTimeout = config.getLong("client.request.timeout", Constants.REQUEST_TIMEOUT);
+		log.info("Find client.request.timeout: {}", this.requestTimeout);
+
+		Map<String, Long> methodTimeouts = new HashMap<>();
+		Iterator<String> timeoutKeys = config.getKeys("client.request.timeout.");
+		while (timeoutKeys.hasNext()) {
+			String timeoutKey = timeoutKeys.next();
+			long methodTimeout = config.getLong(timeoutKey, this.requestTimeout);
+
+			methodTimeouts.put(StringUtils.removeStart(timeoutKey, "client.request.timeout."), methodTimeout);
+			log.info("Find {}: {}", timeoutKey, methodTimeout);
+		}
+		this.methodTimeouts = methodTimeouts;
+
+		Map<String, Long> nearCacheTtls = new HashMap<>();
+		Iterator<String> ttlKeys = config.getKeys("client.near.cache.ttl.");
+		while (ttlKeys.hasNext()) {
+			String ttlKey = ttlKeys.next();
+			long ttl = config.getLong(ttlKey, 0);
+			if (ttl > 0) {
+				nearCacheTtls.put(StringUtils.removeStart(ttlKey, "client.near.cache.ttl."), ttl);
+				log.info("Find {}: {}", ttlKey, ttl);
+			}
+		}
+		if (false == nearCacheTtls.isEmpty()) {
+			int nearCacheMaxSize = config.getInt("client.near.cache.max.size", Constants.NEAR_CACHE_MAX_SIZE);
+			double refreshRatio = config.getDouble("client.near.cache.refresh.ratio", Constants.NEAR_CACHE_REFRESH_RATIO);
+			log.info("Find client.near.cache.max.size: {}, client.near.cache.refresh.ratio: {}", nearCacheMaxSize, refreshRatio);
+
+			this.nearCache = new NearCache(nearCacheTtls, nearCacheMaxSize, refreshRatio);
+		}
+
+		Set<String> flightMethodNames = new HashSet<>();
+		Iterator<String> flightKeys = config.getKeys("client.single.flight.");
+		while (flightKeys.hasNext()) {
+			String flightKey = flightKeys.next();
+			if (config.getBoolean(flightKey, false)) {
+				flightMethodNames.add(StringUtils.removeStart(flightKey, "client.single.flight."));
+				log.info("Find {}: true", flightKey);
+			}
+		}
+		if (false == flightMethodNames.isEmpty()) {
+			this.singleFlight = new SingleFlight(flightMethodNames);
+		}
+
+		requestTimer = new HashedWheelTimer(new DefaultThreadFactory("rpc-timer"), Constants.TIMER_TICK_DURATION, TimeUnit.MILLISECONDS);
+
+		int maxWaitingRequests = config.getInt("client.channel.max.waiting.requests", Constants.MAX_WAITING_REQUESTS);
+		log.info("Find client.channel.max.waiting.requests: {}", maxWaitingRequests);
+
+		int highWaterMark = config.getInt("client.channel.write.buffer.high.water.mark", Constants.WRITE_BUFFER_HIGH_WATER_MARK);
+		int lowWaterMark = config.getInt("client.channel.write.buffer.low.water.mark", Constants.WRITE_BUFFER_LOW_WATER_MARK);
+		log.info("Find client.channel.write.buffer.high.water.mark: {}, client.channel.write.buffer.low.water.mark: {}", highWaterMark,
+				lowWaterMark);
+
+		String saturationPolicy = config.getString("client.channel.saturation.policy", SaturationPolicyType.wait.toString());
+		if (SaturationPolicyType.asLabels().contains(saturationPolicy)) {
+			this.saturationPolicy = SaturationPolicyType.valueOf(saturationPolicy);
+		} else {
+			log.warn("Fail to find a saturation policy, use the default one instead. client.channel.saturation.policy: {}", saturationPolicy);
+			this.saturationPolicy = SaturationPolicyType.wait;
+		}
+		this.saturationWaitTimeout = config.getLong("client.channel.saturation.wait.timeout", Constants.SATURATION_WAIT_TIMEOUT);
+		log.info("Find client.channel.saturation.policy: {}, client.channel.saturation.wait.timeout: {}", this.saturationPolicy,
+				this.saturationWaitTimeout);
+
+		this.busyRetryTimes = config.getInt("client.busy.retry.times", Constants.BUSY_RETRY_TIMES);
+		this.busyBackoffTime = config.getLong("client.channel.busy.backoff.time", Constants.BUSY_BACKOFF_TIME);
+		log.info("Find client.busy.retry.times: {}, client.channel.busy.backoff.time: {}", this.busyRetryTimes, this.busyBackoffTime);
+
+		this.batchWindow = config.getLong("client.channel.batch.window", Constants.BATCH_WINDOW);
+		this.batchMaxSize = config.getInt("client.channel.batch.max.size", Constants.BATCH_MAX_SIZE);
+		log.info("Find client.channel.batch.window: {}, client.channel.batch.max.size: {}", this.batchWindow, this.batchMaxSize);
+
+		String limitType = config.getString("client.channel.limit.type", ConcurrencyLimitType.fixed.toString());
+		if (false == ConcurrencyLimitType.asLabels().contains(limitType)) {
+			log.warn("Fail to find a concurrency limit type, use the default one instead. client.channel.limit.type: {}", limitType);
+			limitType = ConcurrencyLimitType.fixed.toString();
+		}
+		boolean adaptiveLimit = ConcurrencyLimitType.valueOf(limitType) == ConcurrencyLimitType.adaptive;
+		int initialLimit = config.getInt("client.channel.initial.limit", Constants.INITIAL_CONCURRENCY_LIMIT);
+		int minLimit = config.getInt("client.channel.min.limit", Constants.MIN_CONCURRENCY_LIMIT);
+		log.info("Find client.channel.limit.type: {}, client.channel.initial.limit: {}, client.channel.min.limit: {}", limitType, initialLimit,
+				minLimit);
+
+		// the limit of a remote server starts from the sum of the initial limits of its channel proxies
+		int channelsPerServer = remoteServerList.isEmpty() ? 1 : (totalChannel + remoteServerList.size() - 1) / remoteServerList.size();
+
+		this.serializerCandidates = config.getString("client.channel.serializers", JsonMessageSerializer.NAME);
+		log.info("Find client.channel.serializers: {}", this.serializerCandidates);
+
+		String allowedClasses = config.getString("client.channel.binary.allowed.classes", "");
+		BinaryObjectCodec.allowClasses(allowedClasses);
+		log.info("Find client.channel.binary.allowed.classes: {}", allowedClasses);
+
 		Channel channel = null;
 		ChannelProxy channelProxy = null;
 		Bootstrap bootstrap = null;
@@ -206,6 +537,19 @@ public class ClientChannelManager {
 				// configure the connect timeout option.
 				bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Constants.CONNECT_TIMEOUT);
 
+				// messages are serialized into pooled buffers directly
+				bootstrap.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+
+				// a channel turns unwritable above the high water mark, and writable again below the low one.
+				// Netty refuses a high water mark below the current low one, so the order of both options matters.
+				if (highWaterMark >= Constants.WRITE_BUFFER_LOW_WATER_MARK) {
+					bootstrap.option(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, highWaterMark);
+					bootstrap.option(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, lowWaterMark);
+				} else {
+					bootstrap.option(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, lowWaterMark);
+					bootstrap.option(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, highWaterMark);
+				}
+
 			} else {
 				// just clone a copy of bootstrap
 				bootstrap = bootstrap.clone();
@@ -219,9 +563,19 @@ public class ClientChannelManager {
 			if (future.isDone()) {
 				if (future.isSuccess()) {
 					channel = future.channel();
-					channelProxy = new ChannelProxy(i + 1, remoteServer.getServerHost(), remoteServer.getServerPort(), channel, bootstrap);
+					ConcurrencyLimiter channelLimiter = null;
+					ConcurrencyLimiter serverLimiter = null;
+					if (adaptiveLimit) {
+						channelLimiter = new ConcurrencyLimiter(initialLimit, minLimit, maxWaitingRequests);
+						serverLimiter = this.prepareServerLimiter(remoteServer, initialLimit * channelsPerServer, minLimit, maxWaitingRequests
+								* channelsPerServer);
+					}
+
+					channelProxy = new ChannelProxy(i + 1, remoteServer.getServerHost(), remoteServer.getServerPort(), channel, bootstrap,
+							maxWaitingRequests, listenerExecutor, channelLimiter, serverLimiter);
 
 					this.addChannelProxy(channelProxy);
+					this.negotiateSerializer(channelProxy);
 					this.started = true;
 					log.info("Finish to start up a Netty Channel. channel proxy: {}", channelProxy);
 
@@ -262,7 +616,26 @@ public class ClientChannelManager {
 			eventLoopGroup.shutdownGracefully().awaitUninterruptibly();
 		}
 
+		if (requestTimer != null) {
+			requestTimer.stop();
+			requestTimer = null;
+		}
+
+		// notify the listeners of cancelled requests before stopping
+		if (callbackExecutor != null) {
+			callbackExecutor.shutdown();
+			try {
+				callbackExecutor.awaitTermination(Constants.DEFAULT_PERIOD, Constants.DEFAULT_UNIT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			callbackExecutor = null;
+		}
+
 		// for restart
+		this.serverLimiters.clear();
+		this.nearCache = null;
+		this.singleFlight = null;
 		this.started = false;
 
 		log.info("Finish to shutdown a Netty Client.");
@@ -271,6 +644,46 @@ public class ClientChannelManager {
 	private void addChannelProxy(ChannelProxy newChannelProxy) {
 		this.channelPool.put(newChannelProxy.getId(), newChannelProxy);
 		newChannelProxy.setManager(this);
+		this.refreshChannelSnapshot();
+	}
+
+	/**
+	 * Replaces the snapshot of channel pool with a new copy
+	 */
+	private synchronized void refreshChannelSnapshot() {
+		List<ChannelProxy> channelProxyList = this.listChannelProxies();
+		this.channelSnapshot = channelProxyList.toArray(new ChannelProxy[channelProxyList.size()]);
+	}
+
+	/**
+	 * Agrees on a message serializer with the remote server of a newly connected channel proxy.
+	 *
+	 * @param channelProxy the specified channel proxy
+	 */
+	void negotiateSerializer(ChannelProxy channelProxy) {
+		MessageSerializerFactory factory = MessageSerializerFactory.getInstance();
+		List<MessageSerializer> candidates = factory.findSerializers(this.serializerCandidates);
+
+		if (candidates.isEmpty() || candidates.get(0) == factory.getDefaultSerializer()) {
+			// nothing to negotiate since the default serializer is preferred
+			return;
+		}
+
+		channelProxy.negotiateSerializer(this.serializerCandidates);
+	}
+
+	/**
+	 * Agrees on a message serializer with the remote server of a reconnected channel proxy without blocking the caller.
+	 *
+	 * @param channelProxy the specified channel proxy
+	 */
+	void negotiateSerializerLater(final ChannelProxy channelProxy) {
+		GlobalEventExecutor.INSTANCE.execute(new Runnable() {
+			@Override
+			public void run() {
+				negotiateSerializer(channelProxy);
+			}
+		});
 	}
 
 	/**
@@ -288,7 +701,8 @@ public class ClientChannelManager {
 	}
 
 	/**
-	 * Gets the specified channel proxy by the corresponding Netty Channel
+	 * Gets the specified channel proxy by the corresponding Netty Channel.<br>
+	 * The channel proxy is bound to its channel by an attribute while it is connected or reconnected.
 	 *
 	 * @param channel a Netty Channel
 	 * @return the matching channel proxy
@@ -298,13 +712,11 @@ public class ClientChannelManager {
 			return null;
 		}
 
-		ChannelProxy result = null;
-		Collection<ChannelProxy> proxyCol = this.channelPool.values();
-		for (ChannelProxy proxy : proxyCol) {
-			if (channel.equals(proxy.getChannel())) {
-				result = proxy;
-				break;
-			}
+		ChannelProxy result = channel.attr(ChannelProxy.CHANNEL_PROXY).get();
+
+		// a channel proxy that has been removed from pool or reconnected by another channel doesn't match
+		if (result == null || result.getManager() != this || false == channel.equals(result.getChannel())) {
+			return null;
 		}
 
 		return result;
@@ -359,172 +771,120 @@ public class ClientChannelManager {
 	}
 
 	/**
-	 * Dispatches one of channel proxies of the different server to the stub.
+	 * Dispatches one of channel proxies of the different server to the stub by the load balancer.<br>
+	 * If all available channel proxies are saturated, the stub waits or is rejected according to the saturation policy.
 	 *
-	 * @return an available channel proxy
-	 * @throws RpcException if there is no available channel.
+	 * @return a ready channel proxy
+	 * @throws RpcException if there is no available channel, or all available channels are saturated.
 	 */
 	public ChannelProxy selectChannelProxy() throws RpcException {
-		ClasspathProperties config = ClientProperties.getInstance();
-		String selectionType = config.getString("client.channel.selection.type", ChannelSelectionType.round_robin.toString());
+		long timeout = this.saturationPolicy == SaturationPolicyType.reject ? 0 : this.saturationWaitTimeout;
 
-		log.info("Start to select a channel proxy by {} rule.", selectionType);
-
-		int poolSize = this.channelPool.size();
-		if (this.channelPool.isEmpty()) {
-			throw new ClientSideException("Fail to find any available channels.");
-		}
-
-		ChannelProxy result = null;
-		ChannelSelectionType channelSelType = ChannelSelectionType.valueOf(selectionType);
-
-		switch (channelSelType) {
-			case round_robin:
-				result = this.selectChannelProxyByRoundRobin();
-				break;
-
-			case workload:
-				result = this.selectChannelProxyByWorkload();
-				break;
-
-			default:
-				result = this.selectChannelProxyByRoundRobin();
-		}
-
-		log.info("Select a proxy of client channel. channel proxy: {}", result);
-
-		return result;
+		return this.selectChannelProxy(timeout, TimeUnit.MILLISECONDS);
 	}
 
 	/**
-	 * Dispatches one of channel proxies of the different server to the stub by according to the Round-Robin rule.
+	 * Dispatches one of channel proxies of the different server to the stub by the load balancer.
 	 *
-	 * @return an available channel proxy
-	 * @throws RpcException if there is no available channel.
+	 * @param timeout the max time to wait for any saturated channel proxy to drain, the stub is rejected immediately if it is 0
+	 * @param unit the time unit of the timeout
+	 * @return a ready channel proxy
+	 * @throws RpcException if there is no available channel, or all available channels are saturated.
 	 */
-	private ChannelProxy selectChannelProxyByRoundRobin() throws RpcException {
-		log.debug("Start to select a channel proxy by Round-Robin rule.");
-
-		int poolSize = this.channelPool.size();
-		if (this.channelPool.isEmpty()) {
+	public ChannelProxy selectChannelProxy(long timeout, TimeUnit unit) throws RpcException {
+		ChannelProxy[] snapshot = this.channelSnapshot;
+		if (snapshot.length == 0) {
 			throw new ClientSideException("Fail to find any available channels.");
 		}
 
-		ChannelProxy candidate = null;
-		ChannelProxy result = null;
-
-		int selectCounter = poolSize;
-		do {
-			Integer index = this.nextIndex();
-			candidate = this.channelPool.get(index);
+		ChannelProxy result = this.loadBalancer.select(snapshot);
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
 
-			if (candidate != null && candidate.isAvailable()) {
-				// find an available channel proxy
-				result = candidate;
+		while (result == null) {
+			long waitTime = 0;
+			if (this.hasAvailableChannelProxy(snapshot)) {
+				// all available channel proxies are saturated, so the stub waits until any of them drains
+				waitTime = deadline - System.nanoTime();
+				if (waitTime <= 0) {
+					throw new ClientSideException("All available channels are saturated, reject a request.");
+				}
 			} else {
-				// Skip the broken channel proxy and finds the next available channel proxy.
-				--selectCounter;
+				// If no channel proxy is available, all stubs will wait until any channel proxies is reconnected.
+				waitTime = Constants.DEFAULT_UNIT.toNanos(Constants.DEFAULT_PERIOD);
 			}
 
-			if (selectCounter <= 0) {
-				// If no channel proxy is available, all stubs will wait until any channel proxies is reconnected.
-				this.selectorLock.lock();
-				try {
-					this.selectorCondition.await();
-
-				} catch (InterruptedException e) {
-					// nothing to do
-				} finally {
-					this.selectorLock.unlock();
+			this.waitingSelectors.incrementAndGet();
+			this.selectorLock.lock();
+			try {
+				// select again while holding the lock, so that a signal isn't missed before waiting
+				result = this.loadBalancer.select(this.channelSnapshot);
+				if (result == null) {
+					this.selectorCondition.awaitNanos(waitTime);
 				}
 
-				// reset selector counter for re-selecting one available channel
-				selectCounter = poolSize;
+			} catch (InterruptedException e) {
+				// nothing to do
+			} finally {
+				this.selectorLock.unlock();
+				this.waitingSelectors.decrementAndGet();
 			}
-		} while (result == null);
 
-		log.info("Select a proxy of client channel. channel proxy: {}", result);
+			snapshot = this.channelSnapshot;
+			if (snapshot.length == 0) {
+				throw new ClientSideException("Fail to find any available channels.");
+			}
+			if (result == null) {
+				result = this.loadBalancer.select(snapshot);
+			}
+		}
+
+		log.debug("Select a proxy of client channel. channel proxy: {}", result);
 
 		return result;
 	}
 
 	/**
-	 * Lists and sorts all channel proxies in ascending order by workload
+	 * Selects a ready channel proxy without waiting, it is safe to be called by an event executor.
 	 *
-	 * @return all sorted channel proxies in ascending order
+	 * @return a ready channel proxy or null if no channel proxy is ready
 	 */
-	private List<ChannelProxy> sortChannelProxiesByWorkload() {
-		List<ChannelProxy> channelProxyList = new ArrayList<>(this.channelPool.values());
-		Collections.sort(channelProxyList, new Comparator<ChannelProxy>() {
-			@Override
-			public int compare(ChannelProxy o1, ChannelProxy o2) {
-				int result = o1.getWaitingRequestSize() - o2.getWaitingRequestSize();
-				if (result == 0) {
-					result = o1.getId() - o2.getId();
-				}
-
-				return result;
-			}
-		});
+	ChannelProxy trySelectChannelProxy() {
+		ChannelProxy[] snapshot = this.channelSnapshot;
+		if (snapshot.length == 0) {
+			return null;
+		}
 
-		return channelProxyList;
+		return this.loadBalancer.select(snapshot);
 	}
 
 	/**
-	 * Dispatches one of channel proxies of the different server to the stub by according to the workload rule.
-	 *
-	 * @return an available channel proxy
-	 * @throws RpcException if there is no available channel.
+	 * Returns true if any channel proxy is available, no matter whether it is saturated
 	 */
-	private ChannelProxy selectChannelProxyByWorkload() throws RpcException {
-		log.debug("Start to select a channel proxy by workload rule.");
-
-		int poolSize = this.channelPool.size();
-		if (this.channelPool.isEmpty()) {
-			throw new ClientSideException("Fail to find any available channels.");
-		}
-
-		ChannelProxy candidate = null;
-		ChannelProxy result = null;
-
-		// sorted all channel proxies by the number of waiting requests per channel proxy in ascending order
-		List<ChannelProxy> sortedChannelProxyList = this.sortChannelProxiesByWorkload();
-
-		int index = 0;
-		int selectCounter = poolSize;
-		do {
-			candidate = sortedChannelProxyList.get(index);
-
-			if (candidate != null && candidate.isAvailable()) {
-				// find an available channel proxy
-				result = candidate;
-			} else {
-				// Skip the broken channel proxy and finds the next available channel proxy.
-				--selectCounter;
-				++index;
+	private boolean hasAvailableChannelProxy(ChannelProxy[] snapshot) {
+		for (ChannelProxy channelProxy : snapshot) {
+			if (channelProxy.isAvailable()) {
+				return true;
 			}
+		}
 
-			if (selectCounter <= 0) {
-				// If no channel proxy is available, all stubs will wait until any channel proxies is reconnected.
-				this.selectorLock.lock();
-				try {
-					this.selectorCondition.await();
-
-				} catch (InterruptedException e) {
-					// nothing to do
-				} finally {
-					this.selectorLock.unlock();
-				}
+		return false;
+	}
 
-				// reset selector counter for re-selecting one available channel
-				selectCounter = poolSize;
-				index = 0;
-			}
-		} while (result == null);
+	/**
+	 * Wakes up the stubs that are waiting for a ready channel proxy, it costs nothing if no stub is waiting.
+	 */
+	void signalSelectors() {
+		if (this.waitingSelectors.get() == 0) {
+			return;
+		}
 
-		log.info("Select a proxy of client channel. channel proxy: {}", result);
+		this.selectorLock.lock();
+		try {
+			this.selectorCondition.signalAll();
 
-		return result;
+		} finally {
+			this.selectorLock.unlock();
+		}
 	}
 
 	/**
@@ -625,6 +985,7 @@ public class ClientChannelManager {
 			candidates.add(proxy);
 			log.info("Stop a channel proxy from pool. channel proxy: {}", proxy);
 		}
+		this.refreshChannelSnapshot();
 
 		Channel channel = null;
 		for (ChannelProxy candidate : candidates) {
@@ -695,6 +1056,7 @@ public class ClientChannelManager {
 					Channel newChannel = future.channel();
 					channelProxy.setChannel(newChannel);
 					channelProxy.setBootstrap(newBootstrap);
+					negotiateSerializerLater(channelProxy);
 
 					log.info("Finish to reconnect the remote server. channel proxy: {}", channelProxy);
 
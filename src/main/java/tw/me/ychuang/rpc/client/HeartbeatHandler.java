@@ -1,7 +1,6 @@
 package tw.me.ychuang.rpc.client;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
@@ -9,12 +8,10 @@ import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.timeout.IdleStateEvent;
-import io.netty.util.CharsetUtil;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import tw.me.ychuang.rpc.Constants;
 import tw.me.ychuang.rpc.Request;
 import tw.me.ychuang.rpc.json.JsonSerializer;
 
@@ -34,13 +31,15 @@ public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
 	@Override
 	public void userEventTriggered(ChannelHandlerContext context, Object event) throws Exception {
 		if (event instanceof IdleStateEvent) {
-			// create a heartbeat message and convert it to a json message
-			String requestJson = JsonSerializer.getInstance().toJson(Request.HEARTBEAT, Request.class);
+			// create a heartbeat message and convert it to a json message into a pooled buffer directly
+			ByteBuf reqMsgByteBuf = context.alloc().buffer();
+			try {
+				JsonSerializer.getInstance().toJson(Request.HEARTBEAT, Request.class, reqMsgByteBuf);
 
-			StringBuilder requestMsg = new StringBuilder(requestJson);
-			// append a request's boundary
-			requestMsg.append(Constants.REQUEST_BOUNDARY);
-			ByteBuf reqMsgByteBuf = Unpooled.copiedBuffer(requestMsg.toString(), CharsetUtil.UTF_8);
+			} catch (RuntimeException e) {
+				reqMsgByteBuf.release();
+				throw e;
+			}
 
 			// send a heartbeat message to a remote server
 			ChannelFuture future = context.channel().writeAndFlush(reqMsgByteBuf);
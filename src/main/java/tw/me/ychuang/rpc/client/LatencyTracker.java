@@ -0,0 +1,108 @@
+package tw.me.ychuang.rpc.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the peak exponentially weighted moving average (peak-EWMA) of response time of a channel proxy.<br>
+ * A slower response raises the average to its latency at once, a faster response lowers it gradually.<br>
+ * The average also decays toward zero while there is no response, so that a recovering server gets traffic back.
+ * 
+ * @author Y.C. Huang
+ */
+public class LatencyTracker {
+	/**
+	 * The cost of a channel proxy that has waiting requests but no response time yet
+	 */
+	private static final double UNKNOWN_PENALTY = TimeUnit.SECONDS.toNanos(10);
+
+	/**
+	 * A kind of constructor
+	 * 
+	 * @param decayTime the time in which an average decays to 1/e
+	 * @param unit the time unit of the decay time
+	 */
+	public LatencyTracker(long decayTime, TimeUnit unit) {
+		super();
+		this.decayTime = unit.toNanos(decayTime);
+		this.timestamp = System.nanoTime();
+	}
+
+	/**
+	 * The time in nanoseconds in which an average decays to 1/e
+	 */
+	private final long decayTime;
+
+	/**
+	 * The time in nanoseconds of the last update
+	 */
+	private long timestamp;
+
+	/**
+	 * The average of response time in nanoseconds
+	 */
+	private double average = 0;
+
+	/**
+	 * Observes a response time now
+	 * 
+	 * @param latency response time in nanoseconds
+	 */
+	public void observe(long latency) {
+		this.observe(latency, System.nanoTime());
+	}
+
+	/**
+	 * Observes a response time at the specified time
+	 * 
+	 * @param latency response time in nanoseconds
+	 * @param now the current time by {@link System#nanoTime()}
+	 */
+	public synchronized void observe(long latency, long now) {
+		long elapsedTime = Math.max(now - this.timestamp, 0);
+		double weight = Math.exp(-(double) elapsedTime / this.decayTime);
+
+		if (latency > this.average) {
+			this.average = latency;
+		} else {
+			this.average = this.average * weight + latency * (1 - weight);
+		}
+		this.timestamp = Math.max(now, this.timestamp);
+	}
+
+	/**
+	 * Gets the average of response time now
+	 * 
+	 * @return the average of response time in nanoseconds
+	 */
+	public double getAverage() {
+		return this.getAverage(System.nanoTime());
+	}
+
+	/**
+	 * Gets the average of response time at the specified time, it decays since the last update
+	 * 
+	 * @param now the current time by {@link System#nanoTime()}
+	 * @return the average of response time in nanoseconds
+	 */
+	public synchronized double getAverage(long now) {
+		this.observe(0, now);
+
+		return this.average;
+	}
+
+	/**
+	 * Estimates the expected latency of a new request
+	 * 
+	 * @param waitingRequestSize the number of waiting requests
+	 * @param now the current time by {@link System#nanoTime()}
+	 * @return the expected latency in nanoseconds
+	 */
+	public double getCost(int waitingRequestSize, long now) {
+		double average = this.getAverage(now);
+		if (average == 0 && waitingRequestSize > 0) {
+			return UNKNOWN_PENALTY + waitingRequestSize;
+		}
+
+		return average * (waitingRequestSize + 1);
+	}
+}
@@ -0,0 +1,35 @@
+package tw.me.ychuang.rpc.client;
+
+/**
+ * A rule that selects one of channel proxies for a request.<br>
+ * A load balancer is resolved once while the channel manager starts up, and it is shared by all stubs,<br>
+ * so that its selection must be thread-safe and should be lock-free.
+ * 
+ * @author Y.C. Huang
+ */
+public abstract class LoadBalancer {
+
+	/**
+	 * Gets the name of this load balancer, it is the value of 'client.channel.selection.type'
+	 * 
+	 * @return the name of this load balancer
+	 */
+	public abstract String getName();
+
+	/**
+	 * Selects a ready channel proxy, that is available and isn't saturated
+	 * 
+	 * @param channelProxies an immutable snapshot of channel proxies in ascending order by id, it must not be modified
+	 * @return a ready channel proxy or null if no channel proxy is ready
+	 */
+	public abstract ChannelProxy select(ChannelProxy[] channelProxies);
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return this.getName();
+	}
+}
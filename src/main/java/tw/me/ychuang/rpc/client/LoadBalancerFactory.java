@@ -0,0 +1,107 @@
+package tw.me.ychuang.rpc.client;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A registry of load balancers.<br>
+ * The built-in load balancers are always available, other load balancers are plugged in via<br>
+ * {@link ServiceLoader} (META-INF/services/tw.me.ychuang.rpc.client.LoadBalancer) or {@link #register(LoadBalancer)}.
+ * 
+ * @author Y.C. Huang
+ */
+public class LoadBalancerFactory {
+	private static final Logger log = LoggerFactory.getLogger(LoadBalancerFactory.class);
+
+	/**
+	 * Apply a lazy-loaded singleton - Initialization on Demand Holder.<br>
+	 * see detail on right side: http://en.wikipedia.org/wiki/Initialization-on-demand_holder_idiom
+	 */
+	private static class LazyHolder {
+		private static final LoadBalancerFactory INSTANCE = new LoadBalancerFactory();
+	}
+
+	public static LoadBalancerFactory getInstance() {
+		return LazyHolder.INSTANCE;
+	}
+
+	/**
+	 * All registered load balancers by name
+	 */
+	private final ConcurrentMap<String, LoadBalancer> balancerPool = new ConcurrentHashMap<>();
+
+	/**
+	 * The default load balancer
+	 */
+	private final LoadBalancer defaultBalancer;
+
+	private LoadBalancerFactory() {
+		super();
+
+		this.defaultBalancer = new RoundRobinLoadBalancer();
+		this.register(this.defaultBalancer);
+		this.register(new WorkloadLoadBalancer());
+		this.register(new PowerOfTwoChoicesLoadBalancer());
+		this.register(new PeakEwmaLoadBalancer());
+
+		Iterator<LoadBalancer> pluggedBalancers = ServiceLoader.load(LoadBalancer.class).iterator();
+		while (true) {
+			try {
+				if (false == pluggedBalancers.hasNext()) {
+					break;
+				}
+				this.register(pluggedBalancers.next());
+
+			} catch (ServiceConfigurationError e) {
+				log.error("Fail to load a plugged load balancer.", e);
+			}
+		}
+	}
+
+	/**
+	 * Registers a load balancer. A load balancer whose name has been used is ignored.
+	 * 
+	 * @param balancer a load balancer
+	 * @return true if the load balancer is registered
+	 */
+	public boolean register(LoadBalancer balancer) {
+		LoadBalancer existingBalancer = this.balancerPool.putIfAbsent(balancer.getName(), balancer);
+		if (existingBalancer != null) {
+			log.warn("Ignore a load balancer whose name has been used. balancer: {}", balancer);
+			return false;
+		}
+		log.info("Register a load balancer. balancer: {}", balancer);
+
+		return true;
+	}
+
+	/**
+	 * Gets the default load balancer
+	 * 
+	 * @return the Round-Robin load balancer
+	 */
+	public LoadBalancer getDefaultBalancer() {
+		return this.defaultBalancer;
+	}
+
+	/**
+	 * Finds a load balancer by its name
+	 * 
+	 * @param name the name of a load balancer
+	 * @return the matching load balancer or null if not found
+	 */
+	public LoadBalancer findBalancer(String name) {
+		if (StringUtils.isBlank(name)) {
+			return null;
+		}
+
+		return this.balancerPool.get(StringUtils.trim(name));
+	}
+}
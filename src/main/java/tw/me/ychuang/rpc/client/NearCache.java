@@ -0,0 +1,322 @@
+package tw.me.ychuang.rpc.client;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.Command;
+import tw.me.ychuang.rpc.Invalidation;
+import tw.me.ychuang.rpc.Result;
+
+/**
+ * Caches the results of specified methods in client-side, so that a hot lookup is answered locally without any round trip.<br>
+ * A result expires after the time to live of its method, and the least recently used result is evicted while the cache is full.<br>
+ * A result is refreshed ahead in the background once it becomes old, and it is removed at once while the server pushes an invalidation.<br>
+ * The cached results are shared by all stubs, so they must be treated as read-only.
+ *
+ * @author Y.C. Huang
+ */
+public class NearCache {
+	private static final Logger log = LoggerFactory.getLogger(NearCache.class);
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param methodTtls the time in milliseconds a result lives by method, e.g. 'skeleton.method'
+	 * @param maxSize the max number of cached results
+	 * @param refreshRatio a result is refreshed ahead once its age exceeds this ratio of its time to live, it is never refreshed if it is 0
+	 */
+	public NearCache(Map<String, Long> methodTtls, int maxSize, double refreshRatio) {
+		super();
+		this.methodTtls = methodTtls;
+		this.maxSize = Math.max(maxSize, 1);
+		this.refreshRatio = refreshRatio;
+	}
+
+	/**
+	 * The time in milliseconds a result lives by method
+	 */
+	private final Map<String, Long> methodTtls;
+
+	/**
+	 * The max number of cached results
+	 */
+	private final int maxSize;
+
+	/**
+	 * A result is refreshed ahead once its age exceeds this ratio of its time to live
+	 */
+	private final double refreshRatio;
+
+	/**
+	 * The cached results by method, parameter classes and the canonical key of parameters in access order, it is guarded by this cache
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The number of received invalidations, a result that is requested before an invalidation isn't cached
+	 */
+	private final AtomicLong invalidationCounter = new AtomicLong();
+
+	private final AtomicLong hitCounter = new AtomicLong();
+
+	private final AtomicLong missCounter = new AtomicLong();
+
+	private final AtomicLong evictionCounter = new AtomicLong();
+
+	private final AtomicLong refreshCounter = new AtomicLong();
+
+	/**
+	 * A cached result
+	 */
+	private static class Entry {
+		private final Result result;
+
+		private final long expireTime;
+
+		private final long refreshTime;
+
+		private boolean refreshing = false;
+
+		private Entry(Result result, long expireTime, long refreshTime) {
+			this.result = result;
+			this.expireTime = expireTime;
+			this.refreshTime = refreshTime;
+		}
+	}
+
+	/**
+	 * Converts a command to the key of its cached result
+	 *
+	 * @param command a command
+	 * @return a key by method, parameter classes and parameters, or null if the results of the method aren't cached
+	 */
+	public String toKey(Command command) {
+		String methodName = command.getSkeleton() + '.' + command.getMethod();
+		if (false == this.methodTtls.containsKey(methodName)) {
+			return null;
+		}
+
+		// the classes of parameters tell the overloaded methods apart, e.g. m(int) and m(long) with the same value
+		return methodName + Arrays.toString(command.findParamClasses()) + '#' + command.findParameterKey();
+	}
+
+	/**
+	 * Checks whether a key belongs to a method, and to the parameters of an invalidation if it has a key
+	 */
+	private static boolean matches(String key, String methodName, String parameterKey) {
+		if (false == key.startsWith(methodName) || key.length() == methodName.length() || key.charAt(methodName.length()) != '[') {
+			return false;
+		}
+		if (parameterKey == null) {
+			return true;
+		}
+
+		// an invalidation carries no parameter classes, so the results of all overloaded methods with the same parameters are removed
+		int index = key.indexOf("]#", methodName.length());
+
+		return index >= 0 && parameterKey.equals(key.substring(index + 2));
+	}
+
+	/**
+	 * Gets a cached result
+	 *
+	 * @param key the key of a command
+	 * @return a cached result or null if it isn't cached or it has expired
+	 */
+	public Result get(String key) {
+		Result result = null;
+		synchronized (this) {
+			Entry entry = this.entries.get(key);
+			if (entry != null && entry.expireTime - System.nanoTime() <= 0) {
+				this.entries.remove(key);
+				entry = null;
+			}
+			result = entry != null ? entry.result : null;
+		}
+
+		if (result == null) {
+			this.missCounter.incrementAndGet();
+		} else {
+			this.hitCounter.incrementAndGet();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Marks a cached result to be refreshed if it is old and nobody refreshes it
+	 *
+	 * @param key the key of a command
+	 * @return true if the caller should refresh the result
+	 */
+	public boolean tryRefresh(String key) {
+		if (this.refreshRatio <= 0) {
+			return false;
+		}
+
+		synchronized (this) {
+			Entry entry = this.entries.get(key);
+			if (entry == null || entry.refreshing || entry.refreshTime - System.nanoTime() > 0) {
+				return false;
+			}
+			entry.refreshing = true;
+		}
+		this.refreshCounter.incrementAndGet();
+
+		return true;
+	}
+
+	/**
+	 * Gets the version of this cache, it is changed by every invalidation
+	 *
+	 * @return the number of received invalidations
+	 */
+	public long getVersion() {
+		return this.invalidationCounter.get();
+	}
+
+	/**
+	 * Caches a result unless any invalidation is received since it is requested
+	 *
+	 * @param key the key of a command
+	 * @param result a result, an exceptional one isn't cached
+	 * @param version the version of this cache while the result is requested
+	 */
+	public void put(String key, Result result, long version) {
+		String methodName = key.substring(0, key.indexOf('['));
+		Long ttl = this.methodTtls.get(methodName);
+		if (ttl == null) {
+			return;
+		}
+		if (result == null || result.isExceptional()) {
+			// the old result is kept until it expires, and the next hit refreshes it again
+			this.finishRefresh(key);
+			return;
+		}
+
+		long now = System.nanoTime();
+		long ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+		Entry entry = new Entry(result, now + ttlNanos, now + (long) (ttlNanos * this.refreshRatio));
+
+		synchronized (this) {
+			// the result may be stale if an invalidation has arrived after it was requested
+			if (version != this.invalidationCounter.get()) {
+				this.finishRefresh(key);
+				return;
+			}
+
+			this.entries.put(key, entry);
+			while (this.entries.size() > this.maxSize) {
+				Iterator<String> keys = this.entries.keySet().iterator();
+				keys.next();
+				keys.remove();
+				this.evictionCounter.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Unmarks a result that is failed to be refreshed, so that the next hit refreshes it again
+	 *
+	 * @param key the key of a command
+	 */
+	public void finishRefresh(String key) {
+		synchronized (this) {
+			Entry entry = this.entries.get(key);
+			if (entry != null) {
+				entry.refreshing = false;
+			}
+		}
+	}
+
+	/**
+	 * Removes the results that are changed on the server
+	 *
+	 * @param invalidation an invalidation that is pushed by the server
+	 */
+	public void invalidate(Invalidation invalidation) {
+		String methodName = invalidation.getSkeleton() + '.' + invalidation.getMethod();
+
+		synchronized (this) {
+			this.invalidationCounter.incrementAndGet();
+
+			// all results of the method are changed if the invalidation has no key
+			Iterator<String> keys = this.entries.keySet().iterator();
+			while (keys.hasNext()) {
+				if (matches(keys.next(), methodName, invalidation.getKey())) {
+					keys.remove();
+				}
+			}
+		}
+		log.debug("Receive an invalidation. invalidation: {}", invalidation);
+	}
+
+	/**
+	 * Removes all cached results
+	 */
+	public void clear() {
+		synchronized (this) {
+			this.invalidationCounter.incrementAndGet();
+			this.entries.clear();
+		}
+	}
+
+	/**
+	 * Gets the number of cached results, the expired ones are counted until they are removed
+	 *
+	 * @return the number of cached results
+	 */
+	public int getSize() {
+		synchronized (this) {
+			return this.entries.size();
+		}
+	}
+
+	/**
+	 * Gets the number of commands that are answered by cached results
+	 *
+	 * @return the number of hits
+	 */
+	public long getHitCount() {
+		return this.hitCounter.get();
+	}
+
+	/**
+	 * Gets the number of commands of cached methods that are sent to the server
+	 *
+	 * @return the number of misses
+	 */
+	public long getMissCount() {
+		return this.missCounter.get();
+	}
+
+	/**
+	 * Gets the number of results that are evicted since this cache is full
+	 *
+	 * @return the number of evictions
+	 */
+	public long getEvictionCount() {
+		return this.evictionCounter.get();
+	}
+
+	/**
+	 * Gets the number of results that are refreshed ahead
+	 *
+	 * @return the number of refreshes
+	 */
+	public long getRefreshCount() {
+		return this.refreshCounter.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("NearCache-%d/%d", this.getSize(), this.maxSize);
+	}
+}
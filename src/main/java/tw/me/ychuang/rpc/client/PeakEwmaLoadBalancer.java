@@ -0,0 +1,34 @@
+package tw.me.ychuang.rpc.client;
+
+import tw.me.ychuang.rpc.Constants.ChannelSelectionType;
+
+/**
+ * Samples two random channel proxies and selects the available one with lower expected latency.<br>
+ * The expected latency is the peak-EWMA of response time weighted by the number of waiting requests, see {@link LatencyTracker}.
+ * 
+ * @author Y.C. Huang
+ */
+public class PeakEwmaLoadBalancer extends TwoChoicesLoadBalancer {
+
+	PeakEwmaLoadBalancer() {
+		super();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.client.LoadBalancer#getName()
+	 */
+	@Override
+	public String getName() {
+		return ChannelSelectionType.peak_ewma.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.client.TwoChoicesLoadBalancer#cost(tw.me.ychuang.rpc.client.ChannelProxy, long)
+	 */
+	@Override
+	protected double cost(ChannelProxy channelProxy, long now) {
+		return channelProxy.getLatencyTracker().getCost(channelProxy.getWaitingRequestSize(), now);
+	}
+}
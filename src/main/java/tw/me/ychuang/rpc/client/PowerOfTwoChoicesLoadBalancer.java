@@ -0,0 +1,34 @@
+package tw.me.ychuang.rpc.client;
+
+import tw.me.ychuang.rpc.Constants.ChannelSelectionType;
+
+/**
+ * Samples two random channel proxies and selects the available one with fewer waiting requests.<br>
+ * The selection cost is constant, and concurrent callers don't pile onto the same least loaded channel proxy.
+ * 
+ * @author Y.C. Huang
+ */
+public class PowerOfTwoChoicesLoadBalancer extends TwoChoicesLoadBalancer {
+
+	PowerOfTwoChoicesLoadBalancer() {
+		super();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.client.LoadBalancer#getName()
+	 */
+	@Override
+	public String getName() {
+		return ChannelSelectionType.power_of_two_choices.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.client.TwoChoicesLoadBalancer#cost(tw.me.ychuang.rpc.client.ChannelProxy, long)
+	 */
+	@Override
+	protected double cost(ChannelProxy channelProxy, long now) {
+		return channelProxy.getWaitingRequestSize();
+	}
+}
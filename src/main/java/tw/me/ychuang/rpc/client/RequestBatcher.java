@@ -0,0 +1,185 @@
+package tw.me.ychuang.rpc.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.Request;
+import tw.me.ychuang.rpc.Response;
+import tw.me.ychuang.rpc.ResponseFuture;
+
+/**
+ * Gathers the requests bound for the same channel within a short window, and sends them as one batch message.<br>
+ * A batch is sent once the window after its first request has passed or it is full, so that a burst of tiny requests costs one frame and one
+ * flush.<br>
+ * The server answers the requests of a batch that are ready at once by one batch response, and the slower ones by their own responses,<br>
+ * each response finishes the future with the same id.
+ *
+ * @author Y.C. Huang
+ */
+public class RequestBatcher {
+	private static final Logger log = LoggerFactory.getLogger(RequestBatcher.class);
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param channelProxy the channel proxy whose requests are gathered
+	 * @param window the time in microseconds a batch waits for more requests after its first one
+	 * @param maxSize the max number of requests of a batch
+	 */
+	public RequestBatcher(ChannelProxy channelProxy, long window, int maxSize) {
+		super();
+		this.channelProxy = channelProxy;
+		this.window = window;
+		this.maxSize = Math.max(maxSize, 1);
+	}
+
+	/**
+	 * The channel proxy whose requests are gathered
+	 */
+	private final ChannelProxy channelProxy;
+
+	/**
+	 * The time in microseconds a batch waits for more requests after its first one
+	 */
+	private final long window;
+
+	/**
+	 * The max number of requests of a batch
+	 */
+	private final int maxSize;
+
+	/**
+	 * The requests of the gathering batch, it is guarded by this batcher
+	 */
+	private List<Request> requests = new ArrayList<>();
+
+	/**
+	 * The response futures of the gathering batch, it is guarded by this batcher
+	 */
+	private List<ResponseFuture<Response>> futures = new ArrayList<>();
+
+	private final AtomicLong batchCounter = new AtomicLong();
+
+	private final AtomicLong requestCounter = new AtomicLong();
+
+	/**
+	 * Sends the gathering batch once its window has passed
+	 */
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			RequestBatcher.this.flush();
+		}
+	};
+
+	/**
+	 * Adds a request into the gathering batch, the batch is sent at once if it is full
+	 *
+	 * @param request a request
+	 * @param future the response future of the request
+	 */
+	public void add(Request request, ResponseFuture<Response> future) {
+		boolean first = false;
+		boolean full = false;
+		synchronized (this) {
+			this.requests.add(request);
+			this.futures.add(future);
+			first = this.requests.size() == 1;
+			full = this.requests.size() >= this.maxSize;
+		}
+
+		if (full) {
+			this.flush();
+		} else if (first) {
+			this.channelProxy.getChannel().eventLoop().schedule(this.flushTask, this.window, TimeUnit.MICROSECONDS);
+		}
+	}
+
+	/**
+	 * Sends the gathering batch, a batch of one request is sent as a plain request
+	 */
+	public void flush() {
+		final List<Request> requests;
+		final List<ResponseFuture<Response>> futures;
+		synchronized (this) {
+			if (this.requests.isEmpty()) {
+				return;
+			}
+			requests = this.requests;
+			futures = this.futures;
+			this.requests = new ArrayList<>();
+			this.futures = new ArrayList<>();
+		}
+
+		Channel channel = this.channelProxy.getChannel();
+		ByteBuf reqMsgByteBuf = channel.alloc().buffer();
+		try {
+			Request request = requests.size() == 1 ? requests.get(0) : new Request(requests);
+			this.channelProxy.getSerializer().serialize(request, Request.class, reqMsgByteBuf);
+
+		} catch (RuntimeException e) {
+			reqMsgByteBuf.release();
+			log.error("Fail to serialize a batch request. size: {}, channel proxy: {}", requests.size(), this.channelProxy, e);
+			cancel(futures);
+			return;
+		}
+		this.batchCounter.incrementAndGet();
+		this.requestCounter.addAndGet(requests.size());
+
+		// write a batch message into the channel
+		ChannelFuture channelFuture = channel.writeAndFlush(reqMsgByteBuf);
+		channelFuture.addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture writeFuture) {
+				if (writeFuture.isSuccess()) {
+					log.info("Finish to send the requests of a batch to the remote server. size: {}", requests.size());
+
+				} else {
+					log.error("Fail to send the requests of a batch to the remote server.", writeFuture.cause());
+
+					// no response will come back, so the waiting stub threads or listeners are signaled right now
+					cancel(futures);
+				}
+			}
+		});
+	}
+
+	private static void cancel(List<ResponseFuture<Response>> futures) {
+		for (ResponseFuture<Response> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Gets the number of sent batches
+	 *
+	 * @return the number of batches
+	 */
+	public long getBatchCount() {
+		return this.batchCounter.get();
+	}
+
+	/**
+	 * Gets the number of requests that are sent by batches
+	 *
+	 * @return the number of requests
+	 */
+	public long getRequestCount() {
+		return this.requestCounter.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RequestBatcher-%d/%d", this.window, this.maxSize);
+	}
+}
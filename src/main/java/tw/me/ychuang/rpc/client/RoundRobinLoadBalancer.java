@@ -0,0 +1,53 @@
+package tw.me.ychuang.rpc.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import tw.me.ychuang.rpc.Constants.ChannelSelectionType;
+
+/**
+ * Selects channel proxies in turn by an atomic counter, a broken or saturated channel proxy is skipped.
+ * 
+ * @author Y.C. Huang
+ */
+public class RoundRobinLoadBalancer extends LoadBalancer {
+	/**
+	 * The counter of selections, it wraps around while it overflows
+	 */
+	private final AtomicInteger counter = new AtomicInteger();
+
+	RoundRobinLoadBalancer() {
+		super();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.client.LoadBalancer#getName()
+	 */
+	@Override
+	public String getName() {
+		return ChannelSelectionType.round_robin.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.client.LoadBalancer#select(tw.me.ychuang.rpc.client.ChannelProxy[])
+	 */
+	@Override
+	public ChannelProxy select(ChannelProxy[] channelProxies) {
+		int poolSize = channelProxies.length;
+		if (poolSize == 0) {
+			return null;
+		}
+
+		// the sign bit is dropped so that the index is never negative after overflow
+		int start = (this.counter.getAndIncrement() & Integer.MAX_VALUE) % poolSize;
+		for (int i = 0; i < poolSize; i++) {
+			ChannelProxy candidate = channelProxies[(start + i) % poolSize];
+			if (candidate.isReady()) {
+				return candidate;
+			}
+		}
+
+		return null;
+	}
+}
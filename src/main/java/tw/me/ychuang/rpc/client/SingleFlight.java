@@ -0,0 +1,140 @@
+package tw.me.ychuang.rpc.client;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.Command;
+import tw.me.ychuang.rpc.Response;
+import tw.me.ychuang.rpc.ResponseFuture;
+import tw.me.ychuang.rpc.ResponseListener;
+
+/**
+ * Coalesces the identical commands that are sent at the same time in client-side, so that a burst of them becomes one request.<br>
+ * The first command of a flight sends a request, and the others share its response future until it is done.<br>
+ * The shared future expires by the timeout of the first command, and cancelling it cancels the request of all sharers.
+ *
+ * @author Y.C. Huang
+ */
+public class SingleFlight {
+	private static final Logger log = LoggerFactory.getLogger(SingleFlight.class);
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param methodNames the coalesced methods, e.g. 'skeleton.method'
+	 */
+	public SingleFlight(Set<String> methodNames) {
+		super();
+		this.methodNames = methodNames;
+	}
+
+	/**
+	 * The coalesced methods
+	 */
+	private final Set<String> methodNames;
+
+	/**
+	 * The response futures of the requests in flight by method, parameter classes and the canonical key of parameters
+	 */
+	private final ConcurrentMap<String, ResponseFuture<Response>> flights = new ConcurrentHashMap<>();
+
+	private final AtomicLong callCounter = new AtomicLong();
+
+	private final AtomicLong sharedCounter = new AtomicLong();
+
+	/**
+	 * Converts a command to the key of its flight
+	 *
+	 * @param command a command
+	 * @return a key by method, parameter classes and parameters, or null if the commands of the method aren't coalesced
+	 */
+	public String toKey(Command command) {
+		String methodName = command.getSkeleton() + '.' + command.getMethod();
+		if (false == this.methodNames.contains(methodName)) {
+			return null;
+		}
+
+		// the classes of parameters tell the overloaded methods apart, e.g. m(int) and m(long) with the same value
+		return methodName + Arrays.toString(command.findParamClasses()) + '#' + command.findParameterKey();
+	}
+
+	/**
+	 * Joins the flight of an identical command
+	 *
+	 * @param key the key of a command
+	 * @return the shared response future or null if no identical command is in flight
+	 */
+	public ResponseFuture<Response> join(String key) {
+		this.callCounter.incrementAndGet();
+
+		ResponseFuture<Response> future = this.flights.get(key);
+		if (future == null || future.isDone()) {
+			return null;
+		}
+		this.sharedCounter.incrementAndGet();
+		log.debug("Share the response future of an identical command in flight. key: {}", key);
+
+		return future;
+	}
+
+	/**
+	 * Leads a flight by the response future of a sent command, it ends once the future is done
+	 *
+	 * @param key the key of a command
+	 * @param future the response future of a sent command
+	 */
+	public void lead(final String key, final ResponseFuture<Response> future) {
+		if (future.isDone()) {
+			return;
+		}
+
+		// the identical commands that are sent at the same moment may lead their own flights, the latest one is shared
+		this.flights.put(key, future);
+		future.addListener(new ResponseListener<Response>() {
+			@Override
+			public void operationComplete(ResponseFuture<Response> future) {
+				SingleFlight.this.flights.remove(key, future);
+			}
+		}, null);
+	}
+
+	/**
+	 * Gets the number of commands of the coalesced methods
+	 *
+	 * @return the number of calls
+	 */
+	public long getCallCount() {
+		return this.callCounter.get();
+	}
+
+	/**
+	 * Gets the number of commands that share the response future of an identical command in flight
+	 *
+	 * @return the number of shared calls
+	 */
+	public long getSharedCount() {
+		return this.sharedCounter.get();
+	}
+
+	/**
+	 * Gets the ratio of commands that don't send a request themselves
+	 *
+	 * @return the coalescing ratio between 0 and 1
+	 */
+	public double getCoalescingRatio() {
+		long callCount = this.callCounter.get();
+
+		return callCount > 0 ? (double) this.sharedCounter.get() / callCount : 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("SingleFlight-%d/%d", this.getSharedCount(), this.getCallCount());
+	}
+}
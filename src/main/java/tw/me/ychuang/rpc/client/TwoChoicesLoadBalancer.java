@@ -0,0 +1,76 @@
+package tw.me.ychuang.rpc.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Samples two random channel proxies and selects the available one with the lower cost.<br>
+ * The selection cost is constant, and concurrent callers don't pile onto the same cheapest channel proxy.<br>
+ * A subclass defines the cost of a channel proxy, see {@link #cost(ChannelProxy, long)}.
+ * 
+ * @author Y.C. Huang
+ */
+public abstract class TwoChoicesLoadBalancer extends LoadBalancer {
+
+	protected TwoChoicesLoadBalancer() {
+		super();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.client.LoadBalancer#select(tw.me.ychuang.rpc.client.ChannelProxy[])
+	 */
+	@Override
+	public ChannelProxy select(ChannelProxy[] channelProxies) {
+		int poolSize = channelProxies.length;
+		if (poolSize == 0) {
+			return null;
+		}
+		if (poolSize == 1) {
+			return channelProxies[0].isReady() ? channelProxies[0] : null;
+		}
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		// pick two distinct channel proxies
+		int first = random.nextInt(poolSize);
+		int second = random.nextInt(poolSize - 1);
+		if (second >= first) {
+			++second;
+		}
+
+		ChannelProxy firstCandidate = channelProxies[first];
+		ChannelProxy secondCandidate = channelProxies[second];
+		boolean firstAvailable = firstCandidate.isReady();
+		boolean secondAvailable = secondCandidate.isReady();
+
+		if (firstAvailable && secondAvailable) {
+			long now = System.nanoTime();
+			return this.cost(firstCandidate, now) <= this.cost(secondCandidate, now) ? firstCandidate : secondCandidate;
+		}
+		if (firstAvailable) {
+			return firstCandidate;
+		}
+		if (secondAvailable) {
+			return secondCandidate;
+		}
+
+		// both samples are broken, so falls back to the first available channel proxy from a random start
+		for (int i = 1; i <= poolSize; i++) {
+			ChannelProxy candidate = channelProxies[(first + i) % poolSize];
+			if (candidate.isReady()) {
+				return candidate;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the cost of sending a request by an available channel proxy, the lower one of two samples is selected
+	 * 
+	 * @param channelProxy an available channel proxy
+	 * @param now the current time in nanoseconds, it is shared by both samples
+	 * @return the cost of the channel proxy
+	 */
+	protected abstract double cost(ChannelProxy channelProxy, long now);
+}
@@ -0,0 +1,48 @@
+package tw.me.ychuang.rpc.client;
+
+import tw.me.ychuang.rpc.Constants.ChannelSelectionType;
+
+/**
+ * Selects the available channel proxy with the fewest waiting requests, the one with the lower id wins a tie.
+ * 
+ * @author Y.C. Huang
+ */
+public class WorkloadLoadBalancer extends LoadBalancer {
+
+	WorkloadLoadBalancer() {
+		super();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.client.LoadBalancer#getName()
+	 */
+	@Override
+	public String getName() {
+		return ChannelSelectionType.workload.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.client.LoadBalancer#select(tw.me.ychuang.rpc.client.ChannelProxy[])
+	 */
+	@Override
+	public ChannelProxy select(ChannelProxy[] channelProxies) {
+		ChannelProxy result = null;
+		int minWorkload = Integer.MAX_VALUE;
+
+		for (ChannelProxy candidate : channelProxies) {
+			if (false == candidate.isReady()) {
+				continue;
+			}
+
+			int workload = candidate.getWaitingRequestSize();
+			if (workload < minWorkload) {
+				result = candidate;
+				minWorkload = workload;
+			}
+		}
+
+		return result;
+	}
+}
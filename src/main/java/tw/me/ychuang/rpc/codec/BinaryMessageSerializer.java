@@ -0,0 +1,351 @@
+package tw.me.ychuang.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.EncoderException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import tw.me.ychuang.rpc.Command;
+import tw.me.ychuang.rpc.Request;
+import tw.me.ychuang.rpc.Response;
+import tw.me.ychuang.rpc.Result;
+
+/**
+ * A message serializer that writes and reads a compact binary form by {@link BinaryObjectCodec}.<br>
+ * Primitives, strings, dates, and POJOs are encoded without any text round trip.
+ *
+ * @author Y.C. Huang
+ */
+public class BinaryMessageSerializer extends MessageSerializer {
+	public static final String NAME = "binary";
+
+	/**
+	 * It never collides with the first byte of a JSON message
+	 */
+	private static final byte MARKER = (byte) 0xB1;
+
+	/**
+	 * A request has no command or a response has no result
+	 */
+	private static final byte NONE = 0;
+
+	/**
+	 * A request has a command or a response has a result
+	 */
+	private static final byte SINGLE = 1;
+
+	/**
+	 * A request or a response is a batch, each message of it is prefixed by its length
+	 */
+	private static final byte BATCH = 2;
+
+	/**
+	 * A result has a version
+	 */
+	private static final byte VERSION_FLAG = 0x01;
+
+	/**
+	 * A result is unchanged since the version that the client holds
+	 */
+	private static final byte NOT_MODIFIED_FLAG = 0x02;
+
+	BinaryMessageSerializer() {
+		super();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#getName()
+	 */
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#getMarker()
+	 */
+	@Override
+	public byte getMarker() {
+		return MARKER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#serialize(java.lang.Object, java.lang.Class, io.netty.buffer.ByteBuf)
+	 */
+	@Override
+	public void serialize(Object message, Class<?> messageClass, ByteBuf out) {
+		out.writeByte(MARKER);
+
+		if (message instanceof Request) {
+			this.writeRequest(out, (Request) message);
+
+		} else if (message instanceof Response) {
+			this.writeResponse(out, (Response) message);
+
+		} else {
+			throw new EncoderException("Unsupported message class: " + messageClass.getName());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#serializeResult(tw.me.ychuang.rpc.Result, io.netty.buffer.ByteBuf)
+	 */
+	@Override
+	public void serializeResult(Result result, ByteBuf out) {
+		this.writeResult(out, result);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#serializeResponse(long, io.netty.buffer.ByteBuf, io.netty.buffer.ByteBuf)
+	 */
+	@Override
+	public void serializeResponse(long id, ByteBuf result, ByteBuf out) {
+		out.writeByte(MARKER);
+		BinaryObjectCodec.writeVarLong(out, BinaryObjectCodec.zigZag(id));
+		out.writeBytes(result, result.readerIndex(), result.readableBytes());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#serializeVersionedResponse(long, io.netty.buffer.ByteBuf, java.lang.String,
+	 * io.netty.buffer.ByteBuf)
+	 */
+	@Override
+	public void serializeVersionedResponse(long id, ByteBuf result, String version, ByteBuf out) {
+		this.serializeResponse(id, result, out);
+
+		// the same trailer that is appended to a result with a version
+		out.writeByte(VERSION_FLAG);
+		BinaryObjectCodec.writeString(out, version);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#serializeBatch(java.util.List, java.lang.Class, io.netty.buffer.ByteBuf)
+	 */
+	@Override
+	public void serializeBatch(List<ByteBuf> messages, Class<?> messageClass, ByteBuf out) {
+		out.writeByte(MARKER);
+		BinaryObjectCodec.writeVarLong(out, BinaryObjectCodec.zigZag(0));
+		if (Request.class.equals(messageClass)) {
+			BinaryObjectCodec.writeVarLong(out, 0);
+		}
+
+		out.writeByte(BATCH);
+		BinaryObjectCodec.writeVarInt(out, messages.size());
+		for (ByteBuf message : messages) {
+			out.writeInt(message.readableBytes());
+			out.writeBytes(message, message.readerIndex(), message.readableBytes());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#deserialize(io.netty.buffer.ByteBuf, java.lang.Class)
+	 */
+	@Override
+	public <T> T deserialize(ByteBuf in, Class<T> messageClass) {
+		byte marker = in.readByte();
+		if (marker != MARKER) {
+			throw new DecoderException("Receive a message with unknown marker: " + marker);
+		}
+
+		Object message = null;
+		if (Request.class.equals(messageClass)) {
+			message = this.readRequest(in, true);
+
+		} else if (Response.class.equals(messageClass)) {
+			message = this.readResponse(in, true);
+
+		} else {
+			throw new DecoderException("Unsupported message class: " + messageClass.getName());
+		}
+
+		return messageClass.cast(message);
+	}
+
+	private void writeRequest(ByteBuf out, Request request) {
+		BinaryObjectCodec.writeVarLong(out, BinaryObjectCodec.zigZag(request.getId()));
+		BinaryObjectCodec.writeVarLong(out, request.getTimeout());
+
+		if (request.isBatch()) {
+			out.writeByte(BATCH);
+			this.writeBatch(out, request.getBatch(), Request.class);
+			return;
+		}
+
+		Command command = request.getCommand();
+		if (command == null) {
+			out.writeByte(NONE);
+			return;
+		}
+		out.writeByte(SINGLE);
+
+		BinaryObjectCodec.writeString(out, command.getSkeleton());
+		BinaryObjectCodec.writeString(out, command.getMethod());
+		out.writeBoolean(command.isStaticMethod());
+
+		List<Object> parameters = command.getParameters();
+		int paramSize = command.getParamClasses().size();
+
+		BinaryObjectCodec.writeVarInt(out, paramSize);
+		for (int i = 0; i < paramSize; i++) {
+			Class<?> paramClass = command.getParamClasses().get(i);
+			BinaryObjectCodec.writeString(out, paramClass.getName());
+			BinaryObjectCodec.writeValue(out, parameters.get(i), paramClass);
+		}
+
+		// the version of a conditional request is appended, so that an unconditional request keeps the same bytes
+		if (request.isConditional()) {
+			BinaryObjectCodec.writeString(out, request.getVersion());
+		}
+	}
+
+	private Request readRequest(ByteBuf in, boolean batchAllowed) {
+		long id = BinaryObjectCodec.unZigZag(BinaryObjectCodec.readVarLong(in));
+		long timeout = BinaryObjectCodec.readVarLong(in);
+
+		byte kind = in.readByte();
+		if (kind == BATCH) {
+			checkBatchAllowed(batchAllowed);
+			return new Request(this.readBatch(in, Request.class));
+		}
+		if (kind == NONE) {
+			return new Request(id, null);
+		}
+
+		String skeleton = BinaryObjectCodec.readString(in);
+		String method = BinaryObjectCodec.readString(in);
+		boolean staticMethod = in.readBoolean();
+
+		Command command = new Command(skeleton, method, staticMethod);
+
+		int paramSize = BinaryObjectCodec.readSize(in);
+		for (int i = 0; i < paramSize; i++) {
+			Class<?> paramClass = BinaryObjectCodec.findClass(BinaryObjectCodec.readString(in));
+			Object parameter = BinaryObjectCodec.readValue(in, paramClass);
+			command.addParameter(parameter, paramClass);
+		}
+
+		String version = in.isReadable() ? BinaryObjectCodec.readString(in) : null;
+
+		return new Request(id, command, timeout, version);
+	}
+
+	private void writeResponse(ByteBuf out, Response response) {
+		BinaryObjectCodec.writeVarLong(out, BinaryObjectCodec.zigZag(response.getId()));
+		if (response.isBatch()) {
+			out.writeByte(BATCH);
+			this.writeBatch(out, response.getBatch(), Response.class);
+			return;
+		}
+
+		this.writeResult(out, response.getResult());
+	}
+
+	/**
+	 * Writes the messages of a batch, each of them is a whole message that is prefixed by its length
+	 */
+	private void writeBatch(ByteBuf out, List<?> messages, Class<?> messageClass) {
+		BinaryObjectCodec.writeVarInt(out, messages.size());
+		for (Object message : messages) {
+			int lengthIndex = out.writerIndex();
+			out.writeInt(0);
+			this.serialize(message, messageClass, out);
+			out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+		}
+	}
+
+	/**
+	 * Reads the messages of a batch, each of them is read from its own slice, so that its optional trailer is detected
+	 */
+	private <T> List<T> readBatch(ByteBuf in, Class<T> messageClass) {
+		int size = BinaryObjectCodec.readSize(in);
+		List<T> messages = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			int length = in.readInt();
+			if (length < 0 || length > in.readableBytes()) {
+				throw new DecoderException("Receive a message of a batch that exceeds the readable bytes. length: " + length);
+			}
+			ByteBuf message = in.readSlice(length);
+
+			byte marker = message.readByte();
+			if (marker != MARKER) {
+				throw new DecoderException("Receive a message with unknown marker: " + marker);
+			}
+			Object batchMessage = Request.class.equals(messageClass) ? this.readRequest(message, false) : this.readResponse(message, false);
+			messages.add(messageClass.cast(batchMessage));
+		}
+
+		return messages;
+	}
+
+	/**
+	 * Rejects a batch that is nested in another batch, so that a peer can't recurse without a limit
+	 */
+	private static void checkBatchAllowed(boolean batchAllowed) {
+		if (false == batchAllowed) {
+			throw new DecoderException("Receive a batch that is nested in another batch.");
+		}
+	}
+
+	private void writeResult(ByteBuf out, Result result) {
+		if (result == null) {
+			out.writeByte(NONE);
+			return;
+		}
+		out.writeByte(SINGLE);
+
+		BinaryObjectCodec.writeString(out, result.getReturnClass().getName());
+
+		if (result.isExceptional() && result.getReturn() instanceof Throwable) {
+			// only the stack trace of an exception is sent as the JSON form does
+			String stackTraceMessage = ExceptionUtils.getStackTrace((Throwable) result.getReturn());
+			BinaryObjectCodec.writeValue(out, stackTraceMessage, String.class);
+
+		} else {
+			BinaryObjectCodec.writeValue(out, result.getReturn(), result.getReturnClass());
+		}
+
+		// the version and the not modified status of a conditional request are appended only if they are present
+		byte flags = (byte) ((result.getVersion() != null ? VERSION_FLAG : 0) | (result.isNotModified() ? NOT_MODIFIED_FLAG : 0));
+		if (flags != 0) {
+			out.writeByte(flags);
+			if (result.getVersion() != null) {
+				BinaryObjectCodec.writeString(out, result.getVersion());
+			}
+		}
+	}
+
+	private Response readResponse(ByteBuf in, boolean batchAllowed) {
+		long id = BinaryObjectCodec.unZigZag(BinaryObjectCodec.readVarLong(in));
+
+		byte kind = in.readByte();
+		if (kind == BATCH) {
+			checkBatchAllowed(batchAllowed);
+			return new Response(this.readBatch(in, Response.class));
+		}
+		if (kind == NONE) {
+			return new Response(id, null, null);
+		}
+
+		Class<?> resultClass = BinaryObjectCodec.findClass(BinaryObjectCodec.readString(in));
+		Object resultObj = BinaryObjectCodec.readValue(in, resultClass);
+
+		byte flags = in.isReadable() ? in.readByte() : 0;
+		String version = (flags & VERSION_FLAG) != 0 ? BinaryObjectCodec.readString(in) : null;
+
+		Result result = new Result(resultObj, resultClass, version, (flags & NOT_MODIFIED_FLAG) != 0);
+
+		return new Response(id, result, resultClass.getName());
+	}
+}
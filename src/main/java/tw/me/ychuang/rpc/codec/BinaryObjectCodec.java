@@ -0,0 +1,654 @@
+package tw.me.ychuang.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.EncoderException;
+import io.netty.util.CharsetUtil;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import tw.me.ychuang.rpc.Invalidation;
+
+/**
+ * Encodes and decodes primitives, strings, dates, enumerations, arrays, collections, maps, and POJOs to / from a compact binary form.<br>
+ * Every value is prefixed by a one-byte tag. The fields of a POJO are written in the order of their names,<br>
+ * so both sides must share the same shape of a POJO class.<br>
+ * A POJO is constructed from a message only if its class is allowed by {@link #allowClasses(String)}, and a typed POJO must be a
+ * subtype of its declared class.<br>
+ * Every size that is read from a message is checked against the readable bytes before anything is allocated, and the values are
+ * nested up to {@value #MAX_DEPTH} levels.
+ *
+ * @author Y.C. Huang
+ */
+public class BinaryObjectCodec {
+	private static final byte TAG_NULL = 0;
+
+	private static final byte TAG_TRUE = 1;
+
+	private static final byte TAG_FALSE = 2;
+
+	private static final byte TAG_BYTE = 3;
+
+	private static final byte TAG_CHAR = 4;
+
+	private static final byte TAG_SHORT = 5;
+
+	private static final byte TAG_INT = 6;
+
+	private static final byte TAG_LONG = 7;
+
+	private static final byte TAG_FLOAT = 8;
+
+	private static final byte TAG_DOUBLE = 9;
+
+	private static final byte TAG_STRING = 10;
+
+	private static final byte TAG_DATE = 11;
+
+	private static final byte TAG_ENUM = 12;
+
+	private static final byte TAG_BIG_INTEGER = 13;
+
+	private static final byte TAG_BIG_DECIMAL = 14;
+
+	private static final byte TAG_ARRAY = 15;
+
+	private static final byte TAG_LIST = 16;
+
+	private static final byte TAG_SET = 17;
+
+	private static final byte TAG_MAP = 18;
+
+	/**
+	 * A POJO whose class is the same as the declared class
+	 */
+	private static final byte TAG_OBJECT = 19;
+
+	/**
+	 * A POJO whose class name is written ahead of its fields
+	 */
+	private static final byte TAG_TYPED_OBJECT = 20;
+
+	/**
+	 * The max depth of nested arrays, collections, maps, and POJOs in a message
+	 */
+	private static final int MAX_DEPTH = 64;
+
+	/**
+	 * Caches the classes that are looked up by name
+	 */
+	private static final ConcurrentMap<String, Class<?>> classCache = new ConcurrentHashMap<>();
+
+	/**
+	 * Caches the serializable fields and the default constructor of POJO classes
+	 */
+	private static final ConcurrentMap<Class<?>, ClassMetadata> metadataCache = new ConcurrentHashMap<>();
+
+	/**
+	 * The class names or package patterns, e.g. 'tw.me.ychuang.rpc.*', whose POJOs may be constructed from a message
+	 */
+	private static final Set<String> allowedClasses = new CopyOnWriteArraySet<>(Arrays.asList(Invalidation.class.getName()));
+
+	/**
+	 * The caller should be prevented from constructing objects of this class, by declaring this private constructor.
+	 */
+	private BinaryObjectCodec() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Finds a class by its name, primitive names such as 'long' are accepted as well.<br>
+	 * The class is loaded without being initialized, so that a peer can't run the static initializer of an arbitrary class.
+	 *
+	 * @param className a class name
+	 * @return the matching class
+	 */
+	public static Class<?> findClass(String className) {
+		Class<?> clazz = classCache.get(className);
+		if (clazz != null) {
+			return clazz;
+		}
+
+		try {
+			clazz = ClassUtils.getClass(BinaryObjectCodec.class.getClassLoader(), className, false);
+		} catch (ClassNotFoundException e) {
+			throw new DecoderException("Cannot find a matching class by name: " + className, e);
+		}
+		classCache.putIfAbsent(className, clazz);
+
+		return clazz;
+	}
+
+	/**
+	 * Allows the POJOs of classes to be constructed from a message
+	 *
+	 * @param classNames a comma-separated list of class names or package patterns, e.g. 'tw.me.ychuang.rpc.*'
+	 */
+	public static void allowClasses(String classNames) {
+		for (String className : StringUtils.split(StringUtils.defaultString(classNames), ',')) {
+			if (StringUtils.isNotBlank(className)) {
+				allowedClasses.add(className.trim());
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the POJOs of a class may be constructed from a message
+	 *
+	 * @param clazz a class
+	 * @return true if the class or its package is allowed
+	 */
+	public static boolean isAllowed(Class<?> clazz) {
+		return isAllowed(clazz.getName());
+	}
+
+	/**
+	 * Checks whether the POJOs of a class may be constructed from a message, before the class is loaded
+	 *
+	 * @param className a class name
+	 * @return true if the class or its package is allowed
+	 */
+	public static boolean isAllowed(String className) {
+		for (String allowedClass : allowedClasses) {
+			if (allowedClass.equals(className)) {
+				return true;
+			}
+			if (allowedClass.endsWith(".*") && className.startsWith(allowedClass.substring(0, allowedClass.length() - 1))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Writes a value with its tag
+	 *
+	 * @param out a buffer
+	 * @param value a value
+	 * @param declaredClass the declared class of the value
+	 */
+	public static void writeValue(ByteBuf out, Object value, Class<?> declaredClass) {
+		if (value == null) {
+			out.writeByte(TAG_NULL);
+			return;
+		}
+
+		Class<?> clazz = value.getClass();
+		if (clazz == Boolean.class) {
+			out.writeByte(((Boolean) value).booleanValue() ? TAG_TRUE : TAG_FALSE);
+
+		} else if (clazz == Byte.class) {
+			out.writeByte(TAG_BYTE);
+			out.writeByte(((Byte) value).byteValue());
+
+		} else if (clazz == Character.class) {
+			out.writeByte(TAG_CHAR);
+			out.writeChar(((Character) value).charValue());
+
+		} else if (clazz == Short.class) {
+			out.writeByte(TAG_SHORT);
+			out.writeShort(((Short) value).shortValue());
+
+		} else if (clazz == Integer.class) {
+			out.writeByte(TAG_INT);
+			writeVarLong(out, zigZag(((Integer) value).intValue()));
+
+		} else if (clazz == Long.class) {
+			out.writeByte(TAG_LONG);
+			writeVarLong(out, zigZag(((Long) value).longValue()));
+
+		} else if (clazz == Float.class) {
+			out.writeByte(TAG_FLOAT);
+			out.writeFloat(((Float) value).floatValue());
+
+		} else if (clazz == Double.class) {
+			out.writeByte(TAG_DOUBLE);
+			out.writeDouble(((Double) value).doubleValue());
+
+		} else if (clazz == String.class) {
+			out.writeByte(TAG_STRING);
+			writeString(out, (String) value);
+
+		} else if (value instanceof Date) {
+			out.writeByte(TAG_DATE);
+			writeVarLong(out, zigZag(((Date) value).getTime()));
+
+		} else if (value instanceof Enum) {
+			out.writeByte(TAG_ENUM);
+			writeString(out, ((Enum<?>) value).getDeclaringClass().getName());
+			writeString(out, ((Enum<?>) value).name());
+
+		} else if (clazz == BigInteger.class) {
+			out.writeByte(TAG_BIG_INTEGER);
+			writeString(out, value.toString());
+
+		} else if (clazz == BigDecimal.class) {
+			out.writeByte(TAG_BIG_DECIMAL);
+			writeString(out, value.toString());
+
+		} else if (clazz.isArray()) {
+			out.writeByte(TAG_ARRAY);
+			writeArray(out, value, clazz.getComponentType());
+
+		} else if (value instanceof Collection) {
+			out.writeByte(value instanceof Set ? TAG_SET : TAG_LIST);
+			Collection<?> collection = (Collection<?>) value;
+			writeVarInt(out, collection.size());
+			for (Object element : collection) {
+				writeValue(out, element, Object.class);
+			}
+
+		} else if (value instanceof Map) {
+			out.writeByte(TAG_MAP);
+			Map<?, ?> map = (Map<?, ?>) value;
+			writeVarInt(out, map.size());
+			for (Entry<?, ?> entry : map.entrySet()) {
+				writeValue(out, entry.getKey(), Object.class);
+				writeValue(out, entry.getValue(), Object.class);
+			}
+
+		} else {
+			if (clazz == declaredClass) {
+				out.writeByte(TAG_OBJECT);
+			} else {
+				out.writeByte(TAG_TYPED_OBJECT);
+				writeString(out, clazz.getName());
+			}
+			writeObject(out, value, clazz);
+		}
+	}
+
+	/**
+	 * Reads a value by its tag
+	 *
+	 * @param in a buffer
+	 * @param declaredClass the declared class of the value
+	 * @return a value
+	 */
+	public static Object readValue(ByteBuf in, Class<?> declaredClass) {
+		return readValue(in, declaredClass, 0);
+	}
+
+	private static Object readValue(ByteBuf in, Class<?> declaredClass, int depth) {
+		if (depth > MAX_DEPTH) {
+			throw new DecoderException("Receive a value that is nested deeper than " + MAX_DEPTH + " levels.");
+		}
+		byte tag = in.readByte();
+
+		switch (tag) {
+			case TAG_NULL:
+				return null;
+
+			case TAG_TRUE:
+				return Boolean.TRUE;
+
+			case TAG_FALSE:
+				return Boolean.FALSE;
+
+			case TAG_BYTE:
+				return Byte.valueOf(in.readByte());
+
+			case TAG_CHAR:
+				return Character.valueOf(in.readChar());
+
+			case TAG_SHORT:
+				return Short.valueOf(in.readShort());
+
+			case TAG_INT:
+				return Integer.valueOf((int) unZigZag(readVarLong(in)));
+
+			case TAG_LONG:
+				return Long.valueOf(unZigZag(readVarLong(in)));
+
+			case TAG_FLOAT:
+				return Float.valueOf(in.readFloat());
+
+			case TAG_DOUBLE:
+				return Double.valueOf(in.readDouble());
+
+			case TAG_STRING:
+				return readString(in);
+
+			case TAG_DATE:
+				return new Date(unZigZag(readVarLong(in)));
+
+			case TAG_ENUM:
+				return readEnum(in);
+
+			case TAG_BIG_INTEGER:
+				return new BigInteger(readString(in));
+
+			case TAG_BIG_DECIMAL:
+				return new BigDecimal(readString(in));
+
+			case TAG_ARRAY:
+				return readArray(in, depth);
+
+			case TAG_LIST:
+			case TAG_SET: {
+				int size = readSize(in);
+				Collection<Object> collection = newCollection(declaredClass, tag == TAG_SET, size);
+				for (int i = 0; i < size; i++) {
+					collection.add(readValue(in, Object.class, depth + 1));
+				}
+				return collection;
+			}
+
+			case TAG_MAP: {
+				int size = readSize(in);
+				Map<Object, Object> map = newMap(declaredClass, size);
+				for (int i = 0; i < size; i++) {
+					Object key = readValue(in, Object.class, depth + 1);
+					Object value = readValue(in, Object.class, depth + 1);
+					map.put(key, value);
+				}
+				return map;
+			}
+
+			case TAG_OBJECT:
+				return readObject(in, checkObjectClass(declaredClass, declaredClass), depth);
+
+			case TAG_TYPED_OBJECT: {
+				String className = readString(in);
+				if (false == isAllowed(className)) {
+					throw new DecoderException("Receive an object of a class that isn't allowed. class: " + className);
+				}
+				return readObject(in, checkObjectClass(findClass(className), declaredClass), depth);
+			}
+
+			default:
+				throw new DecoderException("Receive a value with unknown tag: " + tag);
+		}
+	}
+
+	/**
+	 * Writes an unsigned variable-length int
+	 */
+	public static void writeVarInt(ByteBuf out, int value) {
+		writeVarLong(out, value & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Reads an unsigned variable-length int
+	 */
+	public static int readVarInt(ByteBuf in) {
+		return (int) readVarLong(in);
+	}
+
+	/**
+	 * Reads the size of a string, an array, a collection, a map, or a batch, and rejects it unless the readable bytes can hold it.<br>
+	 * Every element takes at least one byte, so a peer can't force a huge allocation by a tiny message.
+	 *
+	 * @param in a buffer
+	 * @return a size that is checked
+	 */
+	public static int readSize(ByteBuf in) {
+		int size = readVarInt(in);
+		if (size < 0 || size > in.readableBytes()) {
+			throw new DecoderException("Receive a size that exceeds the readable bytes. size: " + (size & 0xFFFFFFFFL) + ", readable bytes: "
+					+ in.readableBytes());
+		}
+
+		return size;
+	}
+
+	/**
+	 * Writes an unsigned variable-length long, 7 bits per byte
+	 */
+	public static void writeVarLong(ByteBuf out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	/**
+	 * Reads an unsigned variable-length long, 7 bits per byte
+	 */
+	public static long readVarLong(ByteBuf in) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new DecoderException("Receive a malformed variable-length number.");
+	}
+
+	/**
+	 * Maps a signed long to an unsigned long so that small negative numbers stay short
+	 */
+	public static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Maps an unsigned long back to a signed long
+	 */
+	public static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Writes an UTF-8 string prefixed by its length
+	 */
+	public static void writeString(ByteBuf out, String value) {
+		byte[] bytes = value.getBytes(CharsetUtil.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.writeBytes(bytes);
+	}
+
+	/**
+	 * Reads an UTF-8 string prefixed by its length
+	 */
+	public static String readString(ByteBuf in) {
+		int length = readSize(in);
+		String value = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+		in.skipBytes(length);
+
+		return value;
+	}
+
+	private static void writeArray(ByteBuf out, Object array, Class<?> componentType) {
+		writeString(out, componentType.getName());
+
+		int length = Array.getLength(array);
+		writeVarInt(out, length);
+		for (int i = 0; i < length; i++) {
+			writeValue(out, Array.get(array, i), componentType);
+		}
+	}
+
+	private static Object readArray(ByteBuf in, int depth) {
+		Class<?> componentType = findClass(readString(in));
+
+		int length = readSize(in);
+		Object array = Array.newInstance(componentType, length);
+		for (int i = 0; i < length; i++) {
+			Array.set(array, i, readValue(in, componentType, depth + 1));
+		}
+
+		return array;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object readEnum(ByteBuf in) {
+		Class enumClass = findClass(readString(in));
+		String name = readString(in);
+		if (false == enumClass.isEnum()) {
+			throw new DecoderException("Receive an enumeration of a class that isn't an enum. class: " + enumClass.getName());
+		}
+
+		return Enum.valueOf(enumClass, name);
+	}
+
+	/**
+	 * Rejects a POJO class that isn't allowed or isn't a subtype of the declared class, so a peer can't construct an arbitrary class
+	 */
+	private static Class<?> checkObjectClass(Class<?> clazz, Class<?> declaredClass) {
+		if (declaredClass != null && false == declaredClass.isAssignableFrom(clazz)) {
+			throw new DecoderException("Receive an object that isn't a subtype of its declared class. class: " + clazz.getName()
+					+ ", declared class: " + declaredClass.getName());
+		}
+		if (false == isAllowed(clazz)) {
+			throw new DecoderException("Receive an object of a class that isn't allowed. class: " + clazz.getName());
+		}
+
+		return clazz;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Collection<Object> newCollection(Class<?> declaredClass, boolean set, int size) {
+		if (declaredClass != null && Collection.class.isAssignableFrom(declaredClass) && isConstructible(declaredClass)) {
+			try {
+				return (Collection<Object>) declaredClass.getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException e) {
+				// fall back to a default collection
+			}
+		}
+
+		if (set || (declaredClass != null && Set.class.isAssignableFrom(declaredClass))) {
+			return new LinkedHashSet<>(size * 2);
+		}
+		return new ArrayList<>(size);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<Object, Object> newMap(Class<?> declaredClass, int size) {
+		if (declaredClass != null && Map.class.isAssignableFrom(declaredClass) && isConstructible(declaredClass)) {
+			try {
+				return (Map<Object, Object>) declaredClass.getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException e) {
+				// fall back to a default map
+			}
+		}
+
+		return new LinkedHashMap<>(size * 2);
+	}
+
+	/**
+	 * Only the concrete collections of java.util or of the allowed classes are constructed by their declared classes
+	 */
+	private static boolean isConstructible(Class<?> clazz) {
+		if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())) {
+			return false;
+		}
+
+		return clazz.getName().startsWith("java.util.") || isAllowed(clazz);
+	}
+
+	private static void writeObject(ByteBuf out, Object value, Class<?> clazz) {
+		ClassMetadata metadata = findMetadata(clazz);
+
+		try {
+			for (Field field : metadata.fields) {
+				writeValue(out, field.get(value), field.getType());
+			}
+		} catch (IllegalAccessException e) {
+			throw new EncoderException("Fail to read the fields of a class: " + clazz.getName(), e);
+		}
+	}
+
+	private static Object readObject(ByteBuf in, Class<?> clazz, int depth) {
+		ClassMetadata metadata = findMetadata(clazz);
+		if (metadata.constructor == null) {
+			throw new DecoderException("Cannot find a default constructor without parameter. class: " + clazz.getName());
+		}
+
+		try {
+			Object value = metadata.constructor.newInstance();
+			for (Field field : metadata.fields) {
+				Object fieldValue = readValue(in, field.getType(), depth + 1);
+				if (fieldValue != null || false == field.getType().isPrimitive()) {
+					field.set(value, fieldValue);
+				}
+			}
+			return value;
+
+		} catch (ReflectiveOperationException e) {
+			throw new DecoderException("Fail to construct an object of a class: " + clazz.getName(), e);
+		}
+	}
+
+	private static ClassMetadata findMetadata(Class<?> clazz) {
+		ClassMetadata metadata = metadataCache.get(clazz);
+		if (metadata == null) {
+			metadata = new ClassMetadata(clazz);
+			metadataCache.putIfAbsent(clazz, metadata);
+		}
+
+		return metadata;
+	}
+
+	/**
+	 * The serializable fields in a fixed order and the default constructor of a POJO class
+	 */
+	private static class ClassMetadata {
+		private final Field[] fields;
+
+		private final Constructor<?> constructor;
+
+		public ClassMetadata(Class<?> clazz) {
+			List<Field> fieldList = new ArrayList<>();
+			for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+				for (Field field : current.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+						continue;
+					}
+					field.setAccessible(true);
+					fieldList.add(field);
+				}
+			}
+
+			Field[] fields = fieldList.toArray(new Field[fieldList.size()]);
+			// the order of declared fields is unspecified, so sort them by name for both sides
+			Arrays.sort(fields, new Comparator<Field>() {
+				@Override
+				public int compare(Field o1, Field o2) {
+					int result = o1.getName().compareTo(o2.getName());
+					if (result == 0) {
+						result = o1.getDeclaringClass().getName().compareTo(o2.getDeclaringClass().getName());
+					}
+					return result;
+				}
+			});
+			this.fields = fields;
+
+			Constructor<?> constructor = null;
+			try {
+				constructor = clazz.getDeclaredConstructor();
+				constructor.setAccessible(true);
+			} catch (NoSuchMethodException e) {
+				// this class can be serialized but can't be deserialized
+			}
+			this.constructor = constructor;
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package tw.me.ychuang.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+
+/**
+ * Appends a NUL (0x00) delimiter to a message.<br>
+ * It is the counterpart of {@link io.netty.handler.codec.DelimiterBasedFrameDecoder} with a NUL delimiter.
+ *
+ * @author Y.C. Huang
+ */
+@Sharable
+public class DelimiterFrameEncoder extends MessageToMessageEncoder<ByteBuf> {
+	/**
+	 * A shared and read-only NUL (0x00) delimiter
+	 */
+	private static final ByteBuf NUL_DELIMITER = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(new byte[] { 0 }));
+
+	/**
+	 * A default constructor
+	 */
+	public DelimiterFrameEncoder() {
+		super();
+	}
+
+	/**
+	 * Passes the message through without copying and writes a delimiter behind it
+	 */
+	@Override
+	protected void encode(ChannelHandlerContext context, ByteBuf message, List<Object> out) throws Exception {
+		out.add(message.retain());
+		out.add(NUL_DELIMITER.duplicate());
+	}
+}
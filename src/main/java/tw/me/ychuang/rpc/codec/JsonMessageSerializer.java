@@ -0,0 +1,127 @@
+package tw.me.ychuang.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.EncoderException;
+import io.netty.util.CharsetUtil;
+
+import java.util.List;
+
+import tw.me.ychuang.rpc.Response;
+import tw.me.ychuang.rpc.Result;
+import tw.me.ychuang.rpc.json.JsonSerializer;
+
+import com.google.gson.JsonElement;
+
+/**
+ * A message serializer that writes and reads UTF-8 JSON by {@link JsonSerializer}.<br>
+ * It is the default serializer and understood by every client and server.
+ *
+ * @author Y.C. Huang
+ */
+public class JsonMessageSerializer extends MessageSerializer {
+	public static final String NAME = "json";
+
+	/**
+	 * Every serialized request and response is a JSON object
+	 */
+	private static final byte MARKER = '{';
+
+	JsonMessageSerializer() {
+		super();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#getName()
+	 */
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#getMarker()
+	 */
+	@Override
+	public byte getMarker() {
+		return MARKER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#serialize(java.lang.Object, java.lang.Class, io.netty.buffer.ByteBuf)
+	 */
+	@Override
+	public void serialize(Object message, Class<?> messageClass, ByteBuf out) {
+		JsonSerializer.getInstance().toJson(message, messageClass, out);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#serializeResult(tw.me.ychuang.rpc.Result, io.netty.buffer.ByteBuf)
+	 */
+	@Override
+	public void serializeResult(Result result, ByteBuf out) {
+		// the result is the same JSON object that the type adapter of response writes
+		Response response = new Response(0, result, result != null ? result.getReturnClass().getName() : null);
+		JsonElement jsonResult = JsonSerializer.getInstance().toJsonElement(response).getAsJsonObject().get("result");
+		JsonSerializer.getInstance().toJson(jsonResult, JsonElement.class, out);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#serializeResponse(long, io.netty.buffer.ByteBuf, io.netty.buffer.ByteBuf)
+	 */
+	@Override
+	public void serializeResponse(long id, ByteBuf result, ByteBuf out) {
+		out.writeBytes(("{\"id\":" + id + ",\"result\":").getBytes(CharsetUtil.UTF_8));
+		out.writeBytes(result, result.readerIndex(), result.readableBytes());
+		out.writeByte('}');
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#serializeVersionedResponse(long, io.netty.buffer.ByteBuf, java.lang.String,
+	 * io.netty.buffer.ByteBuf)
+	 */
+	@Override
+	public void serializeVersionedResponse(long id, ByteBuf result, String version, ByteBuf out) {
+		// the version is added into the JSON object of the result, the hex version needs no escape
+		int lastIndex = result.writerIndex() - 1;
+		if (false == result.isReadable() || result.getByte(lastIndex) != '}') {
+			throw new EncoderException("Fail to append a version to a serialized result that isn't a JSON object.");
+		}
+
+		out.writeBytes(("{\"id\":" + id + ",\"result\":").getBytes(CharsetUtil.UTF_8));
+		out.writeBytes(result, result.readerIndex(), lastIndex - result.readerIndex());
+		out.writeBytes((",\"version\":\"" + version + "\"}}").getBytes(CharsetUtil.UTF_8));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#serializeBatch(java.util.List, java.lang.Class, io.netty.buffer.ByteBuf)
+	 */
+	@Override
+	public void serializeBatch(List<ByteBuf> messages, Class<?> messageClass, ByteBuf out) {
+		// the same JSON object that the type adapters write for a batch
+		out.writeBytes("{\"id\":0,\"batch\":[".getBytes(CharsetUtil.UTF_8));
+		for (int i = 0; i < messages.size(); i++) {
+			if (i > 0) {
+				out.writeByte(',');
+			}
+			ByteBuf message = messages.get(i);
+			out.writeBytes(message, message.readerIndex(), message.readableBytes());
+		}
+		out.writeBytes("]}".getBytes(CharsetUtil.UTF_8));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.codec.MessageSerializer#deserialize(io.netty.buffer.ByteBuf, java.lang.Class)
+	 */
+	@Override
+	public <T> T deserialize(ByteBuf in, Class<T> messageClass) {
+		return JsonSerializer.getInstance().fromJson(in, messageClass);
+	}
+}
@@ -0,0 +1,60 @@
+package tw.me.ychuang.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+import tw.me.ychuang.rpc.Constants;
+
+/**
+ * Splits the received stream by the length field of a header that is written by {@link LengthFieldFrameEncoder}.<br>
+ * Checks the magic and version of the header, and strips it off from a message.
+ *
+ * @author Y.C. Huang
+ */
+public class LengthFieldFrameDecoder extends LengthFieldBasedFrameDecoder {
+	/**
+	 * The offset of the length field in a header
+	 */
+	private static final int LENGTH_FIELD_OFFSET = 4;
+
+	/**
+	 * The length of the length field in a header
+	 */
+	private static final int LENGTH_FIELD_LENGTH = 4;
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param maxFrameSize the maximum length of a message
+	 */
+	public LengthFieldFrameDecoder(int maxFrameSize) {
+		super(maxFrameSize + Constants.FRAME_HEADER_LENGTH, LENGTH_FIELD_OFFSET, LENGTH_FIELD_LENGTH);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see io.netty.handler.codec.LengthFieldBasedFrameDecoder#decode(io.netty.channel.ChannelHandlerContext, io.netty.buffer.ByteBuf)
+	 */
+	@Override
+	protected Object decode(ChannelHandlerContext context, ByteBuf in) throws Exception {
+		ByteBuf frame = (ByteBuf) super.decode(context, in);
+		if (frame == null) {
+			return null;
+		}
+
+		short magic = frame.readShort();
+		byte version = frame.readByte();
+		if (magic != Constants.FRAME_MAGIC || version != Constants.FRAME_VERSION) {
+			frame.release();
+			throw new CorruptedFrameException("Receive a frame with unknown magic or version. magic: " + Integer.toHexString(magic & 0xFFFF)
+					+ ", version: " + version);
+		}
+
+		// skip flags and length, only the message is passed to the next handler
+		frame.skipBytes(Constants.FRAME_HEADER_LENGTH - 3);
+
+		return frame;
+	}
+}
@@ -0,0 +1,61 @@
+package tw.me.ychuang.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+
+import tw.me.ychuang.rpc.Constants;
+
+/**
+ * Prefixes a message with a fixed-length header.<br>
+ * The header is composed of magic (2 bytes), version (1 byte), flags (1 byte), and the length of the message (4 bytes).
+ *
+ * @author Y.C. Huang
+ */
+@Sharable
+public class LengthFieldFrameEncoder extends MessageToMessageEncoder<ByteBuf> {
+	/**
+	 * No flag is specified
+	 */
+	public static final byte FLAG_NONE = 0;
+
+	/**
+	 * The maximum length of a message
+	 */
+	private final int maxFrameSize;
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param maxFrameSize the maximum length of a message
+	 */
+	public LengthFieldFrameEncoder(int maxFrameSize) {
+		super();
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	/**
+	 * Writes a header ahead of the message, the message itself is passed through without copying
+	 */
+	@Override
+	protected void encode(ChannelHandlerContext context, ByteBuf message, List<Object> out) throws Exception {
+		int length = message.readableBytes();
+		if (length > this.maxFrameSize) {
+			throw new EncoderException("The length of a message exceeds the maximum frame size. length: " + length + ", max frame size: "
+					+ this.maxFrameSize);
+		}
+
+		ByteBuf header = context.alloc().buffer(Constants.FRAME_HEADER_LENGTH);
+		header.writeShort(Constants.FRAME_MAGIC);
+		header.writeByte(Constants.FRAME_VERSION);
+		header.writeByte(FLAG_NONE);
+		header.writeInt(length);
+
+		out.add(header);
+		out.add(message.retain());
+	}
+}
@@ -0,0 +1,100 @@
+package tw.me.ychuang.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.List;
+
+import tw.me.ychuang.rpc.Result;
+
+/**
+ * An abstract serialization utility that converts a request or a response to / from a buffer directly.<br>
+ * The first byte of every serialized message is the marker of its serializer, so that a receiver can detect<br>
+ * which serializer should be used for deserializing a message without any connection state.
+ *
+ * @author Y.C. Huang
+ */
+public abstract class MessageSerializer {
+
+	protected MessageSerializer() {
+		super();
+	}
+
+	/**
+	 * Gets the unique name of this serializer. It is used for negotiating a serializer between client and server.
+	 *
+	 * @return the name of this serializer
+	 */
+	public abstract String getName();
+
+	/**
+	 * Gets the first byte of every message that is serialized by this serializer.
+	 *
+	 * @return a marker byte
+	 */
+	public abstract byte getMarker();
+
+	/**
+	 * Serializes a request or a response and writes it into a buffer
+	 *
+	 * @param message a request or a response
+	 * @param messageClass the specific class of the message
+	 * @param out a buffer that the message is written into
+	 */
+	public abstract void serialize(Object message, Class<?> messageClass, ByteBuf out);
+
+	/**
+	 * Serializes the result of a response without its id, so that it can be cached and written back for another request
+	 *
+	 * @param result a result
+	 * @param out a buffer that the result is written into
+	 */
+	public abstract void serializeResult(Result result, ByteBuf out);
+
+	/**
+	 * Writes a response with a result that has been serialized by {@link #serializeResult(Result, ByteBuf)}
+	 *
+	 * @param id the id of the response
+	 * @param result a serialized result, its readable bytes are copied
+	 * @param out a buffer that the response is written into
+	 */
+	public abstract void serializeResponse(long id, ByteBuf result, ByteBuf out);
+
+	/**
+	 * Writes a response with a result that has been serialized by {@link #serializeResult(Result, ByteBuf)}, and appends the version of
+	 * the result, so that a conditional request doesn't serialize the result again
+	 *
+	 * @param id the id of the response
+	 * @param result a serialized result without any version, its readable bytes are copied
+	 * @param version the version of the result
+	 * @param out a buffer that the response is written into
+	 */
+	public abstract void serializeVersionedResponse(long id, ByteBuf result, String version, ByteBuf out);
+
+	/**
+	 * Combines the messages that have been serialized by this serializer into one batch message,<br>
+	 * it is read back as a request or a response with the same batch as the one that {@link #serialize(Object, Class, ByteBuf)} writes
+	 *
+	 * @param messages the serialized requests or responses, their readable bytes are copied
+	 * @param messageClass the specific class of the messages
+	 * @param out a buffer that the batch is written into
+	 */
+	public abstract void serializeBatch(List<ByteBuf> messages, Class<?> messageClass, ByteBuf out);
+
+	/**
+	 * Deserializes a request or a response that is read from a buffer
+	 *
+	 * @param in a buffer that the message is read from
+	 * @param messageClass the specific class of the message
+	 * @return a request or a response
+	 */
+	public abstract <T> T deserialize(ByteBuf in, Class<T> messageClass);
+
+	/**
+	 * Overwrites the toString method
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return this.getName();
+	}
+}
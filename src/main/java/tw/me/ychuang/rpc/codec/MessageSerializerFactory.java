@@ -0,0 +1,160 @@
+package tw.me.ychuang.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A registry of message serializers.<br>
+ * The built-in JSON and binary serializers are always available, other serializers are plugged in via<br>
+ * {@link ServiceLoader} (META-INF/services/tw.me.ychuang.rpc.codec.MessageSerializer) or {@link #register(MessageSerializer)}.
+ *
+ * @author Y.C. Huang
+ */
+public class MessageSerializerFactory {
+	private static final Logger log = LoggerFactory.getLogger(MessageSerializerFactory.class);
+
+	/**
+	 * Apply a lazy-loaded singleton - Initialization on Demand Holder.<br>
+	 * see detail on right side: http://en.wikipedia.org/wiki/Initialization-on-demand_holder_idiom
+	 */
+	private static class LazyHolder {
+		private static final MessageSerializerFactory INSTANCE = new MessageSerializerFactory();
+	}
+
+	public static MessageSerializerFactory getInstance() {
+		return LazyHolder.INSTANCE;
+	}
+
+	/**
+	 * All registered serializers by name
+	 */
+	private final ConcurrentMap<String, MessageSerializer> serializerPool = new ConcurrentHashMap<>();
+
+	/**
+	 * All registered serializers by marker, it is replaced as a whole while a serializer is registered
+	 */
+	private volatile MessageSerializer[] markerTable = new MessageSerializer[256];
+
+	/**
+	 * The default serializer that is understood by every client and server
+	 */
+	private final MessageSerializer defaultSerializer;
+
+	private MessageSerializerFactory() {
+		super();
+
+		this.defaultSerializer = new JsonMessageSerializer();
+		this.register(this.defaultSerializer);
+		this.register(new BinaryMessageSerializer());
+
+		Iterator<MessageSerializer> pluggedSerializers = ServiceLoader.load(MessageSerializer.class).iterator();
+		while (true) {
+			try {
+				if (false == pluggedSerializers.hasNext()) {
+					break;
+				}
+				this.register(pluggedSerializers.next());
+
+			} catch (ServiceConfigurationError e) {
+				log.error("Fail to load a plugged message serializer.", e);
+			}
+		}
+	}
+
+	/**
+	 * Registers a message serializer. A serializer whose name or marker has been used is ignored.
+	 *
+	 * @param serializer a message serializer
+	 * @return true if the serializer is registered
+	 */
+	public synchronized boolean register(MessageSerializer serializer) {
+		int marker = serializer.getMarker() & 0xFF;
+		if (this.serializerPool.containsKey(serializer.getName()) || this.markerTable[marker] != null) {
+			log.warn("Ignore a message serializer whose name or marker has been used. serializer: {}, marker: {}", serializer, marker);
+			return false;
+		}
+
+		MessageSerializer[] newMarkerTable = this.markerTable.clone();
+		newMarkerTable[marker] = serializer;
+
+		this.serializerPool.put(serializer.getName(), serializer);
+		this.markerTable = newMarkerTable;
+		log.info("Register a message serializer. serializer: {}", serializer);
+
+		return true;
+	}
+
+	/**
+	 * Gets the default serializer
+	 *
+	 * @return the JSON serializer
+	 */
+	public MessageSerializer getDefaultSerializer() {
+		return this.defaultSerializer;
+	}
+
+	/**
+	 * Finds a serializer by its name
+	 *
+	 * @param name the name of a serializer
+	 * @return the matching serializer or null if not found
+	 */
+	public MessageSerializer findSerializer(String name) {
+		if (StringUtils.isBlank(name)) {
+			return null;
+		}
+
+		return this.serializerPool.get(StringUtils.trim(name));
+	}
+
+	/**
+	 * Detects the serializer of a message by peeking its first byte, the reader index is unchanged.
+	 *
+	 * @param in a buffer that contains a whole message
+	 * @return the matching serializer or the default serializer if not found
+	 */
+	public MessageSerializer detectSerializer(ByteBuf in) {
+		if (false == in.isReadable()) {
+			return this.defaultSerializer;
+		}
+
+		MessageSerializer serializer = this.markerTable[in.getByte(in.readerIndex()) & 0xFF];
+		if (serializer == null) {
+			serializer = this.defaultSerializer;
+		}
+
+		return serializer;
+	}
+
+	/**
+	 * Parses a comma-separated list of serializer names and keeps the registered ones in the same order.
+	 *
+	 * @param names a comma-separated list of serializer names
+	 * @return the matching serializers
+	 */
+	public List<MessageSerializer> findSerializers(String names) {
+		List<MessageSerializer> serializers = new ArrayList<>();
+
+		for (String name : StringUtils.split(StringUtils.defaultString(names), ',')) {
+			MessageSerializer serializer = this.findSerializer(name);
+			if (serializer == null) {
+				log.warn("Ignore an unregistered message serializer. name: {}", name);
+			} else if (false == serializers.contains(serializer)) {
+				serializers.add(serializer);
+			}
+		}
+
+		return serializers;
+	}
+}
@@ -0,0 +1,62 @@
+package tw.me.ychuang.rpc.exception;
+
+import org.apache.commons.lang3.exception.ExceptionContext;
+
+/**
+ * Exception thrown when a request isn't answered by a remote server before its deadline.<br>
+ * The response future of that request is failed with it and is removed from future table.
+ * 
+ * @author Y.C. Huang
+ */
+public class RequestTimeoutException extends ClientSideException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param message the description of this exception
+	 */
+	public RequestTimeoutException(String message) {
+		super(message);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param cause the cause of this exception
+	 */
+	public RequestTimeoutException(Throwable cause) {
+		super(cause);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param message the description of this exception
+	 * @param cause the cause of this exception
+	 */
+	public RequestTimeoutException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param message the description of this exception
+	 * @param cause the cause of this exception
+	 * @param context a context stores the contextual information
+	 */
+	public RequestTimeoutException(String message, Throwable cause, ExceptionContext context) {
+		super(message, cause, context);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.commons.lang3.exception.ContextedRuntimeException#addContextValue(java.lang.String, java.lang.Object)
+	 */
+	public RequestTimeoutException addContextValue(String label, Object value) {
+		super.addContextValue(label, value);
+
+		return this;
+	}
+}
@@ -0,0 +1,70 @@
+package tw.me.ychuang.rpc.exception;
+
+import org.apache.commons.lang3.exception.ExceptionContext;
+
+/**
+ * Exception thrown when a server is too busy to admit a request, the request is retryable on another server.<br>
+ * It carries no stack trace, so that shedding load stays cheap.
+ * 
+ * @author Y.C. Huang
+ */
+public class ServerBusyException extends ServerSideException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param message the description of this exception
+	 */
+	public ServerBusyException(String message) {
+		super(message);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param cause the cause of this exception
+	 */
+	public ServerBusyException(Throwable cause) {
+		super(cause);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param message the description of this exception
+	 * @param cause the cause of this exception
+	 */
+	public ServerBusyException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param message the description of this exception
+	 * @param cause the cause of this exception
+	 * @param context a context stores the contextual information
+	 */
+	public ServerBusyException(String message, Throwable cause, ExceptionContext context) {
+		super(message, cause, context);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.commons.lang3.exception.ContextedRuntimeException#addContextValue(java.lang.String, java.lang.Object)
+	 */
+	public ServerBusyException addContextValue(String label, Object value) {
+		super.addContextValue(label, value);
+
+		return this;
+	}
+
+	/**
+	 * Skips filling the stack trace since a busy server rejects requests at a high rate
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
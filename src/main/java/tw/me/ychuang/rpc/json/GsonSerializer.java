@@ -1,5 +1,15 @@
 package tw.me.ychuang.rpc.json;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.CharsetUtil;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.Date;
 
 import tw.me.ychuang.rpc.Request;
@@ -8,6 +18,8 @@ import tw.me.ychuang.rpc.Response;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * A JSON serialization utility is based on GSON library.
@@ -17,6 +29,26 @@ import com.google.gson.JsonElement;
 public class GsonSerializer extends JsonSerializer {
 	private static final Gson DEFAULT_GSON;
 
+	/**
+	 * The UTF-8 writer of each thread, it is bound to the buffer of a message while the message is serialized
+	 */
+	private static final ThreadLocal<ByteBufWriter> WRITERS = new ThreadLocal<ByteBufWriter>() {
+		@Override
+		protected ByteBufWriter initialValue() {
+			return new ByteBufWriter();
+		}
+	};
+
+	/**
+	 * The UTF-8 reader of each thread, it is bound to the buffer of a message while the message is deserialized
+	 */
+	private static final ThreadLocal<ByteBufReader> READERS = new ThreadLocal<ByteBufReader>() {
+		@Override
+		protected ByteBufReader initialValue() {
+			return new ByteBufReader();
+		}
+	};
+
 	static {
 		// create one Gson Builder and reuse it.
 		GsonBuilder GSON_BUILDER = new GsonBuilder();
@@ -45,6 +77,21 @@ public class GsonSerializer extends JsonSerializer {
 		return json;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.json.JsonSerializer#toJson(java.lang.Object, java.lang.Class, io.netty.buffer.ByteBuf)
+	 */
+	public void toJson(Object src, Class<?> srcClass, ByteBuf out) {
+		// stream the json tokens into the buffer without building an intermediate string or a per-message char buffer
+		ByteBufWriter byteBufWriter = WRITERS.get();
+		byteBufWriter.bind(out);
+		try {
+			DEFAULT_GSON.toJson(src, srcClass, new JsonWriter(byteBufWriter));
+		} finally {
+			byteBufWriter.bind(null);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see tw.me.ychuang.rpc.json.JsonSerializer#toJsonElement(java.lang.Object)
@@ -65,6 +112,23 @@ public class GsonSerializer extends JsonSerializer {
 		return src;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.json.JsonSerializer#fromJson(io.netty.buffer.ByteBuf, java.lang.Class)
+	 */
+	public <T> T fromJson(ByteBuf in, Class<T> srcClass) {
+		// parse the json tokens from the buffer without building an intermediate string or a per-message byte buffer
+		ByteBufReader byteBufReader = READERS.get();
+		byteBufReader.bind(in);
+		try {
+			T src = DEFAULT_GSON.fromJson(new JsonReader(byteBufReader), srcClass);
+
+			return src;
+		} finally {
+			byteBufReader.bind(null);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see tw.me.ychuang.rpc.json.JsonSerializer#fromJsonElement(com.google.gson.JsonElement, java.lang.Class)
@@ -74,4 +138,106 @@ public class GsonSerializer extends JsonSerializer {
 
 		return src;
 	}
+
+	/**
+	 * Encodes chars into UTF-8 bytes of a bound buffer directly by {@link ByteBufUtil#writeUtf8(ByteBuf, CharSequence)}
+	 */
+	private static class ByteBufWriter extends Writer {
+		private ByteBuf out;
+
+		private void bind(ByteBuf out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(int c) {
+			if (c < 0x80) {
+				this.out.writeByte(c);
+			} else {
+				ByteBufUtil.writeUtf8(this.out, String.valueOf((char) c));
+			}
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			ByteBufUtil.writeUtf8(this.out, CharBuffer.wrap(cbuf, off, len));
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			ByteBufUtil.writeUtf8(this.out, off == 0 && len == str.length() ? str : str.subSequence(off, off + len));
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * Decodes UTF-8 bytes of a bound buffer into chars directly by a reused decoder, a malformed sequence is replaced as the JDK does
+	 */
+	private static class ByteBufReader extends Reader {
+		private final CharsetDecoder decoder = CharsetUtil.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		/**
+		 * The two chars of a supplementary char that is read into a single char
+		 */
+		private final char[] surrogates = new char[2];
+
+		private ByteBuf in;
+
+		private ByteBuffer bytes;
+
+		/**
+		 * Whether the second char of {@link #surrogates} hasn't been read yet
+		 */
+		private boolean pending;
+
+		private void bind(ByteBuf in) {
+			this.in = in;
+			this.bytes = in != null ? in.nioBuffer() : null;
+			this.pending = false;
+			this.decoder.reset();
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+
+			int count = 0;
+			if (this.pending) {
+				cbuf[off + count++] = this.surrogates[1];
+				this.pending = false;
+			}
+
+			// the whole message is in the buffer, so the input always ends here
+			int position = this.bytes.position();
+			CharBuffer chars = CharBuffer.wrap(cbuf, off + count, len - count);
+			this.decoder.decode(this.bytes, chars, true);
+			count += chars.position() - (off + count);
+
+			if (count == 0 && this.bytes.hasRemaining()) {
+				// a supplementary char doesn't fit into one char, so its low surrogate is read next time
+				CharBuffer pair = CharBuffer.wrap(this.surrogates);
+				this.decoder.decode(this.bytes, pair, true);
+				cbuf[off] = this.surrogates[0];
+				this.pending = pair.position() > 1;
+				count = pair.position() > 0 ? 1 : 0;
+			}
+			this.in.skipBytes(this.bytes.position() - position);
+
+			return count > 0 ? count : -1;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
 }
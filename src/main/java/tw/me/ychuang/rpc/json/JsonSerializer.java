@@ -1,5 +1,7 @@
 package tw.me.ychuang.rpc.json;
 
+import io.netty.buffer.ByteBuf;
+
 import com.google.gson.JsonElement;
 
 /**
@@ -33,6 +35,15 @@ public abstract class JsonSerializer {
 	 */
 	public abstract String toJson(Object src, Class srcClass);
 
+	/**
+	 * Serializes an object into its equivalent UTF-8 json bytes and writes them into a buffer directly
+	 * 
+	 * @param src an object
+	 * @param srcClass the specific class of src object.
+	 * @param out a buffer that the json bytes are written into
+	 */
+	public abstract void toJson(Object src, Class<?> srcClass, ByteBuf out);
+
 	/**
 	 * Serializes an object into its equivalent json string
 	 * 
@@ -50,6 +61,15 @@ public abstract class JsonSerializer {
 	 */
 	public abstract <T> T fromJson(String jsonString, Class<T> srcClass);
 
+	/**
+	 * Deserializes UTF-8 json bytes that are read from a buffer directly into an object of the specified class
+	 * 
+	 * @param in a buffer that the json bytes are read from
+	 * @param srcClass a specific class of the specified object
+	 * @return the specified object
+	 */
+	public abstract <T> T fromJson(ByteBuf in, Class<T> srcClass);
+
 	/**
 	 * Deserializes a json element into an object of the specified class
 	 * 
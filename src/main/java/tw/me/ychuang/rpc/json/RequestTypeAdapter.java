@@ -1,6 +1,7 @@
 package tw.me.ychuang.rpc.json;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang3.ClassUtils;
@@ -36,6 +37,23 @@ public class RequestTypeAdapter implements JsonSerializer<Request>, JsonDeserial
 		JsonObject jsonRequest = new JsonObject();
 		jsonRequest.addProperty("id", request.getId());
 
+		// a batch carries the requests bound for the same channel
+		if (request.isBatch()) {
+			JsonArray jsonBatch = new JsonArray();
+			for (Request batchRequest : request.getBatch()) {
+				jsonBatch.add(this.serialize(batchRequest, requestClass, context));
+			}
+			jsonRequest.add("batch", jsonBatch);
+			return jsonRequest;
+		}
+
+		if (request.getTimeout() > 0) {
+			jsonRequest.addProperty("timeout", request.getTimeout());
+		}
+		if (request.isConditional()) {
+			jsonRequest.addProperty("version", request.getVersion());
+		}
+
 		Command command = request.getCommand();
 		if (command == null) {
 			jsonRequest.add("command", JsonNull.INSTANCE);
@@ -79,7 +97,18 @@ public class RequestTypeAdapter implements JsonSerializer<Request>, JsonDeserial
 	 */
 	public Request deserialize(JsonElement jsonElement, Type requestClass, JsonDeserializationContext context) throws JsonParseException {
 		JsonObject jsonRequest = (JsonObject) jsonElement;
+		if (jsonRequest.has("batch")) {
+			JsonArray jsonBatch = jsonRequest.getAsJsonArray("batch");
+			List<Request> batch = new ArrayList<>(jsonBatch.size());
+			for (JsonElement jsonBatchRequest : jsonBatch) {
+				batch.add(this.deserialize(jsonBatchRequest, requestClass, context));
+			}
+			return new Request(batch);
+		}
+
 		long id = jsonRequest.getAsJsonPrimitive("id").getAsLong();
+		long timeout = jsonRequest.has("timeout") ? jsonRequest.getAsJsonPrimitive("timeout").getAsLong() : 0;
+		String version = jsonRequest.has("version") ? jsonRequest.getAsJsonPrimitive("version").getAsString() : null;
 		JsonElement jsonCmdElement = jsonRequest.get("command");
 
 		Request request = null;
@@ -94,7 +123,7 @@ public class RequestTypeAdapter implements JsonSerializer<Request>, JsonDeserial
 		boolean staticMethod = jsonCommand.getAsJsonPrimitive("staticMethod").getAsBoolean();
 
 		Command command = new Command(skeleton, method, staticMethod);
-		request = new Request(id, command);
+		request = new Request(id, command, timeout, version);
 
 		JsonArray jsonParameters = jsonCommand.getAsJsonArray("parameters");
 		JsonArray jsonParamClasses = jsonCommand.getAsJsonArray("paramClasses");
@@ -1,6 +1,8 @@
 package tw.me.ychuang.rpc.json;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -10,6 +12,7 @@ import org.slf4j.LoggerFactory;
 import tw.me.ychuang.rpc.Response;
 import tw.me.ychuang.rpc.Result;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
@@ -36,6 +39,16 @@ public class ResponseTypeAdapter<Respose> implements JsonSerializer<Response>, J
 		JsonObject jsonResponse = new JsonObject();
 		jsonResponse.addProperty("id", response.getId());
 
+		// a batch carries the responses of a batch request
+		if (response.isBatch()) {
+			JsonArray jsonBatch = new JsonArray();
+			for (Response batchResponse : response.getBatch()) {
+				jsonBatch.add(this.serialize(batchResponse, responseClass, context));
+			}
+			jsonResponse.add("batch", jsonBatch);
+			return jsonResponse;
+		}
+
 		Result result = response.getResult();
 		if (result == null) {
 			jsonResponse.add("result", JsonNull.INSTANCE);
@@ -66,6 +79,14 @@ public class ResponseTypeAdapter<Respose> implements JsonSerializer<Response>, J
 		jsonResult.add("returnClass", jsonResultClass);
 		jsonResult.add("exceptional", jsonExceptional);
 
+		// a version and a not modified status are written only if a request is conditional
+		if (result.getVersion() != null) {
+			jsonResult.addProperty("version", result.getVersion());
+		}
+		if (result.isNotModified()) {
+			jsonResult.addProperty("notModified", true);
+		}
+
 		return jsonResponse;
 	}
 
@@ -75,6 +96,15 @@ public class ResponseTypeAdapter<Respose> implements JsonSerializer<Response>, J
 	@Override
 	public Response deserialize(JsonElement jsonElement, Type responseClass, JsonDeserializationContext context) throws JsonParseException {
 		JsonObject jsonResponse = (JsonObject) jsonElement;
+		if (jsonResponse.has("batch")) {
+			JsonArray jsonBatch = jsonResponse.getAsJsonArray("batch");
+			List<Response> batch = new ArrayList<>(jsonBatch.size());
+			for (JsonElement jsonBatchResponse : jsonBatch) {
+				batch.add(this.deserialize(jsonBatchResponse, responseClass, context));
+			}
+			return new Response(batch);
+		}
+
 		long id = jsonResponse.getAsJsonPrimitive("id").getAsLong();
 		JsonElement jsonRsElement = jsonResponse.get("result");
 
@@ -88,6 +118,8 @@ public class ResponseTypeAdapter<Respose> implements JsonSerializer<Response>, J
 		JsonElement jsonReturn = jsonResult.get("return");
 		JsonPrimitive jsonReturnClass = jsonResult.getAsJsonPrimitive("returnClass");
 		JsonPrimitive jsonExceptional = jsonResult.getAsJsonPrimitive("exceptional");
+		String version = jsonResult.has("version") ? jsonResult.getAsJsonPrimitive("version").getAsString() : null;
+		boolean notModified = jsonResult.has("notModified") && jsonResult.getAsJsonPrimitive("notModified").getAsBoolean();
 
 		Class resultClass = null;
 		try {
@@ -98,7 +130,7 @@ public class ResponseTypeAdapter<Respose> implements JsonSerializer<Response>, J
 
 		Result result = null;
 		if (jsonReturn.isJsonNull()) {
-			result = new Result(null, resultClass);
+			result = new Result(null, resultClass, version, notModified);
 
 		} else {
 			Object resultObj = null;
@@ -116,7 +148,7 @@ public class ResponseTypeAdapter<Respose> implements JsonSerializer<Response>, J
 				resultObj = context.deserialize(jsonReturn, resultClass);
 			}
 
-			result = new Result(resultObj, resultClass);
+			result = new Result(resultObj, resultClass, version, notModified);
 		}
 
 		response = new Response(id, result, resultClass.getName());
@@ -0,0 +1,149 @@
+package tw.me.ychuang.rpc.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.ConcurrencyLimiter;
+
+/**
+ * Tracks the requests that are queued or being executed in server-side, and sheds load before it piles up.<br>
+ * A request is rejected on arrival while the number of admitted requests reaches the limit,<br>
+ * and is rejected before execution if it has been queued longer than the max queue time.<br>
+ * The limit is fixed, or adapted by the time from receiving to finishing a request if an adaptive limiter is given.
+ *
+ * @author Y.C. Huang
+ */
+public class AdmissionController {
+	private static final Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+	/**
+	 * A kind of constructor with a fixed limit
+	 *
+	 * @param maxRequests the max number of requests that are queued or being executed, it is unlimited if it is 0
+	 * @param maxQueueTime the max time in milliseconds a request is queued before execution, it is unlimited if it is 0
+	 */
+	public AdmissionController(int maxRequests, long maxQueueTime) {
+		this(new ConcurrencyLimiter(maxRequests), maxQueueTime);
+	}
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param limiter limits the number of requests that are queued or being executed
+	 * @param maxQueueTime the max time in milliseconds a request is queued before execution, it is unlimited if it is 0
+	 */
+	public AdmissionController(ConcurrencyLimiter limiter, long maxQueueTime) {
+		super();
+		this.limiter = limiter;
+		this.maxQueueTime = TimeUnit.MILLISECONDS.toNanos(maxQueueTime);
+	}
+
+	/**
+	 * Limits the number of requests that are queued or being executed
+	 */
+	private final ConcurrencyLimiter limiter;
+
+	/**
+	 * Getter method for field 'limiter'
+	 *
+	 * @return the limiter of requests that are queued or being executed
+	 */
+	public ConcurrencyLimiter getLimiter() {
+		return this.limiter;
+	}
+
+	/**
+	 * The max time in nanoseconds a request is queued before execution
+	 */
+	private final long maxQueueTime;
+
+	/**
+	 * The number of requests that are rejected
+	 */
+	private final AtomicLong rejectedCounter = new AtomicLong();
+
+	/**
+	 * Admits a coming request if the limit isn't reached, an admitted request must be released finally.
+	 *
+	 * @return true if the request is admitted
+	 */
+	public boolean tryAdmit() {
+		if (false == this.limiter.tryAcquire()) {
+			this.rejectedCounter.incrementAndGet();
+			log.debug("Reject a request since too many requests are admitted. limiter: {}", this.limiter);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks an admitted request before execution, it is shed and released if it has been queued too long
+	 *
+	 * @param receivedTime the time in nanoseconds when the request is received
+	 * @return true if the request is still worth to be executed
+	 */
+	public boolean tryExecute(long receivedTime) {
+		long queueTime = System.nanoTime() - receivedTime;
+		if (this.maxQueueTime > 0 && queueTime > this.maxQueueTime) {
+			// a long queue is the sign of overload, so the limit shrinks
+			this.limiter.releaseDropped();
+			this.rejectedCounter.incrementAndGet();
+			log.debug("Reject a request since it has been queued too long. queue time: {} ns", queueTime);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Releases an admitted request that isn't executed
+	 */
+	public void release() {
+		this.limiter.release();
+	}
+
+	/**
+	 * Releases an admitted request after it is executed, the limit is adapted by the time from receiving to finishing it
+	 *
+	 * @param receivedTime the time in nanoseconds when the request is received
+	 */
+	public void release(long receivedTime) {
+		this.limiter.release(System.nanoTime() - receivedTime);
+	}
+
+	/**
+	 * Gets the number of requests that are queued or being executed
+	 *
+	 * @return the number of admitted requests
+	 */
+	public int getAdmittedRequests() {
+		return this.limiter.getInflight();
+	}
+
+	/**
+	 * Gets the current max number of requests that are queued or being executed
+	 *
+	 * @return the current limit
+	 */
+	public int getLimit() {
+		return this.limiter.getLimit();
+	}
+
+	/**
+	 * Gets the number of requests that are rejected
+	 *
+	 * @return the number of rejected requests
+	 */
+	public long getRejectedCount() {
+		return this.rejectedCounter.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("AdmissionController-%d/%d", this.limiter.getInflight(), this.limiter.getLimit());
+	}
+}
@@ -0,0 +1,211 @@
+package tw.me.ychuang.rpc.server;
+
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.ImmediateExecutor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listens to the future that an asynchronous skeleton method returns, so that no thread is held until it completes.<br>
+ * The following futures are supported:
+ * <ul>
+ * <li>{@link io.netty.util.concurrent.Future}, e.g. a Netty promise</li>
+ * <li>java.util.concurrent.CompletionStage, e.g. CompletableFuture on Java 8 or later</li>
+ * <li>com.google.common.util.concurrent.ListenableFuture of Guava</li>
+ * </ul>
+ * The latter two are bound by Java Reflection API, since they aren't available while this project is built.
+ *
+ * @author Y.C. Huang
+ */
+final class AsyncReturn {
+	private static final Logger log = LoggerFactory.getLogger(AsyncReturn.class);
+
+	/**
+	 * The class of CompletionStage or null if it isn't available
+	 */
+	private static final Class<?> COMPLETION_STAGE = findClass("java.util.concurrent.CompletionStage");
+
+	/**
+	 * The class of BiConsumer that is accepted by CompletionStage.whenComplete, or null if it isn't available
+	 */
+	private static final Class<?> BI_CONSUMER = findClass("java.util.function.BiConsumer");
+
+	/**
+	 * The class of ListenableFuture or null if it isn't available
+	 */
+	private static final Class<?> LISTENABLE_FUTURE = findClass("com.google.common.util.concurrent.ListenableFuture");
+
+	/**
+	 * Listens to the completion of a future
+	 */
+	interface Completion {
+
+		/**
+		 * Invoked once when a future completes
+		 *
+		 * @param value the value of the future if it succeeds
+		 * @param cause the cause of the future if it fails, or null if it succeeds
+		 */
+		void complete(Object value, Throwable cause);
+	}
+
+	private AsyncReturn() {
+		super();
+	}
+
+	private static Class<?> findClass(String className) {
+		try {
+			return Class.forName(className, false, AsyncReturn.class.getClassLoader());
+		} catch (ClassNotFoundException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Whether the return type of a skeleton method is a supported future or not
+	 *
+	 * @param returnType the return type of a skeleton method
+	 * @return true if the method is asynchronous
+	 */
+	static boolean isAsyncType(Class<?> returnType) {
+		if (io.netty.util.concurrent.Future.class.isAssignableFrom(returnType)) {
+			return true;
+		}
+		if (COMPLETION_STAGE != null && BI_CONSUMER != null && COMPLETION_STAGE.isAssignableFrom(returnType)) {
+			return true;
+		}
+
+		return LISTENABLE_FUTURE != null && LISTENABLE_FUTURE.isAssignableFrom(returnType);
+	}
+
+	/**
+	 * Finds the class of the value of a future by the declared generic return type of a skeleton method
+	 *
+	 * @param method an asynchronous skeleton method
+	 * @return the declared class of the value, or null if it can't be used to deserialize the value
+	 */
+	static Class<?> findValueClass(Method method) {
+		Type returnType = method.getGenericReturnType();
+		if (false == returnType instanceof ParameterizedType) {
+			return null;
+		}
+
+		Type valueType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+		if (valueType instanceof ParameterizedType) {
+			valueType = ((ParameterizedType) valueType).getRawType();
+		}
+		if (false == valueType instanceof Class) {
+			return null;
+		}
+
+		// an interface or an abstract class can't be instantiated while a result is deserialized
+		Class<?> valueClass = (Class<?>) valueType;
+		if (valueClass == Object.class || (false == valueClass.isPrimitive() && Modifier.isAbstract(valueClass.getModifiers()))) {
+			return null;
+		}
+
+		return valueClass;
+	}
+
+	/**
+	 * Listens to a future, the completion is notified by the thread that completes the future
+	 *
+	 * @param future the future that an asynchronous skeleton method returns
+	 * @param completion the listener of the completion
+	 */
+	@SuppressWarnings("unchecked")
+	static void listen(Object future, final Completion completion) {
+		if (future instanceof io.netty.util.concurrent.Future) {
+			((io.netty.util.concurrent.Future<Object>) future).addListener(new GenericFutureListener<io.netty.util.concurrent.Future<Object>>() {
+				@Override
+				public void operationComplete(io.netty.util.concurrent.Future<Object> future) {
+					completion.complete(future.getNow(), future.cause());
+				}
+			});
+
+		} else if (COMPLETION_STAGE != null && COMPLETION_STAGE.isInstance(future)) {
+			listenCompletionStage(future, completion);
+
+		} else if (LISTENABLE_FUTURE != null && LISTENABLE_FUTURE.isInstance(future)) {
+			listenListenableFuture((Future<Object>) future, completion);
+
+		} else {
+			completion.complete(future, null);
+		}
+	}
+
+	/**
+	 * Listens to a CompletionStage by its whenComplete method with a proxy of BiConsumer
+	 */
+	private static void listenCompletionStage(Object future, final Completion completion) {
+		Object consumer = Proxy.newProxyInstance(AsyncReturn.class.getClassLoader(), new Class<?>[] { BI_CONSUMER }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if ("accept".equals(method.getName()) && args != null && args.length == 2) {
+					completion.complete(args[0], unwrap((Throwable) args[1]));
+					return null;
+				}
+
+				// the methods of Object, e.g. toString, are answered by the handler itself
+				return method.invoke(this, args);
+			}
+		});
+
+		try {
+			Method whenComplete = COMPLETION_STAGE.getMethod("whenComplete", BI_CONSUMER);
+			whenComplete.invoke(future, consumer);
+		} catch (ReflectiveOperationException e) {
+			log.error("Fail to listen to a CompletionStage.", e);
+			completion.complete(null, e);
+		}
+	}
+
+	/**
+	 * Listens to a ListenableFuture by its addListener method, the value is got without blocking once it completes
+	 */
+	private static void listenListenableFuture(final Future<Object> future, final Completion completion) {
+		Runnable listener = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					completion.complete(future.get(), null);
+				} catch (ExecutionException e) {
+					completion.complete(null, e.getCause());
+				} catch (Exception e) {
+					completion.complete(null, e);
+				}
+			}
+		};
+
+		try {
+			Method addListener = LISTENABLE_FUTURE.getMethod("addListener", Runnable.class, Executor.class);
+			addListener.invoke(future, listener, ImmediateExecutor.INSTANCE);
+		} catch (ReflectiveOperationException e) {
+			log.error("Fail to listen to a ListenableFuture.", e);
+			completion.complete(null, e);
+		}
+	}
+
+	/**
+	 * Unwraps the cause of a CompletionException or an ExecutionException
+	 */
+	private static Throwable unwrap(Throwable cause) {
+		if (cause != null && cause.getCause() != null
+				&& (cause instanceof ExecutionException || "java.util.concurrent.CompletionException".equals(cause.getClass().getName()))) {
+			return cause.getCause();
+		}
+
+		return cause;
+	}
+}
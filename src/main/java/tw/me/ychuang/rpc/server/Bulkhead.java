@@ -0,0 +1,327 @@
+package tw.me.ychuang.rpc.server;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.Constants.BulkheadIsolationType;
+import tw.me.ychuang.rpc.Constants.BulkheadRejectionType;
+import tw.me.ychuang.rpc.exception.RpcException;
+import tw.me.ychuang.rpc.exception.ServerBusyException;
+import tw.me.ychuang.rpc.exception.ServerSideException;
+
+/**
+ * Isolates the calls of a skeleton class or a skeleton method, so that a slow skeleton can't use up every worker thread.<br>
+ * A semaphore bulkhead caps the calls that are executed by the worker threads concurrently,<br>
+ * a pool bulkhead executes the calls by its dedicated threads. A call is rejected while the bulkhead and its queue are full.<br>
+ * A call of an asynchronous skeleton method holds its place until the returned future completes, see {@link #release()}.
+ *
+ * @author Y.C. Huang
+ */
+public class Bulkhead {
+	private static final Logger log = LoggerFactory.getLogger(Bulkhead.class);
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param name the name of this bulkhead, it is a class name or a class name with a method name
+	 * @param maxConcurrent the max number of calls that are executed concurrently
+	 * @param maxWaiting the max number of calls that wait for a place
+	 * @param maxWaitTime the max time in milliseconds a call of a semaphore bulkhead waits for a place
+	 * @param isolation the way that the calls are isolated
+	 * @param rejection the way that a call is rejected while this bulkhead is full
+	 */
+	public Bulkhead(String name, int maxConcurrent, int maxWaiting, long maxWaitTime, BulkheadIsolationType isolation,
+			BulkheadRejectionType rejection) {
+		super();
+		this.name = name;
+		this.maxConcurrent = Math.max(maxConcurrent, 1);
+		this.maxWaiting = Math.max(maxWaiting, 0);
+		this.maxWaitTime = maxWaitTime;
+		this.isolation = isolation;
+		this.rejection = rejection;
+
+		if (isolation == BulkheadIsolationType.pool) {
+			BlockingQueue<Runnable> queue = this.maxWaiting > 0 ? new ArrayBlockingQueue<Runnable>(this.maxWaiting)
+					: new SynchronousQueue<Runnable>();
+			// a place of a pool bulkhead is held by a running or queued call, or an asynchronous call that isn't completed
+			this.permits = new Semaphore(this.maxConcurrent + this.maxWaiting);
+			this.pool = new ThreadPoolExecutor(this.maxConcurrent, this.maxConcurrent, 0L, TimeUnit.MILLISECONDS, queue, new DefaultThreadFactory(
+					"rpc-bulkhead-" + name));
+		} else {
+			this.permits = new Semaphore(this.maxConcurrent);
+			this.pool = null;
+		}
+	}
+
+	/**
+	 * The name of this bulkhead
+	 */
+	private final String name;
+
+	/**
+	 * Getter method for field 'name'
+	 *
+	 * @return the name of this bulkhead
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * The max number of calls that are executed concurrently
+	 */
+	private final int maxConcurrent;
+
+	/**
+	 * Getter method for field 'maxConcurrent'
+	 *
+	 * @return the max number of calls that are executed concurrently
+	 */
+	public int getMaxConcurrent() {
+		return this.maxConcurrent;
+	}
+
+	/**
+	 * The max number of calls that wait for a place
+	 */
+	private final int maxWaiting;
+
+	/**
+	 * The max time in milliseconds a call of a semaphore bulkhead waits for a place
+	 */
+	private final long maxWaitTime;
+
+	/**
+	 * The way that the calls are isolated
+	 */
+	private final BulkheadIsolationType isolation;
+
+	/**
+	 * Getter method for field 'isolation'
+	 *
+	 * @return the way that the calls are isolated
+	 */
+	public BulkheadIsolationType getIsolation() {
+		return this.isolation;
+	}
+
+	/**
+	 * The way that a call is rejected while this bulkhead is full
+	 */
+	private final BulkheadRejectionType rejection;
+
+	/**
+	 * The places of this bulkhead
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * The number of calls that wait for a permit of a semaphore bulkhead
+	 */
+	private final AtomicInteger waitingCalls = new AtomicInteger();
+
+	/**
+	 * The dedicated threads of a pool bulkhead
+	 */
+	private final ThreadPoolExecutor pool;
+
+	/**
+	 * The number of calls that are rejected
+	 */
+	private final AtomicLong rejectedCounter = new AtomicLong();
+
+	/**
+	 * Invokes a skeleton method within this bulkhead.<br>
+	 * The place of an asynchronous method that returns a future is still held, the caller must {@link #release()} it once the future
+	 * completes or expires.
+	 *
+	 * @param invoker an invoker of a skeleton method
+	 * @param parameters the parameters of the method
+	 * @return a return of the method
+	 * @throws RpcException if this bulkhead is full, or the invoker fails
+	 * @throws InvocationTargetException if the method throws an exception
+	 */
+	public Object invoke(SkeletonInvoker invoker, Object[] parameters) throws RpcException, InvocationTargetException {
+		// the queue of a pool bulkhead is counted by its places, so it never waits for a place
+		if (false == this.permits.tryAcquire() && (this.pool != null || false == this.awaitPermit())) {
+			throw this.reject();
+		}
+
+		boolean held = false;
+		try {
+			Object returnObj = this.pool != null ? this.invokeByPool(invoker, parameters) : invoker.invoke(parameters);
+			held = invoker.isAsyncReturn() && returnObj != null;
+
+			return returnObj;
+
+		} finally {
+			if (false == held) {
+				this.permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Releases the place of an asynchronous call once its future completes or expires
+	 */
+	public void release() {
+		this.permits.release();
+	}
+
+	/**
+	 * Waits for a permit if the queue of this semaphore bulkhead isn't full
+	 *
+	 * @return true if a permit is acquired
+	 */
+	private boolean awaitPermit() {
+		if (this.waitingCalls.incrementAndGet() > this.maxWaiting) {
+			this.waitingCalls.decrementAndGet();
+			return false;
+		}
+
+		try {
+			// it is no use waiting longer than the caller does
+			long waitTime = Math.min(this.maxWaitTime, RequestDeadline.getRemainingTime(TimeUnit.MILLISECONDS));
+			return this.permits.tryAcquire(waitTime, TimeUnit.MILLISECONDS);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+
+		} finally {
+			this.waitingCalls.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Invokes a skeleton method by the dedicated threads, the worker thread stops waiting once the caller gives up
+	 */
+	private Object invokeByPool(final SkeletonInvoker invoker, final Object[] parameters) throws RpcException, InvocationTargetException {
+		// the deadline of the request is passed to the dedicated thread, so that the skeleton still reads it
+		final long deadline = RequestDeadline.get();
+
+		Future<Object> future = null;
+		try {
+			future = this.pool.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					RequestDeadline.set(deadline);
+					try {
+						return invoker.invoke(parameters);
+					} finally {
+						RequestDeadline.clear();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			throw this.reject();
+		}
+
+		try {
+			if (deadline == 0) {
+				return future.get();
+			}
+			return future.get(RequestDeadline.getRemainingTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof InvocationTargetException) {
+				throw (InvocationTargetException) cause;
+			}
+			if (cause instanceof RpcException) {
+				throw (RpcException) cause;
+			}
+			throw new InvocationTargetException(cause);
+
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw new ServerSideException("The caller gives up before the skeleton method returns.").addContextValue("Bulkhead", this.name);
+
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new ServerSideException("Interrupted while waiting for the skeleton method.", e).addContextValue("Bulkhead", this.name);
+		}
+	}
+
+	/**
+	 * Counts a rejected call, and creates an exception by the rejection type
+	 */
+	private RpcException reject() {
+		this.rejectedCounter.incrementAndGet();
+		log.warn("Reject a call since the bulkhead is full. bulkhead: {}", this);
+
+		String message = "Reject a call since the bulkhead is full. bulkhead: " + this.name;
+		if (this.rejection == BulkheadRejectionType.busy) {
+			return new ServerBusyException(message);
+		}
+
+		return new ServerSideException(message);
+	}
+
+	/**
+	 * Gets the number of calls that are being executed
+	 *
+	 * @return the number of active calls
+	 */
+	public int getActiveCount() {
+		if (this.pool != null) {
+			return this.maxConcurrent + this.maxWaiting - this.permits.availablePermits() - this.pool.getQueue().size();
+		}
+
+		return this.maxConcurrent - this.permits.availablePermits();
+	}
+
+	/**
+	 * Gets the number of calls that wait for a place
+	 *
+	 * @return the queue depth of this bulkhead
+	 */
+	public int getQueueDepth() {
+		if (this.pool != null) {
+			return this.pool.getQueue().size();
+		}
+
+		return this.waitingCalls.get();
+	}
+
+	/**
+	 * Gets the number of calls that are rejected
+	 *
+	 * @return the number of rejected calls
+	 */
+	public long getRejectedCount() {
+		return this.rejectedCounter.get();
+	}
+
+	/**
+	 * Stops the dedicated threads of a pool bulkhead
+	 */
+	public void shutdown() {
+		if (this.pool != null) {
+			this.pool.shutdown();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Bulkhead-%s/%s/%d/%d", this.name, this.isolation, this.getActiveCount(), this.maxConcurrent);
+	}
+}
@@ -0,0 +1,161 @@
+package tw.me.ychuang.rpc.server;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.ClasspathProperties;
+import tw.me.ychuang.rpc.Constants;
+import tw.me.ychuang.rpc.Constants.BulkheadIsolationType;
+import tw.me.ychuang.rpc.Constants.BulkheadRejectionType;
+
+/**
+ * Creates and shares the bulkheads of skeleton classes and skeleton methods.<br>
+ * The bulkhead of a method is looked up by the following order:
+ * <ol>
+ * <li>'server.bulkhead.max.concurrent.[class name].[method name]' in rpc-server.properties</li>
+ * <li>{@link SkeletonBulkhead} annotation on the skeleton method</li>
+ * <li>'server.bulkhead.max.concurrent.[class name]' in rpc-server.properties</li>
+ * <li>{@link SkeletonBulkhead} annotation on the skeleton class</li>
+ * </ol>
+ * A method without any bulkhead is executed by the worker threads without limit.
+ *
+ * @author Y.C. Huang
+ */
+public class BulkheadRegistry {
+	private static final Logger log = LoggerFactory.getLogger(BulkheadRegistry.class);
+
+	/**
+	 * Apply a lazy-loaded singleton - Initialization on Demand Holder.<br>
+	 * see detail on right side: http://en.wikipedia.org/wiki/Initialization-on-demand_holder_idiom
+	 */
+	private static class LazyHolder {
+		private static final BulkheadRegistry INSTANCE = new BulkheadRegistry();
+	}
+
+	public static BulkheadRegistry getInstance() {
+		return LazyHolder.INSTANCE;
+	}
+
+	/**
+	 * All bulkheads by name, the overloaded methods share the same bulkhead
+	 */
+	private final ConcurrentMap<String, Bulkhead> bulkheadPool = new ConcurrentHashMap<>();
+
+	private BulkheadRegistry() {
+		super();
+	}
+
+	/**
+	 * Finds the bulkhead of a skeleton method, it is created at the first time.
+	 *
+	 * @param skeletonClass a skeleton class
+	 * @param method a skeleton method
+	 * @return a bulkhead or null if the method isn't isolated
+	 */
+	public Bulkhead findBulkhead(Class<?> skeletonClass, Method method) {
+		ClasspathProperties config = ServerProperties.getInstance();
+
+		String methodName = skeletonClass.getName() + '.' + method.getName();
+		SkeletonBulkhead methodAnnotation = method.getAnnotation(SkeletonBulkhead.class);
+		if (methodAnnotation != null || config.containsKey("server.bulkhead.max.concurrent." + methodName)) {
+			return this.findBulkhead(methodName, methodAnnotation);
+		}
+
+		String className = skeletonClass.getName();
+		SkeletonBulkhead classAnnotation = skeletonClass.getAnnotation(SkeletonBulkhead.class);
+		if (classAnnotation != null || config.containsKey("server.bulkhead.max.concurrent." + className)) {
+			return this.findBulkhead(className, classAnnotation);
+		}
+
+		return null;
+	}
+
+	private Bulkhead findBulkhead(String name, SkeletonBulkhead annotation) {
+		Bulkhead bulkhead = this.bulkheadPool.get(name);
+		if (bulkhead != null) {
+			return bulkhead;
+		}
+
+		// creates under a lock since a pool bulkhead owns threads
+		synchronized (this) {
+			bulkhead = this.bulkheadPool.get(name);
+			if (bulkhead == null) {
+				bulkhead = this.createBulkhead(name, annotation);
+				this.bulkheadPool.put(name, bulkhead);
+			}
+		}
+
+		return bulkhead;
+	}
+
+	private Bulkhead createBulkhead(String name, SkeletonBulkhead annotation) {
+		ClasspathProperties config = ServerProperties.getInstance();
+
+		int maxConcurrent = annotation != null ? annotation.maxConcurrent() : Constants.DEFAULT_THREAD_SIZE;
+		maxConcurrent = config.getInt("server.bulkhead.max.concurrent." + name, maxConcurrent);
+
+		int maxWaiting = config.getInt("server.bulkhead.max.waiting", Constants.BULKHEAD_MAX_WAITING);
+		if (annotation != null && annotation.maxWaiting() >= 0) {
+			maxWaiting = annotation.maxWaiting();
+		}
+		maxWaiting = config.getInt("server.bulkhead.max.waiting." + name, maxWaiting);
+
+		long maxWaitTime = config.getLong("server.bulkhead.max.wait.time", Constants.BULKHEAD_MAX_WAIT_TIME);
+
+		BulkheadIsolationType isolation = annotation != null ? annotation.isolation() : BulkheadIsolationType.semaphore;
+		String isolationName = StringUtils.trim(config.getString("server.bulkhead.isolation." + name, null));
+		if (BulkheadIsolationType.asLabels().contains(isolationName)) {
+			isolation = BulkheadIsolationType.valueOf(isolationName);
+		}
+
+		BulkheadRejectionType rejection = annotation != null ? annotation.rejection() : BulkheadRejectionType.busy;
+		String rejectionName = StringUtils.trim(config.getString("server.bulkhead.rejection." + name, null));
+		if (BulkheadRejectionType.asLabels().contains(rejectionName)) {
+			rejection = BulkheadRejectionType.valueOf(rejectionName);
+		}
+
+		Bulkhead bulkhead = new Bulkhead(name, maxConcurrent, maxWaiting, maxWaitTime, isolation, rejection);
+		log.info("Create a bulkhead. bulkhead: {}, max concurrent: {}, max waiting: {}, rejection: {}", bulkhead, maxConcurrent, maxWaiting,
+				rejection);
+
+		return bulkhead;
+	}
+
+	/**
+	 * Lists all bulkheads, e.g. to expose their queue depths and rejection counts
+	 *
+	 * @return all bulkheads
+	 */
+	public List<Bulkhead> listBulkheads() {
+		return new ArrayList<>(this.bulkheadPool.values());
+	}
+
+	/**
+	 * Logs the queue depth and the rejection count of all bulkheads
+	 */
+	public void showStatistics() {
+		for (Bulkhead bulkhead : this.bulkheadPool.values()) {
+			log.info("Bulkhead measurement, bulkhead: {}, active count: {}, queue depth: {}, rejected count: {}", bulkhead.getName(),
+					bulkhead.getActiveCount(), bulkhead.getQueueDepth(), bulkhead.getRejectedCount());
+		}
+	}
+
+	/**
+	 * Stops all bulkheads, they are created again at the next time.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			for (Bulkhead bulkhead : this.bulkheadPool.values()) {
+				bulkhead.shutdown();
+			}
+			this.bulkheadPool.clear();
+		}
+	}
+}
@@ -2,14 +2,27 @@ package tw.me.ychuang.rpc.server;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
-import io.netty.util.CharsetUtil;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import io.netty.util.ReferenceCountUtil;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,11 +31,15 @@ import tw.me.ychuang.rpc.Constants;
 import tw.me.ychuang.rpc.Request;
 import tw.me.ychuang.rpc.Response;
 import tw.me.ychuang.rpc.Result;
-import tw.me.ychuang.rpc.json.JsonSerializer;
+import tw.me.ychuang.rpc.codec.MessageSerializer;
+import tw.me.ychuang.rpc.codec.MessageSerializerFactory;
+import tw.me.ychuang.rpc.exception.RpcException;
+import tw.me.ychuang.rpc.exception.ServerBusyException;
 
 /**
  * The most important channel handler.<br>
- * Processes all data that is sent to or received from channel in server-side.
+ * Processes all data that is sent to or received from channel in server-side.<br>
+ * The requests of a channel are executed serially by default, or concurrently by a shared worker pool if it is given.
  * 
  * @author Y.C. Huang
  */
@@ -31,15 +48,63 @@ public class ChannelHandlerAdapter extends ChannelInboundHandlerAdapter {
 	private static final Logger log = LoggerFactory.getLogger(ChannelHandlerAdapter.class);
 
 	/**
-	 * A default constructor
+	 * The number of requests of a channel that are being executed
+	 */
+	private static final AttributeKey<AtomicInteger> RUNNING_REQUESTS = AttributeKey.valueOf("runningRequests");
+
+	/**
+	 * The message serializer that the client of a channel has chosen lately, the pushed messages are serialized by it
+	 */
+	static final AttributeKey<MessageSerializer> SERIALIZER = AttributeKey.valueOf("serializer");
+
+	/**
+	 * The batches of a channel that are collecting the responses of their requests by request id
+	 */
+	private static final AttributeKey<ConcurrentMap<Long, ResponseBatch>> RESPONSE_BATCHES = AttributeKey.valueOf("responseBatches");
+
+	/**
+	 * A shared worker pool that executes requests concurrently, the requests are executed serially if it is null
+	 */
+	private final Executor workerPool;
+
+	/**
+	 * The max number of requests of a channel that are executed concurrently
+	 */
+	private final int maxConcurrentRequests;
+
+	/**
+	 * Admits or rejects the coming requests of all channels
+	 */
+	private final AdmissionController admissionController;
+
+	/**
+	 * A default constructor, the requests of a channel are executed serially
 	 */
 	public ChannelHandlerAdapter() {
+		this(null, Constants.MAX_CONCURRENT_REQUESTS, new AdmissionController(0, 0));
+	}
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param workerPool a shared worker pool that executes requests concurrently, or null to execute requests serially
+	 * @param maxConcurrentRequests the max number of requests of a channel that are executed concurrently
+	 * @param admissionController admits or rejects the coming requests of all channels
+	 */
+	public ChannelHandlerAdapter(Executor workerPool, int maxConcurrentRequests, AdmissionController admissionController) {
 		super();
+		this.workerPool = workerPool;
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		this.admissionController = admissionController;
 	}
 
 	@Override
 	public void channelActive(ChannelHandlerContext context) throws Exception {
-		// nothing to do
+		context.channel().attr(RUNNING_REQUESTS).set(new AtomicInteger());
+		context.channel().attr(RESPONSE_BATCHES).set(new ConcurrentHashMap<Long, ResponseBatch>());
+
+		// the invalidations of near caches are pushed to all connected clients
+		ServerChannelManager.getInstance().getChannelGroup().add(context.channel());
 	}
 
 	/**
@@ -47,54 +112,468 @@ public class ChannelHandlerAdapter extends ChannelInboundHandlerAdapter {
 	 * invokes a matching skeleton via a command executor, send a response with a result back finally.
 	 */
 	@Override
-	public void channelRead(ChannelHandlerContext context, Object message) throws Exception {
+	public void channelRead(final ChannelHandlerContext context, Object message) throws Exception {
 		final long startTime = System.nanoTime();
 
+		final MessageSerializer serializer;
+		final Request request;
 		try {
-			String requestJson = (String) message;
-			Request request = JsonSerializer.getInstance().fromJson(requestJson, Request.class);
+			// a message is deserialized and the response is serialized by the serializer that the client has chosen
+			ByteBuf requestMsg = (ByteBuf) message;
+			serializer = MessageSerializerFactory.getInstance().detectSerializer(requestMsg);
+			if (false == SerializerNegotiator.isAccepted(serializer)) {
+				// a serializer that isn't listed by 'server.channel.serializers' never decodes a message
+				throw new DecoderException("Receive a message of a serializer that isn't accepted. serializer: " + serializer.getName());
+			}
+			request = serializer.deserialize(requestMsg, Request.class);
 			log.debug("Receive a request. id: {}", request.getId());
 
-			if (request.isHeartbeat()) {
-				// nothing to do since this request is a HEARTBEAT signal
-				log.debug("Receive a HEARTBEAT signal. id: {}", request.getId());
-				return;
+			Attribute<MessageSerializer> serializerAttr = context.channel().attr(SERIALIZER);
+			if (serializerAttr.get() != serializer) {
+				serializerAttr.set(serializer);
+			}
+
+		} finally {
+			ReferenceCountUtil.release(message);
+		}
+
+		if (request.isHeartbeat()) {
+			// nothing to do since this request is a HEARTBEAT signal
+			log.debug("Receive a HEARTBEAT signal. id: {}", request.getId());
+			return;
+		}
+
+		if (request.isBatch()) {
+			// the responses that are ready while a batch request is dispatched are written back as one batch response
+			ResponseBatch batch = new ResponseBatch(serializer, request.getBatch().size(), startTime);
+			ConcurrentMap<Long, ResponseBatch> batches = context.channel().attr(RESPONSE_BATCHES).get();
+			for (Request batchRequest : request.getBatch()) {
+				batches.put(batchRequest.getId(), batch);
+			}
+			log.debug("Receive a batch request. size: {}", batch.size());
+
+			try {
+				for (Request batchRequest : request.getBatch()) {
+					this.receive(context, serializer, batchRequest, startTime);
+				}
+			} finally {
+				// the others are written back one by one as soon as they are ready, so a slow request never holds the fast ones
+				List<ByteBuf> messages = batch.close();
+				if (false == messages.isEmpty()) {
+					this.writeBatch(context, batch, messages, false);
+				}
 			}
+			return;
+		}
 
-			// deserialize a json message to a request and get a command from it
-			final Long id = request.getId();
-			Command command = request.getCommand();
+		this.receive(context, serializer, request, startTime);
+	}
+
+	/**
+	 * Executes a received request or writes a cached or busy response back, it may belong to a batch request
+	 */
+	private void receive(final ChannelHandlerContext context, final MessageSerializer serializer, final Request request, final long startTime) {
+		// the caller has given up already, so the request isn't worth to be queued
+		final long deadline = RequestDeadline.toDeadline(startTime, request.getTimeout());
+		if (this.dropExpired(context, request, deadline)) {
+			return;
+		}
 
-			// execute the business logic and obtain a result by a interface of command executor
-			Result result = CommandExecutor.getInstance().execute(command);
+		// a cached result is written back at once, the command is neither executed nor is its result serialized again
+		// a conditional request bypasses it, since the version of a result is computed from the full result
+		if (false == request.isConditional() && this.writeCachedResponse(context, serializer, request, startTime)) {
+			return;
+		}
 
-			// serialize a response with a result to a json message
-			Response response = new Response(id, result, result.getReturnClass().getName());
-			String responseJson = JsonSerializer.getInstance().toJson(response, Response.class);
+		// a busy server rejects the request quickly rather than queues it, so that the client retries on another server
+		if (false == this.admissionController.tryAdmit()) {
+			this.writeBusyResponse(context, serializer, request, startTime, this.workerPool != null);
+			return;
+		}
 
-			// append a request's boundary
-			StringBuilder responseMsg = new StringBuilder(responseJson);
-			responseMsg.append(Constants.REQUEST_BOUNDARY);
-			ByteBuf resMsgByteBuf = Unpooled.copiedBuffer(responseMsg.toString(), CharsetUtil.UTF_8);
+		if (this.workerPool == null) {
+			// the response is flushed while all read messages are processed
+			this.execute(context, serializer, request, startTime, deadline, false);
+			return;
+		}
 
-			// write a json message back this channel
-			ChannelFuture future = context.channel().write(resMsgByteBuf);
-			future.addListener(new ChannelFutureListener() {
+		// the response is correlated by request id, so it can be written back out of order
+		final Channel channel = context.channel();
+		this.beginRequest(channel);
+		try {
+			this.workerPool.execute(new Runnable() {
 				@Override
-				public void operationComplete(ChannelFuture future) {
-					if (future.isSuccess()) {
-						log.info("Finish to receive a request and return a response back. id: {}", id);
+				public void run() {
+					try {
+						ChannelHandlerAdapter.this.execute(context, serializer, request, startTime, deadline, true);
+					} finally {
+						ChannelHandlerAdapter.this.endRequest(channel);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			this.endRequest(channel);
+			this.admissionController.release();
+
+			log.warn("Reject a request since the worker pool is exhausted. id: {}", request.getId());
+			this.writeBusyResponse(context, serializer, request, startTime, true);
+		}
+	}
+
+	/**
+	 * Writes a lightweight and retryable busy response back without executing the command of a request
+	 */
+	private void writeBusyResponse(ChannelHandlerContext context, MessageSerializer serializer, Request request, long startTime, boolean flush) {
+		RpcException err = new ServerBusyException("Reject a request since the server is busy.");
+		this.writeResponse(context, serializer, new Response(request.getId(), new Result(err, err.getClass()), err.getClass().getName()),
+				startTime, flush);
+	}
+
+	/**
+	 * Executes the command of a request and writes a response back
+	 */
+	private void execute(ChannelHandlerContext context, MessageSerializer serializer, Request request, long startTime, long deadline,
+			boolean flush) {
+		// the request may be expired while it is waiting for a worker
+		if (this.dropExpired(context, request, deadline)) {
+			this.admissionController.release();
+			return;
+		}
+
+		// the request has been queued too long, so the server is overloaded and the client had better retry on another server
+		if (false == this.admissionController.tryExecute(startTime)) {
+			this.writeBusyResponse(context, serializer, request, startTime, flush);
+			return;
+		}
+
+		this.executeAdmitted(context, serializer, request, startTime, deadline, flush);
+	}
+
+	/**
+	 * Executes the command of an admitted request and writes a response back once its result is ready.<br>
+	 * A skeleton method that returns a future doesn't hold the calling thread, the response is written by the thread that completes it.
+	 */
+	private void executeAdmitted(final ChannelHandlerContext context, final MessageSerializer serializer, final Request request,
+			final long startTime, final long deadline, final boolean flush) {
+		final Thread callingThread = Thread.currentThread();
+		final AtomicBoolean dispatching = new AtomicBoolean(true);
+
+		// a result computed before an invalidation mustn't be cached after it, a cache that is created during the execution starts from 0
+		ResultCache knownCache = this.findResultCache(request.getCommand());
+		final long cacheVersion = knownCache != null ? knownCache.getVersion() : 0;
+
+		ResultListener listener = new ResultListener() {
+			@Override
+			public void operationComplete(Result result) {
+				try {
+					// nobody waits for the response any more, so it isn't worth to be serialized
+					if (ChannelHandlerAdapter.this.dropExpired(context, request, deadline)) {
+						return;
+					}
 
+					// a result that is completed later or by another thread is flushed at once, since no read completion flushes it
+					boolean flushNow = flush || false == dispatching.get() || Thread.currentThread() != callingThread;
+					ResultCache cache = result.isExceptional() ? null : ChannelHandlerAdapter.this.findResultCache(request.getCommand());
+					if (request.isConditional() && false == result.isExceptional()) {
+						ChannelHandlerAdapter.this.writeConditionalResponse(context, serializer, request, result, startTime, flushNow);
+					} else if (cache != null) {
+						ChannelHandlerAdapter.this.writeCacheableResponse(context, serializer, request, result, cache, cacheVersion, startTime,
+								flushNow);
 					} else {
-						Throwable cause = future.cause();
-						log.error("Fail to receive a request and return a response back.", future.cause());
+						Response response = new Response(request.getId(), result, result.getReturnClass().getName());
+						ChannelHandlerAdapter.this.writeResponse(context, serializer, response, startTime, flushNow);
 					}
 
-					ServerMeasurer.measure(startTime);
+				} finally {
+					// the time from receiving to finishing a request adapts the admission limit
+					ChannelHandlerAdapter.this.admissionController.release(startTime);
 				}
-			});
+			}
+		};
+
+		// execute the business logic and obtain a result by a interface of command executor, the skeleton may read the deadline
+		// an identical command in flight shares its result if the method is coalesced
+		RequestDeadline.set(deadline);
+		try {
+			CommandCoalescer.getInstance().execute(request.getCommand(), listener);
 		} finally {
-			ReferenceCountUtil.release(message);
+			RequestDeadline.clear();
+			dispatching.set(false);
+		}
+	}
+
+	/**
+	 * Finds the result cache of a command whose method has been resolved
+	 *
+	 * @return a result cache or null if the results of the method aren't cached
+	 */
+	private ResultCache findResultCache(Command command) {
+		SkeletonInvoker invoker = SkeletonRegistry.getInstance().peekInvoker(command);
+
+		return invoker != null ? ResultCacheRegistry.getInstance().findCache(invoker.getMethod()) : null;
+	}
+
+	/**
+	 * Writes a cached result back if the method of a request is cacheable and the result of its parameters is cached
+	 *
+	 * @return true if the request is answered by a cached result
+	 */
+	private boolean writeCachedResponse(ChannelHandlerContext context, MessageSerializer serializer, Request request, long startTime) {
+		ResultCache cache = this.findResultCache(request.getCommand());
+		if (cache == null) {
+			return false;
+		}
+
+		byte[] body = cache.get(request.getCommand().findParameterKey(), serializer.getName());
+		if (body == null) {
+			return false;
+		}
+		log.debug("Answer a request by a cached result. id: {}, cache: {}", request.getId(), cache.getName());
+
+		// the response is flushed while all read messages are processed
+		this.writeSerializedResponse(context, serializer, request.getId(), body, startTime, false);
+
+		return true;
+	}
+
+	/**
+	 * Serializes a result once, caches it, and writes a response with it back
+	 */
+	private void writeCacheableResponse(ChannelHandlerContext context, MessageSerializer serializer, Request request, Result result,
+			ResultCache cache, long cacheVersion, long startTime, boolean flush) {
+		long id = request.getId();
+
+		ByteBuf resultByteBuf = context.alloc().buffer();
+		ByteBuf resMsgByteBuf = null;
+		try {
+			serializer.serializeResult(result, resultByteBuf);
+
+			// the cached copy is the only one on the heap, the response is written from the pooled buffer
+			byte[] body = new byte[resultByteBuf.readableBytes()];
+			resultByteBuf.getBytes(resultByteBuf.readerIndex(), body);
+			if (false == cache.put(request.getCommand().findParameterKey(), serializer.getName(), body, cacheVersion)) {
+				log.debug("Skip caching a result that is invalidated while it is computed. id: {}, cache: {}", id, cache.getName());
+			}
+
+			resMsgByteBuf = context.alloc().buffer(body.length + 16);
+			serializer.serializeResponse(id, resultByteBuf, resMsgByteBuf);
+
+		} catch (RuntimeException e) {
+			if (resMsgByteBuf != null) {
+				resMsgByteBuf.release();
+			}
+			log.error("Fail to serialize a result. id: {}", id, e);
+			this.skipMessage(context, id);
+			return;
+
+		} finally {
+			resultByteBuf.release();
+		}
+
+		this.writeMessage(context, resMsgByteBuf, id, startTime, flush);
+	}
+
+	/**
+	 * Compares the version of a result with the one that the client holds, and writes a not modified result back if they are the same.<br>
+	 * The version is a hash of the serialized result, a changed result is written back from the same serialized bytes with its version.
+	 */
+	private void writeConditionalResponse(ChannelHandlerContext context, MessageSerializer serializer, Request request, Result result,
+			long startTime, boolean flush) {
+		long id = request.getId();
+
+		ByteBuf resultByteBuf = context.alloc().buffer();
+		ByteBuf resMsgByteBuf = null;
+		try {
+			serializer.serializeResult(result, resultByteBuf);
+			String version = toVersion(resultByteBuf);
+
+			if (version.equals(request.getVersion())) {
+				log.debug("Answer a request by a not modified result. id: {}, version: {}", id, version);
+				Result notModifiedResult = Result.notModified(version);
+				this.writeResponse(context, serializer, new Response(id, notModifiedResult, notModifiedResult.getReturnClass().getName()),
+						startTime, flush);
+				return;
+			}
+
+			resMsgByteBuf = context.alloc().buffer(resultByteBuf.readableBytes() + 64);
+			serializer.serializeVersionedResponse(id, resultByteBuf, version, resMsgByteBuf);
+
+		} catch (RuntimeException e) {
+			if (resMsgByteBuf != null) {
+				resMsgByteBuf.release();
+			}
+			log.error("Fail to serialize a result. id: {}", id, e);
+			this.skipMessage(context, id);
+			return;
+
+		} finally {
+			resultByteBuf.release();
+		}
+
+		this.writeMessage(context, resMsgByteBuf, id, startTime, flush);
+	}
+
+	/**
+	 * Computes the version of a serialized result, it is a MD5 hash in hex
+	 */
+	private static String toVersion(ByteBuf resultByteBuf) {
+		MessageDigest digest = null;
+		try {
+			digest = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MD5 is unsupported.", e);
+		}
+		digest.update(resultByteBuf.nioBuffer());
+
+		StringBuilder version = new StringBuilder(32);
+		for (byte b : digest.digest()) {
+			version.append(Character.forDigit((b >> 4) & 0x0F, 16)).append(Character.forDigit(b & 0x0F, 16));
+		}
+
+		return version.toString();
+	}
+
+	/**
+	 * Writes a response with a serialized result back
+	 */
+	private void writeSerializedResponse(ChannelHandlerContext context, MessageSerializer serializer, long id, byte[] body, long startTime,
+			boolean flush) {
+		ByteBuf resMsgByteBuf = context.alloc().buffer(body.length + 16);
+		serializer.serializeResponse(id, Unpooled.wrappedBuffer(body), resMsgByteBuf);
+
+		this.writeMessage(context, resMsgByteBuf, id, startTime, flush);
+	}
+
+	/**
+	 * Drops a request if its deadline is passed, since the caller has given up and has stopped waiting for the response
+	 * 
+	 * @return true if the request is dropped
+	 */
+	private boolean dropExpired(ChannelHandlerContext context, Request request, long deadline) {
+		if (false == RequestDeadline.isExpired(deadline)) {
+			return false;
+		}
+		this.skipMessage(context, request.getId());
+
+		ServerMeasurer.measureExpired();
+		log.warn("Drop an expired request since its caller has given up. id: {}, timeout: {}", request.getId(), request.getTimeout());
+
+		return true;
+	}
+
+	/**
+	 * Serializes a response to a message into a pooled buffer directly and writes it back
+	 */
+	private void writeResponse(ChannelHandlerContext context, MessageSerializer serializer, Response response, long startTime, boolean flush) {
+		long id = response.getId();
+
+		ByteBuf resMsgByteBuf = context.alloc().buffer();
+		try {
+			serializer.serialize(response, Response.class, resMsgByteBuf);
+
+		} catch (RuntimeException e) {
+			resMsgByteBuf.release();
+			log.error("Fail to serialize a response. id: {}", id, e);
+			this.skipMessage(context, id);
+			return;
+		}
+
+		this.writeMessage(context, resMsgByteBuf, id, startTime, flush);
+	}
+
+	/**
+	 * Writes a serialized response back and measures it once it is written
+	 */
+	private void writeMessage(ChannelHandlerContext context, ByteBuf resMsgByteBuf, final long id, final long startTime, boolean flush) {
+		// the response of a batch request is gathered while the batch is being dispatched, otherwise it is written back by itself
+		ResponseBatch batch = context.channel().attr(RESPONSE_BATCHES).get().remove(id);
+		if (batch != null && batch.add(resMsgByteBuf)) {
+			return;
+		}
+
+		// write a message back this channel
+		ChannelFuture future = flush ? context.channel().writeAndFlush(resMsgByteBuf) : context.channel().write(resMsgByteBuf);
+		future.addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) {
+				if (future.isSuccess()) {
+					log.info("Finish to receive a request and return a response back. id: {}", id);
+
+				} else {
+					Throwable cause = future.cause();
+					log.error("Fail to receive a request and return a response back.", future.cause());
+				}
+
+				ServerMeasurer.measure(startTime);
+			}
+		});
+	}
+
+	/**
+	 * Forgets the request of a batch that gets no response, since the request is dropped or its response fails to be serialized
+	 */
+	private void skipMessage(ChannelHandlerContext context, long id) {
+		context.channel().attr(RESPONSE_BATCHES).get().remove(id);
+	}
+
+	/**
+	 * Combines the serialized responses that are gathered by a batch into one batch response and writes it back, a single one is written as it is
+	 */
+	private void writeBatch(ChannelHandlerContext context, final ResponseBatch batch, final List<ByteBuf> messages, boolean flush) {
+		ByteBuf resMsgByteBuf = null;
+		if (messages.size() == 1) {
+			resMsgByteBuf = messages.get(0);
+		} else {
+			resMsgByteBuf = context.alloc().buffer();
+			try {
+				batch.getSerializer().serializeBatch(messages, Response.class, resMsgByteBuf);
+			} finally {
+				for (ByteBuf message : messages) {
+					message.release();
+				}
+			}
+		}
+
+		ChannelFuture future = flush ? context.channel().writeAndFlush(resMsgByteBuf) : context.channel().write(resMsgByteBuf);
+		future.addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) {
+				if (future.isSuccess()) {
+					log.info("Finish to receive a batch request and return a batch response back. size: {}/{}", messages.size(), batch.size());
+
+				} else {
+					log.error("Fail to receive a batch request and return a batch response back.", future.cause());
+				}
+
+				for (int i = 0; i < messages.size(); i++) {
+					ServerMeasurer.measure(batch.getStartTime());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Counts a running request, and stops reading from the channel while the cap is reached
+	 */
+	private void beginRequest(Channel channel) {
+		AtomicInteger runningRequests = channel.attr(RUNNING_REQUESTS).get();
+		if (runningRequests.incrementAndGet() >= this.maxConcurrentRequests) {
+			channel.config().setAutoRead(false);
+
+			// a running request may have ended before reading is stopped
+			if (runningRequests.get() < this.maxConcurrentRequests) {
+				channel.config().setAutoRead(true);
+			}
+		}
+	}
+
+	/**
+	 * Discounts a running request, and resumes reading from the channel while it is under the cap
+	 */
+	private void endRequest(Channel channel) {
+		AtomicInteger runningRequests = channel.attr(RUNNING_REQUESTS).get();
+		if (runningRequests.decrementAndGet() < this.maxConcurrentRequests && false == channel.config().isAutoRead()) {
+			channel.config().setAutoRead(true);
 		}
 	}
 
@@ -0,0 +1,193 @@
+package tw.me.ychuang.rpc.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.ClasspathProperties;
+import tw.me.ychuang.rpc.Command;
+import tw.me.ychuang.rpc.Result;
+
+/**
+ * Coalesces the identical commands that are in flight at the same time, so that a burst of them executes the skeleton method once.<br>
+ * The first command of a flight executes the method, and the others share its result while it is completed.<br>
+ * The commands of a method are coalesced by their parameters if 'server.single.flight.[skeleton].[method] = true' in rpc-server.properties,<br>
+ * so the method must be idempotent and its result must be treated as read-only.
+ *
+ * @author Y.C. Huang
+ */
+public class CommandCoalescer {
+	private static final Logger log = LoggerFactory.getLogger(CommandCoalescer.class);
+
+	/**
+	 * Apply a lazy-loaded singleton - Initialization on Demand Holder.<br>
+	 * see detail on right side: http://en.wikipedia.org/wiki/Initialization-on-demand_holder_idiom
+	 */
+	private static class LazyHolder {
+		private static final CommandCoalescer INSTANCE = new CommandCoalescer();
+	}
+
+	public static CommandCoalescer getInstance() {
+		return LazyHolder.INSTANCE;
+	}
+
+	/**
+	 * The coalesced methods, e.g. 'skeleton.method'
+	 */
+	private final Set<String> methodNames = new HashSet<>();
+
+	/**
+	 * The flights by method, parameter classes and the canonical key of parameters
+	 */
+	private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+	private final AtomicLong callCounter = new AtomicLong();
+
+	private final AtomicLong sharedCounter = new AtomicLong();
+
+	private CommandCoalescer() {
+		super();
+
+		ClasspathProperties config = ServerProperties.getInstance();
+		Iterator<String> flightKeys = config.getKeys("server.single.flight.");
+		while (flightKeys.hasNext()) {
+			String flightKey = flightKeys.next();
+			if (config.getBoolean(flightKey, false)) {
+				this.methodNames.add(StringUtils.removeStart(flightKey, "server.single.flight."));
+				log.info("Find {}: true", flightKey);
+			}
+		}
+	}
+
+	/**
+	 * The listeners that wait for the result of an executing command
+	 */
+	private static class Flight {
+		private final List<ResultListener> listeners = new ArrayList<>(2);
+
+		private boolean completed = false;
+
+		private Flight(ResultListener listener) {
+			this.listeners.add(listener);
+		}
+
+		/**
+		 * Joins this flight unless its result has been notified
+		 */
+		private synchronized boolean join(ResultListener listener) {
+			if (this.completed) {
+				return false;
+			}
+			this.listeners.add(listener);
+
+			return true;
+		}
+
+		/**
+		 * Closes this flight, so that no listener joins it any more
+		 */
+		private synchronized List<ResultListener> complete() {
+			this.completed = true;
+
+			return this.listeners;
+		}
+	}
+
+	/**
+	 * Executes a command by the command executor, or shares the result of an identical command that is in flight
+	 *
+	 * @param command a command
+	 * @param listener the listener of a result with a return or an exception
+	 */
+	public void execute(Command command, ResultListener listener) {
+		String methodName = command.getSkeleton() + '.' + command.getMethod();
+		if (false == this.methodNames.contains(methodName)) {
+			CommandExecutor.getInstance().execute(command, listener);
+			return;
+		}
+
+		this.callCounter.incrementAndGet();
+		// the classes of parameters tell the overloaded methods apart, e.g. m(int) and m(long) with the same value
+		final String key = methodName + Arrays.toString(command.findParamClasses()) + '#' + command.findParameterKey();
+		final Flight flight = new Flight(listener);
+		while (true) {
+			Flight existingFlight = this.flights.putIfAbsent(key, flight);
+			if (existingFlight == null) {
+				break;
+			}
+			if (existingFlight.join(listener)) {
+				this.sharedCounter.incrementAndGet();
+				log.debug("Share the result of an identical command in flight. key: {}", key);
+				return;
+			}
+
+			// the flight has completed but has not been removed yet
+			this.flights.remove(key, existingFlight);
+		}
+
+		CommandExecutor.getInstance().execute(command, new ResultListener() {
+			@Override
+			public void operationComplete(Result result) {
+				CommandCoalescer.this.flights.remove(key, flight);
+				for (ResultListener sharedListener : flight.complete()) {
+					try {
+						sharedListener.operationComplete(result);
+					} catch (RuntimeException e) {
+						log.error("Fail to notify a listener of a shared result. key: {}", key, e);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Gets the number of commands of the coalesced methods
+	 *
+	 * @return the number of calls
+	 */
+	public long getCallCount() {
+		return this.callCounter.get();
+	}
+
+	/**
+	 * Gets the number of commands that share the result of an identical command in flight
+	 *
+	 * @return the number of shared calls
+	 */
+	public long getSharedCount() {
+		return this.sharedCounter.get();
+	}
+
+	/**
+	 * Gets the ratio of commands that don't execute the skeleton method themselves
+	 *
+	 * @return the coalescing ratio between 0 and 1
+	 */
+	public double getCoalescingRatio() {
+		long callCount = this.callCounter.get();
+
+		return callCount > 0 ? (double) this.sharedCounter.get() / callCount : 0;
+	}
+
+	/**
+	 * Logs the call and shared counts of the coalesced methods
+	 */
+	public void showStatistics() {
+		if (this.methodNames.isEmpty()) {
+			return;
+		}
+
+		log.info("Single flight measurement, call count: {}, shared count: {}, coalescing ratio: {}", this.getCallCount(),
+				this.getSharedCount(), this.getCoalescingRatio());
+	}
+}
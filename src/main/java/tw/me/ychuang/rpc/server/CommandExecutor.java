@@ -38,4 +38,15 @@ public abstract class CommandExecutor {
 	 * @return a result with a return or an exception
 	 */
 	public abstract Result execute(Command command);
+
+	/**
+	 * Dispatches a command to the matching skeleton, and notifies a listener once the result is ready.<br>
+	 * The calling thread isn't held by a skeleton method that returns a future, the listener is notified by the thread that completes it.
+	 *
+	 * @param command a command
+	 * @param listener the listener of a result with a return or an exception
+	 */
+	public void execute(Command command, ResultListener listener) {
+		listener.operationComplete(this.execute(command));
+	}
 }
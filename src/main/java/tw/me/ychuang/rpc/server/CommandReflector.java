@@ -1,34 +1,57 @@
 package tw.me.ychuang.rpc.server;
 
-import java.lang.reflect.Constructor;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.reflect.ConstructorUtils;
-import org.apache.commons.lang3.reflect.MethodUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import tw.me.ychuang.rpc.ClasspathProperties;
 import tw.me.ychuang.rpc.Command;
+import tw.me.ychuang.rpc.Constants;
 import tw.me.ychuang.rpc.Result;
 import tw.me.ychuang.rpc.exception.RpcException;
+import tw.me.ychuang.rpc.exception.ServerBusyException;
 import tw.me.ychuang.rpc.exception.ServerSideException;
 
 /**
- * Finds the matching callee and invokes it by naming rule and Java Reflection API.
- * 
+ * Finds the matching callee by naming rule and Java Reflection API, and invokes it by a cached {@link SkeletonInvoker}.
+ *
  * @author Y.C. Huang
  */
 public class CommandReflector extends CommandExecutor {
 	private static final Logger log = LoggerFactory.getLogger(CommandReflector.class);
 
+	/**
+	 * The max time in milliseconds to wait for the future of an asynchronous skeleton method if its request has no deadline
+	 */
+	private final long asyncMaxWaitTime;
+
+	/**
+	 * Fails the futures of asynchronous skeleton methods that aren't completed in time, its thread starts at the first future
+	 */
+	private final HashedWheelTimer asyncTimer;
+
 	/**
 	 * A default constructor
 	 */
 	protected CommandReflector() {
 		super();
+
+		ClasspathProperties config = ServerProperties.getInstance();
+		this.asyncMaxWaitTime = config.getLong("server.async.max.wait.time", Constants.ASYNC_MAX_WAIT_TIME);
+		log.info("Find server.async.max.wait.time: {}", this.asyncMaxWaitTime);
+
+		this.asyncTimer = new HashedWheelTimer(new DefaultThreadFactory("rpc-async-timer", true), Constants.TIMER_TICK_DURATION,
+				TimeUnit.MILLISECONDS);
 	}
 
 	/*
@@ -37,91 +60,102 @@ public class CommandReflector extends CommandExecutor {
 	 */
 	@Override
 	public Result execute(Command command) {
-		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
-		if (classLoader == null) {
-			classLoader = this.getClass().getClassLoader();
+		final Result[] resultHolder = new Result[1];
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		this.execute(command, new ResultListener() {
+			@Override
+			public void operationComplete(Result result) {
+				resultHolder[0] = result;
+				latch.countDown();
+			}
+		});
+
+		// a synchronous caller waits for an asynchronous skeleton method
+		boolean interrupted = false;
+		while (latch.getCount() > 0) {
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
 		}
 
-		StringBuilder skeletonClsPath = new StringBuilder(50);
-		String path = StringUtils.replaceChars(command.getSkeleton(), '.', '/');
-		skeletonClsPath.append(path).append(".class");
-		log.debug("Start to find a skeleton class name: {}, class path: {}", command.getSkeleton(), skeletonClsPath);
+		return resultHolder[0];
+	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see tw.me.ychuang.rpc.server.CommandExecutor#execute(tw.me.ychuang.rpc.Command, tw.me.ychuang.rpc.server.ResultListener)
+	 */
+	@Override
+	public void execute(final Command command, final ResultListener listener) {
 		Result result = null;
 		try {
-			// first, try to find the specified class of skeleton
-			URL resource = classLoader.getResource(skeletonClsPath.toString());
-			if (resource == null) {
-				throw new ServerSideException("Fail to find the specified class of the specified skeleton.");
-			}
-			Class<?> skeletonClass = classLoader.loadClass(command.getSkeleton());
-
-			// second, try to find the invoked method by parameters and classes of parameters
-			Method skeletonMethod = MethodUtils.getMatchingAccessibleMethod(skeletonClass, command.getMethod(), command.findParamClasses());
-			if (skeletonMethod == null) {
-				throw new ServerSideException("Fail to find the specified method of the specified skeleton.");
-			}
-
-			Object returnObj = null;
-			if (command.isStaticMethod()) {
-				// third, execute the static method without skeleton instance
-				returnObj = skeletonMethod.invoke(null, command.findParameters());
-
-			} else {
-				Object skeletonInstance = null;
-				// try to find a default constructor without parameter
-				Constructor<?> skeletonConstructor = ConstructorUtils.getMatchingAccessibleConstructor(skeletonClass, new Class[0]);
-				if (skeletonConstructor == null) {
-					// obtain unique instance by excuting getInstance method wrapped by singleton pattern
-					Method getInstanceMethod = MethodUtils.getMatchingAccessibleMethod(skeletonClass, "getInstance", new Class[0]);
-					if (getInstanceMethod != null) {
-						skeletonInstance = getInstanceMethod.invoke(null, new Object[0]);
+			// the skeleton class, the matching method, and the skeleton instance are resolved once and cached
+			final SkeletonInvoker invoker = SkeletonRegistry.getInstance().findInvoker(command);
+
+			// an isolated method is dispatched within its bulkhead, a full bulkhead rejects the command before dispatch
+			final Bulkhead bulkhead = invoker.getBulkhead();
+			Object returnObj = bulkhead != null ? bulkhead.invoke(invoker, command.findParameters()) : invoker.invoke(command.findParameters());
+
+			if (invoker.isAsyncReturn() && returnObj != null) {
+				// a future that never completes would hold its admission forever, so it is failed once the wait is bounded
+				final AtomicBoolean completed = new AtomicBoolean(false);
+				// the place of its bulkhead is held until the future completes or expires, so a slow dependency is isolated as well
+				final Timeout timeout = this.scheduleAsyncTimeout(command, returnObj, listener, completed, bulkhead);
+
+				// the calling thread is released, the result is notified once the future completes
+				AsyncReturn.listen(returnObj, new AsyncReturn.Completion() {
+					@Override
+					public void complete(Object value, Throwable cause) {
+						if (false == completed.compareAndSet(false, true)) {
+							// the future has been failed by its timeout
+							return;
+						}
+						timeout.cancel();
+						if (bulkhead != null) {
+							bulkhead.release();
+						}
+
+						Result asyncResult = null;
+						if (cause != null) {
+							asyncResult = CommandReflector.this.toFailure(command, cause, true);
+						} else if (value == null) {
+							Class<?> valueClass = invoker.getAsyncValueClass();
+							asyncResult = valueClass == null || valueClass == Void.class ? Result.VOID_RETURN : new Result(null, valueClass);
+						} else {
+							// the declared class is preferred, so that the caller gets what the method signature promises
+							Class<?> valueClass = invoker.getAsyncValueClass();
+							asyncResult = new Result(value, valueClass != null && valueClass.isInstance(value) ? valueClass : value.getClass());
+						}
+						log.info("Finish to execute the asynchronous method of the skeleton class. skeleton: {}, method: {}", command.getSkeleton(),
+								command.getMethod());
+
+						listener.operationComplete(asyncResult);
 					}
-				} else {
-					// obtain a skeleton instance by default constructor without parameter
-					skeletonInstance = ConstructorUtils.invokeConstructor(skeletonClass, new Object[0]);
-				}
-
-				if (skeletonInstance != null) {
-					// finally, execute the instance method on constructed skeleton instance
-					returnObj = skeletonMethod.invoke(skeletonInstance, command.findParameters());
-				} else {
-					throw new ServerSideException("Fail to construct a skeleton instance by constructor or singleton method.");
-				}
+				});
+				return;
 			}
 
-			if (skeletonMethod.getReturnType().equals(Void.TYPE)) {
+			if (invoker.isVoidReturn()) {
 				// return Void class since the method has no return
 				result = Result.VOID_RETURN;
+			} else if (returnObj == null) {
+				result = new Result(null, invoker.getMethod().getReturnType());
 			} else {
 				result = new Result(returnObj, returnObj.getClass());
 			}
 			log.info("Finish to execute the method of the skeleton class. skeleton: {}, method: {}", command.getSkeleton(), command.getMethod());
 
 		} catch (InvocationTargetException e) {
-			RpcException err = new ServerSideException("Fail to invoke the matching method of the specified skeleton class. skeleton: " + command.getSkeleton()
-					+ ", method: " + command.getMethod(), e.getCause());
-			err.addContextValue("Skeleton", command.getSkeleton()).addContextValue("Method", command.getMethod())
-					.addContextValue("Parameters", command.getParameters()).addContextValue("Parameter Classes", command.getParamClasses());
-
-			log.error(err.getMessage(), err);
-			result = new Result(err, err.getClass());
-
-		} catch (RpcException e) {
-			e.addContextValue("Skeleton", command.getSkeleton()).addContextValue("Method", command.getMethod())
-					.addContextValue("Parameters", command.getParameters()).addContextValue("Parameter Classes", command.getParamClasses());
-
-			log.error(e.getMessage(), e);
-			result = new Result(e, e.getClass());
+			result = this.toFailure(command, e.getCause(), true);
 
 		} catch (Throwable e) {
-			RpcException err = new ServerSideException("Fail to invoke the matching method of the specified skeleton class. skeleton: " + command.getSkeleton()
-					+ ", method: " + command.getMethod(), e);
-			err.addContextValue("Skeleton", command.getSkeleton()).addContextValue("Method", command.getMethod())
-					.addContextValue("Parameters", command.getParameters()).addContextValue("Parameter Classes", command.getParamClasses());
-
-			log.error(err.getMessage(), err);
-			result = new Result(err, err.getClass());
+			result = this.toFailure(command, e, false);
 
 		} finally {
 			if (result == null) {
@@ -129,6 +163,61 @@ public class CommandReflector extends CommandExecutor {
 			}
 		}
 
-		return result;
+		listener.operationComplete(result);
+	}
+
+	/**
+	 * Schedules the timeout of the future of an asynchronous skeleton method by the deadline of its request or the max wait time
+	 */
+	private Timeout scheduleAsyncTimeout(final Command command, final Object future, final ResultListener listener,
+			final AtomicBoolean completed, final Bulkhead bulkhead) {
+		final long waitTime = Math.min(RequestDeadline.getRemainingTime(TimeUnit.MILLISECONDS), this.asyncMaxWaitTime);
+
+		return this.asyncTimer.newTimeout(new TimerTask() {
+			@Override
+			public void run(Timeout timeout) {
+				if (false == completed.compareAndSet(false, true)) {
+					return;
+				}
+				if (bulkhead != null) {
+					bulkhead.release();
+				}
+				if (future instanceof Future) {
+					((Future<?>) future).cancel(false);
+				}
+
+				ServerSideException err = new ServerSideException("Fail to complete the future of the asynchronous method in time. wait time: "
+						+ waitTime);
+				listener.operationComplete(CommandReflector.this.toFailure(command, err, false));
+			}
+		}, waitTime, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Converts a failure to a result with an exception
+	 *
+	 * @param command a command
+	 * @param cause the cause of the failure
+	 * @param thrownBySkeleton whether the cause is thrown by the skeleton method, it is always wrapped if so
+	 */
+	private Result toFailure(Command command, Throwable cause, boolean thrownBySkeleton) {
+		if (cause instanceof ServerBusyException) {
+			// a rejected command is cheap and retryable, so it isn't logged as an error
+			log.debug(cause.getMessage());
+			return new Result(cause, cause.getClass());
+		}
+
+		RpcException err = null;
+		if (false == thrownBySkeleton && cause instanceof RpcException) {
+			err = (RpcException) cause;
+		} else {
+			err = new ServerSideException("Fail to invoke the matching method of the specified skeleton class. skeleton: " + command.getSkeleton()
+					+ ", method: " + command.getMethod(), cause);
+		}
+		err.addContextValue("Skeleton", command.getSkeleton()).addContextValue("Method", command.getMethod())
+				.addContextValue("Parameters", command.getParameters()).addContextValue("Parameter Classes", command.getParamClasses());
+
+		log.error(err.getMessage(), err);
+		return new Result(err, err.getClass());
 	}
 }
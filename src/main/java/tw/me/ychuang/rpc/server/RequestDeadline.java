@@ -0,0 +1,114 @@
+package tw.me.ychuang.rpc.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the deadline of the request that is being executed by the current thread.<br>
+ * A skeleton reads the remaining time of its caller, e.g. to give up a long computation or to pass a shorter timeout downstream.
+ *
+ * @author Y.C. Huang
+ */
+public final class RequestDeadline {
+
+	/**
+	 * The deadline in nanoseconds of the request is being executed by the current thread
+	 */
+	private static final ThreadLocal<long[]> CURRENT_DEADLINE = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[] { 0 };
+		}
+	};
+
+	private RequestDeadline() {
+		super();
+	}
+
+	/**
+	 * Computes the deadline of a request by its remaining time budget
+	 *
+	 * @param receivedTime the time in nanoseconds when the request is received
+	 * @param timeout the remaining time budget in milliseconds, the request never expires if it is 0
+	 * @return the deadline in nanoseconds, or 0 if the request never expires
+	 */
+	static long toDeadline(long receivedTime, long timeout) {
+		if (timeout <= 0) {
+			return 0;
+		}
+
+		long deadline = receivedTime + TimeUnit.MILLISECONDS.toNanos(timeout);
+		// 0 is reserved for no deadline
+		return deadline != 0 ? deadline : 1;
+	}
+
+	/**
+	 * Whether a deadline is passed or not
+	 *
+	 * @param deadline the deadline in nanoseconds, 0 if the request never expires
+	 * @return true if the deadline is passed
+	 */
+	static boolean isExpired(long deadline) {
+		// one should use t1 - t0 < 0, not t1 < t0, because of the possibility of numerical overflow.
+		return deadline != 0 && deadline - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * Binds the deadline of a request to the current thread before the request is executed
+	 *
+	 * @param deadline the deadline in nanoseconds, 0 if the request never expires
+	 */
+	static void set(long deadline) {
+		CURRENT_DEADLINE.get()[0] = deadline;
+	}
+
+	/**
+	 * Gets the deadline of the request is being executed by the current thread, it is passed to another thread that executes the request
+	 *
+	 * @return the deadline in nanoseconds, 0 if the request never expires
+	 */
+	static long get() {
+		return CURRENT_DEADLINE.get()[0];
+	}
+
+	/**
+	 * Unbinds the deadline of a request from the current thread after the request is executed
+	 */
+	static void clear() {
+		CURRENT_DEADLINE.get()[0] = 0;
+	}
+
+	/**
+	 * Whether the request is being executed by the current thread has a deadline or not
+	 *
+	 * @return true if the request expires
+	 */
+	public static boolean hasDeadline() {
+		return CURRENT_DEADLINE.get()[0] != 0;
+	}
+
+	/**
+	 * Whether the request is being executed by the current thread is expired or not, the caller has given up if it is expired
+	 *
+	 * @return true if the request is expired
+	 */
+	public static boolean isExpired() {
+		return isExpired(CURRENT_DEADLINE.get()[0]);
+	}
+
+	/**
+	 * Gets the remaining time of the request is being executed by the current thread
+	 *
+	 * @param unit the time unit of the remaining time
+	 * @return the remaining time, Long.MAX_VALUE if the request never expires, or 0 if the request is expired
+	 */
+	public static long getRemainingTime(TimeUnit unit) {
+		long deadline = CURRENT_DEADLINE.get()[0];
+		if (deadline == 0) {
+			return Long.MAX_VALUE;
+		}
+
+		long remaining = deadline - System.nanoTime();
+
+		return remaining > 0 ? unit.convert(remaining, TimeUnit.NANOSECONDS) : 0;
+	}
+}
@@ -0,0 +1,102 @@
+package tw.me.ychuang.rpc.server;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tw.me.ychuang.rpc.codec.MessageSerializer;
+
+/**
+ * Gathers the serialized responses that are ready while a batch request is dispatched, so that they are written back as one batch response.<br>
+ * The batch is closed once all requests of it are dispatched. A response that is ready later is written back by itself at once,<br>
+ * since every response is correlated by its request id, a slow request never holds the responses of the others.
+ *
+ * @author Y.C. Huang
+ */
+class ResponseBatch {
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param serializer the serializer of the batch request
+	 * @param size the number of requests of a batch
+	 * @param startTime the time in nanoseconds when the batch request is received
+	 */
+	ResponseBatch(MessageSerializer serializer, int size, long startTime) {
+		super();
+		this.serializer = serializer;
+		this.size = size;
+		this.startTime = startTime;
+		this.messages = new ArrayList<>(size);
+	}
+
+	private final MessageSerializer serializer;
+
+	/**
+	 * Getter method for field 'serializer'
+	 *
+	 * @return the serializer of the batch request
+	 */
+	MessageSerializer getSerializer() {
+		return this.serializer;
+	}
+
+	private final int size;
+
+	/**
+	 * Getter method for field 'size'
+	 *
+	 * @return the number of requests of this batch
+	 */
+	int size() {
+		return this.size;
+	}
+
+	private final long startTime;
+
+	/**
+	 * Getter method for field 'startTime'
+	 *
+	 * @return the time in nanoseconds when the batch request is received
+	 */
+	long getStartTime() {
+		return this.startTime;
+	}
+
+	/**
+	 * The serialized responses that are ready before this batch is closed, it is guarded by this batch
+	 */
+	private final List<ByteBuf> messages;
+
+	/**
+	 * The indication of whether all requests of this batch are dispatched, it is guarded by this batch
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Gathers the serialized response of a request unless this batch is closed
+	 *
+	 * @param message a serialized response
+	 * @return true if the response is gathered, or false if it should be written back by itself
+	 */
+	synchronized boolean add(ByteBuf message) {
+		if (this.closed) {
+			return false;
+		}
+		this.messages.add(message);
+
+		return true;
+	}
+
+	/**
+	 * Closes this batch once all requests of it are dispatched
+	 *
+	 * @return the gathered responses
+	 */
+	synchronized List<ByteBuf> close() {
+		this.closed = true;
+
+		return this.messages;
+	}
+}
@@ -0,0 +1,321 @@
+package tw.me.ychuang.rpc.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import tw.me.ychuang.rpc.Constants.ResultCacheEvictionType;
+
+/**
+ * Caches the serialized results of an idempotent skeleton method by its parameters.<br>
+ * A result is kept as the bytes that a message serializer has written, so that a hit skips both the invocation and the serialization.<br>
+ * A result expires after its time to live, and the least recently or the least frequently used result is evicted while the cache is full.<br>
+ * A result that is computed before an invalidation isn't cached, so that a stale result never outlives its invalidation.
+ *
+ * @author Y.C. Huang
+ */
+public class ResultCache {
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param name the name of this cache, it is a class name with a method name
+	 * @param ttl the time in milliseconds a result lives
+	 * @param maxSize the max number of cached results
+	 * @param eviction the way that a result is evicted while this cache is full
+	 */
+	public ResultCache(String name, long ttl, int maxSize, ResultCacheEvictionType eviction) {
+		super();
+		this.name = name;
+		this.ttl = TimeUnit.MILLISECONDS.toNanos(Math.max(ttl, 1));
+		this.maxSize = Math.max(maxSize, 1);
+		this.eviction = eviction;
+
+		// a LRU cache keeps its entries by access order, the eldest one is the least recently used
+		this.entries = new LinkedHashMap<>(16, 0.75f, eviction == ResultCacheEvictionType.lru);
+		this.frequencies = eviction == ResultCacheEvictionType.lfu ? new TreeMap<Integer, LinkedHashSet<String>>() : null;
+	}
+
+	/**
+	 * The name of this cache
+	 */
+	private final String name;
+
+	/**
+	 * Getter method for field 'name'
+	 *
+	 * @return the name of this cache
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * The time in nanoseconds a result lives
+	 */
+	private final long ttl;
+
+	/**
+	 * The max number of cached results
+	 */
+	private final int maxSize;
+
+	/**
+	 * The way that a result is evicted while this cache is full
+	 */
+	private final ResultCacheEvictionType eviction;
+
+	/**
+	 * Getter method for field 'eviction'
+	 *
+	 * @return the way that a result is evicted while this cache is full
+	 */
+	public ResultCacheEvictionType getEviction() {
+		return this.eviction;
+	}
+
+	/**
+	 * The cached results by the canonical form of parameters, it is guarded by this cache
+	 */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/**
+	 * The keys by their use counts of a LFU cache, the keys of the same count are kept by insertion order
+	 */
+	private final TreeMap<Integer, LinkedHashSet<String>> frequencies;
+
+	private final AtomicLong hitCounter = new AtomicLong();
+
+	private final AtomicLong missCounter = new AtomicLong();
+
+	private final AtomicLong evictionCounter = new AtomicLong();
+
+	/**
+	 * The number of invalidations, it is changed inside the lock of this cache
+	 */
+	private final AtomicLong invalidationCounter = new AtomicLong();
+
+	/**
+	 * A cached result, it keeps one serialized form per message serializer
+	 */
+	private static class Entry {
+		private final long expireTime;
+
+		private final ConcurrentMap<String, byte[]> bodies = new ConcurrentHashMap<>(2);
+
+		private int frequency = 1;
+
+		private Entry(long expireTime) {
+			this.expireTime = expireTime;
+		}
+	}
+
+	/**
+	 * Gets a cached result that is serialized by a specific message serializer
+	 *
+	 * @param key the canonical key of parameters, see {@link tw.me.ychuang.rpc.Command#findParameterKey()}
+	 * @param serializerName the name of a message serializer
+	 * @return the serialized result or null if it isn't cached or it has expired
+	 */
+	public byte[] get(String key, String serializerName) {
+		byte[] body = null;
+		synchronized (this) {
+			Entry entry = this.entries.get(key);
+			if (entry != null && entry.expireTime - System.nanoTime() <= 0) {
+				this.remove(key);
+				entry = null;
+			}
+
+			if (entry != null) {
+				body = entry.bodies.get(serializerName);
+				if (body != null) {
+					this.touch(key, entry);
+				}
+			}
+		}
+
+		if (body == null) {
+			this.missCounter.incrementAndGet();
+		} else {
+			this.hitCounter.incrementAndGet();
+		}
+
+		return body;
+	}
+
+	/**
+	 * Gets the version of this cache, it is changed by every invalidation
+	 *
+	 * @return the number of invalidations
+	 */
+	public long getVersion() {
+		return this.invalidationCounter.get();
+	}
+
+	/**
+	 * Caches a result that is serialized by a specific message serializer unless any invalidation happens since it is computed
+	 *
+	 * @param key the canonical key of parameters
+	 * @param serializerName the name of a message serializer
+	 * @param body the serialized result
+	 * @param version the version of this cache before the result is computed
+	 * @return true if the result is cached
+	 */
+	public boolean put(String key, String serializerName, byte[] body, long version) {
+		synchronized (this) {
+			// the result may be stale if an invalidation has happened while it was computed
+			if (version != this.invalidationCounter.get()) {
+				return false;
+			}
+
+			Entry entry = this.entries.get(key);
+			if (entry == null || entry.expireTime - System.nanoTime() <= 0) {
+				if (entry != null) {
+					this.remove(key);
+				}
+
+				// evicts before inserting, so that a new result isn't evicted by a LFU cache at once
+				while (this.entries.size() >= this.maxSize) {
+					this.evict();
+				}
+
+				entry = new Entry(System.nanoTime() + this.ttl);
+				this.entries.put(key, entry);
+				if (this.frequencies != null) {
+					this.addFrequency(key, entry.frequency);
+				}
+			}
+
+			// the other serializers reuse the same entry, so that they expire together
+			entry.bodies.put(serializerName, body);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Removes the cached result of specific parameters
+	 *
+	 * @param key the canonical key of parameters
+	 */
+	public void invalidate(String key) {
+		synchronized (this) {
+			this.invalidationCounter.incrementAndGet();
+			this.remove(key);
+		}
+	}
+
+	/**
+	 * Removes all cached results
+	 */
+	public void invalidateAll() {
+		synchronized (this) {
+			this.invalidationCounter.incrementAndGet();
+			this.entries.clear();
+			if (this.frequencies != null) {
+				this.frequencies.clear();
+			}
+		}
+	}
+
+	/**
+	 * Counts a use of a cached result
+	 */
+	private void touch(String key, Entry entry) {
+		if (this.frequencies == null) {
+			// the access order has been updated by get
+			return;
+		}
+
+		this.removeFrequency(key, entry.frequency);
+		entry.frequency++;
+		this.addFrequency(key, entry.frequency);
+	}
+
+	/**
+	 * Evicts the least recently or the least frequently used result
+	 */
+	private void evict() {
+		String key = null;
+		if (this.frequencies == null) {
+			key = this.entries.keySet().iterator().next();
+		} else {
+			Iterator<String> keys = this.frequencies.firstEntry().getValue().iterator();
+			key = keys.next();
+		}
+
+		this.remove(key);
+		this.evictionCounter.incrementAndGet();
+	}
+
+	private void remove(String key) {
+		Entry entry = this.entries.remove(key);
+		if (entry != null && this.frequencies != null) {
+			this.removeFrequency(key, entry.frequency);
+		}
+	}
+
+	private void addFrequency(String key, int frequency) {
+		LinkedHashSet<String> keys = this.frequencies.get(frequency);
+		if (keys == null) {
+			keys = new LinkedHashSet<>();
+			this.frequencies.put(frequency, keys);
+		}
+		keys.add(key);
+	}
+
+	private void removeFrequency(String key, int frequency) {
+		LinkedHashSet<String> keys = this.frequencies.get(frequency);
+		if (keys != null && keys.remove(key) && keys.isEmpty()) {
+			this.frequencies.remove(frequency);
+		}
+	}
+
+	/**
+	 * Gets the number of cached results, the expired ones are counted until they are removed
+	 *
+	 * @return the number of cached results
+	 */
+	public int getSize() {
+		synchronized (this) {
+			return this.entries.size();
+		}
+	}
+
+	/**
+	 * Gets the number of requests that are answered by cached results
+	 *
+	 * @return the number of hits
+	 */
+	public long getHitCount() {
+		return this.hitCounter.get();
+	}
+
+	/**
+	 * Gets the number of requests that aren't answered by cached results
+	 *
+	 * @return the number of misses
+	 */
+	public long getMissCount() {
+		return this.missCounter.get();
+	}
+
+	/**
+	 * Gets the number of results that are evicted since this cache is full
+	 *
+	 * @return the number of evictions
+	 */
+	public long getEvictionCount() {
+		return this.evictionCounter.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ResultCache-%s/%s/%d/%d", this.name, this.eviction, this.getSize(), this.maxSize);
+	}
+}
@@ -0,0 +1,188 @@
+package tw.me.ychuang.rpc.server;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.ClasspathProperties;
+import tw.me.ychuang.rpc.Command;
+import tw.me.ychuang.rpc.Constants;
+import tw.me.ychuang.rpc.Constants.ResultCacheEvictionType;
+import tw.me.ychuang.rpc.Invalidation;
+
+/**
+ * Creates the result caches of idempotent skeleton methods, and invalidates the cached results for skeleton code.<br>
+ * An invalidation is pushed to all connected clients as well, so that they remove the results from their near caches.<br>
+ * The results of a method are cached if any of the following is declared:
+ * <ol>
+ * <li>'server.result.cache.ttl.[class name].[method name]' in rpc-server.properties</li>
+ * <li>{@link SkeletonCacheable} annotation on the skeleton method</li>
+ * </ol>
+ * The overloaded methods have their own caches, but they are invalidated together by name.
+ *
+ * @author Y.C. Huang
+ */
+public class ResultCacheRegistry {
+	private static final Logger log = LoggerFactory.getLogger(ResultCacheRegistry.class);
+
+	/**
+	 * Apply a lazy-loaded singleton - Initialization on Demand Holder.<br>
+	 * see detail on right side: http://en.wikipedia.org/wiki/Initialization-on-demand_holder_idiom
+	 */
+	private static class LazyHolder {
+		private static final ResultCacheRegistry INSTANCE = new ResultCacheRegistry();
+	}
+
+	public static ResultCacheRegistry getInstance() {
+		return LazyHolder.INSTANCE;
+	}
+
+	/**
+	 * All result caches by skeleton method
+	 */
+	private final ConcurrentMap<Method, ResultCache> cachePool = new ConcurrentHashMap<>();
+
+	private ResultCacheRegistry() {
+		super();
+	}
+
+	/**
+	 * Prepares the result cache of a skeleton method while the method is resolved
+	 *
+	 * @param skeletonClass a skeleton class
+	 * @param method a skeleton method
+	 * @return a result cache or null if the results of the method aren't cached
+	 */
+	public ResultCache prepareCache(Class<?> skeletonClass, Method method) {
+		ResultCache cache = this.cachePool.get(method);
+		if (cache != null) {
+			return cache;
+		}
+
+		ClasspathProperties config = ServerProperties.getInstance();
+
+		String name = skeletonClass.getName() + '.' + method.getName();
+		SkeletonCacheable annotation = method.getAnnotation(SkeletonCacheable.class);
+		if (annotation == null && false == config.containsKey("server.result.cache.ttl." + name)) {
+			return null;
+		}
+
+		cache = this.createCache(name, annotation);
+		ResultCache existingCache = this.cachePool.putIfAbsent(method, cache);
+
+		return existingCache != null ? existingCache : cache;
+	}
+
+	private ResultCache createCache(String name, SkeletonCacheable annotation) {
+		ClasspathProperties config = ServerProperties.getInstance();
+
+		long ttl = config.getLong("server.result.cache.ttl", Constants.RESULT_CACHE_TTL);
+		if (annotation != null && annotation.ttl() >= 0) {
+			ttl = annotation.ttl();
+		}
+		ttl = config.getLong("server.result.cache.ttl." + name, ttl);
+
+		int maxSize = config.getInt("server.result.cache.max.size", Constants.RESULT_CACHE_MAX_SIZE);
+		if (annotation != null && annotation.maxSize() >= 0) {
+			maxSize = annotation.maxSize();
+		}
+		maxSize = config.getInt("server.result.cache.max.size." + name, maxSize);
+
+		ResultCacheEvictionType eviction = annotation != null ? annotation.eviction() : ResultCacheEvictionType.lru;
+		String evictionName = StringUtils.trim(config.getString("server.result.cache.eviction." + name, null));
+		if (ResultCacheEvictionType.asLabels().contains(evictionName)) {
+			eviction = ResultCacheEvictionType.valueOf(evictionName);
+		}
+
+		ResultCache cache = new ResultCache(name, ttl, maxSize, eviction);
+		log.info("Create a result cache. cache: {}, ttl: {}, max size: {}", cache, ttl, maxSize);
+
+		return cache;
+	}
+
+	/**
+	 * Finds the result cache of a resolved skeleton method
+	 *
+	 * @param method a skeleton method
+	 * @return a result cache or null if the results of the method aren't cached
+	 */
+	public ResultCache findCache(Method method) {
+		return method != null ? this.cachePool.get(method) : null;
+	}
+
+	/**
+	 * Removes the cached result of specific parameters on the server and all clients, e.g. a skeleton invalidates the result of findUser while the user is updated
+	 *
+	 * @param skeletonClass a skeleton class
+	 * @param methodName the name of a cached skeleton method
+	 * @param parameters the parameters of the cached result
+	 */
+	public void invalidate(Class<?> skeletonClass, String methodName, Object... parameters) {
+		String key = Command.toParameterKey(parameters);
+		for (ResultCache cache : this.listCaches(skeletonClass, methodName)) {
+			cache.invalidate(key);
+		}
+
+		// the clients remove the result from their near caches as well
+		ServerChannelManager.getInstance().publishInvalidation(new Invalidation(skeletonClass.getName(), methodName, key));
+	}
+
+	/**
+	 * Removes all cached results of a skeleton method on the server and all clients
+	 *
+	 * @param skeletonClass a skeleton class
+	 * @param methodName the name of a cached skeleton method
+	 */
+	public void invalidateAll(Class<?> skeletonClass, String methodName) {
+		for (ResultCache cache : this.listCaches(skeletonClass, methodName)) {
+			cache.invalidateAll();
+		}
+
+		ServerChannelManager.getInstance().publishInvalidation(new Invalidation(skeletonClass.getName(), methodName, null));
+	}
+
+	private List<ResultCache> listCaches(Class<?> skeletonClass, String methodName) {
+		String name = skeletonClass.getName() + '.' + methodName;
+
+		List<ResultCache> caches = new ArrayList<>();
+		for (ResultCache cache : this.cachePool.values()) {
+			if (cache.getName().equals(name)) {
+				caches.add(cache);
+			}
+		}
+
+		return caches;
+	}
+
+	/**
+	 * Lists all result caches, e.g. to expose their hit and miss counts
+	 *
+	 * @return all result caches
+	 */
+	public List<ResultCache> listCaches() {
+		return new ArrayList<>(this.cachePool.values());
+	}
+
+	/**
+	 * Logs the hit, miss, and eviction counts of all result caches
+	 */
+	public void showStatistics() {
+		for (ResultCache cache : this.cachePool.values()) {
+			log.info("Result cache measurement, cache: {}, size: {}, hit count: {}, miss count: {}, eviction count: {}", cache.getName(),
+					cache.getSize(), cache.getHitCount(), cache.getMissCount(), cache.getEvictionCount());
+		}
+	}
+
+	/**
+	 * Removes all result caches, they are created again at the next time.
+	 */
+	public void shutdown() {
+		this.cachePool.clear();
+	}
+}
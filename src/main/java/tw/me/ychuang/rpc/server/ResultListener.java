@@ -0,0 +1,21 @@
+package tw.me.ychuang.rpc.server;
+
+import java.util.EventListener;
+
+import tw.me.ychuang.rpc.Result;
+
+/**
+ * Listens to the result of a command that is executed by {@link CommandExecutor#execute(tw.me.ychuang.rpc.Command, ResultListener)}.<br>
+ * The result of an asynchronous skeleton method is notified by the thread that completes its future.
+ *
+ * @author Y.C. Huang
+ */
+public interface ResultListener extends EventListener {
+
+	/**
+	 * Invoked when the result of a command is ready.
+	 *
+	 * @param result a result with a return or an exception
+	 */
+	void operationComplete(Result result);
+}
@@ -0,0 +1,84 @@
+package tw.me.ychuang.rpc.server;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.ClasspathProperties;
+import tw.me.ychuang.rpc.Constants.FramingType;
+import tw.me.ychuang.rpc.codec.BinaryMessageSerializer;
+import tw.me.ychuang.rpc.codec.JsonMessageSerializer;
+import tw.me.ychuang.rpc.codec.MessageSerializer;
+import tw.me.ychuang.rpc.codec.MessageSerializerFactory;
+
+/**
+ * A built-in skeleton that a client invokes once a channel is connected to agree on a message serializer.<br>
+ * A server which doesn't know this skeleton replies an exception, so that the client keeps the default JSON serializer.
+ *
+ * @author Y.C. Huang
+ */
+public class SerializerNegotiator {
+	private static final Logger log = LoggerFactory.getLogger(SerializerNegotiator.class);
+
+	/**
+	 * Apply a lazy-loaded singleton - Initialization on Demand Holder.<br>
+	 * see detail on right side: http://en.wikipedia.org/wiki/Initialization-on-demand_holder_idiom
+	 */
+	private static class LazyHolder {
+		private static final List<MessageSerializer> ACCEPTED_SERIALIZERS;
+
+		static {
+			ClasspathProperties config = ServerProperties.getInstance();
+			String names = config.getString("server.channel.serializers", JsonMessageSerializer.NAME);
+			List<MessageSerializer> serializers = MessageSerializerFactory.getInstance().findSerializers(names);
+
+			// a binary message contains NUL bytes, so it is accepted only while the messages are framed by a length field
+			String framing = config.getString("server.channel.framing", FramingType.delimiter.toString());
+			if (false == FramingType.length_field.toString().equals(framing)
+					&& serializers.remove(MessageSerializerFactory.getInstance().findSerializer(BinaryMessageSerializer.NAME))) {
+				log.warn("Refuse the binary serializer without the length_field framing. server.channel.framing: {}", framing);
+			}
+			ACCEPTED_SERIALIZERS = serializers;
+
+			log.info("Find server.channel.serializers: {}", ACCEPTED_SERIALIZERS);
+		}
+	}
+
+	private SerializerNegotiator() {
+		super();
+	}
+
+	/**
+	 * Selects the first serializer of client's preference that is accepted by this server.
+	 *
+	 * @param candidates a comma-separated list of serializer names in client's preference order
+	 * @return the name of the selected serializer, it is the JSON serializer if nothing matches
+	 */
+	public static String negotiate(String candidates) {
+		List<MessageSerializer> preferred = MessageSerializerFactory.getInstance().findSerializers(candidates);
+
+		MessageSerializer selected = MessageSerializerFactory.getInstance().getDefaultSerializer();
+		for (MessageSerializer candidate : preferred) {
+			if (LazyHolder.ACCEPTED_SERIALIZERS.contains(candidate)) {
+				selected = candidate;
+				break;
+			}
+		}
+		log.debug("Negotiate a message serializer. candidates: {}, selected: {}", candidates, selected);
+
+		return selected.getName();
+	}
+
+	/**
+	 * Checks whether the messages of a serializer are accepted by this server.<br>
+	 * The JSON serializer is always accepted, since a client sends its messages by JSON until a serializer is agreed.
+	 *
+	 * @param serializer a serializer that is detected from a coming message
+	 * @return true if the serializer is the default one or is listed by 'server.channel.serializers'
+	 */
+	public static boolean isAccepted(MessageSerializer serializer) {
+		return serializer == MessageSerializerFactory.getInstance().getDefaultSerializer()
+				|| LazyHolder.ACCEPTED_SERIALIZERS.contains(serializer);
+	}
+}
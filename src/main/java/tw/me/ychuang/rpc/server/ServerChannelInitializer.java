@@ -1,21 +1,27 @@
 package tw.me.ychuang.rpc.server;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.DelimiterBasedFrameDecoder;
 import io.netty.handler.codec.Delimiters;
+import io.netty.handler.codec.MessageToMessageEncoder;
 import io.netty.handler.codec.compression.ZlibCodecFactory;
 import io.netty.handler.codec.compression.ZlibWrapper;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
-import io.netty.util.CharsetUtil;
 import io.netty.util.concurrent.EventExecutorGroup;
 
+import java.util.concurrent.Executor;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import tw.me.ychuang.rpc.ClasspathProperties;
+import tw.me.ychuang.rpc.Constants;
+import tw.me.ychuang.rpc.Constants.FramingType;
+import tw.me.ychuang.rpc.codec.DelimiterFrameEncoder;
+import tw.me.ychuang.rpc.codec.LengthFieldFrameDecoder;
+import tw.me.ychuang.rpc.codec.LengthFieldFrameEncoder;
 
 /**
  * Creates the needed channel handlers in server-side.
@@ -26,38 +32,70 @@ public class ServerChannelInitializer extends ChannelInitializer<SocketChannel>
 	private static final Logger log = LoggerFactory.getLogger(ServerChannelInitializer.class);
 
 	/**
-	 * Decodes a received string.
+	 * The most important channel handler for processing business logic.
 	 */
-	private static final StringDecoder utf8Decoder = new StringDecoder(CharsetUtil.UTF_8);
+	private final ChannelHandlerAdapter serverHandler;
+
+	private final EventExecutorGroup executorGroup;
 
 	/**
-	 * Encodes a requested string.
+	 * The indication of whether stream compression will be enabled.
 	 */
-	private static final StringEncoder utf8Encoder = new StringEncoder(CharsetUtil.UTF_8);
+	private boolean compression = false;
 
 	/**
-	 * The most important channel handler for processing business logic.
+	 * The kind of framing that splits the stream into messages.
 	 */
-	private static final ChannelHandlerAdapter serverHandler = new ChannelHandlerAdapter();
+	private FramingType framing = FramingType.delimiter;
 
-	private final EventExecutorGroup executorGroup;
+	/**
+	 * The maximum length of a message.
+	 */
+	private int maxFrameSize = Constants.MAX_FRAME_SIZE;
 
 	/**
-	 * The indication of whether stream compression will be enabled.
+	 * Writes a frame delimiter or a frame header.
 	 */
-	private boolean compression = false;
+	private final MessageToMessageEncoder<ByteBuf> frameEncoder;
 
 	/**
-	 * A kind of constructor
+	 * A kind of constructor, the requests of a channel are executed serially
 	 *
 	 * @param executorGroup a Netty EventExecutorGroup
 	 */
 	public ServerChannelInitializer(EventExecutorGroup executorGroup) {
+		this(executorGroup, null, new AdmissionController(0, 0));
+	}
+
+	/**
+	 * A kind of constructor
+	 *
+	 * @param executorGroup a Netty EventExecutorGroup
+	 * @param workerPool a shared worker pool that executes requests concurrently, or null to execute requests serially
+	 * @param admissionController admits or rejects the coming requests of all channels
+	 */
+	public ServerChannelInitializer(EventExecutorGroup executorGroup, Executor workerPool, AdmissionController admissionController) {
 		super();
 		this.executorGroup = executorGroup;
 
 		ClasspathProperties config = ServerProperties.getInstance();
 		this.compression = config.getBoolean("server.channel.stream.compression", false);
+		String framing = config.getString("server.channel.framing", FramingType.delimiter.toString());
+		if (FramingType.asLabels().contains(framing)) {
+			this.framing = FramingType.valueOf(framing);
+		} else {
+			log.warn("Fail to find a framing type, use the default one instead. server.channel.framing: {}", framing);
+		}
+		this.maxFrameSize = config.getInt("server.channel.max.frame.size", Constants.MAX_FRAME_SIZE);
+
+		if (this.framing == FramingType.length_field) {
+			this.frameEncoder = new LengthFieldFrameEncoder(this.maxFrameSize);
+		} else {
+			this.frameEncoder = new DelimiterFrameEncoder();
+		}
+
+		int maxConcurrentRequests = config.getInt("server.channel.max.concurrent.requests", Constants.MAX_CONCURRENT_REQUESTS);
+		this.serverHandler = new ChannelHandlerAdapter(workerPool, maxConcurrentRequests, admissionController);
 	}
 
 	/*
@@ -74,14 +112,17 @@ public class ServerChannelInitializer extends ChannelInitializer<SocketChannel>
 			pipeline.addLast(this.executorGroup, "inflater", ZlibCodecFactory.newZlibDecoder(ZlibWrapper.GZIP));
 		}
 
-		// NUL (0x00) is a message delimiter
-		pipeline.addLast(this.executorGroup, "framer", new DelimiterBasedFrameDecoder(8192, Delimiters.nulDelimiter()));
-
-		// string encoder / decoder are responsible for encoding / decoding an UTF-8 string
-		pipeline.addLast(this.executorGroup, "encoder", utf8Encoder);
-		pipeline.addLast(this.executorGroup, "decoder", utf8Decoder);
+		// frame encoder is responsible for writing a delimiter or a header for an outgoing message
+		pipeline.addLast(this.executorGroup, "frameEncoder", this.frameEncoder);
+		if (this.framing == FramingType.length_field) {
+			// a header with magic, version, flags, and length is prefixed to a message
+			pipeline.addLast(this.executorGroup, "framer", new LengthFieldFrameDecoder(this.maxFrameSize));
+		} else {
+			// NUL (0x00) is a message delimiter
+			pipeline.addLast(this.executorGroup, "framer", new DelimiterBasedFrameDecoder(this.maxFrameSize, Delimiters.nulDelimiter()));
+		}
 
 		// server hander is responsible for as a remoting call skeleton
-		pipeline.addLast(this.executorGroup, "serverHandler", serverHandler);
+		pipeline.addLast(this.executorGroup, "serverHandler", this.serverHandler);
 	}
 }
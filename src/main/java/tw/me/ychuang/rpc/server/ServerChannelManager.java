@@ -1,24 +1,50 @@
 package tw.me.ychuang.rpc.server;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
 
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import tw.me.ychuang.rpc.ClasspathProperties;
+import tw.me.ychuang.rpc.ConcurrencyLimiter;
 import tw.me.ychuang.rpc.Constants;
+import tw.me.ychuang.rpc.Constants.ConcurrencyLimitType;
+import tw.me.ychuang.rpc.Constants.ExecutionModeType;
+import tw.me.ychuang.rpc.Constants.FramingType;
+import tw.me.ychuang.rpc.Constants.WorkerPoolType;
+import tw.me.ychuang.rpc.Invalidation;
+import tw.me.ychuang.rpc.Response;
+import tw.me.ychuang.rpc.Result;
+import tw.me.ychuang.rpc.codec.BinaryMessageSerializer;
+import tw.me.ychuang.rpc.codec.BinaryObjectCodec;
+import tw.me.ychuang.rpc.codec.JsonMessageSerializer;
+import tw.me.ychuang.rpc.codec.MessageSerializer;
+import tw.me.ychuang.rpc.codec.MessageSerializerFactory;
 
 /**
  * Starts up and shuts down Netty thread pool.
@@ -49,6 +75,71 @@ public class ServerChannelManager {
 	 */
 	private static EventExecutorGroup executorGroup;
 
+	/**
+	 * Shares the same worker pool to execute the requests of all channels concurrently, it is null in serial mode
+	 */
+	private static ExecutorService workerPool;
+
+	/**
+	 * Shares the same admission controller to admit or reject the requests of all channels
+	 */
+	private AdmissionController admissionController = new AdmissionController(0, 0);
+
+	/**
+	 * Getter method for field 'admissionController'
+	 *
+	 * @return the admission controller of all channels
+	 */
+	public AdmissionController getAdmissionController() {
+		return this.admissionController;
+	}
+
+	/**
+	 * All connected channels, e.g. to push the invalidations of near caches to all clients
+	 */
+	private final ChannelGroup channelGroup = new DefaultChannelGroup("rpc-server-channels", GlobalEventExecutor.INSTANCE);
+
+	/**
+	 * Getter method for field 'channelGroup'
+	 *
+	 * @return all connected channels, a closed channel is removed automatically
+	 */
+	public ChannelGroup getChannelGroup() {
+		return this.channelGroup;
+	}
+
+	/**
+	 * Pushes an invalidation to all connected clients, so that they remove the changed results from their near caches.<br>
+	 * It is serialized by the message serializer that each client has chosen.
+	 *
+	 * @param invalidation an invalidation
+	 */
+	public void publishInvalidation(Invalidation invalidation) {
+		Response response = new Response(0L, new Result(invalidation, Invalidation.class), Invalidation.class.getName());
+
+		int published = 0;
+		for (Channel channel : this.channelGroup) {
+			MessageSerializer serializer = channel.attr(ChannelHandlerAdapter.SERIALIZER).get();
+			if (serializer == null) {
+				serializer = MessageSerializerFactory.getInstance().getDefaultSerializer();
+			}
+
+			ByteBuf invalidationMsg = channel.alloc().buffer();
+			try {
+				serializer.serialize(response, Response.class, invalidationMsg);
+
+			} catch (RuntimeException e) {
+				invalidationMsg.release();
+				log.error("Fail to serialize an invalidation. invalidation: {}", invalidation, e);
+				continue;
+			}
+
+			channel.writeAndFlush(invalidationMsg);
+			published++;
+		}
+		log.info("Publish an invalidation to all clients. invalidation: {}, channels: {}", invalidation, published);
+	}
+
 	/**
 	 * Shares the same parent NioEventLoopGroup to prevent allocation of unnecessary threads
 	 */
@@ -103,6 +194,25 @@ public class ServerChannelManager {
 			return false;
 		}
 
+		// a binary message contains NUL bytes, so it would corrupt the frames that are split by a NUL delimiter
+		String framing = config.getString("server.channel.framing", FramingType.delimiter.toString());
+		String serializers = config.getString("server.channel.serializers", JsonMessageSerializer.NAME);
+		MessageSerializerFactory factory = MessageSerializerFactory.getInstance();
+		if (factory.findSerializers(serializers).contains(factory.findSerializer(BinaryMessageSerializer.NAME))
+				&& false == FramingType.length_field.toString().equals(framing)) {
+			log.error("Fail to start up a Netty Server, the binary serializer requires the length_field framing. server.channel.framing: {}",
+					framing);
+			return false;
+		}
+
+		String allowedClasses = config.getString("server.channel.binary.allowed.classes", "");
+		BinaryObjectCodec.allowClasses(allowedClasses);
+		log.info("Find server.channel.binary.allowed.classes: {}", allowedClasses);
+
+		// create the instances of skeleton classes eagerly before any request arrives
+		int skeletonSize = SkeletonLifecycleManager.getInstance().startUp();
+		log.info("Finish to prepare skeleton classes. size: {}", skeletonSize);
+
 		log.info("Start to start up a Netty Server...");
 
 		int evtExecutorSize = config.getInt("server.event.executor.size", Constants.DEFAULT_THREAD_SIZE);
@@ -110,6 +220,54 @@ public class ServerChannelManager {
 
 		log.info("Find server.event.executor.size: {}, server.io.thread.size: {}", evtExecutorSize, serverIoThreadSize);
 
+		String executionModeName = config.getString("server.execution.mode", ExecutionModeType.serial.toString());
+		if (false == ExecutionModeType.asLabels().contains(executionModeName)) {
+			log.warn("Fail to find an execution mode, use the default one instead. server.execution.mode: {}", executionModeName);
+			executionModeName = ExecutionModeType.serial.toString();
+		}
+		ExecutionModeType executionMode = ExecutionModeType.valueOf(executionModeName);
+		log.info("Find server.execution.mode: {}", executionMode);
+
+		if (executionMode == ExecutionModeType.concurrent) {
+			String poolType = config.getString("server.worker.pool.type", WorkerPoolType.bounded.toString());
+			if (false == WorkerPoolType.asLabels().contains(poolType)) {
+				log.warn("Fail to find a worker pool type, use the default one instead. server.worker.pool.type: {}", poolType);
+				poolType = WorkerPoolType.bounded.toString();
+			}
+			int workerThreadSize = config.getInt("server.worker.thread.size", Constants.DEFAULT_THREAD_SIZE);
+			int workerQueueSize = config.getInt("server.worker.queue.size", Constants.WORKER_QUEUE_SIZE);
+
+			log.info("Find server.worker.pool.type: {}, server.worker.thread.size: {}, server.worker.queue.size: {}", poolType,
+					workerThreadSize, workerQueueSize);
+
+			workerPool = createWorkerPool(WorkerPoolType.valueOf(poolType), workerThreadSize, workerQueueSize);
+		}
+
+		int maxAdmittedRequests = config.getInt("server.admission.max.requests", Constants.MAX_ADMITTED_REQUESTS);
+		long maxQueueTime = config.getLong("server.admission.max.queue.time", Constants.MAX_QUEUE_TIME);
+		log.info("Find server.admission.max.requests: {}, server.admission.max.queue.time: {}", maxAdmittedRequests, maxQueueTime);
+
+		String limitType = config.getString("server.admission.limit.type", ConcurrencyLimitType.fixed.toString());
+		if (false == ConcurrencyLimitType.asLabels().contains(limitType)) {
+			log.warn("Fail to find a concurrency limit type, use the default one instead. server.admission.limit.type: {}", limitType);
+			limitType = ConcurrencyLimitType.fixed.toString();
+		}
+		log.info("Find server.admission.limit.type: {}", limitType);
+
+		ConcurrencyLimiter limiter = null;
+		if (ConcurrencyLimitType.valueOf(limitType) == ConcurrencyLimitType.adaptive) {
+			int initialLimit = config.getInt("server.admission.initial.limit", Constants.INITIAL_CONCURRENCY_LIMIT);
+			int minLimit = config.getInt("server.admission.min.limit", Constants.MIN_CONCURRENCY_LIMIT);
+			log.info("Find server.admission.initial.limit: {}, server.admission.min.limit: {}", initialLimit, minLimit);
+
+			// the max number of admitted requests turns to the upper bound of an adaptive limit
+			limiter = new ConcurrencyLimiter(initialLimit, minLimit, maxAdmittedRequests);
+		} else {
+			limiter = new ConcurrencyLimiter(maxAdmittedRequests);
+		}
+
+		this.admissionController = new AdmissionController(limiter, maxQueueTime);
+
 		// initiate specific threads for Netty Server
 		executorGroup = new DefaultEventExecutorGroup(evtExecutorSize);
 		parentEventLoopGroup = new NioEventLoopGroup(1);
@@ -132,7 +290,7 @@ public class ServerChannelManager {
 				bootstrap.localAddress(new InetSocketAddress(localPort.intValue()));
 
 				// adds handler to channel pipeline
-				ServerChannelInitializer initializer = new ServerChannelInitializer(executorGroup);
+				ServerChannelInitializer initializer = new ServerChannelInitializer(executorGroup, workerPool, this.admissionController);
 				bootstrap.childHandler(initializer);
 
 				// We are writing a TCP/IP server, so we are allowed to set the socket options such as tcpNoDelay and keepAlive.
@@ -140,6 +298,9 @@ public class ServerChannelManager {
 				bootstrap.option(ChannelOption.TCP_NODELAY, true);
 				bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
 
+				// messages are serialized into pooled buffers directly
+				bootstrap.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+
 			} else {
 				// just clone a copy of bootstrap
 				bootstrap = bootstrap.clone();
@@ -172,6 +333,41 @@ public class ServerChannelManager {
 		return true;
 	}
 
+	/**
+	 * Creates a worker pool that executes the requests of all channels off the Netty pipeline
+	 *
+	 * @param poolType the type of a worker pool
+	 * @param workerThreadSize the number of platform threads
+	 * @param workerQueueSize the max number of requests that wait for a bounded worker pool
+	 * @return a worker pool
+	 */
+	private static ExecutorService createWorkerPool(WorkerPoolType poolType, int workerThreadSize, int workerQueueSize) {
+		switch (poolType) {
+		case work_stealing:
+			// the admission controller bounds the requests, since a fork-join pool queues them without limit
+			return new ForkJoinPool(workerThreadSize, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+		case virtual:
+			// a blocking skeleton parks a virtual thread rather than holds an OS thread, the admission controller bounds the requests
+			try {
+				Method factoryMethod = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return (ExecutorService) factoryMethod.invoke(null);
+
+			} catch (ReflectiveOperationException e) {
+				log.warn("Fail to create virtual threads on this JDK, use a bounded worker pool instead. java.version: {}",
+						System.getProperty("java.version"));
+			}
+			break;
+
+		default:
+			break;
+		}
+
+		// a bounded worker pool rejects requests rather than queues them without limit
+		return new ThreadPoolExecutor(workerThreadSize, workerThreadSize, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+				workerQueueSize), new DefaultThreadFactory("rpc-worker"));
+	}
+
 	/**
 	 * shuts down Netty thread pool.
 	 */
@@ -189,6 +385,16 @@ public class ServerChannelManager {
 			executorGroup.shutdownGracefully().awaitUninterruptibly();
 		}
 
+		if (workerPool != null) {
+			workerPool.shutdown();
+			try {
+				workerPool.awaitTermination(Constants.DEFAULT_PERIOD, Constants.DEFAULT_UNIT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			workerPool = null;
+		}
+
 		if (parentEventLoopGroup != null) {
 			parentEventLoopGroup.shutdownGracefully().awaitUninterruptibly();
 		}
@@ -197,6 +403,9 @@ public class ServerChannelManager {
 			childEventLoopGroup.shutdownGracefully().awaitUninterruptibly();
 		}
 
+		// destroy all skeleton instances after no more request is executed
+		SkeletonLifecycleManager.getInstance().shutdown();
+
 		// for restart
 		this.started = false;
 
@@ -19,6 +19,8 @@ public class ServerMeasurer {
 
 	private static long minExecTime;
 
+	private static long expiredCounter;
+
 	private static long avgExecTime() {
 		long avgExecTime = 0;
 		if (execCounter > 0) {
@@ -49,6 +51,14 @@ public class ServerMeasurer {
 		++execCounter;
 	}
 
+	public static synchronized void measureExpired() {
+		++expiredCounter;
+	}
+
+	public static synchronized long getExpiredCount() {
+		return expiredCounter;
+	}
+
 	public static void showStatistics() {
 		if (execCounter <= 0) {
 			return;
@@ -57,6 +67,7 @@ public class ServerMeasurer {
 		long avgExecTime = avgExecTime();
 		log.info("Server-side measurement in millisecond, total exec count: {}, avg exec time: {}, max exec time: {}, min exec time: {}", execCounter,
 				toMilliseconds(avgExecTime), toMilliseconds(maxExecTime), toMilliseconds(minExecTime));
+		log.info("Server-side measurement, total expired count: {}", expiredCounter);
 	}
 
 	public static void resetStatistics() {
@@ -64,5 +75,6 @@ public class ServerMeasurer {
 		totalExecTime = 0;
 		maxExecTime = 0;
 		minExecTime = 0;
+		expiredCounter = 0;
 	}
 }
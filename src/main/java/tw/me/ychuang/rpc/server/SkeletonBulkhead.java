@@ -0,0 +1,42 @@
+package tw.me.ychuang.rpc.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import tw.me.ychuang.rpc.Constants.BulkheadIsolationType;
+import tw.me.ychuang.rpc.Constants.BulkheadRejectionType;
+
+/**
+ * Declares a bulkhead that isolates the calls of a skeleton class or a skeleton method from the others.<br>
+ * A bulkhead on a class is shared by all its methods, a bulkhead on a method is applied instead of the one on its class.<br>
+ * It is overridden by 'server.bulkhead.*.[class name]' and 'server.bulkhead.*.[class name].[method name]' in rpc-server.properties.
+ *
+ * @author Y.C. Huang
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE, ElementType.METHOD })
+public @interface SkeletonBulkhead {
+	/**
+	 * The max number of calls that are executed concurrently
+	 */
+	int maxConcurrent();
+
+	/**
+	 * The max number of calls that wait for a place, the setting of 'server.bulkhead.max.waiting' is applied if it is negative
+	 */
+	int maxWaiting() default -1;
+
+	/**
+	 * The way that the calls are isolated
+	 */
+	BulkheadIsolationType isolation() default BulkheadIsolationType.semaphore;
+
+	/**
+	 * The way that a call is rejected while the bulkhead is full
+	 */
+	BulkheadRejectionType rejection() default BulkheadRejectionType.busy;
+}
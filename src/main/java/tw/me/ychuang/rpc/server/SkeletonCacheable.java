@@ -0,0 +1,36 @@
+package tw.me.ychuang.rpc.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import tw.me.ychuang.rpc.Constants.ResultCacheEvictionType;
+
+/**
+ * Declares that the results of an idempotent skeleton method are cached by its parameters.<br>
+ * A cached result is written back without invoking the method and serializing the result again.<br>
+ * It is overridden by 'server.result.cache.*.[class name].[method name]' in rpc-server.properties.
+ *
+ * @author Y.C. Huang
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SkeletonCacheable {
+	/**
+	 * The time in milliseconds a result lives, the setting of 'server.result.cache.ttl' is applied if it is negative
+	 */
+	long ttl() default -1;
+
+	/**
+	 * The max number of cached results, the setting of 'server.result.cache.max.size' is applied if it is negative
+	 */
+	int maxSize() default -1;
+
+	/**
+	 * The way that a result is evicted while the cache is full
+	 */
+	ResultCacheEvictionType eviction() default ResultCacheEvictionType.lru;
+}
@@ -0,0 +1,305 @@
+package tw.me.ychuang.rpc.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.apache.commons.lang3.ClassUtils;
+
+import tw.me.ychuang.rpc.exception.RpcException;
+import tw.me.ychuang.rpc.exception.ServerSideException;
+
+/**
+ * A resolved method of a skeleton that can be invoked directly without any lookup.<br>
+ * An unknown skeleton or method is resolved to an invoker that always fails, so that it is not looked up again.
+ *
+ * @author Y.C. Huang
+ */
+public class SkeletonInvoker {
+	/**
+	 * The type of a spread method handle without a receiver
+	 */
+	private static final MethodType STATIC_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+	/**
+	 * The type of a spread method handle with a receiver
+	 */
+	private static final MethodType INSTANCE_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+	/**
+	 * Creates an invoker of a static method
+	 *
+	 * @param method a static method
+	 * @return an invoker
+	 * @throws IllegalAccessException if the method is inaccessible
+	 */
+	public static SkeletonInvoker forStaticMethod(Method method) throws IllegalAccessException {
+		MethodHandle handle = spread(MethodHandles.publicLookup().unreflect(method), method);
+
+		return new SkeletonInvoker(method, handle.asType(STATIC_TYPE), null, null);
+	}
+
+	/**
+	 * Creates an invoker of an instance method on the resolved target instance
+	 *
+	 * @param method an instance method
+	 * @param target a skeleton instance
+	 * @return an invoker
+	 * @throws IllegalAccessException if the method is inaccessible
+	 */
+	public static SkeletonInvoker forTarget(Method method, Object target) throws IllegalAccessException {
+		MethodHandle handle = spread(MethodHandles.publicLookup().unreflect(method), method);
+
+		return new SkeletonInvoker(method, handle.bindTo(target).asType(STATIC_TYPE), null, target);
+	}
+
+	/**
+	 * Creates an invoker of an instance method on a skeleton instance that is acquired from a provider per invocation
+	 *
+	 * @param method an instance method
+	 * @param provider a provider of pooled or per-call skeleton instances
+	 * @return an invoker
+	 * @throws IllegalAccessException if the method is inaccessible
+	 */
+	public static SkeletonInvoker forProvider(Method method, SkeletonProvider provider) throws IllegalAccessException {
+		MethodHandle handle = spread(MethodHandles.publicLookup().unreflect(method), method);
+
+		return new SkeletonInvoker(method, handle.asType(INSTANCE_TYPE), provider, null);
+	}
+
+	/**
+	 * Creates an invoker that always fails with the specified reason
+	 *
+	 * @param failure the reason of failure
+	 * @return an invoker
+	 */
+	public static SkeletonInvoker forFailure(String failure) {
+		return new SkeletonInvoker(failure);
+	}
+
+	/**
+	 * Converts all parameters and the return to Object, and collects the parameters into an array
+	 */
+	private static MethodHandle spread(MethodHandle handle, Method method) {
+		int paramSize = method.getParameterTypes().length;
+		MethodHandle genericHandle = handle.asType(handle.type().generic());
+
+		return genericHandle.asSpreader(Object[].class, paramSize);
+	}
+
+	private SkeletonInvoker(Method method, MethodHandle handle, SkeletonProvider provider, Object target) {
+		this(method, handle, provider, target, null);
+	}
+
+	private SkeletonInvoker(Method method, MethodHandle handle, SkeletonProvider provider, Object target, Bulkhead bulkhead) {
+		super();
+		this.method = method;
+		this.handle = handle;
+		this.provider = provider;
+		this.target = target;
+		this.bulkhead = bulkhead;
+		this.failure = null;
+		this.paramClasses = method.getParameterTypes();
+		this.asyncReturn = AsyncReturn.isAsyncType(method.getReturnType());
+		this.asyncValueClass = this.asyncReturn ? AsyncReturn.findValueClass(method) : null;
+	}
+
+	private SkeletonInvoker(String failure) {
+		super();
+		this.method = null;
+		this.handle = null;
+		this.provider = null;
+		this.target = null;
+		this.bulkhead = null;
+		this.failure = failure;
+		this.paramClasses = null;
+		this.asyncReturn = false;
+		this.asyncValueClass = null;
+	}
+
+	/**
+	 * Creates a copy of this invoker that is isolated by a bulkhead
+	 *
+	 * @param bulkhead a bulkhead, the copy isn't isolated if it is null
+	 * @return a copy of this invoker
+	 */
+	public SkeletonInvoker withBulkhead(Bulkhead bulkhead) {
+		return new SkeletonInvoker(this.method, this.handle, this.provider, this.target, bulkhead);
+	}
+
+	/**
+	 * A resolved method of a skeleton
+	 */
+	private final Method method;
+
+	/**
+	 * Getter method for field 'method'
+	 *
+	 * @return a resolved method or null if it is unknown
+	 */
+	public Method getMethod() {
+		return this.method;
+	}
+
+	/**
+	 * A method handle that accepts an array of parameters
+	 */
+	private final MethodHandle handle;
+
+	/**
+	 * A provider if a skeleton instance is acquired per invocation
+	 */
+	private final SkeletonProvider provider;
+
+	/**
+	 * A resolved skeleton instance
+	 */
+	private final Object target;
+
+	/**
+	 * Getter method for field 'target'
+	 *
+	 * @return a resolved skeleton instance or null if there is no shared instance
+	 */
+	public Object getTarget() {
+		return this.target;
+	}
+
+	/**
+	 * The bulkhead isolates the calls of the method
+	 */
+	private final Bulkhead bulkhead;
+
+	/**
+	 * Getter method for field 'bulkhead'
+	 *
+	 * @return the bulkhead of the method or null if it isn't isolated
+	 */
+	public Bulkhead getBulkhead() {
+		return this.bulkhead;
+	}
+
+	/**
+	 * The reason why this skeleton or method is unknown
+	 */
+	private final String failure;
+
+	/**
+	 * Returns true if this skeleton or method is unknown
+	 *
+	 * @return true if this skeleton or method is unknown
+	 */
+	public boolean isUnknown() {
+		return this.failure != null;
+	}
+
+	/**
+	 * The parameter classes of the method
+	 */
+	private final Class<?>[] paramClasses;
+
+	/**
+	 * Whether the method returns a future or not
+	 */
+	private final boolean asyncReturn;
+
+	/**
+	 * Returns true if the method returns a future, the response is written once the future completes
+	 *
+	 * @return true if the method is asynchronous
+	 */
+	public boolean isAsyncReturn() {
+		return this.asyncReturn;
+	}
+
+	/**
+	 * The declared class of the value of the future that the method returns
+	 */
+	private final Class<?> asyncValueClass;
+
+	/**
+	 * Getter method for field 'asyncValueClass'
+	 *
+	 * @return the declared class of the value of the future, or null if it is unknown or the method is synchronous
+	 */
+	public Class<?> getAsyncValueClass() {
+		return this.asyncValueClass;
+	}
+
+	/**
+	 * Returns true if the method has no return
+	 *
+	 * @return true if the method has no return
+	 */
+	public boolean isVoidReturn() {
+		return this.method != null && this.method.getReturnType().equals(Void.TYPE);
+	}
+
+	/**
+	 * Returns true if the method is static
+	 *
+	 * @return true if the method is static
+	 */
+	public boolean isStaticMethod() {
+		return this.method != null && Modifier.isStatic(this.method.getModifiers());
+	}
+
+	/**
+	 * Invokes the resolved method
+	 *
+	 * @param parameters the parameters of the method
+	 * @return a return of the method
+	 * @throws RpcException if this skeleton or method is unknown, the parameters don't match the method, or a skeleton instance can't be
+	 *             acquired
+	 * @throws InvocationTargetException if the method throws an exception
+	 */
+	public Object invoke(Object[] parameters) throws RpcException, InvocationTargetException {
+		if (this.failure != null) {
+			throw new ServerSideException(this.failure);
+		}
+		// a mismatched parameter fails the dispatch, so it must not be reported as if the method threw it
+		this.checkParameters(parameters);
+
+		if (this.provider == null) {
+			try {
+				return (Object) this.handle.invokeExact(parameters);
+			} catch (Throwable e) {
+				throw new InvocationTargetException(e);
+			}
+		}
+
+		Object instance = this.provider.acquire();
+		try {
+			return (Object) this.handle.invokeExact(instance, parameters);
+		} catch (Throwable e) {
+			throw new InvocationTargetException(e);
+		} finally {
+			this.provider.release(instance);
+		}
+	}
+
+	/**
+	 * Checks that the parameters can be passed to the method
+	 */
+	private void checkParameters(Object[] parameters) throws ServerSideException {
+		int paramSize = parameters != null ? parameters.length : 0;
+		if (paramSize != this.paramClasses.length) {
+			throw new ServerSideException("Fail to pass the parameters to the method of the skeleton class. method: " + this.method.getName()
+					+ ", expected size: " + this.paramClasses.length + ", actual size: " + paramSize);
+		}
+
+		for (int i = 0; i < paramSize; i++) {
+			Class<?> paramClass = this.paramClasses[i];
+			Object parameter = parameters[i];
+
+			boolean matched = parameter == null ? false == paramClass.isPrimitive() : ClassUtils.primitiveToWrapper(paramClass).isInstance(parameter);
+			if (false == matched) {
+				throw new ServerSideException("Fail to pass the parameter to the method of the skeleton class. method: " + this.method.getName()
+						+ ", index: " + i + ", expected class: " + paramClass.getName() + ", actual class: " + (parameter != null ? parameter.getClass().getName() : null));
+			}
+		}
+	}
+}
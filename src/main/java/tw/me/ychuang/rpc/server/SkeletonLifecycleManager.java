@@ -0,0 +1,200 @@
+package tw.me.ychuang.rpc.server;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.reflect.ConstructorUtils;
+import org.apache.commons.lang3.reflect.MethodUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.ClasspathProperties;
+import tw.me.ychuang.rpc.Constants;
+import tw.me.ychuang.rpc.Constants.SkeletonScopeType;
+import tw.me.ychuang.rpc.exception.RpcException;
+import tw.me.ychuang.rpc.exception.ServerSideException;
+
+/**
+ * Creates, shares, and destroys skeleton instances by the scope of each skeleton class.<br>
+ * The scope is looked up by the following order:
+ * <ol>
+ * <li>'server.skeleton.scope.[class name]' in rpc-server.properties</li>
+ * <li>{@link SkeletonScope} annotation on the skeleton class</li>
+ * <li>'server.skeleton.default.scope' in rpc-server.properties, it is per_call if unspecified</li>
+ * </ol>
+ * A skeleton class without default constructor is always a singleton obtained by its getInstance method.
+ *
+ * @author Y.C. Huang
+ */
+public class SkeletonLifecycleManager {
+	private static final Logger log = LoggerFactory.getLogger(SkeletonLifecycleManager.class);
+
+	/**
+	 * Apply a lazy-loaded singleton - Initialization on Demand Holder.<br>
+	 * see detail on right side: http://en.wikipedia.org/wiki/Initialization-on-demand_holder_idiom
+	 */
+	private static class LazyHolder {
+		private static final SkeletonLifecycleManager INSTANCE = new SkeletonLifecycleManager();
+	}
+
+	public static SkeletonLifecycleManager getInstance() {
+		return LazyHolder.INSTANCE;
+	}
+
+	/**
+	 * All skeleton providers by skeleton class
+	 */
+	private final ConcurrentMap<Class<?>, SkeletonProvider> providerPool = new ConcurrentHashMap<>();
+
+	private SkeletonLifecycleManager() {
+		super();
+	}
+
+	/**
+	 * Creates the instances of the skeleton classes that are listed by 'server.skeleton.class' in rpc-server.properties.
+	 *
+	 * @return the number of prepared skeleton classes
+	 */
+	public int startUp() {
+		ClasspathProperties config = ServerProperties.getInstance();
+
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		if (classLoader == null) {
+			classLoader = this.getClass().getClassLoader();
+		}
+
+		int preparedSize = 0;
+		Iterator<String> skeletonKeys = config.getKeys("server.skeleton.class");
+		while (skeletonKeys.hasNext()) {
+			String skeletonName = StringUtils.trim(config.getString(skeletonKeys.next()));
+			if (StringUtils.isBlank(skeletonName)) {
+				continue;
+			}
+
+			try {
+				SkeletonProvider provider = this.findProvider(classLoader.loadClass(skeletonName));
+				preparedSize++;
+
+				log.info("Find a server.skeleton.class: {}, scope: {}", skeletonName, provider.getScope());
+
+			} catch (ClassNotFoundException e) {
+				log.warn("Fail to find a skeleton class. skeleton: {}", skeletonName);
+
+			} catch (RpcException e) {
+				log.error("Fail to create the instances of a skeleton class. skeleton: {}", skeletonName, e);
+			}
+		}
+
+		return preparedSize;
+	}
+
+	/**
+	 * Finds the provider of a skeleton class, it is created at the first time.
+	 *
+	 * @param skeletonClass a skeleton class
+	 * @return a provider
+	 * @throws RpcException if a skeleton instance can't be created
+	 */
+	public SkeletonProvider findProvider(Class<?> skeletonClass) throws RpcException {
+		SkeletonProvider provider = this.providerPool.get(skeletonClass);
+		if (provider != null) {
+			return provider;
+		}
+
+		// creates under a lock since the constructor of a skeleton may be expensive
+		synchronized (this) {
+			provider = this.providerPool.get(skeletonClass);
+			if (provider == null) {
+				provider = this.createProvider(skeletonClass);
+				this.providerPool.put(skeletonClass, provider);
+			}
+		}
+
+		return provider;
+	}
+
+	private SkeletonProvider createProvider(Class<?> skeletonClass) throws RpcException {
+		ClasspathProperties config = ServerProperties.getInstance();
+		SkeletonScope annotation = skeletonClass.getAnnotation(SkeletonScope.class);
+
+		// a skeleton instance is constructed per request unless its class opts into a shared scope
+		SkeletonScopeType scope = SkeletonScopeType.per_call;
+		String defaultScopeName = StringUtils.trim(config.getString("server.skeleton.default.scope", SkeletonScopeType.per_call.toString()));
+		if (SkeletonScopeType.asLabels().contains(defaultScopeName)) {
+			scope = SkeletonScopeType.valueOf(defaultScopeName);
+		} else {
+			log.warn("Fail to find a skeleton scope, use the default one instead. server.skeleton.default.scope: {}", defaultScopeName);
+		}
+		if (annotation != null) {
+			scope = annotation.value();
+		}
+		String scopeKey = "server.skeleton.scope." + skeletonClass.getName();
+		String scopeName = StringUtils.trim(config.getString(scopeKey, null));
+		if (StringUtils.isNotBlank(scopeName)) {
+			if (SkeletonScopeType.asLabels().contains(scopeName)) {
+				scope = SkeletonScopeType.valueOf(scopeName);
+			} else {
+				log.warn("Fail to find a skeleton scope, use the {} scope instead. {}: {}", scope, scopeKey, scopeName);
+			}
+		}
+
+		int poolSize = config.getInt("server.skeleton.pool.size", Constants.SKELETON_POOL_SIZE);
+		if (annotation != null && annotation.poolSize() > 0) {
+			poolSize = annotation.poolSize();
+		}
+		poolSize = config.getInt("server.skeleton.pool.size." + skeletonClass.getName(), poolSize);
+
+		int acquireTimeout = config.getInt("server.skeleton.acquire.timeout", Constants.SKELETON_ACQUIRE_TIMEOUT);
+
+		SkeletonProvider provider = null;
+		// try to find a default constructor without parameter
+		Constructor<?> skeletonConstructor = ConstructorUtils.getMatchingAccessibleConstructor(skeletonClass, new Class<?>[0]);
+		if (skeletonConstructor == null) {
+			// obtain unique instance by excuting getInstance method wrapped by singleton pattern
+			Object skeletonInstance = null;
+			Method getInstanceMethod = MethodUtils.getMatchingAccessibleMethod(skeletonClass, "getInstance", new Class<?>[0]);
+			if (getInstanceMethod != null) {
+				try {
+					skeletonInstance = getInstanceMethod.invoke(null, new Object[0]);
+				} catch (Exception e) {
+					throw new ServerSideException("Fail to construct a skeleton instance by constructor or singleton method.", e);
+				}
+			}
+			if (skeletonInstance == null) {
+				throw new ServerSideException("Fail to construct a skeleton instance by constructor or singleton method.");
+			}
+
+			if (scope != SkeletonScopeType.singleton) {
+				log.warn("Ignore the scope of a skeleton class without default constructor. skeleton: {}, scope: {}", skeletonClass.getName(), scope);
+			}
+			provider = SkeletonProvider.forInstance(skeletonClass, skeletonInstance);
+
+		} else {
+			provider = SkeletonProvider.forConstructor(skeletonConstructor, scope, poolSize, acquireTimeout);
+		}
+		log.info("Create a skeleton provider. provider: {}", provider);
+
+		return provider;
+	}
+
+	/**
+	 * Destroys all skeleton instances, the resolved invokers are removed as well.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			for (SkeletonProvider provider : this.providerPool.values()) {
+				provider.destroy();
+			}
+			this.providerPool.clear();
+		}
+		SkeletonRegistry.getInstance().clear();
+		BulkheadRegistry.getInstance().shutdown();
+		ResultCacheRegistry.getInstance().shutdown();
+
+		log.info("Finish to destroy all skeleton instances.");
+	}
+}
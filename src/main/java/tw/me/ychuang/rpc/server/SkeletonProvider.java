@@ -0,0 +1,269 @@
+package tw.me.ychuang.rpc.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.Constants.SkeletonScopeType;
+import tw.me.ychuang.rpc.exception.RpcException;
+import tw.me.ychuang.rpc.exception.ServerSideException;
+
+/**
+ * Provides the instances of a skeleton class by its scope.<br>
+ * An instance is acquired before a method is invoked and released after that.
+ *
+ * @author Y.C. Huang
+ */
+public abstract class SkeletonProvider {
+	private static final Logger log = LoggerFactory.getLogger(SkeletonProvider.class);
+
+	/**
+	 * Creates a provider that shares an existing instance, e.g. an instance obtained by getInstance method
+	 *
+	 * @param skeletonClass a skeleton class
+	 * @param instance a skeleton instance
+	 * @return a provider
+	 */
+	static SkeletonProvider forInstance(Class<?> skeletonClass, Object instance) {
+		return new SingletonProvider(skeletonClass, instance);
+	}
+
+	/**
+	 * Creates a provider by a default constructor without parameter
+	 *
+	 * @param constructor a default constructor
+	 * @param scope the scope of skeleton instances
+	 * @param poolSize the number of pooled skeleton instances
+	 * @param acquireTimeout the max seconds to wait for a pooled skeleton instance
+	 * @return a provider, the instances of singleton and pooled scopes are constructed eagerly
+	 * @throws RpcException if a skeleton instance can't be constructed
+	 */
+	static SkeletonProvider forConstructor(Constructor<?> constructor, SkeletonScopeType scope, int poolSize, int acquireTimeout)
+			throws RpcException {
+		MethodHandle constructorHandle = null;
+		try {
+			constructorHandle = MethodHandles.publicLookup().unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+		} catch (IllegalAccessException e) {
+			throw new ServerSideException("Fail to construct a skeleton instance by constructor or singleton method.", e);
+		}
+
+		Class<?> skeletonClass = constructor.getDeclaringClass();
+		switch (scope) {
+		case pooled:
+			return new PooledProvider(skeletonClass, constructorHandle, poolSize, acquireTimeout);
+
+		case per_call:
+			return new PerCallProvider(skeletonClass, constructorHandle);
+
+		default:
+			return new SingletonProvider(skeletonClass, construct(constructorHandle));
+		}
+	}
+
+	/**
+	 * Constructs a skeleton instance by a constructor handle
+	 */
+	private static Object construct(MethodHandle constructorHandle) throws RpcException {
+		try {
+			return (Object) constructorHandle.invokeExact();
+		} catch (Throwable e) {
+			throw new ServerSideException("Fail to construct a skeleton instance by constructor or singleton method.", e);
+		}
+	}
+
+	/**
+	 * Closes a skeleton instance if it holds any resource
+	 */
+	private static void close(Object instance) {
+		if (instance instanceof Closeable) {
+			try {
+				((Closeable) instance).close();
+			} catch (IOException e) {
+				log.warn("Fail to close a skeleton instance. instance: {}", instance, e);
+			}
+		}
+	}
+
+	protected SkeletonProvider(Class<?> skeletonClass, SkeletonScopeType scope) {
+		super();
+		this.skeletonClass = skeletonClass;
+		this.scope = scope;
+	}
+
+	/**
+	 * A skeleton class
+	 */
+	private final Class<?> skeletonClass;
+
+	/**
+	 * Getter method for field 'skeletonClass'
+	 *
+	 * @return a skeleton class
+	 */
+	public Class<?> getSkeletonClass() {
+		return this.skeletonClass;
+	}
+
+	/**
+	 * The scope of skeleton instances
+	 */
+	private final SkeletonScopeType scope;
+
+	/**
+	 * Getter method for field 'scope'
+	 *
+	 * @return the scope of skeleton instances
+	 */
+	public SkeletonScopeType getScope() {
+		return this.scope;
+	}
+
+	/**
+	 * Acquires a skeleton instance to invoke a method
+	 *
+	 * @return a skeleton instance
+	 * @throws RpcException if a skeleton instance can't be obtained
+	 */
+	public abstract Object acquire() throws RpcException;
+
+	/**
+	 * Releases a skeleton instance after a method is invoked
+	 *
+	 * @param instance a skeleton instance that is acquired from this provider
+	 */
+	public abstract void release(Object instance);
+
+	/**
+	 * Closes all skeleton instances that are held by this provider
+	 */
+	public abstract void destroy();
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return this.skeletonClass.getName() + "(" + this.scope + ")";
+	}
+
+	/**
+	 * Shares an instance by all requests
+	 */
+	private static class SingletonProvider extends SkeletonProvider {
+		private final Object instance;
+
+		private SingletonProvider(Class<?> skeletonClass, Object instance) {
+			super(skeletonClass, SkeletonScopeType.singleton);
+			this.instance = instance;
+		}
+
+		@Override
+		public Object acquire() {
+			return this.instance;
+		}
+
+		@Override
+		public void release(Object instance) {
+			// nothing to do
+		}
+
+		@Override
+		public void destroy() {
+			close(this.instance);
+		}
+	}
+
+	/**
+	 * Lends one of a fixed number of instances to a request
+	 */
+	private static class PooledProvider extends SkeletonProvider {
+		private final List<Object> instances;
+
+		private final BlockingQueue<Object> idleInstances;
+
+		private final int acquireTimeout;
+
+		private PooledProvider(Class<?> skeletonClass, MethodHandle constructorHandle, int poolSize, int acquireTimeout) throws RpcException {
+			super(skeletonClass, SkeletonScopeType.pooled);
+
+			this.instances = new ArrayList<>(poolSize);
+			this.idleInstances = new ArrayBlockingQueue<>(poolSize);
+			this.acquireTimeout = acquireTimeout;
+
+			for (int i = 0; i < poolSize; i++) {
+				Object instance = construct(constructorHandle);
+				this.instances.add(instance);
+				this.idleInstances.add(instance);
+			}
+		}
+
+		@Override
+		public Object acquire() throws RpcException {
+			Object instance = null;
+			try {
+				instance = this.idleInstances.poll(this.acquireTimeout, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ServerSideException("Be interrupted while waiting for a pooled skeleton instance.", e);
+			}
+
+			if (instance == null) {
+				throw new ServerSideException("Fail to acquire a pooled skeleton instance in time. skeleton: " + this.getSkeletonClass().getName());
+			}
+
+			return instance;
+		}
+
+		@Override
+		public void release(Object instance) {
+			this.idleInstances.offer(instance);
+		}
+
+		@Override
+		public void destroy() {
+			for (Object instance : this.instances) {
+				close(instance);
+			}
+			this.idleInstances.clear();
+		}
+	}
+
+	/**
+	 * Constructs an instance per request
+	 */
+	private static class PerCallProvider extends SkeletonProvider {
+		private final MethodHandle constructorHandle;
+
+		private PerCallProvider(Class<?> skeletonClass, MethodHandle constructorHandle) {
+			super(skeletonClass, SkeletonScopeType.per_call);
+			this.constructorHandle = constructorHandle;
+		}
+
+		@Override
+		public Object acquire() throws RpcException {
+			return construct(this.constructorHandle);
+		}
+
+		@Override
+		public void release(Object instance) {
+			close(instance);
+		}
+
+		@Override
+		public void destroy() {
+			// nothing to do
+		}
+	}
+}
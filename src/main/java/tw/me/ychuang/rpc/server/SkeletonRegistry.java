@@ -0,0 +1,247 @@
+package tw.me.ychuang.rpc.server;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.reflect.MethodUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.Command;
+import tw.me.ychuang.rpc.Constants.SkeletonScopeType;
+import tw.me.ychuang.rpc.exception.RpcException;
+import tw.me.ychuang.rpc.exception.ServerSideException;
+
+/**
+ * A registry of resolved skeleton invokers.<br>
+ * A skeleton class, a matching method, and a skeleton instance are looked up only once per skeleton, method, and classes of
+ * parameters, the later commands are dispatched by the cached invoker directly.
+ *
+ * @author Y.C. Huang
+ */
+public class SkeletonRegistry {
+	private static final Logger log = LoggerFactory.getLogger(SkeletonRegistry.class);
+
+	/**
+	 * The max number of cached unknown skeletons and methods, it prevents the registry from growing by arbitrary names
+	 */
+	private static final int MAX_UNKNOWN_SIZE = 1024;
+
+	/**
+	 * Apply a lazy-loaded singleton - Initialization on Demand Holder.<br>
+	 * see detail on right side: http://en.wikipedia.org/wiki/Initialization-on-demand_holder_idiom
+	 */
+	private static class LazyHolder {
+		private static final SkeletonRegistry INSTANCE = new SkeletonRegistry();
+	}
+
+	public static SkeletonRegistry getInstance() {
+		return LazyHolder.INSTANCE;
+	}
+
+	/**
+	 * All resolved invokers by skeleton, method, and classes of parameters
+	 */
+	private final ConcurrentMap<InvokerKey, SkeletonInvoker> invokerPool = new ConcurrentHashMap<>();
+
+	/**
+	 * The number of cached unknown skeletons and methods
+	 */
+	private final AtomicInteger unknownSize = new AtomicInteger();
+
+	private SkeletonRegistry() {
+		super();
+	}
+
+	/**
+	 * Finds the invoker of a command, it is resolved and cached at the first time.
+	 *
+	 * @param command a command
+	 * @return an invoker, it always fails if the skeleton or the method is unknown
+	 * @throws RpcException if a skeleton instance can't be obtained
+	 */
+	public SkeletonInvoker findInvoker(Command command) throws RpcException {
+		InvokerKey key = new InvokerKey(command.getSkeleton(), command.getMethod(), command.isStaticMethod(), command.getParamClasses());
+
+		SkeletonInvoker invoker = this.invokerPool.get(key);
+		if (invoker != null) {
+			return invoker;
+		}
+
+		invoker = this.resolveInvoker(command);
+		if (invoker.isUnknown() && this.unknownSize.incrementAndGet() > MAX_UNKNOWN_SIZE) {
+			this.unknownSize.decrementAndGet();
+			return invoker;
+		}
+
+		// the classes of parameters are copied since the command's list is mutable
+		InvokerKey copiedKey = new InvokerKey(command.getSkeleton(), command.getMethod(), command.isStaticMethod(),
+				new ArrayList<>(command.getParamClasses()));
+		SkeletonInvoker existingInvoker = this.invokerPool.putIfAbsent(copiedKey, invoker);
+		if (existingInvoker != null) {
+			if (invoker.isUnknown()) {
+				this.unknownSize.decrementAndGet();
+			}
+			invoker = existingInvoker;
+		}
+
+		return invoker;
+	}
+
+	/**
+	 * Finds the invoker of a command only if it has been resolved, it never loads a class or creates a skeleton instance.
+	 *
+	 * @param command a command
+	 * @return an invoker or null if it hasn't been resolved
+	 */
+	public SkeletonInvoker peekInvoker(Command command) {
+		InvokerKey key = new InvokerKey(command.getSkeleton(), command.getMethod(), command.isStaticMethod(), command.getParamClasses());
+
+		return this.invokerPool.get(key);
+	}
+
+	/**
+	 * Resolves a skeleton class, a matching method, and a skeleton instance by naming rule and Java Reflection API.
+	 *
+	 * @param command a command
+	 * @return an invoker
+	 * @throws RpcException if a skeleton instance can't be obtained
+	 */
+	public SkeletonInvoker resolveInvoker(Command command) throws RpcException {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		if (classLoader == null) {
+			classLoader = this.getClass().getClassLoader();
+		}
+
+		StringBuilder skeletonClsPath = new StringBuilder(50);
+		String path = StringUtils.replaceChars(command.getSkeleton(), '.', '/');
+		skeletonClsPath.append(path).append(".class");
+		log.debug("Start to find a skeleton class name: {}, class path: {}", command.getSkeleton(), skeletonClsPath);
+
+		try {
+			// first, try to find the specified class of skeleton
+			URL resource = classLoader.getResource(skeletonClsPath.toString());
+			if (resource == null) {
+				return SkeletonInvoker.forFailure("Fail to find the specified class of the specified skeleton.");
+			}
+			Class<?> skeletonClass = classLoader.loadClass(command.getSkeleton());
+
+			// second, try to find the invoked method by parameters and classes of parameters
+			Method skeletonMethod = MethodUtils.getMatchingAccessibleMethod(skeletonClass, command.getMethod(), command.findParamClasses());
+			if (skeletonMethod == null) {
+				return SkeletonInvoker.forFailure("Fail to find the specified method of the specified skeleton.");
+			}
+
+			SkeletonInvoker invoker = null;
+			if (Modifier.isStatic(skeletonMethod.getModifiers())) {
+				// third, bind the static method without skeleton instance
+				invoker = SkeletonInvoker.forStaticMethod(skeletonMethod);
+
+			} else if (command.isStaticMethod()) {
+				return SkeletonInvoker.forFailure("Fail to invoke a non-static method of the specified skeleton without instance.");
+
+			} else {
+				// the skeleton instances are created and shared by the scope of the skeleton class
+				SkeletonProvider provider = SkeletonLifecycleManager.getInstance().findProvider(skeletonClass);
+				if (provider.getScope() == SkeletonScopeType.singleton) {
+					invoker = SkeletonInvoker.forTarget(skeletonMethod, provider.acquire());
+				} else {
+					invoker = SkeletonInvoker.forProvider(skeletonMethod, provider);
+				}
+			}
+			log.info("Resolve the method of the skeleton class. skeleton: {}, method: {}", command.getSkeleton(), command.getMethod());
+
+			// a slow skeleton is isolated, so that it can't use up every worker thread
+			Bulkhead bulkhead = BulkheadRegistry.getInstance().findBulkhead(skeletonClass, skeletonMethod);
+			if (bulkhead != null) {
+				invoker = invoker.withBulkhead(bulkhead);
+			}
+
+			// the results of an idempotent method are cached, they are looked up by the resolved method later
+			ResultCacheRegistry.getInstance().prepareCache(skeletonClass, skeletonMethod);
+
+			return invoker;
+
+		} catch (ClassNotFoundException e) {
+			return SkeletonInvoker.forFailure("Fail to find the specified class of the specified skeleton.");
+
+		} catch (RpcException e) {
+			throw e;
+
+		} catch (Exception e) {
+			throw new ServerSideException("Fail to bind the specified method of the specified skeleton.", e);
+		}
+	}
+
+	/**
+	 * Removes all resolved invokers, they are resolved again at the next time.
+	 */
+	public void clear() {
+		this.invokerPool.clear();
+		this.unknownSize.set(0);
+	}
+
+	/**
+	 * Gets the number of cached invokers
+	 *
+	 * @return the number of cached invokers
+	 */
+	public int size() {
+		return this.invokerPool.size();
+	}
+
+	/**
+	 * A key of an invoker
+	 */
+	private static class InvokerKey {
+		private final String skeleton;
+
+		private final String method;
+
+		private final boolean staticMethod;
+
+		private final List<?> paramClasses;
+
+		private final int hash;
+
+		private InvokerKey(String skeleton, String method, boolean staticMethod, List<?> paramClasses) {
+			super();
+			this.skeleton = skeleton;
+			this.method = method;
+			this.staticMethod = staticMethod;
+			this.paramClasses = paramClasses;
+
+			int hash = StringUtils.defaultString(skeleton).hashCode();
+			hash = 31 * hash + StringUtils.defaultString(method).hashCode();
+			hash = 31 * hash + (staticMethod ? 1 : 0);
+			hash = 31 * hash + paramClasses.hashCode();
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (false == obj instanceof InvokerKey) {
+				return false;
+			}
+
+			InvokerKey other = (InvokerKey) obj;
+			return this.hash == other.hash && this.staticMethod == other.staticMethod && StringUtils.equals(this.skeleton, other.skeleton)
+					&& StringUtils.equals(this.method, other.method) && this.paramClasses.equals(other.paramClasses);
+		}
+	}
+}
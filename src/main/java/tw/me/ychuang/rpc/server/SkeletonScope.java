@@ -0,0 +1,30 @@
+package tw.me.ychuang.rpc.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import tw.me.ychuang.rpc.Constants.SkeletonScopeType;
+
+/**
+ * Declares how the instances of a skeleton class are created and shared.<br>
+ * It is overridden by 'server.skeleton.scope.[class name]' and 'server.skeleton.pool.size.[class name]' in rpc-server.properties.
+ *
+ * @author Y.C. Huang
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface SkeletonScope {
+	/**
+	 * The scope of skeleton instances
+	 */
+	SkeletonScopeType value() default SkeletonScopeType.singleton;
+
+	/**
+	 * The number of pooled skeleton instances, the setting of 'server.skeleton.pool.size' is applied if it isn't positive
+	 */
+	int poolSize() default 0;
+}
@@ -1,11 +1,20 @@
 package tw.me.ychuang.rpc;
 
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import tw.me.ychuang.rpc.server.RequestDeadline;
+import tw.me.ychuang.rpc.server.SkeletonCacheable;
+
 /**
  * Invokes the matching business logic object by a command and returns a result.
  * 
@@ -26,6 +35,11 @@ public class BizServiceSkeleton {
 		return LazyHolder.INSTANCE;
 	}
 
+	/**
+	 * The number of visits of all pages
+	 */
+	private static final AtomicLong visitCounter = new AtomicLong();
+
 	private BizServiceSkeleton() {
 		super();
 	}
@@ -43,6 +57,26 @@ public class BizServiceSkeleton {
 		return feedback.toString();
 	}
 
+	/**
+	 * Echoes a random string later without holding the calling thread
+	 * 
+	 * @param randomString a random string
+	 * @param delay the time to wait in milliseconds
+	 * @return a future of an original random string appends the specified string
+	 */
+	public Future<String> echoLater(final String randomString, long delay) {
+		final Promise<String> promise = GlobalEventExecutor.INSTANCE.newPromise();
+		GlobalEventExecutor.INSTANCE.schedule(new Runnable() {
+			@Override
+			public void run() {
+				// the promise may have been cancelled by the server once its request is expired
+				promise.trySuccess(echo(randomString));
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+
+		return promise;
+	}
+
 	/**
 	 * Create a user
 	 * 
@@ -95,6 +129,51 @@ public class BizServiceSkeleton {
 		throw new Exception("Fail to find any user");
 	}
 
+	/**
+	 * Counts a visit of a page, the count is cached a while
+	 * 
+	 * @param page a page name
+	 * @return the page name with the number of visits
+	 */
+	@SkeletonCacheable(ttl = 60000, maxSize = 100)
+	public static String countVisits(String page) {
+		return page + ':' + visitCounter.incrementAndGet();
+	}
+
+	/**
+	 * Counts a read of a page, the count is cached a while by the near cache of the client
+	 * 
+	 * @param page a page name
+	 * @return the page name with the number of reads
+	 */
+	public static String countReads(String page) {
+		return page + ':' + visitCounter.incrementAndGet();
+	}
+
+	/**
+	 * Counts a visit of a page slowly, the identical visits in flight are coalesced by the server
+	 * 
+	 * @param page a page name
+	 * @return the page name with the number of visits
+	 */
+	public static String countSlowVisits(String page) throws InterruptedException {
+		TimeUnit.MILLISECONDS.sleep(300);
+
+		return page + ':' + visitCounter.incrementAndGet();
+	}
+
+	/**
+	 * Counts a read of a page slowly, the identical reads in flight are coalesced by the client
+	 * 
+	 * @param page a page name
+	 * @return the page name with the number of reads
+	 */
+	public static String countSlowReads(String page) throws InterruptedException {
+		TimeUnit.MILLISECONDS.sleep(300);
+
+		return page + ':' + visitCounter.incrementAndGet();
+	}
+
 	/**
 	 * Delete a user
 	 * 
@@ -106,4 +185,17 @@ public class BizServiceSkeleton {
 
 		return true;
 	}
+
+	/**
+	 * Sleeps a while and reads the remaining time of the caller
+	 * 
+	 * @param millis the time to sleep in milliseconds
+	 * @return the remaining time of the caller in milliseconds
+	 * @throws InterruptedException if it is interrupted while sleeping
+	 */
+	public static long sleep(long millis) throws InterruptedException {
+		TimeUnit.MILLISECONDS.sleep(millis);
+
+		return RequestDeadline.getRemainingTime(TimeUnit.MILLISECONDS);
+	}
 }
@@ -9,6 +9,7 @@ import tw.me.ychuang.rpc.client.ChannelProxy;
 import tw.me.ychuang.rpc.client.ClientChannelManager;
 import tw.me.ychuang.rpc.client.ClientMeasurer;
 import tw.me.ychuang.rpc.exception.ClientSideException;
+import tw.me.ychuang.rpc.exception.RpcException;
 import tw.me.ychuang.rpc.exception.ServerSideException;
 
 /**
@@ -82,6 +83,35 @@ public class BizServiceStub {
 		return echoString;
 	}
 
+	/**
+	 * Echoes a random string without blocking the current stub thread
+	 *
+	 * @param randomString a random string
+	 * @param listener a listener is notified once the echoed string is returned
+	 * @return a response future
+	 * @throws RpcException if there is no available channel
+	 */
+	public ResponseFuture<Response> echoAsync(String randomString, ResponseListener<Response> listener) throws RpcException {
+		final long startTime = System.nanoTime();
+
+		// create a command with stub name and method name by naming rule
+		Command command = new Command(SKELETON_CLASS, "echo", false);
+		command.addParameter(randomString, String.class);
+
+		// select an available channel proxy by channel manager
+		ChannelProxy channelProxy = ClientChannelManager.getInstance().selectChannelProxy();
+		// send a command to a remote server via this chanel proxy and get notified by the listener later
+		ResponseFuture<Response> future = channelProxy.sendAsync(command, new ResponseListener<Response>() {
+			@Override
+			public void operationComplete(ResponseFuture<Response> future) {
+				ClientMeasurer.measure(startTime);
+			}
+		});
+		future.addListener(listener);
+
+		return future;
+	}
+
 	/**
 	 * Create a user
 	 *
@@ -1,9 +1,23 @@
 package tw.me.ychuang.rpc;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.ImmediateExecutor;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import io.netty.util.internal.logging.Slf4JLoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.RandomUtils;
@@ -16,9 +30,37 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import tw.me.ychuang.rpc.Constants.BulkheadIsolationType;
+import tw.me.ychuang.rpc.Constants.BulkheadRejectionType;
+import tw.me.ychuang.rpc.Constants.ChannelSelectionType;
+import tw.me.ychuang.rpc.Constants.ResultCacheEvictionType;
+import tw.me.ychuang.rpc.Constants.SkeletonScopeType;
+import tw.me.ychuang.rpc.client.ChannelProxy;
 import tw.me.ychuang.rpc.client.ClientChannelManager;
+import tw.me.ychuang.rpc.client.LoadBalancer;
+import tw.me.ychuang.rpc.client.LoadBalancerFactory;
+import tw.me.ychuang.rpc.client.NearCache;
+import tw.me.ychuang.rpc.client.RequestBatcher;
+import tw.me.ychuang.rpc.client.SingleFlight;
+import tw.me.ychuang.rpc.codec.BinaryMessageSerializer;
+import tw.me.ychuang.rpc.codec.BinaryObjectCodec;
+import tw.me.ychuang.rpc.codec.JsonMessageSerializer;
+import tw.me.ychuang.rpc.codec.MessageSerializer;
+import tw.me.ychuang.rpc.codec.MessageSerializerFactory;
+import tw.me.ychuang.rpc.exception.ClientSideException;
+import tw.me.ychuang.rpc.exception.RequestTimeoutException;
+import tw.me.ychuang.rpc.exception.ServerBusyException;
 import tw.me.ychuang.rpc.exception.ServerSideException;
+import tw.me.ychuang.rpc.server.AdmissionController;
+import tw.me.ychuang.rpc.server.Bulkhead;
+import tw.me.ychuang.rpc.server.CommandCoalescer;
+import tw.me.ychuang.rpc.server.ResultCache;
+import tw.me.ychuang.rpc.server.ResultCacheRegistry;
 import tw.me.ychuang.rpc.server.ServerChannelManager;
+import tw.me.ychuang.rpc.server.ServerMeasurer;
+import tw.me.ychuang.rpc.server.SkeletonInvoker;
+import tw.me.ychuang.rpc.server.SkeletonLifecycleManager;
+import tw.me.ychuang.rpc.server.SkeletonProvider;
 
 public class BizServiceTest {
 	private static final Logger log = LoggerFactory.getLogger(BizServiceTest.class);
@@ -60,6 +102,51 @@ public class BizServiceTest {
 		Assert.assertEquals(randomString, sampling);
 	}
 
+	@Test
+	public void echoLargeString() {
+		// exceeds the 8 KB limit of the former NUL-delimited frame
+		String randomString = RandomStringUtils.random(64 * 1024, true, true);
+		String feedback = BizServiceStub.getInstance().echo(randomString);
+
+		Assert.assertNotNull(feedback);
+		Assert.assertEquals(randomString, feedback.substring(0, randomString.length()));
+	}
+
+	@Test
+	public void echoAsync() throws Exception {
+		final int requestSize = 200;
+		final CountDownLatch latch = new CountDownLatch(requestSize);
+		final AtomicInteger echoed = new AtomicInteger();
+
+		// a single thread keeps all requests in flight
+		for (int i = 0; i < requestSize; i++) {
+			final String randomString = RandomStringUtils.random(50, true, true);
+			ResponseListener<Response> listener = new ResponseListener<Response>() {
+				@Override
+				public void operationComplete(ResponseFuture<Response> future) {
+					Response response = future.isCancelled() ? null : future.getNow();
+					if (response != null && ((String) response.getResult().getReturn()).startsWith(randomString)) {
+						echoed.incrementAndGet();
+					}
+					latch.countDown();
+				}
+			};
+
+			// the adaptive limits may have been shrunk by the expired requests of the other tests, so a limited request is sent again later
+			while (true) {
+				try {
+					BizServiceStub.getInstance().echoAsync(randomString, listener);
+					break;
+				} catch (ClientSideException e) {
+					Thread.sleep(1);
+				}
+			}
+		}
+
+		Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(requestSize, echoed.get());
+	}
+
 	@Test
 	public void createUser() {
 		long id = RandomUtils.nextLong(0, Long.MAX_VALUE);
@@ -82,6 +169,694 @@ public class BizServiceTest {
 		Assert.assertEquals(id, user.getId());
 	}
 
+	@Test
+	public void negotiateSerializer() {
+		for (ChannelProxy channelProxy : ClientChannelManager.getInstance().listChannelProxies()) {
+			Assert.assertEquals(BinaryMessageSerializer.NAME, channelProxy.getSerializer().getName());
+		}
+	}
+
+	@Test
+	public void serializeUtf8Json() {
+		MessageSerializer serializer = MessageSerializerFactory.getInstance().findSerializer(JsonMessageSerializer.NAME);
+		String text = "ascii, \u00e9, \u4e2d\u6587, \ud83d\ude00, \u2028";
+
+		// the json bytes are encoded and decoded by the reused writer and reader of this thread
+		for (int i = 0; i < 2; i++) {
+			ByteBuf buf = Unpooled.buffer();
+			serializer.serialize(new Response(i + 1, new Result(text, String.class), String.class.getName()), Response.class, buf);
+			Response response = serializer.deserialize(buf, Response.class);
+
+			Assert.assertEquals(text, response.getResult().getReturn());
+			Assert.assertFalse(buf.isReadable());
+		}
+
+		// an overlong encoding of "A" is replaced instead of being decoded
+		ByteBuf buf = Unpooled.buffer();
+		serializer.serialize(new Response(3, new Result("AA", String.class), String.class.getName()), Response.class, buf);
+		int index = buf.toString(CharsetUtil.UTF_8).indexOf("\"AA\"") + 1;
+		buf.setByte(index, 0xc1);
+		buf.setByte(index + 1, 0x81);
+		Response response = serializer.deserialize(buf, Response.class);
+
+		Assert.assertEquals("\ufffd\ufffd", response.getResult().getReturn());
+	}
+
+	@Test
+	public void rejectDisallowedClass() {
+		Assert.assertTrue(BinaryObjectCodec.isAllowed(User.class));
+		Assert.assertTrue(BinaryObjectCodec.isAllowed(Invalidation.class));
+		Assert.assertFalse(BinaryObjectCodec.isAllowed(ProcessBuilder.class));
+
+		// a typed object which isn't a subtype of its declared class is rejected before it is constructed
+		User user = new User();
+		user.setId(1L);
+		user.setName("name");
+
+		ByteBuf buf = Unpooled.buffer();
+		BinaryObjectCodec.writeValue(buf, user, Object.class);
+		try {
+			BinaryObjectCodec.readValue(buf.duplicate(), String.class);
+			Assert.fail("A typed object of an undeclared class is accepted.");
+		} catch (DecoderException e) {
+			log.info("Reject a typed object of an undeclared class. message: {}", e.getMessage());
+		}
+		Assert.assertTrue(BinaryObjectCodec.readValue(buf, Object.class) instanceof User);
+	}
+
+	@Test
+	public void rejectMalformedBinary() {
+		// a list of a huge size is rejected before it is allocated
+		ByteBuf buf = Unpooled.buffer();
+		buf.writeByte(16);
+		BinaryObjectCodec.writeVarInt(buf, Integer.MAX_VALUE);
+		buf.writeByte(0);
+		try {
+			BinaryObjectCodec.readValue(buf, Object.class);
+			Assert.fail("A list of a huge size is accepted.");
+		} catch (DecoderException e) {
+			log.info("Reject a list of a huge size. message: {}", e.getMessage());
+		}
+
+		// the lists nested too deep are rejected before the stack overflows
+		buf = Unpooled.buffer();
+		for (int i = 0; i < 10000; i++) {
+			buf.writeByte(16);
+			BinaryObjectCodec.writeVarInt(buf, 1);
+		}
+		buf.writeByte(0);
+		try {
+			BinaryObjectCodec.readValue(buf, Object.class);
+			Assert.fail("The lists nested too deep are accepted.");
+		} catch (DecoderException e) {
+			log.info("Reject the lists nested too deep. message: {}", e.getMessage());
+		}
+	}
+
+	@Test
+	public void drainWaitingRequests() {
+		for (int i = 0; i < 20; i++) {
+			BizServiceStub.getInstance().echo(RandomStringUtils.random(50, true, true));
+		}
+
+		// every answered request leaves the future pool of its channel proxy
+		for (ChannelProxy channelProxy : ClientChannelManager.getInstance().listChannelProxies()) {
+			Assert.assertEquals(0, channelProxy.getWaitingRequestSize());
+		}
+	}
+
+	@Test
+	public void avoidSlowChannel() {
+		// a slow server stand-in: the response times of channel proxies on embedded channels are observed directly
+		ChannelProxy fastProxy = new ChannelProxy(1, "fast.server", 9090, new EmbeddedChannel(), null);
+		ChannelProxy slowProxy = new ChannelProxy(2, "slow.server", 9090, new EmbeddedChannel(), null);
+		ChannelProxy[] channelProxies = { fastProxy, slowProxy };
+
+		long now = System.nanoTime();
+		fastProxy.getLatencyTracker().observe(TimeUnit.MILLISECONDS.toNanos(1), now);
+		slowProxy.getLatencyTracker().observe(TimeUnit.MILLISECONDS.toNanos(200), now);
+
+		LoadBalancer balancer = LoadBalancerFactory.getInstance().findBalancer(ChannelSelectionType.peak_ewma.toString());
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertSame(fastProxy, balancer.select(channelProxies));
+		}
+
+		// the slow server gets traffic back after its average decays below the one of the fast server
+		long later = now + TimeUnit.SECONDS.toNanos(60);
+		fastProxy.getLatencyTracker().observe(TimeUnit.MILLISECONDS.toNanos(1), later);
+		Assert.assertTrue(slowProxy.getLatencyTracker().getAverage(later) < fastProxy.getLatencyTracker().getAverage(later));
+
+		fastProxy.getChannel().close();
+		slowProxy.getChannel().close();
+	}
+
+	@Test
+	public void expireRequest() throws Exception {
+		// a lost response stand-in: a request written into an embedded channel is never answered
+		ChannelProxy channelProxy = new ChannelProxy(1, "lost.server", 9090, new EmbeddedChannel(), null);
+
+		Command command = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "echo", false);
+		command.addParameter("lost", String.class);
+		ResponseFuture<Response> future = channelProxy.send(command, 50, TimeUnit.MILLISECONDS);
+
+		try {
+			future.get();
+			Assert.fail("A request never answered must be expired.");
+
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof RequestTimeoutException);
+			Assert.assertSame(e.getCause(), future.getCause());
+		}
+		Assert.assertEquals(0, channelProxy.getWaitingRequestSize());
+		Assert.assertEquals(1, channelProxy.getExpiredRequestCount());
+
+		channelProxy.getChannel().close();
+	}
+
+	@Test
+	public void echoLater() throws Exception {
+		String randomString = RandomStringUtils.random(50, true, true);
+		Command command = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "echoLater", false);
+		command.addParameter(randomString, String.class);
+		command.addParameter(100L, long.class);
+
+		// the skeleton returns a future, the response is written once it completes
+		ChannelProxy channelProxy = ClientChannelManager.getInstance().selectChannelProxy();
+		Response response = channelProxy.send(command, 5000, TimeUnit.MILLISECONDS).get();
+
+		Assert.assertEquals(String.class, response.getResult().getReturnClass());
+		Assert.assertTrue(((String) response.getResult().getReturn()).startsWith(randomString));
+	}
+
+	@Test
+	public void interruptWaitingThread() throws Exception {
+		Command command = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "echoLater", false);
+		command.addParameter("interrupted", String.class);
+		command.addParameter(300L, long.class);
+
+		ChannelProxy channelProxy = ClientChannelManager.getInstance().selectChannelProxy();
+		final ResponseFuture<Response> future = channelProxy.send(command, 5000, TimeUnit.MILLISECONDS);
+
+		// the interrupted thread gives up waiting, but the future is still finished by the response for its listeners
+		Thread waitingThread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					future.get();
+				} catch (Exception e) {
+					// nothing to do
+				}
+			}
+		};
+		waitingThread.start();
+		waitingThread.interrupt();
+		waitingThread.join();
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		future.addListener(new ResponseListener<Response>() {
+			@Override
+			public void operationComplete(ResponseFuture<Response> future) {
+				latch.countDown();
+			}
+		}, null);
+		Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(((String) future.getNow().getResult().getReturn()).startsWith("interrupted"));
+	}
+
+	@Test
+	public void expireAsyncReturn() throws Exception {
+		AdmissionController admissionController = ServerChannelManager.getInstance().getAdmissionController();
+		int admittedRequests = admissionController.getAdmittedRequests();
+
+		Command command = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "echoLater", false);
+		command.addParameter("late", String.class);
+		command.addParameter(3000L, long.class);
+
+		// the future outlives the deadline of its request, so the server fails it and releases the admission
+		ChannelProxy channelProxy = ClientChannelManager.getInstance().selectChannelProxy();
+		try {
+			channelProxy.send(command, 200, TimeUnit.MILLISECONDS).get();
+			Assert.fail("A request whose future outlives its deadline must be expired.");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof RequestTimeoutException);
+		}
+
+		long giveUpTime = System.currentTimeMillis() + 1000;
+		while (admissionController.getAdmittedRequests() > admittedRequests && System.currentTimeMillis() < giveUpTime) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(admittedRequests, admissionController.getAdmittedRequests());
+	}
+
+	@Test
+	public void propagateDeadline() throws Exception {
+		Command command = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "sleep", true);
+		command.addParameter(0L, long.class);
+
+		ChannelProxy channelProxy = ClientChannelManager.getInstance().selectChannelProxy();
+		Response response = channelProxy.send(command, 5000, TimeUnit.MILLISECONDS).get();
+
+		// the skeleton reads the remaining time of the caller
+		long remainingTime = (Long) response.getResult().getReturn();
+		Assert.assertTrue(remainingTime > 0 && remainingTime <= 5000);
+	}
+
+	@Test
+	public void dropExpiredRequest() throws Exception {
+		long expiredCount = ServerMeasurer.getExpiredCount();
+
+		Command command = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "sleep", true);
+		command.addParameter(300L, long.class);
+
+		ChannelProxy channelProxy = ClientChannelManager.getInstance().selectChannelProxy();
+		try {
+			channelProxy.send(command, 100, TimeUnit.MILLISECONDS).get();
+			Assert.fail("A request slower than its deadline must be expired.");
+
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof RequestTimeoutException);
+		}
+
+		// the server drops the response instead of serializing it for nobody
+		TimeUnit.MILLISECONDS.sleep(500);
+		Assert.assertEquals(expiredCount + 1, ServerMeasurer.getExpiredCount());
+	}
+
+	@Test
+	public void skipSaturatedChannel() throws Exception {
+		// requests written into an embedded channel are never answered, so a small channel proxy saturates soon
+		ChannelProxy saturatedProxy = new ChannelProxy(1, "saturated.server", 9090, new EmbeddedChannel(), null, 2, ImmediateExecutor.INSTANCE);
+		ChannelProxy readyProxy = new ChannelProxy(2, "ready.server", 9090, new EmbeddedChannel(), null, 2, ImmediateExecutor.INSTANCE);
+		ChannelProxy[] channelProxies = { saturatedProxy, readyProxy };
+
+		Command command = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "echo", false);
+		command.addParameter("saturated", String.class);
+		saturatedProxy.send(command, 0, TimeUnit.MILLISECONDS);
+		saturatedProxy.send(command, 0, TimeUnit.MILLISECONDS);
+		Assert.assertTrue(saturatedProxy.isSaturated());
+
+		// a saturated channel proxy rejects more requests and drops out of selection
+		try {
+			saturatedProxy.send(command, 0, TimeUnit.MILLISECONDS);
+			Assert.fail("A saturated channel proxy must reject a request.");
+
+		} catch (ClientSideException e) {
+			Assert.assertEquals(2, saturatedProxy.getWaitingRequestSize());
+		}
+
+		LoadBalancer balancer = LoadBalancerFactory.getInstance().findBalancer(ChannelSelectionType.round_robin.toString());
+		for (int i = 0; i < 10; i++) {
+			Assert.assertSame(readyProxy, balancer.select(channelProxies));
+		}
+
+		// it is selected again after it drains
+		saturatedProxy.cancelWaitingRequests();
+		Assert.assertFalse(saturatedProxy.isSaturated());
+
+		saturatedProxy.getChannel().close();
+		readyProxy.getChannel().close();
+	}
+
+	@Test
+	public void shedLoad() throws Exception {
+		AdmissionController admissionController = new AdmissionController(2, 50);
+
+		// the requests over the limit are rejected on arrival
+		Assert.assertTrue(admissionController.tryAdmit());
+		Assert.assertTrue(admissionController.tryAdmit());
+		Assert.assertFalse(admissionController.tryAdmit());
+		Assert.assertEquals(2, admissionController.getAdmittedRequests());
+
+		// a released request leaves room for another one
+		admissionController.release();
+		Assert.assertTrue(admissionController.tryAdmit());
+
+		// a request that has been queued too long is rejected before execution
+		Assert.assertTrue(admissionController.tryExecute(System.nanoTime()));
+		Assert.assertFalse(admissionController.tryExecute(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(100)));
+		Assert.assertEquals(2, admissionController.getRejectedCount());
+	}
+
+	@Test
+	public void adaptConcurrencyLimit() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 100);
+		for (int i = 0; i < 10; i++) {
+			Assert.assertTrue(limiter.tryAcquire());
+		}
+		Assert.assertFalse(limiter.tryAcquire());
+
+		// fast responses while the limit is fully used grow the limit
+		for (int i = 0; i < 10; i++) {
+			limiter.release(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		int grownLimit = limiter.getLimit();
+		Assert.assertTrue(grownLimit > 10);
+
+		// slow responses mean the requests are queued at the remote side, so the limit shrinks
+		for (int i = 0; i < 10; i++) {
+			Assert.assertTrue(limiter.tryAcquire());
+			limiter.release(TimeUnit.MILLISECONDS.toNanos(20));
+		}
+		int shrunkLimit = limiter.getLimit();
+		Assert.assertTrue(shrunkLimit < grownLimit);
+
+		// an expired or rejected request shrinks the limit at once
+		Assert.assertTrue(limiter.tryAcquire());
+		limiter.releaseDropped();
+		Assert.assertTrue(limiter.getLimit() < shrunkLimit);
+		Assert.assertEquals(0, limiter.getInflight());
+		Assert.assertEquals(1, limiter.getDroppedCount());
+	}
+
+	@Test
+	public void isolateSkeletonMethod() throws Exception {
+		final Bulkhead bulkhead = new Bulkhead("sleep", 1, 0, 0, BulkheadIsolationType.semaphore, BulkheadRejectionType.busy);
+		final SkeletonInvoker invoker = SkeletonInvoker.forStaticMethod(BizServiceSkeleton.class.getMethod("sleep", long.class));
+
+		// a slow call holds the only place of the bulkhead
+		Thread slowCaller = new Thread() {
+			@Override
+			public void run() {
+				try {
+					bulkhead.invoke(invoker, new Object[] { 500L });
+				} catch (Exception e) {
+					// nothing to do
+				}
+			}
+		};
+		slowCaller.start();
+		while (bulkhead.getActiveCount() == 0) {
+			Thread.sleep(1);
+		}
+
+		// the other calls are rejected rather than use up the worker threads
+		try {
+			bulkhead.invoke(invoker, new Object[] { 0L });
+			Assert.fail("A full bulkhead must reject a call.");
+
+		} catch (ServerBusyException e) {
+			Assert.assertEquals(1, bulkhead.getRejectedCount());
+			Assert.assertEquals(0, bulkhead.getQueueDepth());
+		}
+
+		slowCaller.join();
+		Assert.assertEquals(0, bulkhead.getActiveCount());
+		bulkhead.invoke(invoker, new Object[] { 0L });
+	}
+
+	@Test
+	public void isolateAsyncMethod() throws Exception {
+		Bulkhead bulkhead = new Bulkhead("echoLater", 1, 0, 0, BulkheadIsolationType.semaphore, BulkheadRejectionType.busy);
+		SkeletonInvoker invoker = SkeletonInvoker.forTarget(BizServiceSkeleton.class.getMethod("echoLater", String.class, long.class),
+				BizServiceSkeleton.getInstance());
+
+		// the returned future holds the only place of the bulkhead until it is released
+		Future<?> future = (Future<?>) bulkhead.invoke(invoker, new Object[] { "async", 100L });
+		Assert.assertEquals(1, bulkhead.getActiveCount());
+		try {
+			bulkhead.invoke(invoker, new Object[] { "async", 0L });
+			Assert.fail("A bulkhead held by an asynchronous call must reject a call.");
+
+		} catch (ServerBusyException e) {
+			Assert.assertEquals(1, bulkhead.getRejectedCount());
+		}
+
+		future.get();
+		bulkhead.release();
+		Assert.assertEquals(0, bulkhead.getActiveCount());
+	}
+
+	@Test
+	public void rejectMismatchedParameters() throws Exception {
+		SkeletonInvoker invoker = SkeletonInvoker.forTarget(BizServiceSkeleton.class.getMethod("echoLater", String.class, long.class),
+				BizServiceSkeleton.getInstance());
+
+		// a mismatched parameter fails the dispatch instead of being reported as thrown by the skeleton method
+		Object[][] mismatches = { { "async" }, { "async", null }, { "async", "100" } };
+		for (Object[] parameters : mismatches) {
+			try {
+				invoker.invoke(parameters);
+				Assert.fail("Mismatched parameters are passed to the method.");
+
+			} catch (ServerSideException e) {
+				Assert.assertNull(e.getCause());
+			}
+		}
+	}
+
+	@Test
+	public void cacheResult() throws Exception {
+		String page = RandomStringUtils.random(20, true, true);
+		Command command = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "countVisits", true);
+		command.addParameter(page, String.class);
+
+		// the second request is answered by the cached result without invoking the method
+		ChannelProxy channelProxy = ClientChannelManager.getInstance().selectChannelProxy();
+		Object firstVisits = channelProxy.send(command, 5000, TimeUnit.MILLISECONDS).get().getResult().getReturn();
+		Object secondVisits = channelProxy.send(command, 5000, TimeUnit.MILLISECONDS).get().getResult().getReturn();
+		Assert.assertEquals(firstVisits, secondVisits);
+
+		ResultCache cache = ResultCacheRegistry.getInstance().findCache(BizServiceSkeleton.class.getMethod("countVisits", String.class));
+		Assert.assertTrue(cache.getHitCount() >= 1);
+
+		// the skeleton invalidates the cached result, so the method is invoked again
+		ResultCacheRegistry.getInstance().invalidate(BizServiceSkeleton.class, "countVisits", page);
+		Object thirdVisits = channelProxy.send(command, 5000, TimeUnit.MILLISECONDS).get().getResult().getReturn();
+		Assert.assertNotEquals(firstVisits, thirdVisits);
+
+		// a cached result is written back by every serializer as a whole response
+		for (String serializerName : new String[] { BinaryMessageSerializer.NAME, JsonMessageSerializer.NAME }) {
+			MessageSerializer serializer = MessageSerializerFactory.getInstance().findSerializer(serializerName);
+			ByteBuf body = Unpooled.buffer();
+			serializer.serializeResult(new Result(page, String.class), body);
+
+			ByteBuf out = Unpooled.buffer();
+			serializer.serializeResponse(7L, body, out);
+			Response response = serializer.deserialize(out, Response.class);
+
+			Assert.assertEquals(7L, response.getId());
+			Assert.assertEquals(page, response.getResult().getReturn());
+		}
+
+		// the least frequently used result is evicted while a LFU cache is full
+		ResultCache lfuCache = new ResultCache("lfu", 60000, 2, ResultCacheEvictionType.lfu);
+		lfuCache.put("a", BinaryMessageSerializer.NAME, new byte[] { 1 }, lfuCache.getVersion());
+		lfuCache.put("b", BinaryMessageSerializer.NAME, new byte[] { 2 }, lfuCache.getVersion());
+		Assert.assertNotNull(lfuCache.get("a", BinaryMessageSerializer.NAME));
+		lfuCache.put("c", BinaryMessageSerializer.NAME, new byte[] { 3 }, lfuCache.getVersion());
+
+		Assert.assertNotNull(lfuCache.get("a", BinaryMessageSerializer.NAME));
+		Assert.assertNull(lfuCache.get("b", BinaryMessageSerializer.NAME));
+		Assert.assertEquals(1, lfuCache.getEvictionCount());
+		// a result that is computed before an invalidation isn't cached after it
+		long version = lfuCache.getVersion();
+		lfuCache.invalidate("a");
+		Assert.assertFalse(lfuCache.put("a", BinaryMessageSerializer.NAME, new byte[] { 4 }, version));
+		Assert.assertNull(lfuCache.get("a", BinaryMessageSerializer.NAME));
+	}
+
+	@Test
+	public void nearCacheResult() throws Exception {
+		String page = RandomStringUtils.random(20, true, true);
+		Command command = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "countReads", true);
+		command.addParameter(page, String.class);
+
+		// the second command is answered by the near cache without any round trip
+		NearCache nearCache = ClientChannelManager.getInstance().getNearCache();
+		ChannelProxy channelProxy = ClientChannelManager.getInstance().selectChannelProxy();
+		Object firstReads = channelProxy.send(command, 5000, TimeUnit.MILLISECONDS).get().getResult().getReturn();
+
+		// the result is cached by a listener after the stub thread is signaled, and a late invalidation of the other tests drops it
+		long fillDeadline = System.currentTimeMillis() + 5000;
+		while (nearCache.get(nearCache.toKey(command)) == null) {
+			Assert.assertTrue(System.currentTimeMillis() < fillDeadline);
+			Thread.sleep(10);
+			if (nearCache.get(nearCache.toKey(command)) == null) {
+				firstReads = channelProxy.send(command, 5000, TimeUnit.MILLISECONDS).get().getResult().getReturn();
+			}
+		}
+		long hitCount = nearCache.getHitCount();
+		Object secondReads = channelProxy.send(command, 5000, TimeUnit.MILLISECONDS).get().getResult().getReturn();
+
+		Assert.assertEquals(firstReads, secondReads);
+		Assert.assertEquals(hitCount + 1, nearCache.getHitCount());
+
+		// the server pushes an invalidation, so the command is sent to the server again
+		long version = nearCache.getVersion();
+		ResultCacheRegistry.getInstance().invalidate(BizServiceSkeleton.class, "countReads", page);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (nearCache.getVersion() == version) {
+			Assert.assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+
+		Object thirdReads = channelProxy.send(command, 5000, TimeUnit.MILLISECONDS).get().getResult().getReturn();
+		Assert.assertNotEquals(firstReads, thirdReads);
+
+		// the overloaded methods with the same value are cached apart, and an invalidation of the value removes both
+		NearCache overloadCache = new NearCache(Collections.singletonMap("skeleton.overload", 60000L), 16, 0);
+		Command intCommand = new Command("skeleton", "overload", true);
+		intCommand.addParameter(1, int.class);
+		Command longCommand = new Command("skeleton", "overload", true);
+		longCommand.addParameter(1L, long.class);
+		Assert.assertNotEquals(overloadCache.toKey(intCommand), overloadCache.toKey(longCommand));
+
+		overloadCache.put(overloadCache.toKey(intCommand), new Result(1, Integer.class), overloadCache.getVersion());
+		overloadCache.put(overloadCache.toKey(longCommand), new Result(1L, Long.class), overloadCache.getVersion());
+		Assert.assertEquals(Integer.class, overloadCache.get(overloadCache.toKey(intCommand)).getReturnClass());
+		Assert.assertEquals(Long.class, overloadCache.get(overloadCache.toKey(longCommand)).getReturnClass());
+
+		overloadCache.invalidate(new Invalidation("skeleton", "overload", intCommand.findParameterKey()));
+		Assert.assertEquals(0, overloadCache.getSize());
+	}
+
+	@Test
+	public void serializeVersionedResponse() {
+		User user = new User();
+		user.setId(7L);
+		user.setName("versioned");
+
+		// a changed result is written back from its serialized bytes with a version, and read back as the same result
+		for (String serializerName : new String[] { BinaryMessageSerializer.NAME, JsonMessageSerializer.NAME }) {
+			MessageSerializer serializer = MessageSerializerFactory.getInstance().findSerializer(serializerName);
+			ByteBuf resultByteBuf = Unpooled.buffer();
+			serializer.serializeResult(new Result(user, User.class), resultByteBuf);
+
+			ByteBuf out = Unpooled.buffer();
+			serializer.serializeVersionedResponse(9L, resultByteBuf, "0123456789abcdef", out);
+			Response response = serializer.deserialize(out, Response.class);
+
+			Assert.assertEquals(9L, response.getId());
+			Assert.assertEquals("0123456789abcdef", response.getResult().getVersion());
+			Assert.assertFalse(response.getResult().isNotModified());
+			Assert.assertEquals("versioned", ((User) response.getResult().getReturn()).getName());
+		}
+	}
+
+	@Test
+	public void revalidateResult() throws Exception {
+		String randomString = RandomStringUtils.random(64 * 1024, true, true);
+		Command command = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "echo", false);
+		command.addParameter(randomString, String.class);
+
+		// the first conditional request gets the full result with its version
+		ChannelProxy channelProxy = ClientChannelManager.getInstance().selectChannelProxy();
+		Result firstResult = channelProxy.send(command, "", 5000, TimeUnit.MILLISECONDS).get().getResult();
+		Assert.assertFalse(firstResult.isNotModified());
+		Assert.assertNotNull(firstResult.getVersion());
+		Assert.assertTrue(((String) firstResult.getReturn()).startsWith(randomString));
+
+		// the result is unchanged, so the server answers a not modified result without the payload
+		Result secondResult = channelProxy.send(command, firstResult.getVersion(), 5000, TimeUnit.MILLISECONDS).get().getResult();
+		Assert.assertTrue(secondResult.isNotModified());
+		Assert.assertEquals(firstResult.getVersion(), secondResult.getVersion());
+		Assert.assertNull(secondResult.getReturn());
+
+		// the version and the not modified status are carried by every serializer
+		for (String serializerName : new String[] { BinaryMessageSerializer.NAME, JsonMessageSerializer.NAME }) {
+			MessageSerializer serializer = MessageSerializerFactory.getInstance().findSerializer(serializerName);
+			ByteBuf out = Unpooled.buffer();
+			serializer.serialize(new Request(7L, command, 0, "v1"), Request.class, out);
+			Assert.assertEquals("v1", serializer.deserialize(out, Request.class).getVersion());
+
+			out = Unpooled.buffer();
+			serializer.serialize(new Response(7L, Result.notModified("v1"), Void.class.getName()), Response.class, out);
+			Result result = serializer.deserialize(out, Response.class).getResult();
+			Assert.assertTrue(result.isNotModified());
+			Assert.assertEquals("v1", result.getVersion());
+		}
+	}
+
+	@Test
+	public void coalesceCommands() throws Exception {
+		ChannelProxy channelProxy = ClientChannelManager.getInstance().selectChannelProxy();
+
+		// the identical commands in flight execute the skeleton method once on the server
+		String page = RandomStringUtils.random(20, true, true);
+		Command command = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "countSlowVisits", true);
+		command.addParameter(page, String.class);
+
+		long serverSharedCount = CommandCoalescer.getInstance().getSharedCount();
+		List<ResponseFuture<Response>> futures = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			futures.add(channelProxy.send(command, 5000, TimeUnit.MILLISECONDS));
+		}
+		Object firstVisits = futures.get(0).get().getResult().getReturn();
+		for (ResponseFuture<Response> future : futures) {
+			Assert.assertEquals(firstVisits, future.get().getResult().getReturn());
+		}
+		Assert.assertEquals(serverSharedCount + 3, CommandCoalescer.getInstance().getSharedCount());
+
+		// the identical commands in flight share one response future on the client
+		command = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "countSlowReads", true);
+		command.addParameter(page, String.class);
+
+		SingleFlight singleFlight = ClientChannelManager.getInstance().getSingleFlight();
+		long clientSharedCount = singleFlight.getSharedCount();
+		ResponseFuture<Response> firstFuture = channelProxy.send(command, 5000, TimeUnit.MILLISECONDS);
+		ResponseFuture<Response> secondFuture = channelProxy.send(command, 5000, TimeUnit.MILLISECONDS);
+
+		Assert.assertSame(firstFuture, secondFuture);
+		Assert.assertEquals(clientSharedCount + 1, singleFlight.getSharedCount());
+		Assert.assertTrue(singleFlight.getCoalescingRatio() > 0);
+		Assert.assertNotNull(firstFuture.get().getResult().getReturn());
+		// the overloaded methods with the same parameter values never share a flight
+		Command intCommand = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "countSlowReads", true);
+		intCommand.addParameter(1, int.class);
+		Command longCommand = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "countSlowReads", true);
+		longCommand.addParameter(1L, long.class);
+		Assert.assertNotEquals(singleFlight.toKey(intCommand), singleFlight.toKey(longCommand));
+	}
+
+	@Test
+	public void batchRequests() throws Exception {
+		ChannelProxy channelProxy = ClientChannelManager.getInstance().selectChannelProxy();
+		RequestBatcher batcher = channelProxy.getBatcher();
+		long batchCount = batcher.getBatchCount();
+		long requestCount = batcher.getRequestCount();
+
+		// the requests that are sent at the same moment are gathered into batches, each future gets its own response
+		List<String> randomStrings = new ArrayList<>();
+		List<ResponseFuture<Response>> futures = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			String randomString = RandomStringUtils.random(20, true, true);
+			Command command = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "echo", false);
+			command.addParameter(randomString, String.class);
+
+			randomStrings.add(randomString);
+			futures.add(channelProxy.send(command, 5000, TimeUnit.MILLISECONDS));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			Assert.assertTrue(((String) futures.get(i).get().getResult().getReturn()).startsWith(randomStrings.get(i)));
+		}
+		Assert.assertEquals(requestCount + 4, batcher.getRequestCount());
+		Assert.assertTrue(batcher.getBatchCount() - batchCount < 4);
+
+		// a slow request of a batch never holds the response of a fast one
+		Command slowCommand = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "sleep", true);
+		slowCommand.addParameter(1000L, long.class);
+		Command fastCommand = new Command("tw.me.ychuang.rpc.BizServiceSkeleton", "echo", false);
+		fastCommand.addParameter("fast", String.class);
+
+		long sendTime = System.nanoTime();
+		ResponseFuture<Response> slowFuture = channelProxy.send(slowCommand, 5000, TimeUnit.MILLISECONDS);
+		ResponseFuture<Response> fastFuture = channelProxy.send(fastCommand, 5000, TimeUnit.MILLISECONDS);
+		Assert.assertNotNull(fastFuture.get().getResult().getReturn());
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sendTime) < 500);
+		Assert.assertNotNull(slowFuture.get().getResult().getReturn());
+
+		// the batch that the server combines is read back as the same batch response by every serializer
+		for (String serializerName : new String[] { BinaryMessageSerializer.NAME, JsonMessageSerializer.NAME }) {
+			MessageSerializer serializer = MessageSerializerFactory.getInstance().findSerializer(serializerName);
+			List<ByteBuf> messages = new ArrayList<>();
+			for (long id = 1; id <= 2; id++) {
+				ByteBuf message = Unpooled.buffer();
+				serializer.serialize(new Response(id, new Result("v" + id, String.class, "h" + id, false), String.class.getName()),
+						Response.class, message);
+				messages.add(message);
+			}
+
+			ByteBuf out = Unpooled.buffer();
+			serializer.serializeBatch(messages, Response.class, out);
+			Response response = serializer.deserialize(out, Response.class);
+
+			Assert.assertTrue(response.isBatch());
+			Assert.assertEquals(2, response.getBatch().size());
+			Assert.assertEquals(2L, response.getBatch().get(1).getId());
+			Assert.assertEquals("v2", response.getBatch().get(1).getResult().getReturn());
+			Assert.assertEquals("h1", response.getBatch().get(0).getResult().getVersion());
+		}
+	}
+
+	@Test
+	public void prepareSkeleton() throws Exception {
+		// BizServiceSkeleton is listed by server.skeleton.class and obtained by its getInstance method
+		SkeletonProvider provider = SkeletonLifecycleManager.getInstance().findProvider(BizServiceSkeleton.class);
+
+		Assert.assertEquals(SkeletonScopeType.singleton, provider.getScope());
+		Assert.assertSame(BizServiceSkeleton.getInstance(), provider.acquire());
+	}
+
 	@Test(expected = ServerSideException.class)
 	public void findUser() throws Exception {
 		long userId = RandomUtils.nextLong(0, Long.MAX_VALUE);
@@ -0,0 +1,97 @@
+package tw.me.ychuang.rpc;
+
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.client.ChannelProxy;
+import tw.me.ychuang.rpc.client.ClientChannelManager;
+
+/**
+ * A micro-benchmark of client-side response dispatch cost as the number of channels grows.<br>
+ * It compares a scan of channel pool (the way before channel attributes) with
+ * {@link ClientChannelManager#findChannelProxy(Channel)}.
+ *
+ * @author Y.C. Huang
+ */
+public class ChannelLookupBenchmark {
+	private static final Logger log = LoggerFactory.getLogger(ChannelLookupBenchmark.class);
+
+	private static final int[] CHANNEL_SIZES = { 8, 64, 256, 1024 };
+
+	private static final int MEASURE_ROUNDS = 1000000;
+
+	private static Object sink;
+
+	public static void main(String[] args) throws Exception {
+		ClientChannelManager manager = ClientChannelManager.getInstance();
+
+		for (int channelSize : CHANNEL_SIZES) {
+			ConcurrentMap<Integer, ChannelProxy> channelPool = new ConcurrentHashMap<>();
+			List<Channel> channels = new ArrayList<>(channelSize);
+
+			for (int i = 0; i < channelSize; i++) {
+				Channel channel = new EmbeddedChannel();
+				ChannelProxy channelProxy = new ChannelProxy(i + 1, "localhost", 9090, channel, null);
+				channelProxy.setManager(manager);
+
+				channelPool.put(channelProxy.getId(), channelProxy);
+				channels.add(channel);
+			}
+
+			// warm up
+			measureScan(channelPool, channels, MEASURE_ROUNDS / 10);
+			measureAttribute(manager, channels, MEASURE_ROUNDS / 10);
+
+			long scanNanos = measureScan(channelPool, channels, MEASURE_ROUNDS);
+			long attributeNanos = measureAttribute(manager, channels, MEASURE_ROUNDS);
+
+			log.info("client.channel.size: {}, scan: {} ns/op, attribute: {} ns/op", channelSize, scanNanos / MEASURE_ROUNDS, attributeNanos
+					/ MEASURE_ROUNDS);
+
+			for (Channel channel : channels) {
+				channel.close();
+			}
+		}
+		log.info("The last result: {}", sink);
+	}
+
+	private static long measureScan(ConcurrentMap<Integer, ChannelProxy> channelPool, List<Channel> channels, int rounds) {
+		int channelSize = channels.size();
+
+		long startTime = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			Channel channel = channels.get(i % channelSize);
+
+			ChannelProxy result = null;
+			for (ChannelProxy proxy : channelPool.values()) {
+				if (channel.equals(proxy.getChannel())) {
+					result = proxy;
+					break;
+				}
+			}
+			sink = result;
+		}
+
+		return System.nanoTime() - startTime;
+	}
+
+	private static long measureAttribute(ClientChannelManager manager, List<Channel> channels, int rounds) {
+		int channelSize = channels.size();
+
+		long startTime = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			Channel channel = channels.get(i % channelSize);
+			sink = manager.findChannelProxy(channel);
+		}
+
+		return System.nanoTime() - startTime;
+	}
+}
@@ -0,0 +1,94 @@
+package tw.me.ychuang.rpc;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.server.AdmissionController;
+
+/**
+ * A benchmark of goodput while the offered load goes past the capacity of a server.<br>
+ * A simulated server executes requests by a few workers with a fixed service time, the requests are offered in an open loop.<br>
+ * It compares an unlimited admission with an adaptive one, a request is counted as goodput only if it finishes within the SLO.
+ *
+ * @author Y.C. Huang
+ */
+public class ConcurrencyLimitBenchmark {
+	private static final Logger log = LoggerFactory.getLogger(ConcurrencyLimitBenchmark.class);
+
+	private static final int WORKER_SIZE = 4;
+
+	private static final long SERVICE_TIME = 5;
+
+	private static final long SLO = 100;
+
+	private static final long ROUND_TIME = 2000;
+
+	private static final int[] OFFERED_LOADS = { 400, 800, 1600, 3200 };
+
+	public static void main(String[] args) throws Exception {
+		log.info("Capacity: {} req/s, SLO: {} ms", WORKER_SIZE * 1000 / SERVICE_TIME, SLO);
+
+		for (int offeredLoad : OFFERED_LOADS) {
+			AdmissionController unlimited = new AdmissionController(new ConcurrencyLimiter(0), 0);
+			AdmissionController adaptive = new AdmissionController(new ConcurrencyLimiter(Constants.INITIAL_CONCURRENCY_LIMIT,
+					Constants.MIN_CONCURRENCY_LIMIT, 0), 0);
+
+			long unlimitedGoodput = measure(unlimited, offeredLoad);
+			long adaptiveGoodput = measure(adaptive, offeredLoad);
+
+			log.info("Offered load: {} req/s, unlimited goodput: {} req/s, adaptive goodput: {} req/s, adaptive limit: {}, rejected: {}",
+					offeredLoad, unlimitedGoodput, adaptiveGoodput, adaptive.getLimit(), adaptive.getRejectedCount());
+		}
+	}
+
+	/**
+	 * Offers requests at a fixed rate to a simulated server and measures its goodput.
+	 */
+	private static long measure(final AdmissionController admissionController, int offeredLoad) throws InterruptedException {
+		ThreadPoolExecutor workerPool = new ThreadPoolExecutor(WORKER_SIZE, WORKER_SIZE, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		final AtomicLong goodCounter = new AtomicLong();
+
+		long interval = TimeUnit.SECONDS.toNanos(1) / offeredLoad;
+		long startTime = System.nanoTime();
+		long nextTime = startTime;
+		while (System.nanoTime() - startTime < TimeUnit.MILLISECONDS.toNanos(ROUND_TIME)) {
+			// offers all requests are due, whether or not the previous ones have been answered
+			while (nextTime - System.nanoTime() <= 0) {
+				final long receivedTime = nextTime;
+				nextTime += interval;
+
+				if (false == admissionController.tryAdmit()) {
+					continue;
+				}
+
+				workerPool.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							Thread.sleep(SERVICE_TIME);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						admissionController.release(receivedTime);
+
+						if (System.nanoTime() - receivedTime <= TimeUnit.MILLISECONDS.toNanos(SLO)) {
+							goodCounter.incrementAndGet();
+						}
+					}
+				});
+			}
+			Thread.sleep(1);
+		}
+
+		workerPool.shutdown();
+		workerPool.awaitTermination(1, TimeUnit.MINUTES);
+
+		return goodCounter.get() * 1000 / ROUND_TIME;
+	}
+}
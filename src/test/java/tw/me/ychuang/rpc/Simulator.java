@@ -23,6 +23,9 @@ import org.slf4j.LoggerFactory;
 import tw.me.ychuang.rpc.client.ClientChannelManager;
 import tw.me.ychuang.rpc.client.ClientMeasurer;
 import tw.me.ychuang.rpc.server.ServerChannelManager;
+import tw.me.ychuang.rpc.server.BulkheadRegistry;
+import tw.me.ychuang.rpc.server.CommandCoalescer;
+import tw.me.ychuang.rpc.server.ResultCacheRegistry;
 import tw.me.ychuang.rpc.server.ServerMeasurer;
 
 /**
@@ -34,7 +37,7 @@ public class Simulator {
 	private static final Logger log = LoggerFactory.getLogger(Simulator.class);
 
 	public static enum RequestModeType {
-		urgent, heavy, normal, idle;
+		urgent, async, heavy, normal, idle;
 
 		public static List<String> asLabels() {
 			List<String> labels = new ArrayList<String>();
@@ -73,6 +76,9 @@ public class Simulator {
 
 				ClientMeasurer.showStatistics();
 				ServerMeasurer.showStatistics();
+				BulkheadRegistry.getInstance().showStatistics();
+				ResultCacheRegistry.getInstance().showStatistics();
+				CommandCoalescer.getInstance().showStatistics();
 
 				// Disables the "shutdownHook" attribute of the configuration element inside the log4j2.xml and manually shutdowns Log4j system
 				// Refer to http://stackoverflow.com/questions/17400136/how-to-log-within-shutdown-hooks-with-log4j2
@@ -113,6 +119,17 @@ public class Simulator {
 					}
 					break;
 
+				case async:
+					for (int i = 0; i < repeatTimes; i++) {
+						// for test purpose. Simulate the urgent mode by a single thread without blocking on any response
+						invokeByAsyncMode(requestSize, sampleLength);
+						ClientMeasurer.showStatistics();
+						ClientMeasurer.resetStatistics();
+						log.info("Netty client repeatedly executes a set of test cases. counter: {}", i + 1);
+						TimeUnit.SECONDS.sleep(3);
+					}
+					break;
+
 				case heavy:
 					// for test purpose. Simulate a situation when many requests are coming continuously
 					invokeByContinuousMode(sampleLength, 500, requestPeriod, TimeUnit.MILLISECONDS);
@@ -209,6 +226,37 @@ public class Simulator {
 		checkExecutor.shutdown();
 	}
 
+	private static void invokeByAsyncMode(int requestSize, int randomLength) {
+		final CountDownLatch invokeAllLatch = new CountDownLatch(requestSize);
+
+		for (int i = 0; i < requestSize; i++) {
+			final String randomString = RandomStringUtils.random(randomLength, true, true);
+			try {
+				BizServiceStub.getInstance().echoAsync(randomString, new ResponseListener<Response>() {
+					@Override
+					public void operationComplete(ResponseFuture<Response> future) {
+						Response response = future.getNow();
+						if (response == null || response.getResult().isExceptional()) {
+							log.error("Fail to test all cases.");
+						}
+						invokeAllLatch.countDown();
+					}
+				});
+
+			} catch (Throwable e) {
+				log.error("Fail to test all cases.", e);
+				invokeAllLatch.countDown();
+			}
+		}
+
+		try {
+			invokeAllLatch.await();
+
+		} catch (InterruptedException e) {
+			// nothing to do
+		}
+	}
+
 	private static void invokeByContinuousMode(final int randomLength, long initialDelay, long period, TimeUnit unit) {
 		ScheduledExecutorService executor = Executors.newScheduledThreadPool(8);
 		executor.scheduleAtFixedRate(new Runnable() {
@@ -224,6 +272,9 @@ public class Simulator {
 			public void run() {
 				ClientMeasurer.showStatistics();
 				ServerMeasurer.showStatistics();
+				BulkheadRegistry.getInstance().showStatistics();
+				ResultCacheRegistry.getInstance().showStatistics();
+				CommandCoalescer.getInstance().showStatistics();
 			}
 		}, 24, 24, TimeUnit.HOURS);
 	}
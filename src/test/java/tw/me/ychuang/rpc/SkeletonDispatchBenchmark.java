@@ -0,0 +1,86 @@
+package tw.me.ychuang.rpc;
+
+import java.lang.reflect.Method;
+import java.net.URL;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.reflect.MethodUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tw.me.ychuang.rpc.server.SkeletonInvoker;
+import tw.me.ychuang.rpc.server.SkeletonRegistry;
+
+/**
+ * A micro-benchmark of server-side dispatch cost.<br>
+ * It compares a per-call lookup by Java Reflection API (the way before the invoker cache) with a cached {@link SkeletonInvoker}.
+ *
+ * @author Y.C. Huang
+ */
+public class SkeletonDispatchBenchmark {
+	private static final Logger log = LoggerFactory.getLogger(SkeletonDispatchBenchmark.class);
+
+	private static final int WARM_UP_ROUNDS = 50000;
+
+	private static final int MEASURE_ROUNDS = 500000;
+
+	private static Object sink;
+
+	public static void main(String[] args) throws Throwable {
+		Command command = new Command(BizServiceSkeleton.class.getName(), "echo", false);
+		command.addParameter("benchmark", String.class);
+
+		for (int round = 0; round < 3; round++) {
+			measureLookupDispatch(command, WARM_UP_ROUNDS);
+			measureCachedDispatch(command, WARM_UP_ROUNDS);
+
+			long lookupNanos = measureLookupDispatch(command, MEASURE_ROUNDS);
+			long cachedNanos = measureCachedDispatch(command, MEASURE_ROUNDS);
+
+			log.info("Round: {}, per-call lookup: {} ns/op, cached invoker: {} ns/op", round, lookupNanos / MEASURE_ROUNDS, cachedNanos
+					/ MEASURE_ROUNDS);
+		}
+		log.info("The last result: {}", sink);
+	}
+
+	/**
+	 * Looks up the skeleton class, the matching method, and the skeleton instance per call, and invokes it by reflection.
+	 */
+	private static long measureLookupDispatch(Command command, int rounds) throws Throwable {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+		long startTime = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			StringBuilder skeletonClsPath = new StringBuilder(50);
+			skeletonClsPath.append(StringUtils.replaceChars(command.getSkeleton(), '.', '/')).append(".class");
+			URL resource = classLoader.getResource(skeletonClsPath.toString());
+			if (resource == null) {
+				throw new IllegalStateException("Fail to find the skeleton class.");
+			}
+			Class<?> skeletonClass = classLoader.loadClass(command.getSkeleton());
+
+			Method skeletonMethod = MethodUtils.getMatchingAccessibleMethod(skeletonClass, command.getMethod(), command.findParamClasses());
+			Method getInstanceMethod = MethodUtils.getMatchingAccessibleMethod(skeletonClass, "getInstance", new Class<?>[0]);
+			Object skeletonInstance = getInstanceMethod.invoke(null, new Object[0]);
+
+			sink = skeletonMethod.invoke(skeletonInstance, command.findParameters());
+		}
+
+		return System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Finds the cached invoker and invokes it by a method handle.
+	 */
+	private static long measureCachedDispatch(Command command, int rounds) throws Throwable {
+		SkeletonRegistry registry = SkeletonRegistry.getInstance();
+
+		long startTime = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			SkeletonInvoker invoker = registry.findInvoker(command);
+			sink = invoker.invoke(command.findParameters());
+		}
+
+		return System.nanoTime() - startTime;
+	}
+}